@@ -21,14 +21,35 @@
  */
 package it.infn.ct.futuregateway.apiserver;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.BulkheadExecutor;
+import it.infn.ct.futuregateway.apiserver.inframanager.Bulkheads;
+import it.infn.ct.futuregateway.apiserver.inframanager.CircuitBreakers;
+import it.infn.ct.futuregateway.apiserver.inframanager.CustomJobFactory;
+import it.infn.ct.futuregateway.apiserver.inframanager.DatabaseTaskOverflow;
+import it.infn.ct.futuregateway.apiserver.inframanager.DelayedTaskQueue;
+import it.infn.ct.futuregateway.apiserver.inframanager.JobServiceCache;
 import it.infn.ct.futuregateway.apiserver.inframanager.MonitorQueue;
+import it.infn.ct.futuregateway.apiserver.inframanager.ProxyCache;
+import it.infn.ct.futuregateway.apiserver.inframanager.SessionBuilder;
+import it.infn.ct.futuregateway.apiserver.inframanager.SessionCache;
+import it.infn.ct.futuregateway.apiserver.inframanager.TaskRecovery;
+import it.infn.ct.futuregateway.apiserver.inframanager.TransitionEngine;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskWriteBehind;
+import it.infn.ct.futuregateway.apiserver.storage.Storages;
 import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import it.infn.ct.futuregateway.apiserver.utils.ThreadPoolFactory;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.naming.Context;
 import javax.naming.InitialContext;
@@ -59,6 +80,16 @@ public class APIContextListener implements ServletContextListener {
      */
     private EntityManagerFactory entityManagerFactory;
 
+    /**
+     * Delayed persistence of the task changes.
+     */
+    private TaskWriteBehind writeBehind;
+
+    /**
+     * Engine executing the actions of the task changes.
+     */
+    private TransitionEngine transitionEngine;
+
     /**
      * Monitor queue.
      */
@@ -68,24 +99,95 @@ public class APIContextListener implements ServletContextListener {
      * Submitter queue.
      */
     private ExecutorService execServ;
+
+    /**
+     * Bulkheads of the infrastructures.
+     */
+    private Bulkheads bulkheads;
+
+    /**
+     * Executor recovering the tasks at startup.
+     */
+    private ExecutorService recoveryServ;
+
+    /**
+     * Cache of the SAGA sessions.
+     */
+    private SessionCache sessionCache;
+
+    /**
+     * Cache of the job services.
+     */
+    private JobServiceCache jobServiceCache;
+
+    /**
+     * Executor removing the expired sessions.
+     */
+    private ScheduledExecutorService sessionSweeper;
+
+    /**
+     * Executor refreshing the proxies.
+     */
+    private ScheduledExecutorService proxyRefresher;
+
+    /**
+     * Executor writing the task events to the clients.
+     */
+    private ExecutorService eventWriters;
+
+    /**
+     * Stream of the task events.
+     */
+    private TaskEventStream taskEvents;
+
+    /**
+     * Executor sending the heartbeats to the clients of the task events.
+     */
+    private ScheduledExecutorService eventHeartbeat;
+
+    /**
+     * Executor removing the lost pilots.
+     */
+    private ScheduledExecutorService pilotSweeper;
+
     @Override
     public final void contextInitialized(final ServletContextEvent sce) {
         log.info("Creation of the Hibernate SessionFactory for the context");
+        final Map<String, String> persistenceProps = new HashMap<>();
+        persistenceProps.put(Constants.CACHESTATISTICSPROPERTY,
+                Boolean.toString(Boolean.parseBoolean(sce.getServletContext().
+                        getInitParameter(Constants.CACHESTATISTICSC))));
         try {
             entityManagerFactory = Persistence.createEntityManagerFactory(
-                    "it.infn.ct.futuregateway.apiserver.container"
+                    "it.infn.ct.futuregateway.apiserver.container",
+                    persistenceProps
             );
         } catch (Exception ex) {
             log.warn("Resource 'jdbc/FutureGatewayDB' not accessible or"
                     + " not properly configured for the application. An"
                     + " alternative resource is created on the fly.");
             entityManagerFactory = Persistence.createEntityManagerFactory(
-                    "it.infn.ct.futuregateway.apiserver.app"
+                    "it.infn.ct.futuregateway.apiserver.app",
+                    persistenceProps
             );
         }
         sce.getServletContext().setAttribute(
                 Constants.SESSIONFACTORY, entityManagerFactory
         );
+        int flushInterval = Constants.TASKFLUSHINTERVAL;
+        try {
+            flushInterval = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.TASKFLUSHINTERVALC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.TASKFLUSHINTERVALC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.TASKFLUSHINTERVAL
+                    + " is used");
+        }
+        writeBehind = new TaskWriteBehind(entityManagerFactory,
+                flushInterval, Constants.TASKFLUSHBATCHSIZE);
+        sce.getServletContext().setAttribute(
+                Constants.TASKWRITEBEHIND, writeBehind);
         String path = sce.getServletContext().getInitParameter("CacheDir");
         if (path == null || path.isEmpty()) {
             path = sce.getServletContext().getRealPath("/")
@@ -123,11 +225,119 @@ public class APIContextListener implements ServletContextListener {
                         + "Default value " + Constants.DEFAULTTHREADPOOLSIZE
                         + " is used");
             }
+            int queueSize = Constants.SUBMISSIONQUEUESIZE;
+            try {
+                queueSize = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.SUBMISSIONQUEUESIZEC));
+            } catch (NumberFormatException nfe) {
+                log.info("Parameter '" + Constants.SUBMISSIONQUEUESIZEC
+                        + "' has a wrong value or it is not present. "
+                        + "Default value " + Constants.SUBMISSIONQUEUESIZE
+                        + " is used");
+            }
+            String rejectionPolicy = sce.getServletContext().
+                    getInitParameter(Constants.SUBMISSIONPOLICYC);
+            if (rejectionPolicy == null) {
+                rejectionPolicy = ThreadPoolFactory.ABORTPOLICY;
+            }
             execServ = ThreadPoolFactory.getThreadPool(
                     threadPoolSize,
                     Constants.MAXTHREADPOOLSIZETIMES * threadPoolSize,
-                    Constants.MAXTHREADIDLELIFE);
+                    Constants.MAXTHREADIDLELIFE, queueSize, rejectionPolicy);
+        }
+        long sessionTTL = Constants.SESSIONTTL;
+        try {
+            sessionTTL = Long.parseLong(sce.getServletContext().
+                    getInitParameter(Constants.SESSIONTTLC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.SESSIONTTLC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.SESSIONTTL
+                    + " is used");
         }
+        long sessionIdle = Constants.SESSIONIDLETIME;
+        try {
+            sessionIdle = Long.parseLong(sce.getServletContext().
+                    getInitParameter(Constants.SESSIONIDLETIMEC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.SESSIONIDLETIMEC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.SESSIONIDLETIME
+                    + " is used");
+        }
+        int proxyRefresh = Constants.PROXYREFRESHPERCENT;
+        try {
+            proxyRefresh = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.PROXYREFRESHPERCENTC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.PROXYREFRESHPERCENTC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.PROXYREFRESHPERCENT
+                    + " is used");
+        }
+        proxyRefresher = Executors.newScheduledThreadPool(
+                Constants.PROXYREFRESHTHREADS);
+        SessionBuilder.setProxyCache(
+                new ProxyCache(proxyRefresh, proxyRefresher));
+        sessionCache = new SessionCache(sessionTTL, sessionIdle);
+        CustomJobFactory.setSessionCache(sessionCache);
+        jobServiceCache = new JobServiceCache(Constants.JOBSERVICECACHESIZE,
+                sessionIdle);
+        CustomJobFactory.setJobServiceCache(jobServiceCache);
+        sce.getServletContext().setAttribute(
+                Constants.SESSIONCACHE, sessionCache);
+        sessionSweeper = Executors.newSingleThreadScheduledExecutor();
+        sessionSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                sessionCache.evictExpired();
+                jobServiceCache.evictExpired();
+            }
+        }, Constants.SESSIONSWEEPINTERVAL, Constants.SESSIONSWEEPINTERVAL,
+                TimeUnit.MILLISECONDS);
+        eventWriters = Executors.newFixedThreadPool(
+                Constants.EVENTWRITERTHREADS);
+        taskEvents = new TaskEventStream(Constants.EVENTHISTORYSIZE,
+                Constants.EVENTBUFFERSIZE, eventWriters);
+        TaskEventStream.setInstance(taskEvents);
+        eventHeartbeat = Executors.newSingleThreadScheduledExecutor();
+        eventHeartbeat.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                taskEvents.heartbeat();
+            }
+        }, Constants.EVENTHEARTBEATINTERVAL,
+                Constants.EVENTHEARTBEATINTERVAL, TimeUnit.MILLISECONDS);
+        int circuitFailures = Constants.CIRCUITFAILURES;
+        try {
+            circuitFailures = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.CIRCUITFAILURESC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.CIRCUITFAILURESC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.CIRCUITFAILURES
+                    + " is used");
+        }
+        long circuitOpenTime = Constants.CIRCUITOPENTIME;
+        try {
+            circuitOpenTime = Long.parseLong(sce.getServletContext().
+                    getInitParameter(Constants.CIRCUITOPENTIMEC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.CIRCUITOPENTIMEC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.CIRCUITOPENTIME
+                    + " is used");
+        }
+        CustomJobFactory.setCircuitBreakers(new CircuitBreakers(
+                circuitFailures, circuitOpenTime,
+                Constants.CIRCUITMAXOPENTIME));
+        Selectors.setSelector(Selectors.create(
+                sce.getServletContext().getInitParameter(
+                        Constants.INFRASELECTIONC),
+                Selectors.getMetrics()));
+        bulkheads = new Bulkheads();
+        execServ = new BulkheadExecutor(execServ, bulkheads);
+        sce.getServletContext().setAttribute(Constants.BULKHEADS, bulkheads);
         sce.getServletContext().setAttribute(
                 Constants.SUBMISSIONPOOL, execServ);
         try {
@@ -167,15 +377,111 @@ public class APIContextListener implements ServletContextListener {
                         + "Default value " + Constants.MONITORCHECKINTERVAL
                         + " is used");
             }
+            long monitorMaxInterval = (long) monitorInterval
+                    * Constants.MONITORMAXINTERVALTIMES;
+            try {
+                monitorMaxInterval = Long.parseLong(sce.getServletContext().
+                    getInitParameter(Constants.MONITORMAXINTERVALC));
+            } catch (NumberFormatException nfe) {
+                log.info("Parameter '" + Constants.MONITORMAXINTERVALC
+                        + "' has a wrong value or it is not present. "
+                        + "Default value " + monitorMaxInterval
+                        + " is used");
+            }
             mQueue = new MonitorQueue(queueSize, threadPoolSize,
-                    monitorInterval);
+                    monitorInterval, monitorMaxInterval);
+        }
+        mQueue.setSubmissionPool(execServ);
+        mQueue.setBulkheads(bulkheads);
+        mQueue.setWriteBehind(writeBehind);
+        int transitionPoolSize = Constants.TRANSITIONPOOLSIZE;
+        try {
+            transitionPoolSize = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.TRANSITIONPOOLSIZEC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.TRANSITIONPOOLSIZEC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.TRANSITIONPOOLSIZE
+                    + " is used");
+        }
+        transitionEngine = new TransitionEngine(transitionPoolSize);
+        mQueue.setTransitionEngine(transitionEngine);
+        mQueue.setStorage(Storages.getStorage(path));
+        if (mQueue.getMonitorQueue() instanceof DelayedTaskQueue) {
+            ((DelayedTaskQueue) mQueue.getMonitorQueue()).setOverflow(
+                    new DatabaseTaskOverflow(entityManagerFactory, mQueue));
         }
-        //FIXME: Fill the monitor during startup
         sce.getServletContext().setAttribute(Constants.MONITORQUEUE, mQueue);
+        configurePilots(sce);
+        int warmUp = Constants.MONITORWARMUP;
+        try {
+            warmUp = Integer.parseInt(sce.getServletContext().
+                    getInitParameter(Constants.MONITORWARMUPC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.MONITORWARMUPC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.MONITORWARMUP
+                    + " is used");
+        }
+        recoveryServ = Executors.newSingleThreadExecutor();
+        recoveryServ.submit(new TaskRecovery(entityManagerFactory, mQueue,
+                warmUp, Constants.RECOVERYFETCHSIZE));
+        recoveryServ.shutdown();
+    }
+
+    /**
+     * Enables the pilot jobs if the URL of the server is configured.
+     * Pilot jobs contact the server to retrieve the tasks so without the
+     * URL the applications in pilot mode cannot run.
+     *
+     * @param sce The servlet context event
+     */
+    private void configurePilots(final ServletContextEvent sce) {
+        final String pilotUrl = sce.getServletContext().getInitParameter(
+                Constants.PILOTURLC);
+        if (pilotUrl == null || pilotUrl.isEmpty()) {
+            log.info("Parameter '" + Constants.PILOTURLC + "' is not "
+                    + "present. Pilot jobs are disabled");
+            return;
+        }
+        long pilotTimeout = Constants.PILOTTIMEOUT;
+        try {
+            pilotTimeout = Long.parseLong(sce.getServletContext().
+                    getInitParameter(Constants.PILOTTIMEOUTC));
+        } catch (NumberFormatException nfe) {
+            log.info("Parameter '" + Constants.PILOTTIMEOUTC
+                    + "' has a wrong value or it is not present. "
+                    + "Default value " + Constants.PILOTTIMEOUT
+                    + " is used");
+        }
+        final PilotManager pilots = new PilotManager(pilotUrl, pilotTimeout,
+                entityManagerFactory, mQueue);
+        PilotManager.setInstance(pilots);
+        pilotSweeper = Executors.newSingleThreadScheduledExecutor();
+        pilotSweeper.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                pilots.sweep();
+            }
+        }, Constants.PILOTSWEEPINTERVAL, Constants.PILOTSWEEPINTERVAL,
+                TimeUnit.MILLISECONDS);
     }
 
     @Override
     public final void contextDestroyed(final ServletContextEvent sce) {
+        recoveryServ.shutdownNow();
+        if (pilotSweeper != null) {
+            pilotSweeper.shutdownNow();
+        }
+        PilotManager.setInstance(null);
+        try {
+            if (!transitionEngine.shutdown(
+                    Constants.MAXTHREADWAIT, TimeUnit.MINUTES)) {
+                log.warn("Failed to shutdown the transition engine.");
+            }
+        } catch (InterruptedException ex) {
+            log.error(ex);
+        }
         execServ.shutdown();
         try {
             if (!execServ.awaitTermination(
@@ -186,6 +492,21 @@ public class APIContextListener implements ServletContextListener {
         } catch (InterruptedException ex) {
             log.error(ex);
         }
+        sessionSweeper.shutdownNow();
+        eventHeartbeat.shutdownNow();
+        TaskEventStream.setInstance(null);
+        taskEvents.closeAll();
+        eventWriters.shutdownNow();
+        CustomJobFactory.setJobServiceCache(null);
+        CustomJobFactory.setCircuitBreakers(null);
+        jobServiceCache.clear();
+        CustomJobFactory.setSessionCache(null);
+        sessionCache.closeAll();
+        SessionBuilder.setProxyCache(null);
+        Selectors.setSelector(null);
+        Selectors.getMetrics().clear();
+        proxyRefresher.shutdownNow();
+        writeBehind.shutdown();
         entityManagerFactory.close();
     }
 }
@@ -0,0 +1,288 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.BulkheadStats;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import it.infn.ct.futuregateway.apiserver.utils.ThreadPoolFactory;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Isolated resources of an infrastructure.
+ * Each infrastructure has its own submission thread pool and a limit on the
+ * monitor threads checking its tasks at the same time, so a slow or hung
+ * infrastructure cannot use all the threads of the service. Optionally, the
+ * rate of the submissions is limited by a {@link TokenBucket}.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class Bulkhead {
+
+    /**
+     * Identifier of the infrastructure.
+     */
+    private final String infrastructureId;
+
+    /**
+     * Submission thread pool.
+     */
+    private final ThreadPoolExecutor submissionPool;
+
+    /**
+     * Maximum number of submissions waiting for a thread.
+     */
+    private final int submissionQueueSize;
+
+    /**
+     * Permits for the monitor threads.
+     */
+    private final Semaphore monitors;
+
+    /**
+     * Maximum number of monitor threads.
+     */
+    private final int monitorLimit;
+
+    /**
+     * Limiter of the submission rate, null if the rate is not limited.
+     */
+    private final TokenBucket rateLimiter;
+
+    /**
+     * Number of submissions rejected.
+     */
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * Number of checks postponed.
+     */
+    private final AtomicLong deferred = new AtomicLong();
+
+    /**
+     * Build the bulkhead.
+     *
+     * @param anInfrastructureId Identifier of the infrastructure
+     * @param aPoolSize Number of submission threads
+     * @param aQueueSize Number of submissions waiting for a thread
+     * @param aMonitorLimit Number of monitor threads checking tasks at the
+     * same time
+     */
+    public Bulkhead(final String anInfrastructureId, final int aPoolSize,
+            final int aQueueSize, final int aMonitorLimit) {
+        this(anInfrastructureId, aPoolSize, aQueueSize, aMonitorLimit, null);
+    }
+
+    /**
+     * Build the bulkhead with a limited submission rate.
+     *
+     * @param anInfrastructureId Identifier of the infrastructure
+     * @param aPoolSize Number of submission threads
+     * @param aQueueSize Number of submissions waiting for a thread
+     * @param aMonitorLimit Number of monitor threads checking tasks at the
+     * same time
+     * @param aRateLimiter Limiter of the submission rate or null
+     */
+    public Bulkhead(final String anInfrastructureId, final int aPoolSize,
+            final int aQueueSize, final int aMonitorLimit,
+            final TokenBucket aRateLimiter) {
+        this.rateLimiter = aRateLimiter;
+        this.infrastructureId = anInfrastructureId;
+        this.submissionQueueSize = Math.max(1, aQueueSize);
+        this.submissionPool = (ThreadPoolExecutor)
+                ThreadPoolFactory.getThreadPool(Math.max(1, aPoolSize),
+                        Math.max(1, aPoolSize), Constants.MAXTHREADIDLELIFE,
+                        submissionQueueSize, ThreadPoolFactory.ABORTPOLICY);
+        this.submissionPool.allowCoreThreadTimeOut(true);
+        this.monitorLimit = Math.max(1, aMonitorLimit);
+        this.monitors = new Semaphore(monitorLimit);
+    }
+
+    /**
+     * Retrieves the identifier of the infrastructure.
+     *
+     * @return The identifier
+     */
+    public final String getInfrastructureId() {
+        return infrastructureId;
+    }
+
+    /**
+     * Submits a task submission to the pool of the infrastructure.
+     *
+     * @param submitter The submission
+     * @throws RejectedExecutionException If the pool is saturated
+     */
+    public final void submit(final Runnable submitter) {
+        try {
+            submissionPool.execute(submitter);
+        } catch (RejectedExecutionException ree) {
+            rejected.incrementAndGet();
+            throw ree;
+        }
+    }
+
+    /**
+     * Reserves a submission within the rate of the infrastructure.
+     * A task delayed has to request the submission again after the time
+     * returned, when it is granted.
+     *
+     * @param taskId Identifier of the task to submit
+     * @return The time to wait in milliseconds, 0 if the task can be
+     * submitted
+     */
+    public final long reserveSubmission(final String taskId) {
+        if (rateLimiter == null) {
+            return 0;
+        }
+        return rateLimiter.reserve(taskId);
+    }
+
+    /**
+     * Retrieves the limiter of the submission rate.
+     *
+     * @return The limiter or null if the rate is not limited
+     */
+    public final TokenBucket getRateLimiter() {
+        return rateLimiter;
+    }
+
+    /**
+     * Retrieves the submission pool.
+     *
+     * @return The thread pool
+     */
+    public final ExecutorService getSubmissionPool() {
+        return submissionPool;
+    }
+
+    /**
+     * Reserves a monitor thread for a check.
+     * The method does not wait, if the limit is reached the check has to be
+     * postponed.
+     *
+     * @return True if the check can be performed, false otherwise
+     */
+    public final boolean tryAcquireMonitor() {
+        if (monitors.tryAcquire()) {
+            return true;
+        }
+        deferred.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Releases a monitor thread reserved with {@link #tryAcquireMonitor()}.
+     */
+    public final void releaseMonitor() {
+        monitors.release();
+    }
+
+    /**
+     * Verifies if the submission pool cannot accept more tasks.
+     *
+     * @return True if the pool is saturated
+     */
+    public final boolean isSaturated() {
+        return ThreadPoolFactory.isSaturated(submissionPool);
+    }
+
+    /**
+     * Retrieves the number of submissions the pool can accept before
+     * saturating.
+     *
+     * @return The number of submissions
+     */
+    public final int getFreeCapacity() {
+        return ThreadPoolFactory.getFreeCapacity(submissionPool);
+    }
+
+    /**
+     * Stops the submission pool.
+     */
+    public final void shutdown() {
+        submissionPool.shutdown();
+    }
+
+    /**
+     * Stops the submission pool interrupting the running submissions.
+     *
+     * @return The submissions never started
+     */
+    public final List<Runnable> shutdownNow() {
+        return submissionPool.shutdownNow();
+    }
+
+    /**
+     * Verifies if all the submissions are completed after a shutdown.
+     *
+     * @return True if the pool is terminated
+     */
+    public final boolean isTerminated() {
+        return submissionPool.isTerminated();
+    }
+
+    /**
+     * Waits the submissions to complete after a shutdown.
+     *
+     * @param timeout Maximum time to wait
+     * @param unit Unit of the timeout
+     * @return True if the pool is terminated, false if the timeout expired
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public final boolean awaitTermination(final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        return submissionPool.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Retrieves the current usage of the bulkhead.
+     *
+     * @return The statistics
+     */
+    public final BulkheadStats getStats() {
+        final BulkheadStats stats = new BulkheadStats();
+        stats.setInfrastructureId(infrastructureId);
+        stats.setSubmissionThreads(submissionPool.getMaximumPoolSize());
+        stats.setSubmissionActive(submissionPool.getActiveCount());
+        stats.setSubmissionQueueSize(submissionQueueSize);
+        stats.setSubmissionQueued(submissionPool.getQueue().size());
+        stats.setSubmissionRejected(rejected.get());
+        stats.setMonitorLimit(monitorLimit);
+        stats.setMonitorActive(monitorLimit - monitors.availablePermits());
+        stats.setMonitorDeferred(deferred.get());
+        if (rateLimiter != null) {
+            stats.setSubmissionRate(rateLimiter.getRate());
+            stats.setSubmissionBurst(rateLimiter.getBurst());
+            stats.setSubmissionTokens(rateLimiter.getTokens());
+            stats.setSubmissionDelayed(rateLimiter.getQueued());
+        }
+        stats.setSaturated(isSaturated()
+                || monitors.availablePermits() == 0);
+        return stats;
+    }
+}
@@ -0,0 +1,258 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor routing the task submissions to the infrastructure bulkheads.
+ * {@link Submitter}s are executed by the pool of the infrastructure
+ * associated with the task, other activities by the shared pool.
+ * <p>
+ * The submissions in the bulkheads, running or waiting for a thread, are
+ * limited globally to the capacity of the shared pool, threads plus queue,
+ * so the bulkheads cannot exceed the limit configured for the service.
+ * <p>
+ * Submissions exceeding the rate of the infrastructure are not executed but
+ * parked in the queue of the submitter until their turn, so they do not
+ * hold a thread while waiting.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class BulkheadExecutor extends AbstractExecutorService {
+
+    /**
+     * Shared pool for the activities not bound to an infrastructure.
+     */
+    private final ExecutorService sharedPool;
+
+    /**
+     * Bulkheads of the infrastructures.
+     */
+    private final Bulkheads bulkheads;
+
+    /**
+     * Permits for the submissions in the bulkheads, null if not limited.
+     */
+    private final Semaphore submissionPermits;
+
+    /**
+     * Build the executor.
+     *
+     * @param aSharedPool Pool for the activities not bound to an
+     * infrastructure
+     * @param someBulkheads Bulkheads of the infrastructures
+     */
+    public BulkheadExecutor(final ExecutorService aSharedPool,
+            final Bulkheads someBulkheads) {
+        this.sharedPool = aSharedPool;
+        this.bulkheads = someBulkheads;
+        if (aSharedPool instanceof ThreadPoolExecutor) {
+            final ThreadPoolExecutor tpe = (ThreadPoolExecutor) aSharedPool;
+            this.submissionPermits = new Semaphore(tpe.getMaximumPoolSize()
+                    + tpe.getQueue().remainingCapacity());
+        } else {
+            this.submissionPermits = null;
+        }
+    }
+
+    /**
+     * Retrieves the shared pool.
+     *
+     * @return The pool
+     */
+    public final ExecutorService getSharedPool() {
+        return sharedPool;
+    }
+
+    /**
+     * Retrieves the bulkheads.
+     *
+     * @return The bulkheads
+     */
+    public final Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Verifies if the submissions to a set of infrastructures cannot be
+     * accepted.
+     * Infrastructures not yet used have a free bulkhead.
+     *
+     * @param infras The infrastructures
+     * @return True if the global limit of the submissions is reached or
+     * the bulkheads of all the enabled infrastructures are saturated
+     */
+    public final boolean isSaturated(final List<Infrastructure> infras) {
+        return getFreeCapacity(infras) == 0;
+    }
+
+    /**
+     * Retrieves the number of submissions to a set of infrastructures which
+     * can be accepted before saturating.
+     * The submissions are limited by the global limit and by the free
+     * capacity of the bulkheads of the enabled infrastructures. The
+     * infrastructures not yet used have a free bulkhead so they do not
+     * limit the submissions.
+     *
+     * @param infras The infrastructures
+     * @return The number of submissions
+     */
+    public final int getFreeCapacity(final List<Infrastructure> infras) {
+        long free = 0;
+        boolean limited = false;
+        if (infras != null) {
+            for (Infrastructure infra: infras) {
+                if (infra.isEnabled()) {
+                    final Bulkhead bulkhead = bulkheads.find(infra.getId());
+                    if (bulkhead == null) {
+                        limited = false;
+                        break;
+                    }
+                    free += bulkhead.getFreeCapacity();
+                    limited = true;
+                }
+            }
+        }
+        if (!limited) {
+            free = Integer.MAX_VALUE;
+        }
+        if (submissionPermits != null) {
+            free = Math.min(free, submissionPermits.availablePermits());
+        }
+        return (int) Math.min(free, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final void execute(final Runnable command) {
+        if (command instanceof Submitter) {
+            final Infrastructure infra =
+                    ((Submitter) command).getTask().
+                            getAssociatedInfrastructure();
+            if (infra != null) {
+                final Bulkhead bulkhead = bulkheads.get(infra);
+                final Submitter submitter = (Submitter) command;
+                final long delay = bulkhead.reserveSubmission(
+                        submitter.getTask().getId());
+                if (delay > 0) {
+                    park(submitter, delay);
+                } else {
+                    submit(bulkhead, command);
+                }
+                return;
+            }
+        }
+        sharedPool.execute(command);
+    }
+
+    /**
+     * Submits to a bulkhead within the global limit of the submissions.
+     *
+     * @param bulkhead The bulkhead of the infrastructure
+     * @param command The submission
+     * @throws RejectedExecutionException If the limit is reached or the
+     * bulkhead is saturated
+     */
+    private void submit(final Bulkhead bulkhead, final Runnable command) {
+        if (submissionPermits == null) {
+            bulkhead.submit(command);
+            return;
+        }
+        if (!submissionPermits.tryAcquire()) {
+            throw new RejectedExecutionException("Submission limit of the "
+                    + "service reached");
+        }
+        try {
+            bulkhead.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        command.run();
+                    } finally {
+                        submissionPermits.release();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            submissionPermits.release();
+            throw ree;
+        }
+    }
+
+    /**
+     * Parks a submission until the rate of the infrastructure allows it.
+     *
+     * @param submitter The submission
+     * @param delay The delay in milliseconds
+     * @throws RejectedExecutionException If the submission cannot be parked
+     */
+    private void park(final Submitter submitter, final long delay) {
+        final BlockingQueue<Task> queue = submitter.getQueue();
+        if (queue == null || !DelayedTaskQueue.scheduleOrOffer(queue,
+                submitter.getTask(), delay, TimeUnit.MILLISECONDS)) {
+            throw new RejectedExecutionException("Submission rate of the "
+                    + "infrastructure exceeded");
+        }
+    }
+
+    @Override
+    public final void shutdown() {
+        sharedPool.shutdown();
+        bulkheads.shutdown();
+    }
+
+    @Override
+    public final List<Runnable> shutdownNow() {
+        final List<Runnable> pending = new ArrayList<>(
+                sharedPool.shutdownNow());
+        pending.addAll(bulkheads.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public final boolean isShutdown() {
+        return sharedPool.isShutdown();
+    }
+
+    @Override
+    public final boolean isTerminated() {
+        return sharedPool.isTerminated() && bulkheads.isTerminated();
+    }
+
+    @Override
+    public final boolean awaitTermination(final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        final long deadline = System.nanoTime() + unit.toNanos(timeout);
+        return sharedPool.awaitTermination(timeout, unit)
+                && bulkheads.awaitTermination(deadline);
+    }
+}
@@ -0,0 +1,281 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.BulkheadStats;
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Registry of the infrastructure bulkheads.
+ * Bulkheads are created the first time an infrastructure is used and sized
+ * with the infrastructure parameters <i>submissionpoolsize</i>,
+ * <i>submissionqueuesize</i> and <i>monitorconcurrency</i>. Default values
+ * are used for missing parameters.
+ * <p>
+ * The submission rate is limited only for the infrastructures defining the
+ * parameter <i>submissionrate</i>, in submissions per second. The parameter
+ * <i>submissionburst</i> defines how many submissions can be performed at
+ * once after an idle period, by default the submissions of one second.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class Bulkheads {
+
+    /**
+     * Infrastructure parameter for the submission threads.
+     */
+    public static final String POOLSIZEPARAM = "submissionpoolsize";
+
+    /**
+     * Infrastructure parameter for the submission queue.
+     */
+    public static final String QUEUESIZEPARAM = "submissionqueuesize";
+
+    /**
+     * Infrastructure parameter for the monitor threads.
+     */
+    public static final String MONITORSPARAM = "monitorconcurrency";
+
+    /**
+     * Infrastructure parameter for the submissions per second.
+     */
+    public static final String RATEPARAM = "submissionrate";
+
+    /**
+     * Infrastructure parameter for the submissions performed at once.
+     */
+    public static final String BURSTPARAM = "submissionburst";
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(Bulkheads.class);
+
+    /**
+     * Bulkheads by infrastructure id.
+     */
+    private final ConcurrentMap<String, Bulkhead> bulkheads =
+            new ConcurrentHashMap<>();
+
+    /**
+     * True after the shutdown.
+     */
+    private volatile boolean stopped;
+
+    /**
+     * Retrieves the bulkhead of an infrastructure.
+     * The bulkhead is created if it does not exist.
+     *
+     * @param infra The infrastructure
+     * @return The bulkhead
+     */
+    public final Bulkhead get(final Infrastructure infra) {
+        Bulkhead bulkhead = bulkheads.get(infra.getId());
+        if (bulkhead == null) {
+            final Bulkhead created = new Bulkhead(infra.getId(),
+                    readSize(infra, POOLSIZEPARAM,
+                            Constants.BULKHEADPOOLSIZE),
+                    readSize(infra, QUEUESIZEPARAM,
+                            Constants.BULKHEADQUEUESIZE),
+                    readSize(infra, MONITORSPARAM,
+                            Constants.BULKHEADMONITORS),
+                    createRateLimiter(infra));
+            bulkhead = bulkheads.putIfAbsent(infra.getId(), created);
+            if (bulkhead == null) {
+                log.info("Created the bulkhead for the infrastructure "
+                        + infra.getId());
+                bulkhead = created;
+                if (stopped) {
+                    created.shutdown();
+                }
+            } else {
+                created.shutdown();
+            }
+        }
+        return bulkhead;
+    }
+
+    /**
+     * Retrieves the bulkhead of an infrastructure, if already created.
+     *
+     * @param infraId The infrastructure id
+     * @return The bulkhead or null
+     */
+    public final Bulkhead find(final String infraId) {
+        return bulkheads.get(infraId);
+    }
+
+    /**
+     * Removes the bulkhead of an infrastructure.
+     * Submissions already accepted are completed.
+     *
+     * @param infraId The infrastructure id
+     */
+    public final void remove(final String infraId) {
+        final Bulkhead bulkhead = bulkheads.remove(infraId);
+        if (bulkhead != null) {
+            bulkhead.shutdown();
+        }
+    }
+
+    /**
+     * Retrieves the statistics of all the bulkheads.
+     *
+     * @return The statistics
+     */
+    public final List<BulkheadStats> getStats() {
+        final List<BulkheadStats> stats = new ArrayList<>();
+        for (Bulkhead bulkhead: bulkheads.values()) {
+            stats.add(bulkhead.getStats());
+        }
+        return stats;
+    }
+
+    /**
+     * Stops all the bulkheads.
+     * Bulkheads requested after the shutdown are created already stopped.
+     */
+    public final void shutdown() {
+        stopped = true;
+        for (Bulkhead bulkhead: bulkheads.values()) {
+            bulkhead.shutdown();
+        }
+    }
+
+    /**
+     * Stops all the bulkheads interrupting the running submissions.
+     *
+     * @return The submissions never started
+     */
+    public final List<Runnable> shutdownNow() {
+        stopped = true;
+        final List<Runnable> pending = new ArrayList<>();
+        for (Bulkhead bulkhead: bulkheads.values()) {
+            pending.addAll(bulkhead.shutdownNow());
+        }
+        return pending;
+    }
+
+    /**
+     * Verifies if the submissions of all the bulkheads are completed after
+     * a shutdown.
+     *
+     * @return True if all the bulkheads are terminated
+     */
+    public final boolean isTerminated() {
+        if (!stopped) {
+            return false;
+        }
+        for (Bulkhead bulkhead: bulkheads.values()) {
+            if (!bulkhead.isTerminated()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Waits the submissions of all the bulkheads to complete after a
+     * shutdown.
+     *
+     * @param deadline Time limit as returned by {@link System#nanoTime()}
+     * @return True if all the bulkheads are terminated, false if the
+     * deadline expired
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public final boolean awaitTermination(final long deadline)
+            throws InterruptedException {
+        for (Bulkhead bulkhead: bulkheads.values()) {
+            if (!bulkhead.awaitTermination(deadline - System.nanoTime(),
+                    TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates the limiter of the submission rate.
+     *
+     * @param infra The infrastructure
+     * @return The limiter or null if the rate is not limited
+     */
+    private TokenBucket createRateLimiter(final Infrastructure infra) {
+        if (infra.getParameters() == null) {
+            return null;
+        }
+        final String value = Utilities.getParameterValue(
+                infra.getParameters(), RATEPARAM);
+        if (value == null) {
+            return null;
+        }
+        final double rate;
+        try {
+            rate = Double.parseDouble(value.trim());
+        } catch (NumberFormatException nfe) {
+            log.warn("Parameter " + RATEPARAM + " of infrastructure "
+                    + infra.getId() + " is not valid. Rate not limited.");
+            return null;
+        }
+        if (rate <= 0) {
+            return null;
+        }
+        return new TokenBucket(rate, readSize(infra, BURSTPARAM,
+                (int) Math.max(1, Math.ceil(rate))));
+    }
+
+    /**
+     * Reads a size from the infrastructure parameters.
+     *
+     * @param infra The infrastructure
+     * @param name The parameter name
+     * @param defaultValue The value to use if the parameter is not valid
+     * @return The size
+     */
+    private int readSize(final Infrastructure infra, final String name,
+            final int defaultValue) {
+        if (infra.getParameters() == null) {
+            return defaultValue;
+        }
+        final String value = Utilities.getParameterValue(
+                infra.getParameters(), name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException nfe) {
+            log.warn("Parameter " + name + " of infrastructure "
+                    + infra.getId() + " is not valid. Default value ("
+                    + defaultValue + ") applied.");
+            return defaultValue;
+        }
+    }
+}
@@ -0,0 +1,227 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Circuit breaker of a remote endpoint.
+ * The circuit is <i>closed</i> while the endpoint works. After a number of
+ * consecutive failures the circuit <i>opens</i> and requests are refused
+ * until the open time expires. Then the circuit is <i>half open</i> and a
+ * single request probes the endpoint: if it succeeds the circuit closes,
+ * otherwise it opens again for a longer time.
+ * <p>
+ * The open time doubles at every consecutive opening, up to a maximum, and
+ * it is randomised so the requests parked during an outage do not hit the
+ * endpoint all together when it comes back.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class CircuitBreaker {
+
+    /**
+     * States of the circuit.
+     */
+    public enum STATE {
+        /**
+         * Requests are allowed.
+         */
+        CLOSED,
+        /**
+         * Requests are refused.
+         */
+        OPEN,
+        /**
+         * A probe request is running.
+         */
+        HALFOPEN
+    };
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(CircuitBreaker.class);
+
+    /**
+     * Endpoint protected by the circuit.
+     */
+    private final String endpoint;
+
+    /**
+     * Consecutive failures opening the circuit.
+     */
+    private final int threshold;
+
+    /**
+     * Open time after the first opening in milliseconds.
+     */
+    private final long baseDelay;
+
+    /**
+     * Maximum open time in milliseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * Current state.
+     */
+    private STATE state = STATE.CLOSED;
+
+    /**
+     * Consecutive failures.
+     */
+    private int failures;
+
+    /**
+     * Consecutive openings.
+     */
+    private int openings;
+
+    /**
+     * Time, in milliseconds since the epoch, when the next request is
+     * allowed.
+     */
+    private long retryAt;
+
+    /**
+     * Build the circuit breaker.
+     *
+     * @param anEndpoint The endpoint protected
+     * @param aThreshold Consecutive failures opening the circuit
+     * @param aBaseDelay Open time after the first opening in milliseconds
+     * @param aMaxDelay Maximum open time in milliseconds
+     */
+    public CircuitBreaker(final String anEndpoint, final int aThreshold,
+            final long aBaseDelay, final long aMaxDelay) {
+        this.endpoint = anEndpoint;
+        this.threshold = Math.max(1, aThreshold);
+        this.baseDelay = aBaseDelay;
+        this.maxDelay = Math.max(aBaseDelay, aMaxDelay);
+    }
+
+    /**
+     * Computes a randomised exponential delay.
+     * The delay is the base delay doubled for every previous attempt, up to
+     * the maximum, and then randomised between half and the full value.
+     *
+     * @param aBaseDelay The delay of the first attempt
+     * @param aMaxDelay The maximum delay
+     * @param attempt The attempt number, starting from 1
+     * @return The delay in milliseconds
+     */
+    public static long backoff(final long aBaseDelay, final long aMaxDelay,
+            final int attempt) {
+        long delay = Math.max(1, aBaseDelay);
+        for (int i = 1; i < attempt && delay < aMaxDelay; i++) {
+            delay *= 2;
+        }
+        delay = Math.min(delay, Math.max(1, aMaxDelay));
+        final long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+    }
+
+    /**
+     * Retrieves the endpoint protected by the circuit.
+     *
+     * @return The endpoint
+     */
+    public final String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * Retrieves the state of the circuit.
+     *
+     * @return The state
+     */
+    public final synchronized STATE getState() {
+        return state;
+    }
+
+    /**
+     * Checks if a request can be performed.
+     * When the open time is expired the caller is allowed to probe the
+     * endpoint and it has to report the result with
+     * {@link #recordSuccess()} or {@link #recordFailure()}. If the result is
+     * not reported in the open time another probe is allowed.
+     *
+     * @return True if the request can be performed, false otherwise
+     */
+    public final synchronized boolean allowRequest() {
+        if (state == STATE.CLOSED) {
+            return true;
+        }
+        final long now = System.currentTimeMillis();
+        if (now < retryAt) {
+            return false;
+        }
+        state = STATE.HALFOPEN;
+        retryAt = now + backoff(baseDelay, maxDelay, openings);
+        return true;
+    }
+
+    /**
+     * Reports a successful request.
+     * The circuit closes.
+     */
+    public final synchronized void recordSuccess() {
+        if (state != STATE.CLOSED) {
+            log.info("Circuit of the endpoint " + endpoint + " closed");
+        }
+        state = STATE.CLOSED;
+        failures = 0;
+        openings = 0;
+    }
+
+    /**
+     * Reports a failed request.
+     * The circuit opens if the failures reach the threshold or the request
+     * was a probe.
+     */
+    public final synchronized void recordFailure() {
+        failures++;
+        if (state == STATE.HALFOPEN || failures >= threshold) {
+            openings++;
+            state = STATE.OPEN;
+            retryAt = System.currentTimeMillis()
+                    + backoff(baseDelay, maxDelay, openings);
+            log.warn("Circuit of the endpoint " + endpoint + " open for "
+                    + getRetryDelay() + " ms after " + failures
+                    + " failures");
+        }
+    }
+
+    /**
+     * Retrieves the time before the next request is allowed.
+     *
+     * @return The delay in milliseconds, 0 if requests are allowed
+     */
+    public final synchronized long getRetryDelay() {
+        if (state == STATE.CLOSED) {
+            return 0;
+        }
+        return Math.max(0, retryAt - System.currentTimeMillis());
+    }
+}
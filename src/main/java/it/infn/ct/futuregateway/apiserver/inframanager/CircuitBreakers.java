@@ -0,0 +1,239 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.resources.Params;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Registry of the circuit breakers of the remote endpoints.
+ * The endpoint of an infrastructure is the <i>jobservice</i> parameter of
+ * the infrastructure, or of the application. Infrastructures without the
+ * parameter use their id, so they have a single circuit.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class CircuitBreakers {
+
+    /**
+     * Parameter with the endpoint of the job service.
+     */
+    public static final String ENDPOINTPARAM = "jobservice";
+
+    /**
+     * Circuit breakers by endpoint.
+     */
+    private final ConcurrentMap<String, CircuitBreaker> breakers =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Consecutive failures opening a circuit.
+     */
+    private final int threshold;
+
+    /**
+     * Open time after the first opening in milliseconds.
+     */
+    private final long baseDelay;
+
+    /**
+     * Maximum open time in milliseconds.
+     */
+    private final long maxDelay;
+
+    /**
+     * Build the registry.
+     *
+     * @param aThreshold Consecutive failures opening a circuit
+     * @param aBaseDelay Open time after the first opening in milliseconds
+     * @param aMaxDelay Maximum open time in milliseconds
+     */
+    public CircuitBreakers(final int aThreshold, final long aBaseDelay,
+            final long aMaxDelay) {
+        this.threshold = aThreshold;
+        this.baseDelay = aBaseDelay;
+        this.maxDelay = aMaxDelay;
+    }
+
+    /**
+     * Retrieves the open time after the first opening.
+     *
+     * @return The time in milliseconds
+     */
+    public final long getBaseDelay() {
+        return baseDelay;
+    }
+
+    /**
+     * Retrieves the maximum open time.
+     *
+     * @return The time in milliseconds
+     */
+    public final long getMaxDelay() {
+        return maxDelay;
+    }
+
+    /**
+     * Computes the delay before retrying an operation on an endpoint.
+     * The delay grows exponentially with the failed attempts and it is not
+     * shorter than the time the circuit stays open.
+     *
+     * @param breaker The circuit breaker of the endpoint
+     * @param attempts The consecutive failed attempts
+     * @return The delay in milliseconds
+     */
+    public final long getRetryDelay(final CircuitBreaker breaker,
+            final int attempts) {
+        return Math.max(breaker.getRetryDelay(), CircuitBreaker.backoff(
+                baseDelay, maxDelay, Math.max(1, attempts)));
+    }
+
+    /**
+     * Computes the delay before retrying an operation on an endpoint also
+     * when the circuit breakers are not in use.
+     * Without a circuit breaker the delay grows exponentially with the
+     * failed attempts using the default open times.
+     *
+     * @param someBreakers The circuit breakers or null
+     * @param breaker The circuit breaker of the endpoint or null
+     * @param attempts The consecutive failed attempts
+     * @return The delay in milliseconds
+     */
+    public static long getRetryDelay(final CircuitBreakers someBreakers,
+            final CircuitBreaker breaker, final int attempts) {
+        if (someBreakers != null && breaker != null) {
+            return someBreakers.getRetryDelay(breaker, attempts);
+        }
+        return CircuitBreaker.backoff(Constants.CIRCUITOPENTIME,
+                Constants.CIRCUITMAXOPENTIME, Math.max(1, attempts));
+    }
+
+    /**
+     * Retrieves the circuit breaker of an endpoint.
+     * The circuit breaker is created if it does not exist.
+     *
+     * @param endpoint The endpoint
+     * @return The circuit breaker
+     */
+    public final CircuitBreaker get(final String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        if (breaker == null) {
+            final CircuitBreaker created = new CircuitBreaker(endpoint,
+                    threshold, baseDelay, maxDelay);
+            breaker = breakers.putIfAbsent(endpoint, created);
+            if (breaker == null) {
+                breaker = created;
+            }
+        }
+        return breaker;
+    }
+
+    /**
+     * Retrieves the circuit breaker of the endpoint used by a task.
+     *
+     * @param task The task
+     * @return The circuit breaker or null if the task has no infrastructure
+     */
+    public final CircuitBreaker get(final Task task) {
+        final String endpoint = getEndpoint(task);
+        if (endpoint == null) {
+            return null;
+        }
+        return get(endpoint);
+    }
+
+    /**
+     * Checks if the circuit of an infrastructure is closed.
+     * Circuits not created yet are closed.
+     *
+     * @param infra The infrastructure
+     * @param app The application
+     * @return True if requests are allowed, false otherwise
+     */
+    public final boolean isAvailable(final Infrastructure infra,
+            final Application app) {
+        final CircuitBreaker breaker = breakers.get(getEndpoint(infra, app));
+        return breaker == null || breaker.getRetryDelay() == 0;
+    }
+
+    /**
+     * Retrieves the endpoint used by a task.
+     *
+     * @param task The task
+     * @return The endpoint or null if the task has no infrastructure
+     */
+    public static String getEndpoint(final Task task) {
+        final Infrastructure infra = task.getAssociatedInfrastructure();
+        if (infra == null) {
+            return null;
+        }
+        return getEndpoint(infra, task.getApplicationDetail());
+    }
+
+    /**
+     * Retrieves the endpoint of an infrastructure for an application.
+     *
+     * @param infra The infrastructure
+     * @param app The application
+     * @return The endpoint
+     */
+    public static String getEndpoint(final Infrastructure infra,
+            final Application app) {
+        final String endpoint = getParameter(infra, app);
+        if (endpoint != null) {
+            return endpoint;
+        }
+        return infra.getId();
+    }
+
+    /**
+     * Reads the endpoint parameter.
+     *
+     * @param infra The infrastructure
+     * @param app The application
+     * @return The endpoint or null if not defined
+     */
+    private static String getParameter(final Infrastructure infra,
+            final Application app) {
+        List<Params> appParams = Collections.emptyList();
+        if (app != null && app.getParameters() != null) {
+            appParams = app.getParameters();
+        }
+        List<Params> infraParams = Collections.emptyList();
+        if (infra.getParameters() != null) {
+            infraParams = infra.getParameters();
+        }
+        final String endpoint = Utilities.getParameterValue(
+                Utilities.mergeParams(infraParams, appParams), ENDPOINTPARAM);
+        if (endpoint == null || endpoint.isEmpty()) {
+            return null;
+        }
+        return endpoint;
+    }
+}
@@ -46,6 +46,7 @@ import org.ogf.saga.job.Job;
 import org.ogf.saga.job.JobDescription;
 import org.ogf.saga.job.JobFactory;
 import org.ogf.saga.job.JobService;
+import org.ogf.saga.session.Session;
 import org.ogf.saga.url.URLFactory;
 
 /**
@@ -66,13 +67,111 @@ public final class CustomJobFactory {
     private CustomJobFactory() { }
 
     /**
-     * Create the JobService for the infrastructure.
+     * Pattern of the native id of the tasks.
+     * The native id is made of the job service endpoint and the identifier of
+     * the job in the service: <i>[endpoint]-[nativeId]</i>.
+     */
+    private static final Pattern NATIVEID_PATTERN =
+            Pattern.compile("\\[(.*)\\]-\\[(.*)\\]");
+
+    /**
+     * Cache of the sessions.
+     * If null a new session is created for every job service.
+     */
+    private static volatile SessionCache sessionCache;
+
+    /**
+     * Cache of the job services.
+     * If null a new job service is created for every job.
+     */
+    private static volatile JobServiceCache jobServiceCache;
+
+    /**
+     * Circuit breakers of the endpoints.
+     * If null the endpoints are always used.
+     */
+    private static volatile CircuitBreakers circuitBreakers;
+
+    /**
+     * Retrieves the cache of the sessions.
      *
-     * @param task The task requesting the JobService
+     * @return The cache or null if sessions are not cached
+     */
+    public static SessionCache getSessionCache() {
+        return sessionCache;
+    }
+
+    /**
+     * Sets the cache of the sessions.
+     *
+     * @param aCache The cache or null to disable the caching
+     */
+    public static void setSessionCache(final SessionCache aCache) {
+        sessionCache = aCache;
+    }
+
+    /**
+     * Retrieves the cache of the job services.
+     *
+     * @return The cache or null if job services are not cached
+     */
+    public static JobServiceCache getJobServiceCache() {
+        return jobServiceCache;
+    }
+
+    /**
+     * Sets the cache of the job services.
+     *
+     * @param aCache The cache or null to disable the caching
+     */
+    public static void setJobServiceCache(final JobServiceCache aCache) {
+        jobServiceCache = aCache;
+    }
+
+    /**
+     * Retrieves the circuit breakers of the endpoints.
+     *
+     * @return The circuit breakers or null if not used
+     */
+    public static CircuitBreakers getCircuitBreakers() {
+        return circuitBreakers;
+    }
+
+    /**
+     * Sets the circuit breakers of the endpoints.
+     *
+     * @param someBreakers The circuit breakers or null to disable them
+     */
+    public static void setCircuitBreakers(
+            final CircuitBreakers someBreakers) {
+        circuitBreakers = someBreakers;
+    }
+
+    /**
+     * Removes a job service from the cache.
+     * This should be used when an operation on the service fails because of
+     * the service or the connection.
+     *
+     * @param jobService The service
+     */
+    public static void discardJobService(final JobService jobService) {
+        final JobServiceCache services = jobServiceCache;
+        if (services != null) {
+            services.discard(jobService);
+        }
+    }
+
+    /**
+     * Create the Job for the task.
+     * If the task has a native id the job is retrieved from the remote
+     * service, otherwise a new job is created.
+     *
+     * @param task The task requesting the Job
      * @param store The storage managing the cache file
-     * @return The JobService
+     * @return The Job
      * @throws InfrastructureException If the infrastructure cannot be used for
-     * some problem in the configuration or in the infrastructure
+     * some problem in the configuration or in the infrastructure, a
+     * {@link TransientInfrastructureException} if the problem is temporary
      * @throws BadParameterException The task cannot be submitted because some
      * parameters are missed or not correct
      * @throws DoesNotExistException exception
@@ -80,26 +179,119 @@ public final class CustomJobFactory {
     public static Job createJob(final Task task, final Storage store)
             throws InfrastructureException, BadParameterException,
             DoesNotExistException {
+        final JobService jobService = createJobService(task);
+        final String nativeID = getNativeJobId(task);
+        try {
+            Job job;
+            if (nativeID == null) {
+                final JobDescription jobDescription =
+                        JobDescriptionFactory.createJobDescription(task, store);
+                job = jobService.createJob(jobDescription);
+            } else {
+                job = jobService.getJob(nativeID);
+            }
+            return job;
+        } catch (AuthenticationFailedException | AuthorizationFailedException
+                | NotImplementedException | PermissionDeniedException ex) {
+            LOG.error(ex);
+            discardJobService(jobService);
+            throw new InfrastructureException("Impossibile to generate a job "
+                    + "for the infrastructure "
+                    + task.getAssociatedInfrastructureId());
+        } catch (TimeoutException | NoSuccessException ex) {
+            LOG.warn(ex);
+            discardJobService(jobService);
+            throw new TransientInfrastructureException("Impossibile to "
+                    + "generate a job for the infrastructure "
+                    + task.getAssociatedInfrastructureId() + " at the moment");
+        }
+    }
+
+    /**
+     * Retrieves the job service endpoint from the native id of the task.
+     *
+     * @param task The task
+     * @return The endpoint or null if the task has not a native id
+     * @throws DoesNotExistException The native id is not valid
+     */
+    public static String getJobServiceEndpoint(final Task task)
+            throws DoesNotExistException {
+        final Matcher matcher = parseNativeId(task);
+        if (matcher == null) {
+            return null;
+        }
+        return matcher.group(1);
+    }
+
+    /**
+     * Retrieves the job identifier, in the remote service, from the native id
+     * of the task.
+     *
+     * @param task The task
+     * @return The identifier or null if the task has not a native id
+     * @throws DoesNotExistException The native id is not valid
+     */
+    public static String getNativeJobId(final Task task)
+            throws DoesNotExistException {
+        final Matcher matcher = parseNativeId(task);
+        if (matcher == null) {
+            return null;
+        }
+        return matcher.group(2);
+    }
+
+    /**
+     * Parses the native id of the task.
+     *
+     * @param task The task
+     * @return The matcher with the endpoint and identifier groups or null if
+     * the task has not a native id
+     * @throws DoesNotExistException The native id is not valid
+     */
+    private static Matcher parseNativeId(final Task task)
+            throws DoesNotExistException {
+        if (task.getNativeId() == null) {
+            return null;
+        }
+        final Matcher matcher = NATIVEID_PATTERN.matcher(task.getNativeId());
+        if (!matcher.find()) {
+            final String msg = "Native id '" + task.getNativeId()
+                    + "' for task " + task.getId() + " is not valid!";
+            LOG.error(msg);
+            throw new DoesNotExistException(msg);
+        }
+        return matcher;
+    }
+
+    /**
+     * Create the JobService for the infrastructure.
+     * The endpoint of the service is read from the native id of the task, if
+     * available, otherwise from the infrastructure parameters. The returned
+     * service can be used for all the tasks of the same user and
+     * infrastructure sharing the same endpoint. If a {@link JobServiceCache}
+     * is configured the service is shared with the other tasks using the
+     * same session and endpoint.
+     *
+     * @param task The task requesting the JobService
+     * @return The JobService
+     * @throws InfrastructureException If the infrastructure cannot be used for
+     * some problem in the configuration or in the infrastructure, a
+     * {@link TransientInfrastructureException} if the problem is temporary
+     * @throws BadParameterException The endpoint of the service is not valid
+     * @throws DoesNotExistException The native id of the task is not valid
+     */
+    public static JobService createJobService(final Task task)
+            throws InfrastructureException, BadParameterException,
+            DoesNotExistException {
         List<Params> infraParams = Utilities.mergeParams(
                 task.getAssociatedInfrastructure().getParameters(),
                 task.getApplicationDetail().getParameters()
                 );
 
-        String jobServiceEP = Utilities.getParameterValue(
+        String jobServiceEP = getJobServiceEndpoint(task);
+        if (jobServiceEP == null) {
+            jobServiceEP = Utilities.getParameterValue(
                     infraParams, "jobservice");
-        String nativeID = null;
-        if (task.getNativeId() != null) {
-            final Pattern pattern = Pattern.compile("\\[(.*)\\]-\\[(.*)\\]");
-            final Matcher matcher = pattern.matcher(task.getNativeId());
-            if (matcher.find()) {
-                jobServiceEP = matcher.group(1);
-                nativeID = matcher.group(2);
-            } else {
-                final String msg = "Native id '" + nativeID + "' for task "
-                        + task.getId() + " is not valid!";
-                LOG.error(msg);
-                throw new DoesNotExistException(msg);
-            }
         }
 
         String infraType = Utilities.getParameterValue(infraParams, "type");
@@ -114,7 +306,7 @@ public final class CustomJobFactory {
                 LOG.error(msg);
                 throw new InfrastructureException(msg);
             }
-            infraType = jobServiceEP.substring(0, infraType.indexOf(":"));
+            infraType = jobServiceEP.substring(0, jobServiceEP.indexOf(":"));
         }
 
         SessionBuilder sb;
@@ -167,31 +359,54 @@ public final class CustomJobFactory {
                 throw new InfrastructureException("Infrastructure type '"
                         + infraType + "' not supported");
         }
+        final SessionCache cache = sessionCache;
+        Session session;
+        if (cache == null) {
+            session = sb.getSession();
+        } else {
+            session = cache.getSession(sb);
+        }
+        final JobServiceCache services = jobServiceCache;
+        String sessionKey = null;
+        if (services != null) {
+            sessionKey = SessionCache.getKey(sb);
+            final JobService cached = services.get(sessionKey, jobServiceEP,
+                    session);
+            if (cached != null) {
+                return cached;
+            }
+        }
         try {
             final JobService jobService = JobFactory.createJobService(
                     System.getProperty("saga.factory", Defaults.SAGAFACTORY),
-                    sb.getSession(),
+                    session,
                     URLFactory.createURL(
                             System.getProperty("saga.factory",
                                     Defaults.SAGAFACTORY),
                             jobServiceEP));
-            Job job;
-            if (nativeID == null) {
-                final JobDescription jobDescription =
-                        JobDescriptionFactory.createJobDescription(task, store);
-                job = jobService.createJob(jobDescription);
-            } else {
-                job = jobService.getJob(nativeID);
+            if (services != null) {
+                services.put(sessionKey, jobServiceEP, session, jobService);
             }
-            return job;
+            return jobService;
         } catch (AuthenticationFailedException | AuthorizationFailedException
-                | IncorrectURLException | NoSuccessException
-                | NotImplementedException | PermissionDeniedException
-                | TimeoutException ex) {
+                | PermissionDeniedException ex) {
             LOG.error(ex);
-            throw new InfrastructureException("Impossibile to generate a job "
-                    + "for the infrastructure "
+            if (cache != null) {
+                cache.discard(sb);
+            }
+            throw new InfrastructureException("Impossibile to create the job "
+                    + "service for the infrastructure "
+                    + task.getAssociatedInfrastructureId());
+        } catch (IncorrectURLException | NotImplementedException ex) {
+            LOG.error(ex);
+            throw new InfrastructureException("Impossibile to create the job "
+                    + "service for the infrastructure "
                     + task.getAssociatedInfrastructureId());
+        } catch (NoSuccessException | TimeoutException ex) {
+            LOG.warn(ex);
+            throw new TransientInfrastructureException("Impossibile to "
+                    + "create the job service for the infrastructure "
+                    + task.getAssociatedInfrastructureId() + " at the moment");
         }
     }
 }
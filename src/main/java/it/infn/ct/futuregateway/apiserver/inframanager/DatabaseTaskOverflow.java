@@ -0,0 +1,245 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskWriteBehind;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Overflow keeping the tasks in the database.
+ * Tasks are persisted by their observer, and pending changes are written
+ * when the task is moved to the overflow, so only the identifiers and the
+ * state of the checks, which is not persisted, are kept in memory.
+ * <p>
+ * The overflow keeps a weak reference to the task moved. A task still
+ * referenced elsewhere, as by the pilots or by a pending transition, is
+ * restored as the same instance, so two copies of the task cannot change
+ * and write it independently. Otherwise the task is read from the database,
+ * the state of the checks is applied so their schedule and retry limits are
+ * preserved, and a new observer is associated. Tasks removed or moved to a
+ * state not requiring the monitor in the meantime are discarded.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class DatabaseTaskOverflow implements TaskOverflow {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(DatabaseTaskOverflow.class);
+
+    /**
+     * EntityManagerFactory registered for the persistence.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * The monitor queue of the tasks.
+     */
+    private final MonitorQueue monitorQueue;
+
+    /**
+     * Tasks in the overflow.
+     */
+    private final Queue<Entry> entries = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Number of tasks in the overflow.
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * Build the overflow.
+     *
+     * @param anEntityManagerFactory An EntityManagerFactory to retrieve the
+     * persistence context
+     * @param aMonitorQueue The monitor queue of the tasks
+     */
+    public DatabaseTaskOverflow(
+            final EntityManagerFactory anEntityManagerFactory,
+            final MonitorQueue aMonitorQueue) {
+        this.emf = anEntityManagerFactory;
+        this.monitorQueue = aMonitorQueue;
+    }
+
+    @Override
+    public final void spill(final Task task) {
+        final TaskWriteBehind writeBehind = monitorQueue.getWriteBehind();
+        if (writeBehind != null) {
+            writeBehind.flush(task);
+        }
+        entries.add(new Entry(task));
+        count.incrementAndGet();
+        log.debug("Task " + task.getId() + " moved to the overflow");
+    }
+
+    @Override
+    public final List<Task> restore(final int maxTasks) {
+        final List<Task> tasks = new ArrayList<>();
+        final Map<String, Entry> reloaded = new HashMap<>();
+        Entry entry;
+        while (tasks.size() + reloaded.size() < maxTasks
+                && (entry = entries.poll()) != null) {
+            count.decrementAndGet();
+            final Task task = entry.getTask();
+            if (task == null) {
+                reloaded.put(entry.taskId, entry);
+            } else if (TaskRecovery.RECOVERABLESTATES.contains(
+                    task.getState())) {
+                tasks.add(task);
+            } else {
+                discard(entry.taskId);
+            }
+        }
+        if (reloaded.isEmpty()) {
+            return tasks;
+        }
+        final EntityManager em = emf.createEntityManager();
+        try {
+            final List<Task> loaded = em.createNamedQuery(
+                    "tasks.byIdInStates", Task.class).
+                    setParameter("ids", new ArrayList<>(reloaded.keySet())).
+                    setParameter("states", TaskRecovery.RECOVERABLESTATES).
+                    getResultList();
+            for (Task task: loaded) {
+                em.detach(task);
+                reloaded.remove(task.getId()).apply(task);
+                task.addObserver(new TaskObserver(emf,
+                        monitorQueue.getSubmissionPool(),
+                        monitorQueue.getStorage(), monitorQueue,
+                        monitorQueue.getWriteBehind()));
+                tasks.add(task);
+            }
+            for (String taskId: reloaded.keySet()) {
+                discard(taskId);
+            }
+            log.debug("Restored " + loaded.size() + " tasks from the "
+                    + "database");
+        } catch (RuntimeException re) {
+            log.error("Impossible to restore the tasks from the overflow!");
+            log.error(re);
+            for (Entry e: reloaded.values()) {
+                entries.add(e);
+                count.incrementAndGet();
+            }
+        } finally {
+            em.close();
+        }
+        return tasks;
+    }
+
+    /**
+     * Drops a task not restored.
+     *
+     * @param taskId The task id
+     */
+    private void discard(final String taskId) {
+        final BlockingQueue<Task> queue = monitorQueue.getMonitorQueue();
+        if (queue instanceof DelayedTaskQueue) {
+            ((DelayedTaskQueue) queue).discardSpilled(taskId);
+        }
+        log.debug("Task " + taskId + " dropped from the overflow");
+    }
+
+    @Override
+    public final int size() {
+        return count.get();
+    }
+
+
+    /**
+     * Task in the overflow with the state of its checks.
+     */
+    private static final class Entry {
+
+        /**
+         * Identifier of the task.
+         */
+        private final String taskId;
+
+        /**
+         * Time of the last state check.
+         */
+        private final Date lastCheck;
+
+        /**
+         * Number of checks without a state change.
+         */
+        private final int unchangedChecks;
+
+        /**
+         * Number of consecutive failed interactions.
+         */
+        private final int failedAttempts;
+
+        /**
+         * The task moved, while referenced elsewhere.
+         */
+        private final WeakReference<Task> instance;
+
+        /**
+         * Build the entry.
+         *
+         * @param aTask The task moved to the overflow
+         */
+        Entry(final Task aTask) {
+            this.taskId = aTask.getId();
+            this.lastCheck = aTask.getLastStatusCheckTime();
+            this.unchangedChecks = aTask.getUnchangedChecks();
+            this.failedAttempts = aTask.getFailedAttempts();
+            this.instance = new WeakReference<>(aTask);
+        }
+
+        /**
+         * Retrieves the task moved if still in memory.
+         *
+         * @return The task or null if it has to be read from the database
+         */
+        Task getTask() {
+            return instance.get();
+        }
+
+        /**
+         * Applies the state of the checks to the task reloaded.
+         *
+         * @param aTask The task reloaded from the database
+         */
+        void apply(final Task aTask) {
+            aTask.restoreChecks(lastCheck, unchangedChecks, failedAttempts);
+        }
+    }
+}
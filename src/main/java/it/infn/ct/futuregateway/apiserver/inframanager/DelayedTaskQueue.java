@@ -0,0 +1,560 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queue of tasks ordered by the time of their next status check.
+ * Tasks are released to the consumers only when their check is due so a
+ * monitor thread never waits for a task checked recently while other tasks
+ * are overdue. The time of the next check is computed, when the task is
+ * inserted, from the time of the last check and the interval provided by the
+ * {@link PollingPolicy}.
+ * <p>
+ * The queue is bounded and insertions beyond the capacity behave as in
+ * {@link java.util.concurrent.ArrayBlockingQueue}, unless a
+ * {@link TaskOverflow} is configured. With the overflow, tasks exceeding the
+ * capacity are moved to the overflow so insertions never fail or block, and
+ * they are restored with {@link #refill()} when space is available.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class DelayedTaskQueue extends AbstractQueue<Task>
+        implements BlockingQueue<Task> {
+
+    /**
+     * Scheduled checks ordered by deadline.
+     */
+    private final DelayQueue<ScheduledCheck> checks = new DelayQueue<>();
+
+    /**
+     * Free slots in the queue.
+     */
+    private final Semaphore slots;
+
+    /**
+     * Maximum number of tasks in the queue.
+     */
+    private final int capacity;
+
+    /**
+     * Policy defining the interval between status checks.
+     */
+    private final PollingPolicy policy;
+
+    /**
+     * Overflow for the tasks exceeding the capacity.
+     */
+    private volatile TaskOverflow overflow;
+
+    /**
+     * Sequence to keep the insertion order among checks with same deadline.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * Deadlines, by task id, of the tasks moved to the overflow with an
+     * explicit delay.
+     */
+    private final ConcurrentMap<String, Long> spilledDeadlines =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Build the queue with a fixed interval between checks.
+     *
+     * @param aCapacity The maximum number of tasks in the queue
+     * @param aCheckInterval The interval between checks of the same task in
+     * milliseconds
+     */
+    public DelayedTaskQueue(final int aCapacity, final long aCheckInterval) {
+        this(aCapacity, new PollingPolicy(aCheckInterval, aCheckInterval));
+    }
+
+    /**
+     * Build the queue.
+     *
+     * @param aCapacity The maximum number of tasks in the queue
+     * @param aPolicy The policy defining the interval between checks
+     */
+    public DelayedTaskQueue(final int aCapacity, final PollingPolicy aPolicy) {
+        if (aCapacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = aCapacity;
+        this.policy = aPolicy;
+        this.slots = new Semaphore(aCapacity, true);
+    }
+
+    /**
+     * Retrieves the policy for the interval between checks.
+     *
+     * @return The polling policy
+     */
+    public final PollingPolicy getPollingPolicy() {
+        return policy;
+    }
+
+    /**
+     * Retrieves the overflow of the queue.
+     *
+     * @return The overflow or null if not configured
+     */
+    public final TaskOverflow getOverflow() {
+        return overflow;
+    }
+
+    /**
+     * Sets the overflow of the queue.
+     *
+     * @param anOverflow The overflow for the tasks exceeding the capacity
+     */
+    public final void setOverflow(final TaskOverflow anOverflow) {
+        this.overflow = anOverflow;
+    }
+
+    /**
+     * Moves tasks from the overflow to the queue while space is available.
+     * The tasks restored are scheduled from the time of their last check,
+     * or at the deadline requested when they were moved to the overflow.
+     *
+     * @return The number of tasks restored
+     */
+    public final int refill() {
+        final TaskOverflow tier = overflow;
+        if (tier == null) {
+            return 0;
+        }
+        int restored = 0;
+        int free = slots.availablePermits();
+        while (tier.size() > 0 && free > 0 && slots.tryAcquire(free)) {
+            final List<Task> tasks = tier.restore(free);
+            for (Task task: tasks) {
+                enqueue(task, restoredCheckTime(task));
+            }
+            slots.release(free - tasks.size());
+            restored += tasks.size();
+            if (tasks.isEmpty()) {
+                break;
+            }
+            free = slots.availablePermits();
+        }
+        return restored;
+    }
+
+    /**
+     * Computes the time of the next check of a task restored from the
+     * overflow.
+     *
+     * @param task The task
+     * @return The deadline in milliseconds since the epoch
+     */
+    private long restoredCheckTime(final Task task) {
+        Long deadline = null;
+        if (task.getId() != null) {
+            deadline = spilledDeadlines.remove(task.getId());
+        }
+        if (deadline == null) {
+            return nextCheckTime(task);
+        }
+        return deadline;
+    }
+
+    /**
+     * Forgets the deadline of a task dropped by the overflow.
+     * The overflow does not restore the tasks removed or completed while
+     * there, so their deadlines have to be removed explicitly.
+     *
+     * @param taskId The task id
+     */
+    final void discardSpilled(final String taskId) {
+        spilledDeadlines.remove(taskId);
+    }
+
+    /**
+     * Moves the task to the overflow, if configured.
+     *
+     * @param task The task
+     * @return True if the task is in the overflow, false otherwise
+     */
+    private boolean spill(final Task task) {
+        final TaskOverflow tier = overflow;
+        if (tier == null) {
+            return false;
+        }
+        tier.spill(task);
+        return true;
+    }
+
+    /**
+     * Retrieves the capacity of the queue.
+     *
+     * @return The maximum number of tasks
+     */
+    public final int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Computes the time when the task has to be checked.
+     * Tasks never checked are due immediately.
+     *
+     * @param task The task
+     * @return The deadline in milliseconds since the epoch
+     */
+    protected long nextCheckTime(final Task task) {
+        if (task.getLastStatusCheckTime() == null) {
+            return System.currentTimeMillis();
+        }
+        return task.getLastStatusCheckTime().getTime()
+                + policy.nextInterval(task);
+    }
+
+    /**
+     * Inserts a task to check after an explicit delay.
+     * The delay replaces the one computed from the last check. The method
+     * does not wait for free space.
+     *
+     * @param task The task to insert
+     * @param delay The delay before the check
+     * @param unit Unit of the delay
+     * @return True if the task is added, false if the queue is full
+     */
+    public final boolean schedule(final Task task, final long delay,
+            final TimeUnit unit) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (!slots.tryAcquire()) {
+            return false;
+        }
+        enqueue(task, System.currentTimeMillis() + unit.toMillis(delay));
+        return true;
+    }
+
+    /**
+     * Inserts a task to check after an explicit delay, waiting for free
+     * space if necessary.
+     * The delay replaces the one computed from the last check and it is
+     * counted from the insertion.
+     *
+     * @param task The task to insert
+     * @param delay The delay before the check
+     * @param unit Unit of the delay
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public final void waitAndSchedule(final Task task, final long delay,
+            final TimeUnit unit) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        slots.acquire();
+        enqueue(task, System.currentTimeMillis() + unit.toMillis(delay));
+    }
+
+    /**
+     * Inserts a task in a queue to check it after a delay.
+     * If the queue is a {@link DelayedTaskQueue} without free space the task
+     * is moved to the overflow, if configured, and it keeps the delay when
+     * restored. If the queue is a different queue the task is inserted
+     * without delay.
+     *
+     * @param queue The queue
+     * @param task The task to insert
+     * @param delay The delay before the check
+     * @param unit Unit of the delay
+     * @return True if the task is added, false otherwise
+     */
+    public static boolean scheduleOrOffer(final BlockingQueue<Task> queue,
+            final Task task, final long delay, final TimeUnit unit) {
+        if (queue instanceof DelayedTaskQueue) {
+            return ((DelayedTaskQueue) queue).scheduleOrSpill(task, delay,
+                    unit);
+        }
+        return queue.offer(task);
+    }
+
+    /**
+     * Inserts a task to check after an explicit delay or moves it to the
+     * overflow, with the deadline, if the queue is full.
+     *
+     * @param task The task to insert
+     * @param delay The delay before the check
+     * @param unit Unit of the delay
+     * @return True if the task is added, false if the queue is full and the
+     * overflow is not configured
+     */
+    private boolean scheduleOrSpill(final Task task, final long delay,
+            final TimeUnit unit) {
+        if (schedule(task, delay, unit)) {
+            return true;
+        }
+        final TaskOverflow tier = overflow;
+        if (tier == null) {
+            return false;
+        }
+        if (task.getId() != null) {
+            spilledDeadlines.put(task.getId(),
+                    System.currentTimeMillis() + unit.toMillis(delay));
+        }
+        tier.spill(task);
+        return true;
+    }
+
+    /**
+     * Adds the check to the delay queue.
+     * A slot must be already reserved.
+     *
+     * @param task The task
+     * @param deadline The deadline in milliseconds since the epoch
+     */
+    private void enqueue(final Task task, final long deadline) {
+        checks.add(new ScheduledCheck(task, deadline,
+                sequence.getAndIncrement()));
+    }
+
+    /**
+     * Extracts the task from a check releasing its slot.
+     *
+     * @param check The check
+     * @return The task or null if the check is null
+     */
+    private Task release(final ScheduledCheck check) {
+        if (check == null) {
+            return null;
+        }
+        slots.release();
+        return check.getTask();
+    }
+
+    @Override
+    public final boolean offer(final Task task) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (!slots.tryAcquire()) {
+            return spill(task);
+        }
+        enqueue(task, nextCheckTime(task));
+        return true;
+    }
+
+    @Override
+    public final void put(final Task task) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (!slots.tryAcquire()) {
+            if (spill(task)) {
+                return;
+            }
+            slots.acquire();
+        }
+        enqueue(task, nextCheckTime(task));
+    }
+
+    @Override
+    public final boolean offer(final Task task, final long timeout,
+            final TimeUnit unit) throws InterruptedException {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        if (!slots.tryAcquire()) {
+            if (spill(task)) {
+                return true;
+            }
+            if (!slots.tryAcquire(timeout, unit)) {
+                return false;
+            }
+        }
+        enqueue(task, nextCheckTime(task));
+        return true;
+    }
+
+    @Override
+    public final Task take() throws InterruptedException {
+        return release(checks.take());
+    }
+
+    @Override
+    public final Task poll(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        return release(checks.poll(timeout, unit));
+    }
+
+    @Override
+    public final Task poll() {
+        return release(checks.poll());
+    }
+
+    @Override
+    public final Task peek() {
+        final ScheduledCheck check = checks.peek();
+        if (check == null || check.getDelay(TimeUnit.MILLISECONDS) > 0) {
+            return null;
+        }
+        return check.getTask();
+    }
+
+    @Override
+    public final int remainingCapacity() {
+        return slots.availablePermits();
+    }
+
+    @Override
+    public final int drainTo(final Collection<? super Task> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public final int drainTo(final Collection<? super Task> c,
+            final int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        final List<ScheduledCheck> due = new ArrayList<>();
+        final int n = checks.drainTo(due, maxElements);
+        for (ScheduledCheck check: due) {
+            c.add(release(check));
+        }
+        return n;
+    }
+
+    @Override
+    public final boolean remove(final Object o) {
+        for (ScheduledCheck check: checks) {
+            if (check.getTask() == o && checks.remove(check)) {
+                slots.release();
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public final Iterator<Task> iterator() {
+        final List<Task> tasks = new ArrayList<>(checks.size());
+        for (ScheduledCheck check: checks) {
+            tasks.add(check.getTask());
+        }
+        return tasks.iterator();
+    }
+
+    @Override
+    public final int size() {
+        return checks.size();
+    }
+
+
+    /**
+     * Check of a task scheduled at a given time.
+     */
+    private static final class ScheduledCheck implements Delayed {
+
+        /**
+         * The task to check.
+         */
+        private final Task task;
+
+        /**
+         * Time of the check in milliseconds since the epoch.
+         */
+        private final long deadline;
+
+        /**
+         * Insertion order.
+         */
+        private final long order;
+
+        /**
+         * Build the check.
+         *
+         * @param aTask The task to check
+         * @param aDeadline Time of the check
+         * @param anOrder Insertion order
+         */
+        ScheduledCheck(final Task aTask, final long aDeadline,
+                final long anOrder) {
+            this.task = aTask;
+            this.deadline = aDeadline;
+            this.order = anOrder;
+        }
+
+        /**
+         * Retrieves the task.
+         *
+         * @return The task
+         */
+        Task getTask() {
+            return task;
+        }
+
+        @Override
+        public long getDelay(final TimeUnit unit) {
+            return unit.convert(deadline - System.currentTimeMillis(),
+                    TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public int compareTo(final Delayed other) {
+            if (other == this) {
+                return 0;
+            }
+            if (other instanceof ScheduledCheck) {
+                final ScheduledCheck sc = (ScheduledCheck) other;
+                if (deadline != sc.deadline) {
+                    return Long.compare(deadline, sc.deadline);
+                }
+                return Long.compare(order, sc.order);
+            }
+            return Long.compare(getDelay(TimeUnit.MILLISECONDS),
+                    other.getDelay(TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return obj instanceof ScheduledCheck && compareTo(
+                    (ScheduledCheck) obj) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(order);
+        }
+    }
+}
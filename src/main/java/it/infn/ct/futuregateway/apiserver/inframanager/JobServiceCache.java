@@ -0,0 +1,245 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.ogf.saga.job.JobService;
+import org.ogf.saga.session.Session;
+
+/**
+ * Cache of the job services.
+ * Job services are shared among the tasks using the same session and
+ * endpoint so the status checks reuse the connections and the state kept by
+ * the adaptors. The cache is bounded and the least recently used services are
+ * removed when it is full. Services are also removed after the idle time and
+ * when an operation on them fails.
+ * <p>
+ * A cached service is returned only for the session used to create it so
+ * services are not reused after the session is replaced.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class JobServiceCache {
+
+    /**
+     * Load factor of the map.
+     */
+    private static final float LOADFACTOR = 0.75f;
+
+    /**
+     * Cached services by session key and endpoint, in access order.
+     */
+    private final Map<String, CachedService> services;
+
+    /**
+     * Maximum time in milliseconds a service can stay unused.
+     */
+    private final long idleTime;
+
+    /**
+     * Build the cache.
+     *
+     * @param aMaxSize Maximum number of services in the cache
+     * @param anIdleTime Maximum time in milliseconds a service can stay
+     * unused
+     */
+    public JobServiceCache(final int aMaxSize, final long anIdleTime) {
+        this.idleTime = anIdleTime;
+        this.services = new LinkedHashMap<String, CachedService>(
+                aMaxSize, LOADFACTOR, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, CachedService> eldest) {
+                return size() > aMaxSize;
+            }
+        };
+    }
+
+    /**
+     * Retrieves a cached service.
+     *
+     * @param sessionKey The key of the session
+     * @param endpoint The endpoint of the service
+     * @param session The session used for the service
+     * @return The service or null if not available
+     */
+    public final synchronized JobService get(final String sessionKey,
+            final String endpoint, final Session session) {
+        final String key = getKey(sessionKey, endpoint);
+        final CachedService cached = services.get(key);
+        if (cached == null) {
+            return null;
+        }
+        final long now = System.currentTimeMillis();
+        if (cached.getSession() != session
+                || now - cached.getLastUsed() > idleTime) {
+            services.remove(key);
+            return null;
+        }
+        cached.setLastUsed(now);
+        return cached.getService();
+    }
+
+    /**
+     * Adds a service to the cache.
+     *
+     * @param sessionKey The key of the session
+     * @param endpoint The endpoint of the service
+     * @param session The session used for the service
+     * @param service The service
+     */
+    public final synchronized void put(final String sessionKey,
+            final String endpoint, final Session session,
+            final JobService service) {
+        services.put(getKey(sessionKey, endpoint),
+                new CachedService(session, service));
+    }
+
+    /**
+     * Removes a service from the cache.
+     * This should be used when an operation on the service fails.
+     *
+     * @param service The service to remove
+     */
+    public final synchronized void discard(final JobService service) {
+        final Iterator<CachedService> it = services.values().iterator();
+        while (it.hasNext()) {
+            if (it.next().getService() == service) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes the services not used for the idle time.
+     */
+    public final synchronized void evictExpired() {
+        final long now = System.currentTimeMillis();
+        final Iterator<CachedService> it = services.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().getLastUsed() > idleTime) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the services.
+     */
+    public final synchronized void clear() {
+        services.clear();
+    }
+
+    /**
+     * Retrieves the number of cached services.
+     *
+     * @return The number of services
+     */
+    public final synchronized int size() {
+        return services.size();
+    }
+
+    /**
+     * Creates the key of a service.
+     *
+     * @param sessionKey The key of the session
+     * @param endpoint The endpoint of the service
+     * @return The key
+     */
+    private static String getKey(final String sessionKey,
+            final String endpoint) {
+        return sessionKey + "|" + endpoint;
+    }
+
+
+    /**
+     * Service in the cache.
+     */
+    private static final class CachedService {
+
+        /**
+         * Session used to create the service.
+         */
+        private final Session session;
+
+        /**
+         * The service.
+         */
+        private final JobService service;
+
+        /**
+         * Last time the service has been used.
+         */
+        private long lastUsed = System.currentTimeMillis();
+
+        /**
+         * Build the entry.
+         *
+         * @param aSession Session used to create the service
+         * @param aService The service
+         */
+        CachedService(final Session aSession, final JobService aService) {
+            this.session = aSession;
+            this.service = aService;
+        }
+
+        /**
+         * Retrieves the session used to create the service.
+         *
+         * @return The session
+         */
+        Session getSession() {
+            return session;
+        }
+
+        /**
+         * Retrieves the service.
+         *
+         * @return The service
+         */
+        JobService getService() {
+            return service;
+        }
+
+        /**
+         * Retrieves the last time the service has been used.
+         *
+         * @return The time in milliseconds since the epoch
+         */
+        long getLastUsed() {
+            return lastUsed;
+        }
+
+        /**
+         * Sets the last time the service has been used.
+         *
+         * @param aTime The time in milliseconds since the epoch
+         */
+        void setLastUsed(final long aTime) {
+            this.lastUsed = aTime;
+        }
+    }
+}
@@ -21,17 +21,50 @@
 
 package it.infn.ct.futuregateway.apiserver.inframanager;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.RemoteState;
 import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskState;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
 import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.ogf.saga.error.BadParameterException;
+import org.ogf.saga.error.DoesNotExistException;
+import org.ogf.saga.error.SagaException;
+import org.ogf.saga.job.JobService;
+import org.ogf.saga.task.State;
 
 /**
  * Implement the action monitor. The activity to monitor is retrieved from a
  * queue and if the resource is not in a final state it is added to the queue
  * again.
+ * <p>
+ * The queue is expected to release the activities only when their check is
+ * due, as the {@link DelayedTaskQueue} does, so the monitor performs the check
+ * immediately.
+ * <p>
+ * All the activities due at the same time are checked together. Jobs
+ * belonging to the same user and infrastructure and managed by the same job
+ * service endpoint share a single job service, so the remote service is
+ * contacted once for all of them.
+ * <p>
+ * Checks are performed within the {@link Bulkhead} of the infrastructure, if
+ * available, so a slow infrastructure cannot keep busy all the monitor
+ * threads. Activities using an endpoint whose {@link CircuitBreaker} is open
+ * are not checked but postponed until the circuit can be probed. Failed
+ * checks are repeated with a delay growing with the failed attempts.
  */
 public class Monitor implements Runnable {
 
@@ -41,78 +74,358 @@ public class Monitor implements Runnable {
     private final Log log = LogFactory.getLog(Monitor.class);
 
     /**
-     * Queue with activity to monitor.
+     * Monitor queue providing the activities and the resources to act on
+     * them.
      */
-    private BlockingQueue<Task> bQueue;
+    private final MonitorQueue monitorQueue;
 
     /**
-     * Interval between status checks.
-     * Values are in milliseconds.
+     * Maximum number of activities checked together.
      */
-    private int checkInterval;
+    private final int batchSize;
 
     /**
      * Build a monitor associated with a queue.
      *
-     * @param aBlockingQueue The queue of activities to monitor
-     * @param aCheckInterval The minimum interval between checks in milliseconds
+     * @param aMonitorQueue The monitor queue with the activities to monitor
      */
-    public Monitor(final BlockingQueue<Task> aBlockingQueue,
-            final int aCheckInterval) {
-        this.bQueue = aBlockingQueue;
-        this.checkInterval = aCheckInterval;
+    public Monitor(final MonitorQueue aMonitorQueue) {
+        this(aMonitorQueue, Constants.MONITORBATCHSIZE);
+    }
+
+    /**
+     * Build a monitor associated with a queue.
+     *
+     * @param aMonitorQueue The monitor queue with the activities to monitor
+     * @param aBatchSize Maximum number of activities checked together
+     */
+    public Monitor(final MonitorQueue aMonitorQueue, final int aBatchSize) {
+        this.monitorQueue = aMonitorQueue;
+        this.batchSize = Math.max(1, aBatchSize);
     }
 
     @Override
     public final void run() {
-        Task task;
-        while ((task = getNext()) != null) {
-            final long remainingTime = this.checkInterval
-                    - System.currentTimeMillis()
-                    + task.getLastStatusCheckTime().getTime();
-            if (remainingTime > 0) {
-                try {
-                    Thread.sleep(remainingTime);
-                } catch (InterruptedException ex) {
-                    this.log.warn("Monitoring thread interrupted while waiting "
-                            + "for next check");
-                }
-            }
+        final List<Task> batch = new ArrayList<>(batchSize);
+        boolean active = true;
+        while (active) {
+            active = getNext(batch);
+            checkBatch(batch);
+            batch.clear();
+            refill();
+        }
+    }
+
+    /**
+     * Moves the activities in the overflow of the queue, if any, to the
+     * queue.
+     */
+    private void refill() {
+        final BlockingQueue<Task> bQueue = monitorQueue.getMonitorQueue();
+        if (bQueue instanceof DelayedTaskQueue) {
+            ((DelayedTaskQueue) bQueue).refill();
+        }
+    }
+
+    /**
+     * Checks a group of activities.
+     * Jobs with a remote state are grouped by job service and checked
+     * together, other activities are checked one by one. Resource activities
+     * are not supported yet and they are aborted without affecting the
+     * other activities of the batch.
+     *
+     * @param batch The activities to check
+     */
+    private void checkBatch(final List<Task> batch) {
+        final Map<String, List<Task>> groups = new HashMap<>();
+        for (Task task: batch) {
             if (task.getApplicationDetail().getOutcome().equals(
-                    Application.TYPE.JOB)) {
-                this.log.debug("Monitoring Task: " + task.getId());
-                try {
-                    final TaskState taskState = task.getStateManager();
-                    taskState.action(null, this.bQueue, null);
-                } catch (TaskException ex) {
-                    task.setState(Task.STATE.ABORTED);
-                    this.log.error(ex.getMessage());
+                    Application.TYPE.RESOURCE)) {
+                log.error("Monitoring of the resource task " + task.getId()
+                        + " not implemented");
+                TaskStates.abort(task);
+                continue;
+            }
+            final String key = getJobServiceKey(task);
+            if (key == null) {
+                checkIsolated(Collections.singletonList(task));
+            } else {
+                List<Task> group = groups.get(key);
+                if (group == null) {
+                    group = new LinkedList<>();
+                    groups.put(key, group);
                 }
+                group.add(task);
             }
-            if (task.getApplicationDetail().getOutcome().equals(
-                    Application.TYPE.RESOURCE)) {
-                throw new UnsupportedOperationException("Not implemented yet");
+        }
+        for (List<Task> group: groups.values()) {
+            checkIsolated(group);
+        }
+    }
+
+    /**
+     * Checks activities of the same infrastructure within its bulkhead.
+     * If too many monitor threads are already checking activities of the
+     * infrastructure the check is postponed.
+     *
+     * @param tasks The activities to check
+     */
+    private void checkIsolated(final List<Task> tasks) {
+        final CircuitBreaker breaker = getCircuitBreaker(tasks.get(0));
+        if (breaker != null && breaker.getRetryDelay() > 0) {
+            defer(tasks, breaker.getRetryDelay());
+            return;
+        }
+        final Bulkhead bulkhead = getBulkhead(tasks.get(0));
+        if (bulkhead != null && !bulkhead.tryAcquireMonitor()) {
+            defer(tasks);
+            return;
+        }
+        try {
+            if (tasks.size() == 1) {
+                check(tasks.get(0));
+            } else {
+                checkGroup(tasks);
             }
+        } finally {
+            if (bulkhead != null) {
+                bulkhead.releaseMonitor();
+            }
+        }
+    }
 
+    /**
+     * Retrieves the bulkhead of the infrastructure associated with the task.
+     *
+     * @param task The task
+     * @return The bulkhead or null if not available
+     */
+    private Bulkhead getBulkhead(final Task task) {
+        final Bulkheads bulkheads = monitorQueue.getBulkheads();
+        if (bulkheads == null) {
+            return null;
         }
+        final Infrastructure infra = task.getAssociatedInfrastructure();
+        if (infra == null) {
+            return null;
+        }
+        return bulkheads.get(infra);
+    }
+
+    /**
+     * Retrieves the circuit breaker of the endpoint used by an activity.
+     * Only activities submitted or in submission contact the endpoint, the
+     * activities executed by a pilot are not checked remotely.
+     *
+     * @param task The activity
+     * @return The circuit breaker or null if not available
+     */
+    private CircuitBreaker getCircuitBreaker(final Task task) {
+        final CircuitBreakers breakers = CustomJobFactory.getCircuitBreakers();
+        if (breakers == null || PilotManager.isPilotTask(task)
+                || (task.getState() != Task.STATE.READY
+                && task.getState() != Task.STATE.SCHEDULED
+                && task.getState() != Task.STATE.RUNNING)) {
+            return null;
+        }
+        return breakers.get(task);
     }
 
+    /**
+     * Adds the activities again to the queue to be checked later.
+     *
+     * @param tasks The activities
+     */
+    private void defer(final List<Task> tasks) {
+        defer(tasks, Constants.BULKHEADDEFERDELAY);
+    }
 
     /**
-     * Retrieves the next task to monitor.
-     * @return The task
+     * Adds the activities again to the queue to be checked after a delay.
+     *
+     * @param tasks The activities
+     * @param delay The delay in milliseconds
      */
-    private Task getNext() {
-        Task t = null;
+    private void defer(final List<Task> tasks, final long delay) {
+        final BlockingQueue<Task> bQueue = monitorQueue.getMonitorQueue();
+        for (Task task: tasks) {
+            if (!DelayedTaskQueue.scheduleOrOffer(bQueue, task, delay,
+                    TimeUnit.MILLISECONDS)) {
+                this.log.error("Monitor queue full, task " + task.getId()
+                        + " is not monitored anymore");
+            }
+        }
+    }
+
+    /**
+     * Checks a single activity.
+     *
+     * @param task The activity to check
+     */
+    private void check(final Task task) {
+        this.log.debug("Monitoring Task: " + task.getId());
+        try {
+            final TaskState taskState = task.getStateManager();
+            taskState.action(task, monitorQueue.getSubmissionPool(),
+                    monitorQueue.getMonitorQueue(),
+                    monitorQueue.getStorage());
+        } catch (TaskException ex) {
+            TaskStates.abort(task);
+            this.log.error(ex.getMessage());
+        }
+    }
+
+    /**
+     * Checks the jobs sharing the same job service.
+     * The job service is created once and used to retrieve the state of all
+     * the jobs. If the circuit of the endpoint is half open only the first
+     * job probes the endpoint, if the check fails the remaining jobs are
+     * checked again later.
+     *
+     * @param group The jobs to check
+     */
+    private void checkGroup(final List<Task> group) {
+        final Task first = group.get(0);
+        this.log.debug("Monitoring " + group.size() + " tasks of the "
+                + "infrastructure " + first.getAssociatedInfrastructureId());
+        final CircuitBreaker breaker = getCircuitBreaker(first);
+        if (breaker != null && !breaker.allowRequest()) {
+            defer(group, breaker.getRetryDelay());
+            return;
+        }
+        final JobService jobService;
+        try {
+            jobService = CustomJobFactory.createJobService(first);
+        } catch (TransientInfrastructureException ex) {
+            this.log.warn("Error checking job status: " + ex.getMessage());
+            if (breaker != null) {
+                breaker.recordFailure();
+            }
+            retryLater(group, breaker);
+            return;
+        } catch (InfrastructureException | BadParameterException
+                | DoesNotExistException ex) {
+            this.log.error("Error checking job status: " + ex.getMessage());
+            retryLater(group, breaker);
+            return;
+        }
+        for (int i = 0; i < group.size(); i++) {
+            final Task task = group.get(i);
+            try {
+                final RemoteState taskState =
+                        (RemoteState) task.getStateManager();
+                final State remoteState = jobService.getJob(
+                        CustomJobFactory.getNativeJobId(task)).getState();
+                if (breaker != null) {
+                    breaker.recordSuccess();
+                }
+                taskState.update(task, remoteState,
+                        monitorQueue.getMonitorQueue());
+                updateMetrics(task);
+            } catch (TaskException ex) {
+                TaskStates.abort(task);
+                this.log.error(ex.getMessage());
+            } catch (DoesNotExistException ex) {
+                this.log.error("Error checking job status for task "
+                        + task.getId() + ": " + ex.getMessage());
+                retryLater(Collections.singletonList(task), breaker);
+            } catch (SagaException ex) {
+                this.log.error("Error checking job status for task "
+                        + task.getId() + ": " + ex.getMessage());
+                CustomJobFactory.discardJobService(jobService);
+                if (breaker != null) {
+                    breaker.recordFailure();
+                }
+                retryLater(group.subList(i, group.size()), breaker);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Adds the activities again to the queue after a failed check.
+     * The delay of every activity grows exponentially with its failed
+     * attempts.
+     *
+     * @param tasks The activities
+     * @param breaker The circuit breaker of the endpoint or null
+     */
+    private void retryLater(final List<Task> tasks,
+            final CircuitBreaker breaker) {
+        final CircuitBreakers breakers = CustomJobFactory.getCircuitBreakers();
+        for (Task task: tasks) {
+            defer(Collections.singletonList(task),
+                    CircuitBreakers.getRetryDelay(breakers, breaker,
+                            task.addFailedAttempt()));
+        }
+    }
+
+    /**
+     * Updates the metrics of the infrastructure with the remote state of
+     * the task.
+     * Tasks still running are counted as outstanding, also if submitted
+     * before a restart of the service. Tasks completed are removed by
+     * their observer.
+     *
+     * @param task The task
+     */
+    private void updateMetrics(final Task task) {
+        if (!TaskStates.isFinal(task.getState())) {
+            Selectors.getMetrics().started(
+                    task.getAssociatedInfrastructureId(), task.getId());
+        }
+    }
+
+    /**
+     * Builds the key identifying the job service of a task.
+     * Tasks with the same key can share the job service.
+     *
+     * @param task The task
+     * @return The key or null if the task is not a job with a remote state
+     */
+    private String getJobServiceKey(final Task task) {
         try {
-            t = bQueue.take();
-            if (t.getId() == null) {
+            if (!(task.getStateManager() instanceof RemoteState)
+                    || PilotManager.isPilotTask(task)) {
+                return null;
+            }
+            final String endpoint =
+                    CustomJobFactory.getJobServiceEndpoint(task);
+            if (endpoint == null) {
                 return null;
             }
+            return task.getAssociatedInfrastructureId() + "|"
+                    + task.getUserName() + "|" + endpoint;
+        } catch (TaskException | DoesNotExistException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Retrieves the next activities to monitor.
+     * The method waits for the first activity and then adds the other
+     * activities already due, up to the batch size.
+     *
+     * @param batch The list where the activities are added
+     * @return False if the monitor has to stop
+     */
+    private boolean getNext(final List<Task> batch) {
+        final BlockingQueue<Task> bQueue = monitorQueue.getMonitorQueue();
+        try {
+            batch.add(bQueue.take());
         } catch (InterruptedException ie) {
             log.warn("Monitoring queue interrupted.");
+            return false;
+        }
+        bQueue.drainTo(batch, batchSize - 1);
+        boolean active = true;
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            if (batch.get(i).getId() == null) {
+                batch.remove(i);
+                active = false;
+            }
         }
-        return t;
+        return active;
     }
 
 }
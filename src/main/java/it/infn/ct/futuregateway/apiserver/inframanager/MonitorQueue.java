@@ -22,7 +22,9 @@
 package it.infn.ct.futuregateway.apiserver.inframanager;
 
 import it.infn.ct.futuregateway.apiserver.resources.Task;
-import java.util.concurrent.ArrayBlockingQueue;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskWriteBehind;
+import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -33,7 +35,9 @@ import org.apache.commons.logging.LogFactory;
 /**
  * The MonitorQueue implements the monitor of activities executed remotely.
  * The monitor consist of a fixed thread pool with all threads reading from
- * a blocking queue the activity to monitor. The MonitorQueueFactory build both
+ * a blocking queue the activity to monitor. When the queue is created
+ * internally it is a {@link DelayedTaskQueue} so activities are released to
+ * the threads only when their check is due. The MonitorQueueFactory build both
  * the thread pool and the queue and publish outside only the queue.
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
@@ -55,6 +59,31 @@ public class MonitorQueue {
      */
     private ExecutorService monitorPool;
 
+    /**
+     * Executor for the submission of tasks found ready by the monitor.
+     */
+    private volatile ExecutorService submissionPool;
+
+    /**
+     * Storage of the task files.
+     */
+    private volatile Storage storage;
+
+    /**
+     * Bulkheads of the infrastructures.
+     */
+    private volatile Bulkheads bulkheads;
+
+    /**
+     * Delayed persistence of the task changes.
+     */
+    private volatile TaskWriteBehind writeBehind;
+
+    /**
+     * Engine executing the actions of the task changes.
+     */
+    private volatile TransitionEngine transitionEngine;
+
     /**
      * Build a monitor queue.
      * A monitor queue is made of two elements: queue and monitor thread. Both
@@ -72,6 +101,9 @@ public class MonitorQueue {
      * Build a monitor queue.
      * A monitor queue is made of two elements: queue and monitor thread. Both
      * are created.
+     * <p>
+     * This is equivalent to {@code MonitorQueue(bufferSize, threadPoolSize,
+     * checkInterval, checkInterval * Constants.MONITORMAXINTERVALTIMES)}
      *
      * @param bufferSize  A queue to store the activities
      * @param threadPoolSize A thread pool for the monitoring
@@ -79,12 +111,32 @@ public class MonitorQueue {
      */
     public MonitorQueue(final int bufferSize,
             final int threadPoolSize, final int checkInterval) {
+        this(bufferSize, threadPoolSize, checkInterval,
+                (long) checkInterval * Constants.MONITORMAXINTERVALTIMES);
+    }
+
+    /**
+     * Build a monitor queue.
+     * A monitor queue is made of two elements: queue and monitor thread. Both
+     * are created. The interval between checks of a task starts from the
+     * minimum and grows while the task does not change state.
+     *
+     * @param bufferSize  A queue to store the activities
+     * @param threadPoolSize A thread pool for the monitoring
+     * @param checkInterval The minimum interval between checks in milliseconds
+     * @param maxCheckInterval The maximum interval between checks in
+     * milliseconds
+     * @see PollingPolicy
+     */
+    public MonitorQueue(final int bufferSize, final int threadPoolSize,
+            final long checkInterval, final long maxCheckInterval) {
         log.debug("Creating the monitor queue");
-        monitorQueue = new ArrayBlockingQueue<>(bufferSize);
+        monitorQueue = new DelayedTaskQueue(bufferSize,
+                new PollingPolicy(checkInterval, maxCheckInterval));
         log.debug("Creating the monitor thread pool");
         monitorPool = Executors.newFixedThreadPool(threadPoolSize);
         for (int i = 0; i < threadPoolSize; i++) {
-            monitorPool.submit(new Monitor(monitorQueue, checkInterval));
+            monitorPool.submit(new Monitor(this));
         }
     }
 
@@ -124,6 +176,102 @@ public class MonitorQueue {
         this.monitorPool = aThreadPool;
     }
 
+    /**
+     * Gets the executor used to submit the tasks.
+     *
+     * @return The executor or null if not available
+     */
+    public final ExecutorService getSubmissionPool() {
+        return submissionPool;
+    }
+
+    /**
+     * Sets the executor used to submit the tasks.
+     * The monitor needs the executor for tasks added to the queue before the
+     * submission, as during the recovery at startup.
+     *
+     * @param aSubmissionPool The executor
+     */
+    public final void setSubmissionPool(
+            final ExecutorService aSubmissionPool) {
+        this.submissionPool = aSubmissionPool;
+    }
+
+    /**
+     * Gets the storage of the task files.
+     *
+     * @return The storage or null if not available
+     */
+    public final Storage getStorage() {
+        return storage;
+    }
+
+    /**
+     * Sets the storage of the task files.
+     *
+     * @param aStorage The storage
+     */
+    public final void setStorage(final Storage aStorage) {
+        this.storage = aStorage;
+    }
+
+    /**
+     * Gets the bulkheads limiting the monitor threads for each
+     * infrastructure.
+     *
+     * @return The bulkheads or null if not available
+     */
+    public final Bulkheads getBulkheads() {
+        return bulkheads;
+    }
+
+    /**
+     * Sets the bulkheads limiting the monitor threads for each
+     * infrastructure.
+     *
+     * @param someBulkheads The bulkheads
+     */
+    public final void setBulkheads(final Bulkheads someBulkheads) {
+        this.bulkheads = someBulkheads;
+    }
+
+    /**
+     * Gets the delayed persistence used by the observers of the tasks.
+     *
+     * @return The write-behind or null if changes are written immediately
+     */
+    public final TaskWriteBehind getWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * Sets the delayed persistence used by the observers of the tasks.
+     *
+     * @param aWriteBehind The write-behind
+     */
+    public final void setWriteBehind(final TaskWriteBehind aWriteBehind) {
+        this.writeBehind = aWriteBehind;
+    }
+
+    /**
+     * Gets the engine executing the actions of the task changes.
+     *
+     * @return The engine or null if actions are executed by the thread
+     * changing the task
+     */
+    public final TransitionEngine getTransitionEngine() {
+        return transitionEngine;
+    }
+
+    /**
+     * Sets the engine executing the actions of the task changes.
+     *
+     * @param anEngine The engine
+     */
+    public final void setTransitionEngine(final TransitionEngine anEngine) {
+        this.transitionEngine = anEngine;
+    }
+
     /**
      * Shutdown the monitor queue stopping all the associated threads.
      *
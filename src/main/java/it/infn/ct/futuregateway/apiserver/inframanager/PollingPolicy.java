@@ -0,0 +1,144 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Adaptive policy for the interval between status checks.
+ * A task is checked at the minimum interval right after a state change and
+ * the interval doubles at every check finding the task in the same state,
+ * until the maximum interval is reached.
+ * <p>
+ * The minimum and maximum intervals can be customised for each
+ * infrastructure with the parameters <i>monitormininterval</i> and
+ * <i>monitormaxinterval</i>, in milliseconds. Otherwise the default values
+ * provided to the policy are used.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class PollingPolicy {
+
+    /**
+     * Infrastructure parameter for the minimum interval.
+     */
+    public static final String MININTERVALPARAM = "monitormininterval";
+
+    /**
+     * Infrastructure parameter for the maximum interval.
+     */
+    public static final String MAXINTERVALPARAM = "monitormaxinterval";
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(PollingPolicy.class);
+
+    /**
+     * Default minimum interval in milliseconds.
+     */
+    private final long minInterval;
+
+    /**
+     * Default maximum interval in milliseconds.
+     */
+    private final long maxInterval;
+
+    /**
+     * Build the policy.
+     *
+     * @param aMinInterval Default minimum interval in milliseconds
+     * @param aMaxInterval Default maximum interval in milliseconds
+     */
+    public PollingPolicy(final long aMinInterval, final long aMaxInterval) {
+        this.minInterval = aMinInterval;
+        this.maxInterval = Math.max(aMinInterval, aMaxInterval);
+    }
+
+    /**
+     * Retrieves the default minimum interval.
+     *
+     * @return The interval in milliseconds
+     */
+    public final long getMinInterval() {
+        return minInterval;
+    }
+
+    /**
+     * Retrieves the default maximum interval.
+     *
+     * @return The interval in milliseconds
+     */
+    public final long getMaxInterval() {
+        return maxInterval;
+    }
+
+    /**
+     * Computes the interval before the next check of the task.
+     *
+     * @param task The task to check
+     * @return The interval in milliseconds
+     */
+    public final long nextInterval(final Task task) {
+        final Infrastructure infra = task.getAssociatedInfrastructure();
+        long min = minInterval;
+        long max = maxInterval;
+        if (infra != null && infra.getParameters() != null) {
+            min = readInterval(infra, MININTERVALPARAM, min);
+            max = Math.max(min, readInterval(infra, MAXINTERVALPARAM, max));
+        }
+        long interval = min;
+        for (int i = 1; i < task.getUnchangedChecks() && interval < max;
+                i++) {
+            interval *= 2;
+        }
+        return Math.min(interval, max);
+    }
+
+    /**
+     * Reads an interval from the infrastructure parameters.
+     *
+     * @param infra The infrastructure
+     * @param name The parameter name
+     * @param defaultValue The value to use if the parameter is not valid
+     * @return The interval in milliseconds
+     */
+    private long readInterval(final Infrastructure infra, final String name,
+            final long defaultValue) {
+        final String value = Utilities.getParameterValue(
+                infra.getParameters(), name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException nfe) {
+            log.warn("Parameter " + name + " of infrastructure "
+                    + infra.getId() + " is not valid. Default value ("
+                    + defaultValue + ") applied.");
+            return defaultValue;
+        }
+    }
+}
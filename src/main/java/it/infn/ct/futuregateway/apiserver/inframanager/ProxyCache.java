@@ -0,0 +1,479 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Cache of the proxy certificates retrieved from remote locations.
+ * Proxies are cached by location, which includes the user, the VO and the
+ * roles, until they expire. After a configurable percentage of their lifetime
+ * the proxies are refreshed in background while the cached copy is still
+ * used. Concurrent requests for a proxy not available are served by a single
+ * download.
+ * <p>
+ * The proxies are mostly read when a session is built, so with a
+ * {@link ScheduledExecutorService} the refresh is scheduled at the refresh
+ * time instead of waiting for the following request. Only the proxies
+ * requested since they were cached are refreshed, so a proxy not used
+ * anymore is not downloaded forever. Empty proxies are never cached.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class ProxyCache {
+
+    /**
+     * Percentage base.
+     */
+    private static final int PERCENT = 100;
+
+    /**
+     * Pattern of a PEM encoded certificate.
+     */
+    private static final Pattern CERTIFICATE_PATTERN = Pattern.compile(
+            "-----BEGIN CERTIFICATE-----.*?-----END CERTIFICATE-----",
+            Pattern.DOTALL);
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(ProxyCache.class);
+
+    /**
+     * Cached proxies by location.
+     */
+    private final ConcurrentMap<String, CachedProxy> proxies =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Downloads in progress by location.
+     */
+    private final ConcurrentMap<String, FutureTask<CachedProxy>> downloads =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Percentage of the lifetime after that a proxy is refreshed.
+     */
+    private final int refreshPercent;
+
+    /**
+     * Executor for the background refresh.
+     */
+    private final Executor refresher;
+
+    /**
+     * Build the cache.
+     *
+     * @param aRefreshPercent Percentage of the lifetime after that a proxy
+     * is refreshed
+     * @param aRefresher Executor for the background refresh, a
+     * {@link ScheduledExecutorService} refreshes the proxies at the refresh
+     * time
+     */
+    public ProxyCache(final int aRefreshPercent, final Executor aRefresher) {
+        if (aRefreshPercent <= 0 || aRefreshPercent > PERCENT) {
+            throw new IllegalArgumentException("Refresh percentage must be "
+                    + "between 1 and " + PERCENT);
+        }
+        this.refreshPercent = aRefreshPercent;
+        this.refresher = aRefresher;
+    }
+
+    /**
+     * Retrieves the proxy from a location.
+     * The cached proxy is returned if not expired, otherwise the proxy is
+     * downloaded. If another thread is downloading the same proxy the method
+     * waits for its result.
+     *
+     * @param location The location of the proxy
+     * @return A string representation of the proxy
+     * @throws IOException If the proxy cannot be downloaded
+     */
+    public final String get(final URL location) throws IOException {
+        final CachedProxy cached = proxies.get(location.toString());
+        final long now = System.currentTimeMillis();
+        if (cached != null && now < cached.getNotAfter()) {
+            cached.setRequested();
+            if (now >= cached.getRefreshTime()) {
+                refresh(location, cached);
+            }
+            return cached.getProxy();
+        }
+        final CachedProxy loaded = load(location);
+        loaded.setRequested();
+        return loaded.getProxy();
+    }
+
+    /**
+     * Retrieves the expiration of the proxy cached for a location.
+     * When the expiration cannot be read from the proxy this is the time
+     * the proxy is kept in the cache.
+     *
+     * @param location The location of the proxy
+     * @return The expiration in milliseconds since the epoch or -1 if the
+     * proxy is not cached
+     */
+    public final long getExpiration(final URL location) {
+        final CachedProxy cached = proxies.get(location.toString());
+        if (cached == null) {
+            return -1;
+        }
+        return cached.getNotAfter();
+    }
+
+    /**
+     * Removes all the proxies from the cache.
+     */
+    public final void clear() {
+        proxies.clear();
+    }
+
+    /**
+     * Retrieves the number of cached proxies.
+     *
+     * @return The number of proxies
+     */
+    public final int size() {
+        return proxies.size();
+    }
+
+    /**
+     * Downloads the proxy and caches it.
+     * Only one download per location is performed at the same time.
+     *
+     * @param location The location of the proxy
+     * @return The cached proxy
+     * @throws IOException If the proxy cannot be downloaded
+     */
+    private CachedProxy load(final URL location) throws IOException {
+        final String key = location.toString();
+        final FutureTask<CachedProxy> download = new FutureTask<>(
+                new Callable<CachedProxy>() {
+                    @Override
+                    public CachedProxy call() throws IOException {
+                        final String fetched = fetch(location);
+                        if (fetched == null || fetched.isEmpty()) {
+                            throw new IOException("Empty proxy from "
+                                    + location);
+                        }
+                        final CachedProxy proxy = createEntry(fetched);
+                        proxies.put(key, proxy);
+                        scheduleRefresh(location, proxy);
+                        return proxy;
+                    }
+                });
+        FutureTask<CachedProxy> running = downloads.putIfAbsent(key,
+                download);
+        if (running == null) {
+            running = download;
+            try {
+                download.run();
+            } finally {
+                downloads.remove(key, download);
+            }
+        }
+        try {
+            return running.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while downloading "
+                    + "the proxy");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof IOException) {
+                throw (IOException) ee.getCause();
+            }
+            throw new IOException(ee.getCause());
+        }
+    }
+
+    /**
+     * Refreshes a proxy in background.
+     * Only one refresh per cached proxy is requested.
+     *
+     * @param location The location of the proxy
+     * @param cached The cached proxy
+     */
+    private void refresh(final URL location, final CachedProxy cached) {
+        if (!cached.startRefresh()) {
+            return;
+        }
+        try {
+            refresher.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        load(location);
+                    } catch (IOException ioe) {
+                        log.warn("Impossible to refresh the proxy from "
+                                + location);
+                        log.debug(ioe);
+                        cached.stopRefresh();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException ree) {
+            log.debug(ree);
+            cached.stopRefresh();
+        }
+    }
+
+    /**
+     * Schedules the refresh of a proxy at its refresh time.
+     * The refresh is performed only if the proxy has been requested since
+     * it was cached.
+     *
+     * @param location The location of the proxy
+     * @param cached The cached proxy
+     */
+    private void scheduleRefresh(final URL location,
+            final CachedProxy cached) {
+        if (!(refresher instanceof ScheduledExecutorService)) {
+            return;
+        }
+        try {
+            ((ScheduledExecutorService) refresher).schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (cached.isRequested()
+                            && proxies.get(location.toString()) == cached) {
+                        refresh(location, cached);
+                    }
+                }
+            }, Math.max(0, cached.getRefreshTime()
+                    - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ree) {
+            log.debug(ree);
+        }
+    }
+
+    /**
+     * Creates the cache entry for a proxy.
+     *
+     * @param proxy The proxy
+     * @return The entry
+     */
+    private CachedProxy createEntry(final String proxy) {
+        final long now = System.currentTimeMillis();
+        long notAfter = getNotAfter(proxy);
+        if (notAfter < 0) {
+            log.warn("Expiration of the proxy not available, it will be "
+                    + "downloaded again in "
+                    + Constants.PROXYDEFAULTLIFETIME + " ms");
+            notAfter = now + Constants.PROXYDEFAULTLIFETIME;
+        }
+        return new CachedProxy(proxy, notAfter,
+                now + (notAfter - now) * refreshPercent / PERCENT);
+    }
+
+    /**
+     * Downloads the proxy.
+     *
+     * @param location The location of the proxy
+     * @return A string representation of the proxy
+     * @throws IOException If the proxy cannot be downloaded
+     */
+    protected String fetch(final URL location) throws IOException {
+        return download(location);
+    }
+
+    /**
+     * Downloads the proxy without caching.
+     *
+     * @param location The location of the proxy
+     * @return A string representation of the proxy
+     * @throws IOException If the proxy cannot be downloaded
+     */
+    public static String download(final URL location) throws IOException {
+        final StringBuilder strProxy = new StringBuilder();
+        try (BufferedReader fileProxy = new BufferedReader(
+                new InputStreamReader(location.openStream()))) {
+            String lnProxy = fileProxy.readLine();
+            if (lnProxy != null) {
+                strProxy.append(lnProxy);
+            }
+            while ((lnProxy = fileProxy.readLine()) != null) {
+                strProxy.append("\n");
+                strProxy.append(lnProxy);
+            }
+        }
+        return strProxy.toString();
+    }
+
+    /**
+     * Reads the expiration of a proxy.
+     * The expiration is the earliest among the certificates in the proxy.
+     *
+     * @param proxy The PEM encoded proxy
+     * @return The expiration in milliseconds since the epoch or -1 if the
+     * proxy does not contain valid certificates
+     */
+    public static long getNotAfter(final String proxy) {
+        long notAfter = -1;
+        final Matcher matcher = CERTIFICATE_PATTERN.matcher(proxy);
+        try {
+            final CertificateFactory factory =
+                    CertificateFactory.getInstance("X.509");
+            while (matcher.find()) {
+                final X509Certificate cert = (X509Certificate)
+                        factory.generateCertificate(new ByteArrayInputStream(
+                                matcher.group().getBytes(
+                                        StandardCharsets.US_ASCII)));
+                final long certNotAfter = cert.getNotAfter().getTime();
+                if (notAfter < 0 || certNotAfter < notAfter) {
+                    notAfter = certNotAfter;
+                }
+            }
+        } catch (CertificateException ce) {
+            return -1;
+        }
+        return notAfter;
+    }
+
+
+    /**
+     * Proxy in the cache.
+     */
+    private static final class CachedProxy {
+
+        /**
+         * The proxy.
+         */
+        private final String proxy;
+
+        /**
+         * Expiration time.
+         */
+        private final long notAfter;
+
+        /**
+         * Time after that the proxy is refreshed.
+         */
+        private final long refreshTime;
+
+        /**
+         * Set when the refresh is requested.
+         */
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * Set when the proxy is requested.
+         */
+        private volatile boolean requested;
+
+        /**
+         * Build the entry.
+         *
+         * @param aProxy The proxy
+         * @param aNotAfter Expiration time
+         * @param aRefreshTime Time after that the proxy is refreshed
+         */
+        CachedProxy(final String aProxy, final long aNotAfter,
+                final long aRefreshTime) {
+            this.proxy = aProxy;
+            this.notAfter = aNotAfter;
+            this.refreshTime = aRefreshTime;
+        }
+
+        /**
+         * Retrieves the proxy.
+         *
+         * @return The proxy
+         */
+        String getProxy() {
+            return proxy;
+        }
+
+        /**
+         * Retrieves the expiration time.
+         *
+         * @return The expiration in milliseconds since the epoch
+         */
+        long getNotAfter() {
+            return notAfter;
+        }
+
+        /**
+         * Retrieves the time after that the proxy is refreshed.
+         *
+         * @return The refresh time in milliseconds since the epoch
+         */
+        long getRefreshTime() {
+            return refreshTime;
+        }
+
+        /**
+         * Marks the proxy as requested.
+         */
+        void setRequested() {
+            requested = true;
+        }
+
+        /**
+         * Verifies if the proxy has been requested since it was cached.
+         *
+         * @return True if the proxy has been requested
+         */
+        boolean isRequested() {
+            return requested;
+        }
+
+        /**
+         * Marks the refresh as requested.
+         *
+         * @return True if the refresh was not already requested
+         */
+        boolean startRefresh() {
+            return refreshing.compareAndSet(false, true);
+        }
+
+        /**
+         * Marks the refresh as failed so it can be requested again.
+         */
+        void stopRefresh() {
+            refreshing.set(false);
+        }
+    }
+}
@@ -24,9 +24,7 @@ package it.infn.ct.futuregateway.apiserver.inframanager;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import it.infn.ct.futuregateway.apiserver.resources.Params;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
@@ -41,6 +39,12 @@ import org.ogf.saga.session.Session;
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  */
 public abstract class SessionBuilder {
+    /**
+     * Cache of the remote proxies.
+     * If null the proxy is downloaded for every session.
+     */
+    private static volatile ProxyCache proxyCache;
+
     /**
      * Logger object.
      * Based on apache commons logging.
@@ -67,6 +71,16 @@ public abstract class SessionBuilder {
      */
     private Session session;
 
+    /**
+     * Expiration of the credentials read for the session.
+     */
+    private long credentialNotAfter = Long.MAX_VALUE;
+
+    /**
+     * Location of the proxy read for the session.
+     */
+    private URL credentialLocation;
+
     /**
      * Empty builder.
      * Parameters must be provided before the session is created.
@@ -174,13 +188,75 @@ public abstract class SessionBuilder {
         return this;
     }
 
+    /**
+     * Retrieves the expiration of the credentials read for the session.
+     * Sessions must not be used after this time since the infrastructure
+     * would refuse the credentials.
+     *
+     * @return The expiration in milliseconds since the epoch or
+     * Long.MAX_VALUE if the credentials do not expire or their expiration
+     * is not known
+     */
+    public final long getCredentialNotAfter() {
+        return credentialNotAfter;
+    }
+
+    /**
+     * Retrieves the location of the proxy read for the session.
+     * When the proxy is refreshed in the {@link ProxyCache} the sessions
+     * built with the previous proxy should be replaced.
+     *
+     * @return The location or null if the session does not use a remote
+     * proxy
+     */
+    public final URL getCredentialLocation() {
+        return credentialLocation;
+    }
+
+    /**
+     * Sets the expiration of the credentials read for the session.
+     * Multiple credentials expire with the earliest.
+     *
+     * @param aNotAfter The expiration in milliseconds since the epoch
+     * @return The SessionBuilder
+     */
+    protected final SessionBuilder setCredentialNotAfter(
+            final long aNotAfter) {
+        if (aNotAfter > 0) {
+            credentialNotAfter = Math.min(credentialNotAfter, aNotAfter);
+        }
+        return this;
+    }
+
+    /**
+     * Retrieves the cache of the remote proxies.
+     *
+     * @return The cache or null if proxies are not cached
+     */
+    public static ProxyCache getProxyCache() {
+        return proxyCache;
+    }
+
+    /**
+     * Sets the cache of the remote proxies.
+     *
+     * @param aCache The cache or null to disable the caching
+     */
+    public static void setProxyCache(final ProxyCache aCache) {
+        proxyCache = aCache;
+    }
+
     /**
      * Read the proxy certificate from a remote location.
-     * The location is retrieved from the parameters.
+     * The location is retrieved from the parameters. If a {@link ProxyCache}
+     * is configured the proxy is read from the cache. The expiration of the
+     * proxy is recorded as the expiration of the credentials of the session.
      *
      * @return A string representation of the proxy
      * @throws InfrastructureException If the proxy for the infrastructure
      * cannot be retrieved for problems with the parameters
+     * @throws TransientInfrastructureException If the proxy cannot be
+     * downloaded or it is empty
      */
     protected final String readRemoteProxy() throws InfrastructureException {
         URL proxy;
@@ -253,25 +329,29 @@ public abstract class SessionBuilder {
                         + getInfrastructure().getId());
             }
         }
-        StringBuilder strProxy = new StringBuilder();
+        String strProxy = "";
         log.debug("Accessing the proxy " + proxy.toString());
+        final ProxyCache cache = proxyCache;
         try {
-            BufferedReader fileProxy = new BufferedReader(
-                    new InputStreamReader(proxy.openStream()));
-            String lnProxy = fileProxy.readLine();
-            if (lnProxy != null) {
-                strProxy.append(lnProxy);
-            }
-            while ((lnProxy = fileProxy.readLine()) != null) {
-                strProxy.append("\n");
-                strProxy.append(lnProxy);
+            if (cache == null) {
+                strProxy = ProxyCache.download(proxy);
+                setCredentialNotAfter(ProxyCache.getNotAfter(strProxy));
+            } else {
+                strProxy = cache.get(proxy);
+                setCredentialNotAfter(cache.getExpiration(proxy));
             }
         } catch (IOException ioer) {
             log.error("Impossible to retrieve the remote proxy certificate from"
                     + ": " + proxy.toString());
+            log.debug(ioer);
+        }
+        if (strProxy.isEmpty()) {
+            throw new TransientInfrastructureException("Proxy not available "
+                    + "for the infrastructure " + infrastructure.getId());
         }
-        log.debug("Proxy:\n\n" + strProxy.toString() + "\n\n");
-        return strProxy.toString();
+        credentialLocation = proxy;
+        log.debug("Proxy:\n\n" + strProxy + "\n\n");
+        return strProxy;
     }
 
 
@@ -0,0 +1,385 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ogf.saga.session.Session;
+
+/**
+ * Cache of the SAGA sessions.
+ * Sessions are shared among the tasks of the same user in the same
+ * infrastructure so the contexts, and the credentials they read, are
+ * created once instead of at every submission and status check. The key of a
+ * session includes a fingerprint of the parameters used to build it, hence a
+ * change in the infrastructure configuration generates a new session.
+ * <p>
+ * Sessions older than the time to live, not used for the idle time or with
+ * expired credentials are removed from the cache. The credentials are read
+ * when the session is built, so a session built from a proxy close to its
+ * expiration is replaced when the proxy expires instead of after the time
+ * to live. Sessions built from a proxy refreshed in the {@link ProxyCache}
+ * are replaced as well, so they use the new proxy.
+ * <p>
+ * Removed sessions are closed at the following call of
+ * {@link #evictExpired()} so the threads still using them can complete their
+ * operation.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class SessionCache {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(SessionCache.class);
+
+    /**
+     * Cached sessions by key.
+     */
+    private final ConcurrentMap<String, CachedSession> sessions =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Sessions removed from the cache and waiting to be closed.
+     */
+    private final Queue<CachedSession> retired =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Maximum life of a session in milliseconds.
+     */
+    private final long timeToLive;
+
+    /**
+     * Maximum time in milliseconds a session can stay unused.
+     */
+    private final long idleTime;
+
+    /**
+     * Build the cache.
+     *
+     * @param aTimeToLive Maximum life of a session in milliseconds
+     * @param anIdleTime Maximum time in milliseconds a session can stay
+     * unused
+     */
+    public SessionCache(final long aTimeToLive, final long anIdleTime) {
+        this.timeToLive = aTimeToLive;
+        this.idleTime = anIdleTime;
+    }
+
+    /**
+     * Retrieves the session for the builder.
+     * A cached session is returned if available for the same infrastructure,
+     * user and parameters, otherwise a new session is created with the
+     * builder and cached.
+     *
+     * @param builder The builder of the session
+     * @return The session
+     * @throws InfrastructureException If a new session cannot be created
+     */
+    public final Session getSession(final SessionBuilder builder)
+            throws InfrastructureException {
+        final String key = getKey(builder);
+        CachedSession entry = sessions.get(key);
+        if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+            retire(key, entry);
+            entry = null;
+        }
+        if (entry == null) {
+            final CachedSession fresh = new CachedSession(
+                    builder.getInfrastructure().getId());
+            entry = sessions.putIfAbsent(key, fresh);
+            if (entry == null) {
+                entry = fresh;
+            }
+        }
+        try {
+            return entry.get(builder);
+        } catch (InfrastructureException ie) {
+            sessions.remove(key, entry);
+            throw ie;
+        }
+    }
+
+    /**
+     * Removes the session of the builder from the cache.
+     * This should be used when the session is not valid anymore, as an
+     * example when the authentication fails.
+     *
+     * @param builder The builder of the session
+     */
+    public final void discard(final SessionBuilder builder) {
+        final String key = getKey(builder);
+        final CachedSession entry = sessions.get(key);
+        if (entry != null) {
+            retire(key, entry);
+        }
+    }
+
+    /**
+     * Removes all the sessions of an infrastructure from the cache.
+     *
+     * @param infraId The infrastructure id
+     */
+    public final void invalidate(final String infraId) {
+        for (Map.Entry<String, CachedSession> entry: sessions.entrySet()) {
+            if (infraId.equals(entry.getValue().getInfrastructureId())) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Closes the sessions previously removed and removes the expired ones.
+     * This should be called periodically.
+     */
+    public final void evictExpired() {
+        for (int pending = retired.size(); pending > 0; pending--) {
+            final CachedSession old = retired.poll();
+            if (old == null) {
+                break;
+            }
+            old.close();
+        }
+        final long now = System.currentTimeMillis();
+        for (Map.Entry<String, CachedSession> entry: sessions.entrySet()) {
+            if (entry.getValue().isExpired(now)) {
+                retire(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Closes all the sessions.
+     */
+    public final void closeAll() {
+        for (Map.Entry<String, CachedSession> entry: sessions.entrySet()) {
+            retire(entry.getKey(), entry.getValue());
+        }
+        CachedSession old = retired.poll();
+        while (old != null) {
+            old.close();
+            old = retired.poll();
+        }
+    }
+
+    /**
+     * Retrieves the number of cached sessions.
+     *
+     * @return The number of sessions
+     */
+    public final int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Removes the session from the cache and queues it to be closed.
+     *
+     * @param key The key of the session
+     * @param entry The session
+     */
+    private void retire(final String key, final CachedSession entry) {
+        if (sessions.remove(key, entry)) {
+            retired.add(entry);
+        }
+    }
+
+    /**
+     * Creates the key of the session built by a builder.
+     *
+     * @param builder The builder
+     * @return The key
+     */
+    static String getKey(final SessionBuilder builder) {
+        return builder.getInfrastructure().getId() + "|" + builder.getUser()
+                + "|" + fingerprint(builder.getParams());
+    }
+
+    /**
+     * Computes the fingerprint of the session parameters.
+     * The fingerprint does not depend on the order of the parameters.
+     *
+     * @param params The parameters
+     * @return The SHA-256 digest of the parameters in hexadecimal
+     */
+    public static String fingerprint(final Properties params) {
+        final StringBuilder content = new StringBuilder();
+        for (String name: new TreeSet<>(params.stringPropertyNames())) {
+            content.append(name).append('=')
+                    .append(params.getProperty(name)).append('\n');
+        }
+        try {
+            final StringBuilder hex = new StringBuilder();
+            for (byte b: MessageDigest.getInstance("SHA-256").digest(
+                    content.toString().getBytes(StandardCharsets.UTF_8))) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            return Integer.toHexString(content.toString().hashCode());
+        }
+    }
+
+
+    /**
+     * Session in the cache.
+     * The session is created by the first thread requesting it while the
+     * others wait.
+     */
+    private final class CachedSession {
+
+        /**
+         * Infrastructure of the session.
+         */
+        private final String infrastructureId;
+
+        /**
+         * The session.
+         */
+        private Session session;
+
+        /**
+         * True after the session has been closed.
+         */
+        private boolean closed;
+
+        /**
+         * Creation time of the session.
+         */
+        private volatile long created = System.currentTimeMillis();
+
+        /**
+         * Last time the session has been used.
+         */
+        private volatile long lastUsed = created;
+
+        /**
+         * Expiration of the credentials of the session.
+         */
+        private volatile long credentialNotAfter = Long.MAX_VALUE;
+
+        /**
+         * Location of the proxy of the session.
+         */
+        private volatile URL credentialLocation;
+
+        /**
+         * Build the entry.
+         *
+         * @param anInfraId The infrastructure of the session
+         */
+        CachedSession(final String anInfraId) {
+            this.infrastructureId = anInfraId;
+        }
+
+        /**
+         * Retrieves the infrastructure of the session.
+         *
+         * @return The infrastructure id
+         */
+        String getInfrastructureId() {
+            return infrastructureId;
+        }
+
+        /**
+         * Retrieves the session, creating it if needed.
+         * Threads reaching the entry after it was closed receive a session
+         * not cached.
+         *
+         * @param builder The builder of the session
+         * @return The session
+         * @throws InfrastructureException If the session cannot be created
+         */
+        synchronized Session get(final SessionBuilder builder)
+                throws InfrastructureException {
+            if (closed) {
+                return builder.getSession();
+            }
+            if (session == null) {
+                session = builder.getSession();
+                created = System.currentTimeMillis();
+                credentialNotAfter = builder.getCredentialNotAfter();
+                credentialLocation = builder.getCredentialLocation();
+                log.debug("New session for the infrastructure "
+                        + infrastructureId);
+            }
+            lastUsed = System.currentTimeMillis();
+            return session;
+        }
+
+        /**
+         * Checks if the session is expired.
+         *
+         * @param now The current time in milliseconds
+         * @return True if the session is too old, unused or its credentials
+         * are expired or refreshed, false otherwise
+         */
+        boolean isExpired(final long now) {
+            return now - created > timeToLive || now - lastUsed > idleTime
+                    || now >= credentialNotAfter || isCredentialRefreshed();
+        }
+
+        /**
+         * Checks if the proxy of the session has been refreshed.
+         * A refreshed proxy in the cache expires after the proxy of the
+         * session.
+         *
+         * @return True if a newer proxy is available, false otherwise
+         */
+        private boolean isCredentialRefreshed() {
+            final URL location = credentialLocation;
+            final ProxyCache proxies = SessionBuilder.getProxyCache();
+            return location != null && proxies != null
+                    && proxies.getExpiration(location) > credentialNotAfter;
+        }
+
+        /**
+         * Closes the session.
+         */
+        synchronized void close() {
+            closed = true;
+            if (session == null) {
+                return;
+            }
+            try {
+                session.close();
+            } catch (RuntimeException re) {
+                log.warn("Impossible to close the session of the "
+                        + "infrastructure " + infrastructureId);
+                log.debug(re);
+            }
+            session = null;
+        }
+    }
+}
@@ -21,9 +21,18 @@
 
 package it.infn.ct.futuregateway.apiserver.inframanager;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.InfraMetrics;
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
 import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.ogf.saga.error.AuthenticationFailedException;
@@ -40,6 +49,13 @@ import org.ogf.saga.job.Job;
 /**
  * The Submitter implements the thread responsible for the
  * submission of a task to the remote infrastructure.
+ * <p>
+ * Submissions are protected by the {@link CircuitBreaker} of the endpoint.
+ * While the circuit is open the task is moved to another infrastructure of
+ * the application, if available, otherwise it is parked in the monitor
+ * queue until the circuit can be probed again. Submissions failing for a
+ * timeout or a connection problem are retried with an exponential delay
+ * before the task is aborted.
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  */
@@ -60,58 +76,221 @@ public class Submitter implements Runnable {
      */
     private final Storage store;
 
+    /**
+     * Queue where the task is parked to retry the submission.
+     */
+    private final BlockingQueue<Task> queue;
+
     /**
      * The thread managing the submission of a task.
      * The submission is performed with jSAGA and run in a separate thread.
+     * Failed submissions are not retried.
      *
      * @param aTask The task managed by the thread
      * @param aStore The storage managing the task files
      */
     public Submitter(final Task aTask, final Storage aStore) {
+        this(aTask, aStore, null);
+    }
+
+    /**
+     * The thread managing the submission of a task.
+     * The submission is performed with jSAGA and run in a separate thread.
+     *
+     * @param aTask The task managed by the thread
+     * @param aStore The storage managing the task files
+     * @param aQueue The queue where the task is parked to retry the
+     * submission
+     */
+    public Submitter(final Task aTask, final Storage aStore,
+            final BlockingQueue<Task> aQueue) {
         this.task = aTask;
         this.store = aStore;
+        this.queue = aQueue;
     }
 
+    /**
+     * Retrieves the task managed by this thread.
+     *
+     * @return The task
+     */
+    public final Task getTask() {
+        return task;
+    }
+
+    /**
+     * Retrieves the queue where the task is parked to retry the submission.
+     *
+     * @return The queue or null if the submission is not retried
+     */
+    public final BlockingQueue<Task> getQueue() {
+        return queue;
+    }
 
     @Override
     public final void run() {
         if (!task.getState().equals(Task.STATE.READY)) {
             log.error("Task " + task.getApplicationId()
                     + " submitted but not in READY status");
-            task.setState(Task.STATE.ABORTED);
+            TaskStates.abort(task);
             return;
         }
         if (task.getApplicationDetail().getOutcome().equals(
                 Application.TYPE.JOB)) {
-            Job job;
-            try {
-                job = CustomJobFactory.createJob(task, store);
-                job.run();
-                task.setNativeId(job.getAttribute(Job.JOBID));
-                task.updateCheckTime();
-            } catch (InfrastructureException ex) {
-                log.error("JobFactory does not work");
-                log.error(ex);
-                task.setState(Task.STATE.ABORTED);
-            } catch (BadParameterException ex) {
-                log.error("Paramaters not correct for the task "
-                        + task.getId()
-                        + " using the infrastructure "
-                        + task.getAssociatedInfrastructureId());
-                log.error(ex);
-                task.setState(Task.STATE.ABORTED);
-            } catch (NotImplementedException | AuthenticationFailedException
-                    | AuthorizationFailedException | PermissionDeniedException
-                    | IncorrectStateException | DoesNotExistException
-                    | TimeoutException | NoSuccessException ex) {
-                log.error("Impossible to submit the task: " + task.getId());
-                log.error(ex);
-                task.setState(Task.STATE.ABORTED);
-            }
+            submit();
         }
         if (task.getApplicationDetail().getOutcome().equals(
                 Application.TYPE.RESOURCE)) {
             throw new UnsupportedOperationException("Resources not managed");
         }
     }
+
+    /**
+     * Submits the job to the infrastructure.
+     */
+    private void submit() {
+        final CircuitBreakers breakers = CustomJobFactory.getCircuitBreakers();
+        CircuitBreaker breaker = null;
+        if (breakers != null) {
+            breaker = breakers.get(task);
+        }
+        if (breaker != null && !breaker.allowRequest()) {
+            if (!reroute(breakers)) {
+                log.info("Circuit of " + breaker.getEndpoint() + " open, "
+                        + "task " + task.getId() + " parked");
+                park(breaker.getRetryDelay());
+            }
+            return;
+        }
+        final InfraMetrics metrics = Selectors.getMetrics();
+        final String infraId = task.getAssociatedInfrastructureId();
+        metrics.started(infraId, task.getId());
+        final long start = System.currentTimeMillis();
+        boolean transientFailure = false;
+        Job job;
+        try {
+            job = CustomJobFactory.createJob(task, store);
+            job.run();
+            task.setNativeId(job.getAttribute(Job.JOBID));
+            task.updateCheckTime();
+        } catch (TransientInfrastructureException ex) {
+            log.warn("Submission of the task " + task.getId()
+                    + " failed: " + ex.getMessage());
+            transientFailure = true;
+        } catch (InfrastructureException ex) {
+            log.error("JobFactory does not work");
+            log.error(ex);
+            TaskStates.abort(task);
+        } catch (BadParameterException ex) {
+            log.error("Paramaters not correct for the task "
+                    + task.getId()
+                    + " using the infrastructure "
+                    + task.getAssociatedInfrastructureId());
+            log.error(ex);
+            TaskStates.abort(task);
+        } catch (TimeoutException | NoSuccessException ex) {
+            log.warn("Submission of the task " + task.getId()
+                    + " failed: " + ex.getMessage());
+            transientFailure = true;
+        } catch (NotImplementedException | AuthenticationFailedException
+                | AuthorizationFailedException | PermissionDeniedException
+                | IncorrectStateException | DoesNotExistException ex) {
+            log.error("Impossible to submit the task: " + task.getId());
+            log.error(ex);
+            TaskStates.abort(task);
+        }
+        final boolean submitted = !transientFailure
+                && task.getState() != Task.STATE.ABORTED;
+        metrics.submitted(infraId, System.currentTimeMillis() - start,
+                submitted);
+        if (breaker != null) {
+            if (transientFailure) {
+                breaker.recordFailure();
+            } else if (submitted) {
+                breaker.recordSuccess();
+            }
+        }
+        if (transientFailure) {
+            retry(breaker, breakers);
+        }
+    }
+
+    /**
+     * Schedules a new submission after a failure.
+     * The delay grows exponentially with the failed attempts and the task is
+     * aborted when the attempts exceed the limit.
+     *
+     * @param breaker The circuit breaker of the endpoint or null
+     * @param breakers The circuit breakers or null
+     */
+    private void retry(final CircuitBreaker breaker,
+            final CircuitBreakers breakers) {
+        final int attempts = task.addFailedAttempt();
+        if (attempts > Constants.SUBMISSIONMAXRETRIES) {
+            log.error("Impossible to submit the task: " + task.getId()
+                    + " after " + attempts + " attempts");
+            TaskStates.abort(task);
+            return;
+        }
+        long maxDelay = Constants.CIRCUITMAXOPENTIME;
+        if (breakers != null) {
+            maxDelay = breakers.getMaxDelay();
+        }
+        long delay = CircuitBreaker.backoff(TimeUnit.SECONDS.toMillis(
+                Constants.SUBMISSIONRETRYAFTER), maxDelay, attempts);
+        if (breaker != null) {
+            delay = Math.max(delay, breaker.getRetryDelay());
+        }
+        park(delay);
+    }
+
+    /**
+     * Moves the task to another infrastructure with the circuit closed.
+     * The new infrastructure is chosen with the selection policy in use and
+     * the change of the task triggers a new submission.
+     *
+     * @param breakers The circuit breakers
+     * @return True if the task is moved, false if no other infrastructure
+     * is available
+     */
+    private boolean reroute(final CircuitBreakers breakers) {
+        final Application app = task.getApplicationDetail();
+        if (app.getInfrastructures() == null) {
+            return false;
+        }
+        final List<Infrastructure> candidates = new ArrayList<>();
+        for (Infrastructure infra: app.getInfrastructures()) {
+            if (infra.isEnabled()
+                    && !infra.getId().equals(
+                            task.getAssociatedInfrastructureId())
+                    && breakers.isAvailable(infra, app)) {
+                candidates.add(infra);
+            }
+        }
+        final Infrastructure target =
+                Selectors.getSelector().select(candidates);
+        if (target == null) {
+            return false;
+        }
+        log.info("Task " + task.getId() + " moved from the infrastructure "
+                + task.getAssociatedInfrastructureId() + " to "
+                + target.getId());
+        task.setAssociatedInfrastructureId(target.getId());
+        return true;
+    }
+
+    /**
+     * Parks the task in the queue to retry the submission later.
+     * If the task cannot be parked it is aborted.
+     *
+     * @param delay The delay before the retry in milliseconds
+     */
+    private void park(final long delay) {
+        if (queue == null || !DelayedTaskQueue.scheduleOrOffer(queue, task,
+                delay, TimeUnit.MILLISECONDS)) {
+            log.error("Impossible to retry the submission of task "
+                    + task.getId());
+            TaskStates.abort(task);
+        }
+    }
 }
@@ -0,0 +1,59 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.List;
+
+/**
+ * Overflow tier of the monitor queue.
+ * Tasks exceeding the capacity of the queue are moved to the overflow and
+ * restored when space is available again, so adding a task to the queue
+ * never blocks the monitor threads.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public interface TaskOverflow {
+
+    /**
+     * Moves a task to the overflow.
+     *
+     * @param task The task
+     */
+    void spill(Task task);
+
+    /**
+     * Retrieves tasks from the overflow.
+     * Retrieved tasks are removed from the overflow.
+     *
+     * @param maxTasks Maximum number of tasks to retrieve
+     * @return The tasks, an empty list if the overflow is empty
+     */
+    List<Task> restore(int maxTasks);
+
+    /**
+     * Retrieves the number of tasks in the overflow.
+     *
+     * @return The number of tasks
+     */
+    int size();
+}
@@ -0,0 +1,207 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Session;
+
+/**
+ * Recovers the tasks not completed when the service was stopped.
+ * Tasks in a non final state are read from the database and added to the
+ * monitor queue with a new observer, so they continue their life-cycle as if
+ * the service was never stopped.
+ * <p>
+ * The tasks are read from the database in pages, with their associations
+ * fetched in batch, and detached from the persistence context before they
+ * are queued, so the memory used by the recovery does not depend on the
+ * number of tasks. The first checks of
+ * the recovered tasks are spread over a warm-up time to avoid overloading the
+ * infrastructures when the service starts.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TaskRecovery implements Runnable {
+
+    /**
+     * States of the tasks to recover.
+     */
+    public static final List<Task.STATE> RECOVERABLESTATES = Arrays.asList(
+            Task.STATE.WAITING, Task.STATE.READY,
+            Task.STATE.SCHEDULED, Task.STATE.RUNNING);
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TaskRecovery.class);
+
+    /**
+     * EntityManagerFactory registered for the persistence.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * The monitor queue receiving the tasks.
+     */
+    private final MonitorQueue monitorQueue;
+
+    /**
+     * Time, in milliseconds, to spread the first checks.
+     */
+    private final long warmUp;
+
+    /**
+     * Number of tasks read together from the database.
+     */
+    private final int fetchSize;
+
+    /**
+     * Build the recovery.
+     *
+     * @param anEntityManagerFactory An EntityManagerFactory to retrieve the
+     * persistence context
+     * @param aMonitorQueue The monitor queue receiving the tasks
+     * @param aWarmUp Time, in milliseconds, to spread the first checks
+     * @param aFetchSize Number of tasks read together from the database
+     */
+    public TaskRecovery(final EntityManagerFactory anEntityManagerFactory,
+            final MonitorQueue aMonitorQueue, final long aWarmUp,
+            final int aFetchSize) {
+        this.emf = anEntityManagerFactory;
+        this.monitorQueue = aMonitorQueue;
+        this.warmUp = aWarmUp;
+        this.fetchSize = aFetchSize;
+    }
+
+    @Override
+    public final void run() {
+        final long start = System.currentTimeMillis();
+        final int recovered = recover();
+        log.info("Recovered " + recovered + " tasks in "
+                + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Adds the tasks in a non final state to the monitor queue.
+     *
+     * @return The number of tasks recovered
+     */
+    public final int recover() {
+        final EntityManager em = emf.createEntityManager();
+        int recovered = 0;
+        try {
+            final long total = em.createNamedQuery(
+                    "tasks.countInStates", Long.class).
+                    setParameter("states", RECOVERABLESTATES).
+                    getSingleResult();
+            if (total == 0) {
+                return 0;
+            }
+            log.info("Recovering " + total + " tasks");
+            final Session session = em.unwrap(Session.class);
+            String lastId = "";
+            List<Task> page;
+            do {
+                page = readPage(session, lastId);
+                session.clear();
+                for (Task task: page) {
+                    enqueue(task, warmUp * recovered / total);
+                    recovered++;
+                    lastId = task.getId();
+                }
+            } while (page.size() == fetchSize);
+        } catch (InterruptedException ie) {
+            log.warn("Task recovery interrupted after " + recovered
+                    + " tasks.");
+        } catch (RuntimeException re) {
+            log.error("Impossible to recover the tasks!");
+            log.error(re);
+        } finally {
+            em.close();
+        }
+        return recovered;
+    }
+
+    /**
+     * Reads a page of tasks to recover.
+     * The tasks are read in order of identifier starting after the last
+     * identifier of the previous page, so no cursor is kept open while the
+     * tasks are queued. The associations of the tasks in the page are loaded
+     * together with a few queries.
+     *
+     * @param session The session
+     * @param lastId The identifier of the last task already recovered
+     * @return The tasks in the page
+     */
+    @SuppressWarnings("unchecked")
+    private List<Task> readPage(final Session session, final String lastId) {
+        return session.getNamedQuery("tasks.inStates").
+                setParameterList("states", RECOVERABLESTATES).
+                setParameter("lastId", lastId).
+                setMaxResults(fetchSize).
+                setReadOnly(true).
+                setCacheMode(CacheMode.IGNORE).
+                list();
+    }
+
+    /**
+     * Attaches the observer to the task and adds it to the monitor queue.
+     * If the queue is full the task is moved to the overflow, keeping the
+     * delay, so the recovery does not wait for the monitor. Only a queue
+     * without overflow makes the recovery wait for free space.
+     *
+     * @param task The task
+     * @param delay Delay, in milliseconds, before the first check
+     * @throws InterruptedException If interrupted while waiting for space in
+     * a queue without overflow
+     */
+    private void enqueue(final Task task, final long delay)
+            throws InterruptedException {
+        task.addObserver(new TaskObserver(emf,
+                monitorQueue.getSubmissionPool(), monitorQueue.getStorage(),
+                monitorQueue, monitorQueue.getWriteBehind()));
+        final BlockingQueue<Task> queue = monitorQueue.getMonitorQueue();
+        if (DelayedTaskQueue.scheduleOrOffer(queue, task, delay,
+                TimeUnit.MILLISECONDS)) {
+            log.debug("Recovered task " + task.getId() + " in state "
+                    + task.getState());
+            return;
+        }
+        if (queue instanceof DelayedTaskQueue) {
+            ((DelayedTaskQueue) queue).waitAndSchedule(task, delay,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            queue.put(task);
+        }
+        log.debug("Recovered task " + task.getId() + " in state "
+                + task.getState());
+    }
+}
@@ -0,0 +1,257 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket limiting the rate of the operations.
+ * The bucket is refilled at a constant rate up to the burst size and every
+ * operation consumes a token. When the bucket is empty the caller receives
+ * a reservation for a future token and the time to wait for it. Callers are
+ * expected to come back when the time is elapsed, without holding a thread
+ * in the meantime, and they are granted the reserved token.
+ * <p>
+ * Reservations are spread according to the rate so the waiting callers do
+ * not come back all together. A reservation not claimed within a grace
+ * period after its due time expires and its token is returned to the
+ * bucket, so callers moved elsewhere or terminated do not lower the rate.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TokenBucket {
+
+    /**
+     * Milliseconds in a second.
+     */
+    private static final double MILLIS = 1000.0;
+
+    /**
+     * Default time, in milliseconds, a reservation is kept after its due
+     * time.
+     */
+    private static final long DEFAULTGRACE = 60000;
+
+    /**
+     * Tokens added every second.
+     */
+    private final double rate;
+
+    /**
+     * Maximum number of tokens.
+     */
+    private final int burst;
+
+    /**
+     * Tokens available. A negative value is the number of tokens reserved.
+     */
+    private double tokens;
+
+    /**
+     * Time of the last refill in milliseconds.
+     */
+    private long lastRefill;
+
+    /**
+     * Time, in milliseconds, a reservation is kept after its due time.
+     */
+    private final long grace;
+
+    /**
+     * Time of the reserved tokens by caller, in order of reservation.
+     */
+    private final Map<String, Long> reservations = new LinkedHashMap<>();
+
+    /**
+     * Number of operations granted.
+     */
+    private long granted;
+
+    /**
+     * Number of operations delayed.
+     */
+    private long delayed;
+
+    /**
+     * Build the bucket full.
+     *
+     * @param aRate Tokens added every second
+     * @param aBurst Maximum number of tokens
+     */
+    public TokenBucket(final double aRate, final int aBurst) {
+        this(aRate, aBurst, DEFAULTGRACE);
+    }
+
+    /**
+     * Build the bucket full.
+     *
+     * @param aRate Tokens added every second
+     * @param aBurst Maximum number of tokens
+     * @param aGrace Time, in milliseconds, a reservation is kept after its
+     * due time
+     */
+    public TokenBucket(final double aRate, final int aBurst,
+            final long aGrace) {
+        if (aRate <= 0) {
+            throw new IllegalArgumentException("Rate must be positive");
+        }
+        this.rate = aRate;
+        this.burst = Math.max(1, aBurst);
+        this.grace = Math.max(0, aGrace);
+        this.tokens = burst;
+        this.lastRefill = now();
+    }
+
+    /**
+     * Retrieves the current time.
+     *
+     * @return The time in milliseconds
+     */
+    private static long now() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime());
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill.
+     *
+     * @param time The current time in milliseconds
+     */
+    private void refill(final long time) {
+        tokens = Math.min(burst,
+                tokens + (time - lastRefill) * rate / MILLIS);
+        lastRefill = time;
+    }
+
+    /**
+     * Removes the reservations not claimed within the grace period.
+     * The reserved tokens are returned to the bucket.
+     *
+     * @param time The current time in milliseconds
+     */
+    private void expire(final long time) {
+        final Iterator<Long> dues = reservations.values().iterator();
+        while (dues.hasNext()) {
+            if (dues.next() + grace >= time) {
+                return;
+            }
+            dues.remove();
+            tokens = Math.min(burst, tokens + 1);
+        }
+    }
+
+    /**
+     * Requests a token for an operation.
+     * If a token is available it is consumed, otherwise a future token is
+     * reserved for the caller. A caller with a reservation receives the
+     * remaining time until the reserved token is available and then the
+     * token. The reservation expires if the caller does not come back within
+     * the grace period.
+     *
+     * @param caller Identifier of the caller
+     * @return The time to wait in milliseconds, 0 if the operation can be
+     * performed
+     */
+    public final synchronized long reserve(final String caller) {
+        final long time = now();
+        final Long due = reservations.get(caller);
+        if (due != null) {
+            if (due <= time) {
+                reservations.remove(caller);
+                granted++;
+                return 0;
+            }
+            return due - time;
+        }
+        refill(time);
+        expire(time);
+        tokens -= 1;
+        if (tokens >= 0) {
+            granted++;
+            return 0;
+        }
+        final long wait = (long) Math.ceil(-tokens * MILLIS / rate);
+        reservations.put(caller, time + wait);
+        delayed++;
+        return wait;
+    }
+
+    /**
+     * Retrieves the tokens added every second.
+     *
+     * @return The rate
+     */
+    public final double getRate() {
+        return rate;
+    }
+
+    /**
+     * Retrieves the maximum number of tokens.
+     *
+     * @return The burst size
+     */
+    public final int getBurst() {
+        return burst;
+    }
+
+    /**
+     * Retrieves the tokens available.
+     *
+     * @return The number of tokens
+     */
+    public final synchronized double getTokens() {
+        refill(now());
+        return Math.max(0, tokens);
+    }
+
+    /**
+     * Retrieves the number of callers waiting for a reserved token.
+     *
+     * @return The number of callers
+     */
+    public final synchronized int getQueued() {
+        final long time = now();
+        refill(time);
+        expire(time);
+        return reservations.size();
+    }
+
+    /**
+     * Retrieves the number of operations granted.
+     *
+     * @return The number of operations
+     */
+    public final synchronized long getGranted() {
+        return granted;
+    }
+
+    /**
+     * Retrieves the number of operations delayed.
+     *
+     * @return The number of operations
+     */
+    public final synchronized long getDelayed() {
+        return delayed;
+    }
+}
@@ -0,0 +1,43 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+/**
+ * Temporary problem with the infrastructure.
+ * The infrastructure did not answer in time or could not serve the request
+ * but the same request could succeed later, so the caller should record the
+ * failure on the endpoint and retry instead of aborting the task.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TransientInfrastructureException extends InfrastructureException {
+
+    /**
+     * Constructs an instance of <code>TransientInfrastructureException</code>
+     * with the specified detail message.
+     *
+     * @param msg the detail message.
+     */
+    public TransientInfrastructureException(final String msg) {
+        super(msg);
+    }
+}
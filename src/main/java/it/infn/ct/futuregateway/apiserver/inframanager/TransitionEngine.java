@@ -0,0 +1,281 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Executes the actions following the changes of the tasks.
+ * The actions are queued and executed by a dedicated thread pool so the
+ * thread changing the task, as an example the thread serving a request, does
+ * not wait for them. Actions of the same task are executed one at a time in
+ * the order they are queued, hence an action changing the state of its task
+ * queues the following action instead of executing it recursively.
+ * <p>
+ * Each action is associated with the state of the task when it is queued. An
+ * action is not queued if the previous one waiting for the same task has the
+ * same state, and it is skipped if the task changed state before the
+ * execution, because a following action will handle the new state.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TransitionEngine {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TransitionEngine.class);
+
+    /**
+     * Actions waiting for execution by task id.
+     */
+    private final ConcurrentMap<String, TaskLane> lanes =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Thread pool executing the actions.
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Build the engine.
+     *
+     * @param poolSize Number of threads executing the actions
+     */
+    public TransitionEngine(final int poolSize) {
+        this(Executors.newFixedThreadPool(poolSize));
+    }
+
+    /**
+     * Build the engine with a provided thread pool.
+     *
+     * @param anExecutor Thread pool executing the actions
+     */
+    public TransitionEngine(final ExecutorService anExecutor) {
+        this.executor = anExecutor;
+    }
+
+    /**
+     * Queues the action following the change of a task.
+     * Tasks without id have no ordering guarantee and their action is
+     * executed immediately.
+     *
+     * @param task The changed task
+     * @param action The action for the current state of the task
+     */
+    public final void execute(final Task task, final Runnable action) {
+        if (task.getId() == null) {
+            action.run();
+            return;
+        }
+        final Transition transition = new Transition(task, task.getState(),
+                action);
+        while (true) {
+            TaskLane lane = lanes.get(task.getId());
+            if (lane == null) {
+                final TaskLane newLane = new TaskLane(task.getId());
+                lane = lanes.putIfAbsent(task.getId(), newLane);
+                if (lane == null) {
+                    lane = newLane;
+                }
+            }
+            if (lane.add(transition)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of tasks with actions waiting or running.
+     *
+     * @return The number of tasks
+     */
+    public final int getActiveTasks() {
+        return lanes.size();
+    }
+
+    /**
+     * Stops the engine.
+     * Actions already queued are executed.
+     *
+     * @param timeout Maximum time to wait for the queued actions
+     * @param unit Unit of the timeout
+     * @return True if all the actions are completed, false otherwise
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public final boolean shutdown(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        executor.shutdown();
+        return executor.awaitTermination(timeout, unit);
+    }
+
+
+    /**
+     * Action for a state of a task.
+     */
+    private static final class Transition {
+
+        /**
+         * The task.
+         */
+        private final Task task;
+
+        /**
+         * State of the task when the action is queued.
+         */
+        private final Task.STATE state;
+
+        /**
+         * The action.
+         */
+        private final Runnable action;
+
+        /**
+         * Build the transition.
+         *
+         * @param aTask The task
+         * @param aState State of the task when the action is queued
+         * @param anAction The action
+         */
+        Transition(final Task aTask, final Task.STATE aState,
+                final Runnable anAction) {
+            this.task = aTask;
+            this.state = aState;
+            this.action = anAction;
+        }
+
+        /**
+         * Checks if the task changed state after the action was queued.
+         *
+         * @return True if the state changed, false otherwise
+         */
+        boolean isStale() {
+            return task.getState() != state;
+        }
+    }
+
+
+    /**
+     * Serial queue of the actions of a task.
+     * The lane is removed when empty and a removed lane does not accept new
+     * actions.
+     */
+    private final class TaskLane implements Runnable {
+
+        /**
+         * Id of the task.
+         */
+        private final String taskId;
+
+        /**
+         * Actions waiting for execution.
+         */
+        private final Deque<Transition> transitions = new ArrayDeque<>();
+
+        /**
+         * True while the lane is scheduled or executing.
+         */
+        private boolean running;
+
+        /**
+         * True after the lane has been removed.
+         */
+        private boolean retired;
+
+        /**
+         * Build the lane.
+         *
+         * @param aTaskId Id of the task
+         */
+        TaskLane(final String aTaskId) {
+            this.taskId = aTaskId;
+        }
+
+        /**
+         * Adds an action to the lane and schedules the lane if needed.
+         *
+         * @param transition The action
+         * @return False if the lane has been removed, true otherwise
+         */
+        boolean add(final Transition transition) {
+            synchronized (this) {
+                if (retired) {
+                    return false;
+                }
+                final Transition last = transitions.peekLast();
+                if (last != null && last.state == transition.state) {
+                    return true;
+                }
+                transitions.add(transition);
+                if (running) {
+                    return true;
+                }
+                running = true;
+            }
+            try {
+                executor.execute(this);
+            } catch (RejectedExecutionException ree) {
+                log.warn("Transition engine stopped, actions of the task "
+                        + taskId + " executed by the caller");
+                run();
+            }
+            return true;
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                final Transition transition;
+                synchronized (this) {
+                    transition = transitions.poll();
+                    if (transition == null) {
+                        running = false;
+                        retired = true;
+                        lanes.remove(taskId, this);
+                        return;
+                    }
+                }
+                if (transition.isStale()) {
+                    log.debug("Skipped action of the task " + taskId
+                            + " for the state " + transition.state);
+                    continue;
+                }
+                try {
+                    transition.action.run();
+                } catch (RuntimeException re) {
+                    log.error("Action of the task " + taskId + " failed");
+                    log.error(re);
+                }
+            }
+        }
+    }
+}
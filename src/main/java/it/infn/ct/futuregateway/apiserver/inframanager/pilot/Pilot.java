@@ -0,0 +1,179 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.pilot;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+
+/**
+ * A pilot job running the tasks of an application for a user.
+ * The pilot is identified by a random identifier, known only to the pilot
+ * job, and it is associated with the task submitting the pilot job to the
+ * infrastructure. The pilot job runs with the credentials of the user so it
+ * executes only the tasks of the same user.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class Pilot {
+
+    /**
+     * Identifier of the pilot.
+     */
+    private final String id;
+
+    /**
+     * Application of the tasks executed by the pilot.
+     */
+    private final String applicationId;
+
+    /**
+     * User owning the pilot and the tasks executed.
+     */
+    private final String userName;
+
+    /**
+     * Task of the pilot job.
+     */
+    private volatile Task job;
+
+    /**
+     * Time of the last contact in milliseconds, 0 if never contacted.
+     */
+    private volatile long lastContact;
+
+    /**
+     * Task in execution, null if the pilot is idle.
+     */
+    private volatile String currentTaskId;
+
+    /**
+     * Build the pilot.
+     *
+     * @param anId Identifier of the pilot
+     * @param anApplicationId Application of the tasks
+     * @param aUserName User owning the pilot
+     */
+    public Pilot(final String anId, final String anApplicationId,
+            final String aUserName) {
+        this.id = anId;
+        this.applicationId = anApplicationId;
+        this.userName = aUserName;
+    }
+
+    /**
+     * Retrieves the identifier of the pilot.
+     *
+     * @return The identifier
+     */
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the application of the tasks executed by the pilot.
+     *
+     * @return The application identifier
+     */
+    public final String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * Retrieves the user owning the pilot and the tasks executed.
+     *
+     * @return The user name
+     */
+    public final String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Retrieves the task of the pilot job.
+     *
+     * @return The task or null if the pilot job is not created
+     */
+    public final Task getJob() {
+        return job;
+    }
+
+    /**
+     * Sets the task of the pilot job.
+     *
+     * @param aJob The task
+     */
+    public final void setJob(final Task aJob) {
+        this.job = aJob;
+    }
+
+    /**
+     * Registers a contact from the pilot.
+     */
+    public final void touch() {
+        this.lastContact = System.currentTimeMillis();
+    }
+
+    /**
+     * Retrieves the time of the last contact.
+     *
+     * @return The time in milliseconds, 0 if never contacted
+     */
+    public final long getLastContact() {
+        return lastContact;
+    }
+
+    /**
+     * Retrieves the task in execution.
+     *
+     * @return The task identifier or null if the pilot is idle
+     */
+    public final String getCurrentTaskId() {
+        return currentTaskId;
+    }
+
+    /**
+     * Sets the task in execution.
+     *
+     * @param aTaskId The task identifier or null if the pilot is idle
+     */
+    public final void setCurrentTaskId(final String aTaskId) {
+        this.currentTaskId = aTaskId;
+    }
+
+    /**
+     * Verifies if the pilot is lost.
+     * A pilot is lost when its job is completed or it has not contacted the
+     * server for longer than the timeout. Pilots never contacted are
+     * waiting to start in the infrastructure and they are not lost until
+     * their job completes.
+     *
+     * @param timeout Maximum time without contacts in milliseconds
+     * @return True if the pilot is lost
+     */
+    public final boolean isLost(final long timeout) {
+        final Task pilotJob = job;
+        if (pilotJob != null && TaskStates.isFinal(pilotJob.getState())) {
+            return true;
+        }
+        return lastContact > 0
+                && System.currentTimeMillis() - lastContact > timeout;
+    }
+}
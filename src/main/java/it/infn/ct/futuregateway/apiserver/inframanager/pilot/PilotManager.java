@@ -0,0 +1,698 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.pilot;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.CircuitBreaker;
+import it.infn.ct.futuregateway.apiserver.inframanager.MonitorQueue;
+import it.infn.ct.futuregateway.apiserver.inframanager.Utilities;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.PilotAssignment;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskFile;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
+import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ogf.saga.job.JobDescription;
+
+/**
+ * Manages the pilot jobs and the tasks they execute.
+ * An application is in pilot mode when its parameter
+ * <i>pilotapplication</i> identifies the application running the pilot
+ * agent. The tasks of an application in pilot mode are queued when ready
+ * and the pilot jobs, submitted as tasks of the pilot application through
+ * the normal submission, retrieve and execute them. Pilot jobs are
+ * submitted with the credentials of the user so a pilot executes only the
+ * tasks of the user who launched it. The parameter <i>pilots</i> limits the
+ * number of pilots of the application for every user.
+ * <p>
+ * If the pilots cannot be launched and none is active the launch is
+ * retried with a growing delay, and the tasks waiting are aborted only
+ * after {@link Constants#PILOTLAUNCHRETRIES} failed attempts. Tasks with
+ * input files provided by URL are not supported because the pilots
+ * download the input files from the server.
+ * <p>
+ * A task assigned to a pilot is SCHEDULED and its native id refers to the
+ * pilot. The following states are reported by the pilot. Tasks of a pilot
+ * lost, because its job completed or it stopped contacting the server, are
+ * aborted.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class PilotManager {
+
+    /**
+     * Application parameter with the application of the pilot jobs.
+     */
+    public static final String PILOTAPPPARAM = "pilotapplication";
+
+    /**
+     * Application parameter with the maximum number of pilots.
+     */
+    public static final String PILOTSPARAM = "pilots";
+
+    /**
+     * Prefix of the native id of the tasks executed by a pilot.
+     */
+    public static final String NATIVEPREFIX = "pilot:";
+
+    /**
+     * The manager in use.
+     */
+    private static volatile PilotManager instance;
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(PilotManager.class);
+
+    /**
+     * URL of the API server contacted by the pilots.
+     */
+    private final String serverUrl;
+
+    /**
+     * Maximum time, in milliseconds, without contacts from a pilot.
+     */
+    private final long timeout;
+
+    /**
+     * EntityManagerFactory registered for the persistence.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * Monitor queue providing the resources to manage the pilot jobs.
+     */
+    private final MonitorQueue monitorQueue;
+
+    /**
+     * Tasks waiting for a pilot, for every application and user.
+     */
+    private final ConcurrentMap<String, BlockingQueue<Task>> queues =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Identifiers of the tasks waiting for a pilot.
+     */
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Active pilots by identifier.
+     */
+    private final ConcurrentMap<String, Pilot> pilots =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Tasks assigned to the pilots by identifier.
+     */
+    private final ConcurrentMap<String, Task> assigned =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Failed launches of the pilots, for every application and user.
+     * Accessed only by {@link #ensurePilots(Task)}.
+     */
+    private final Map<String, LaunchFailures> launchFailures =
+            new HashMap<>();
+
+    /**
+     * Build the manager.
+     *
+     * @param aServerUrl URL of the API server contacted by the pilots
+     * @param aTimeout Maximum time, in milliseconds, without contacts from
+     * a pilot
+     * @param anEntityManagerFactory An EntityManagerFactory to persist the
+     * pilot jobs
+     * @param aMonitorQueue The monitor queue
+     */
+    public PilotManager(final String aServerUrl, final long aTimeout,
+            final EntityManagerFactory anEntityManagerFactory,
+            final MonitorQueue aMonitorQueue) {
+        this.serverUrl = aServerUrl;
+        this.timeout = aTimeout;
+        this.emf = anEntityManagerFactory;
+        this.monitorQueue = aMonitorQueue;
+    }
+
+    /**
+     * Retrieves the manager in use.
+     *
+     * @return The manager or null if the pilot mode is not available
+     */
+    public static PilotManager getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the manager in use.
+     *
+     * @param aManager The manager or null to disable the pilot mode
+     */
+    public static void setInstance(final PilotManager aManager) {
+        instance = aManager;
+    }
+
+    /**
+     * Verifies if the application is in pilot mode.
+     *
+     * @param app The application
+     * @return True if the tasks of the application are executed by pilots
+     */
+    public static boolean isPilotMode(final Application app) {
+        return app != null && app.getParameters() != null
+                && Utilities.getParameterValue(app.getParameters(),
+                        PILOTAPPPARAM) != null;
+    }
+
+    /**
+     * Verifies if the task is assigned to a pilot.
+     *
+     * @param task The task
+     * @return True if the task is executed by a pilot
+     */
+    public static boolean isPilotTask(final Task task) {
+        return task.getNativeId() != null
+                && task.getNativeId().startsWith(NATIVEPREFIX);
+    }
+
+    /**
+     * Verifies if the task can be executed by a pilot.
+     * Pilots retrieve the input files from the server so files provided by
+     * URL are not supported.
+     *
+     * @param task The task
+     * @return True if the pilots can execute the task
+     */
+    public static boolean isSupported(final Task task) {
+        if (task.getInputFiles() != null) {
+            for (TaskFile tf: task.getInputFiles()) {
+                if (tf.getUrl() != null && !tf.getUrl().isEmpty()) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Builds the key identifying the pilots and the queue of an application
+     * for a user.
+     *
+     * @param applicationId Identifier of the application
+     * @param userName The user
+     * @return The key
+     */
+    private static String getKey(final String applicationId,
+            final String userName) {
+        return applicationId + "|" + userName;
+    }
+
+    /**
+     * Describes a task to the pilot executing it.
+     * The executable and the initial arguments are the job description
+     * parameters <i>Executable</i> and <i>Arguments</i> of the application.
+     *
+     * @param task The task
+     * @return The description of the task
+     */
+    public static PilotAssignment describe(final Task task) {
+        final PilotAssignment assignment = new PilotAssignment();
+        assignment.setTaskId(task.getId());
+        final Application app = task.getApplicationDetail();
+        final List<String> arguments = new ArrayList<>();
+        if (app.getParameters() != null) {
+            assignment.setExecutable(Utilities.getParameterValue(
+                    app.getParameters(), JobDescription.EXECUTABLE));
+            final String appArguments = Utilities.getParameterValue(
+                    app.getParameters(), JobDescription.ARGUMENTS);
+            if (appArguments != null && !appArguments.isEmpty()) {
+                arguments.addAll(Arrays.asList(appArguments.split(",|;")));
+            }
+        }
+        if (task.getArguments() != null) {
+            arguments.addAll(task.getArguments());
+        }
+        assignment.setArguments(arguments);
+        assignment.setInputFiles(getNames(task.getInputFiles()));
+        assignment.setOutputFiles(getNames(task.getOutputFiles()));
+        return assignment;
+    }
+
+    /**
+     * Retrieves the names of the files.
+     *
+     * @param files The files
+     * @return The names
+     */
+    private static List<String> getNames(
+            final List<? extends TaskFile> files) {
+        final List<String> names = new ArrayList<>();
+        if (files != null) {
+            for (TaskFile tf: files) {
+                names.add(tf.getName());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Retrieves the pilot.
+     *
+     * @param pilotId Identifier of the pilot
+     * @return The pilot or null if the pilot is not active
+     */
+    public final Pilot getPilot(final String pilotId) {
+        final Pilot pilot = pilots.get(pilotId);
+        if (pilot == null || pilot.isLost(timeout)) {
+            return null;
+        }
+        return pilot;
+    }
+
+    /**
+     * Retrieves the number of tasks of a user waiting for a pilot.
+     *
+     * @param applicationId Identifier of the application
+     * @param userName The user
+     * @return The number of tasks
+     */
+    public final int getQueued(final String applicationId,
+            final String userName) {
+        final BlockingQueue<Task> queue = queues.get(getKey(applicationId,
+                userName));
+        if (queue == null) {
+            return 0;
+        }
+        return queue.size();
+    }
+
+    /**
+     * Retrieves the number of active pilots of an application for a user.
+     *
+     * @param applicationId Identifier of the application
+     * @param userName The user
+     * @return The number of pilots
+     */
+    public final int getPilots(final String applicationId,
+            final String userName) {
+        int count = 0;
+        for (Pilot pilot: pilots.values()) {
+            if (pilot.getApplicationId().equals(applicationId)
+                    && pilot.getUserName().equals(userName)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Queues a ready task for the pilots of its application and user.
+     * New pilots are submitted if needed. Tasks already queued are ignored
+     * and tasks not supported by the pilots are aborted.
+     *
+     * @param task The task
+     */
+    public final void enqueue(final Task task) {
+        if (!isSupported(task)) {
+            log.error("Task " + task.getId() + " has input files provided "
+                    + "by URL, not supported by the pilots");
+            TaskStates.abort(task);
+            return;
+        }
+        if (!queued.add(task.getId())) {
+            return;
+        }
+        final String key = getKey(task.getApplicationDetail().getId(),
+                task.getUserName());
+        BlockingQueue<Task> queue = queues.get(key);
+        if (queue == null) {
+            queues.putIfAbsent(key, new LinkedBlockingQueue<Task>());
+            queue = queues.get(key);
+        }
+        queue.offer(task);
+        log.debug("Task " + task.getId() + " waiting for a pilot");
+        ensurePilots(task);
+    }
+
+    /**
+     * Assigns the next queued task to a pilot.
+     *
+     * @param pilot The pilot
+     * @return The task or null if no task is waiting
+     */
+    public final Task next(final Pilot pilot) {
+        pilot.touch();
+        final BlockingQueue<Task> queue = queues.get(getKey(
+                pilot.getApplicationId(), pilot.getUserName()));
+        if (queue == null) {
+            return null;
+        }
+        Task task = queue.poll();
+        while (task != null && !assign(pilot, task)) {
+            task = queue.poll();
+        }
+        if (task == null) {
+            return null;
+        }
+        final Task job = pilot.getJob();
+        if (job != null) {
+            task.setAssociatedInfrastructureId(
+                    job.getAssociatedInfrastructureId());
+        }
+        log.debug("Task " + task.getId() + " assigned to the pilot "
+                + pilot.getId());
+        return task;
+    }
+
+    /**
+     * Assigns a task polled from the queue to a pilot.
+     * The task is assigned only if it is still ready when it moves to the
+     * state SCHEDULED. Tasks cancelled or aborted in the meantime are
+     * released.
+     *
+     * @param pilot The pilot
+     * @param task The task
+     * @return True if the task is assigned to the pilot
+     */
+    private boolean assign(final Pilot pilot, final Task task) {
+        queued.remove(task.getId());
+        if (task.getState() != Task.STATE.READY) {
+            return false;
+        }
+        assigned.put(task.getId(), task);
+        pilot.setCurrentTaskId(task.getId());
+        task.setNativeId(NATIVEPREFIX + pilot.getId());
+        if (TaskStates.transition(task, Task.STATE.SCHEDULED)) {
+            return true;
+        }
+        log.debug("Task " + task.getId() + " not ready for the pilot "
+                + pilot.getId());
+        assigned.remove(task.getId());
+        pilot.setCurrentTaskId(null);
+        task.setNativeId(null);
+        return false;
+    }
+
+    /**
+     * Retrieves a task assigned to a pilot.
+     *
+     * @param pilot The pilot
+     * @param taskId Identifier of the task
+     * @return The task or null if the task is not assigned to the pilot
+     */
+    public final Task getAssigned(final Pilot pilot, final String taskId) {
+        final Task task = assigned.get(taskId);
+        if (task == null || !(NATIVEPREFIX + pilot.getId()).equals(
+                task.getNativeId())) {
+            return null;
+        }
+        return task;
+    }
+
+    /**
+     * Updates the state of a task reported by its pilot.
+     * Pilots can report only the states RUNNING, DONE and ABORTED.
+     *
+     * @param pilot The pilot
+     * @param taskId Identifier of the task
+     * @param state The new state
+     * @return True if the state is updated
+     */
+    public final boolean report(final Pilot pilot, final String taskId,
+            final Task.STATE state) {
+        pilot.touch();
+        final Task task = getAssigned(pilot, taskId);
+        if (task == null || (state != Task.STATE.RUNNING
+                && state != Task.STATE.DONE
+                && state != Task.STATE.ABORTED)) {
+            return false;
+        }
+        if (!TaskStates.transition(task, state)) {
+            return false;
+        }
+        if (TaskStates.isFinal(state)) {
+            assigned.remove(taskId);
+            pilot.setCurrentTaskId(null);
+        }
+        return true;
+    }
+
+    /**
+     * Verifies the pilot executing a task is still active.
+     * Tasks of pilots lost, or unknown after a restart of the service, are
+     * aborted.
+     *
+     * @param task The task
+     */
+    public final void check(final Task task) {
+        final String pilotId = task.getNativeId().substring(
+                NATIVEPREFIX.length());
+        if (getPilot(pilotId) == null) {
+            log.error("Pilot of the task " + task.getId() + " lost");
+            assigned.remove(task.getId());
+            final Pilot pilot = pilots.get(pilotId);
+            if (pilot != null
+                    && task.getId().equals(pilot.getCurrentTaskId())) {
+                pilot.setCurrentTaskId(null);
+            }
+            TaskStates.transition(task, Task.STATE.ABORTED);
+        }
+    }
+
+    /**
+     * Removes the pilots lost and submits new pilots for the tasks waiting.
+     * Tasks executed by the pilots lost are aborted.
+     */
+    public final void sweep() {
+        final Iterator<Pilot> it = pilots.values().iterator();
+        while (it.hasNext()) {
+            final Pilot pilot = it.next();
+            if (pilot.isLost(timeout)) {
+                it.remove();
+                log.info("Pilot " + pilot.getId() + " removed");
+                final String taskId = pilot.getCurrentTaskId();
+                if (taskId != null) {
+                    final Task task = assigned.remove(taskId);
+                    if (task != null) {
+                        TaskStates.transition(task, Task.STATE.ABORTED);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<String, BlockingQueue<Task>> entry
+                : queues.entrySet()) {
+            final Task waiting = entry.getValue().peek();
+            if (waiting != null) {
+                ensurePilots(waiting);
+            }
+        }
+    }
+
+    /**
+     * Submits new pilots for the application and the user of a task.
+     * Pilots are added until they are as many as the tasks waiting or the
+     * maximum for the application is reached. After a failed launch new
+     * pilots are not submitted until the retry delay is elapsed. If the
+     * launch fails too many times and no pilot is active the tasks waiting
+     * are aborted.
+     *
+     * @param task A task waiting for the pilots
+     */
+    private synchronized void ensurePilots(final Task task) {
+        final Application app = task.getApplicationDetail();
+        final String user = task.getUserName();
+        final String key = getKey(app.getId(), user);
+        final BlockingQueue<Task> queue = queues.get(key);
+        LaunchFailures failures = launchFailures.get(key);
+        if (failures != null && !failures.isRetryDue()) {
+            return;
+        }
+        int active = getPilots(app.getId(), user);
+        final int max = getMaxPilots(app);
+        boolean launched = true;
+        while (launched && active < max && active < queue.size()) {
+            launched = launchPilot(app, user);
+            if (launched) {
+                active++;
+            }
+        }
+        if (launched) {
+            launchFailures.remove(key);
+            return;
+        }
+        if (failures == null) {
+            failures = new LaunchFailures();
+            launchFailures.put(key, failures);
+        }
+        final int attempts = failures.fail();
+        if (active > 0 || attempts <= Constants.PILOTLAUNCHRETRIES) {
+            log.warn("Launch of the pilots for the application "
+                    + app.getId() + " failed " + attempts + " times, "
+                    + active + " pilots active");
+            return;
+        }
+        launchFailures.remove(key);
+        log.error("No pilots available for the application "
+                + app.getId() + " after " + attempts + " attempts");
+        Task waiting = queue.poll();
+        while (waiting != null) {
+            queued.remove(waiting.getId());
+            TaskStates.abort(waiting);
+            waiting = queue.poll();
+        }
+    }
+
+    /**
+     * Retrieves the maximum number of pilots of an application.
+     *
+     * @param app The application
+     * @return The number of pilots
+     */
+    private int getMaxPilots(final Application app) {
+        final String value = Utilities.getParameterValue(
+                app.getParameters(), PILOTSPARAM);
+        if (value != null) {
+            try {
+                return Math.max(1, Integer.parseInt(value.trim()));
+            } catch (NumberFormatException nfe) {
+                log.warn("Parameter " + PILOTSPARAM + " of application "
+                        + app.getId() + " is not valid");
+            }
+        }
+        return Constants.PILOTSPERAPPLICATION;
+    }
+
+    /**
+     * Submits a pilot job.
+     * The pilot job is a task of the pilot application receiving as
+     * arguments the URL of the server and the pilot identifier.
+     *
+     * @param app The application of the tasks executed by the pilot
+     * @param user The user submitting the pilot
+     * @return True if the pilot is submitted
+     */
+    private boolean launchPilot(final Application app, final String user) {
+        final String pilotAppId = Utilities.getParameterValue(
+                app.getParameters(), PILOTAPPPARAM);
+        final Pilot pilot = new Pilot(UUID.randomUUID().toString(),
+                app.getId(), user);
+        final Task job = new Task();
+        job.setDescription("Pilot of the application " + app.getId());
+        job.setArguments(Arrays.asList(serverUrl, pilot.getId()));
+        job.setDateCreated(new Date());
+        job.setUserName(user);
+        job.setState(Task.STATE.PENDING);
+        final EntityManager em = emf.createEntityManager();
+        EntityTransaction et = null;
+        try {
+            et = em.getTransaction();
+            et.begin();
+            final Application pilotApp = em.find(Application.class,
+                    pilotAppId);
+            if (pilotApp == null) {
+                log.error("Pilot application " + pilotAppId + " of the "
+                        + "application " + app.getId() + " not found");
+                return false;
+            }
+            job.setApplicationDetail(pilotApp);
+            em.persist(job);
+            et.commit();
+        } catch (RuntimeException re) {
+            log.error("Impossible to create the pilot job");
+            log.error(re);
+            return false;
+        } finally {
+            if (et != null && et.isActive()) {
+                et.rollback();
+            }
+            em.close();
+        }
+        pilot.setJob(job);
+        pilots.put(pilot.getId(), pilot);
+        final Storage store = monitorQueue.getStorage();
+        store.createCache(Storage.RESOURCE.TASKS, job.getId());
+        job.addObserver(new TaskObserver(emf,
+                monitorQueue.getSubmissionPool(), store, monitorQueue,
+                monitorQueue.getWriteBehind()));
+        job.setState(Task.STATE.WAITING);
+        log.info("Pilot " + job.getId() + " submitted for the application "
+                + app.getId());
+        return true;
+    }
+
+    /**
+     * Consecutive failed launches of the pilots.
+     */
+    private static final class LaunchFailures {
+
+        /**
+         * Number of consecutive failures.
+         */
+        private int failures;
+
+        /**
+         * Time, in milliseconds, when a new launch is allowed.
+         */
+        private long retryAt;
+
+        /**
+         * Verifies if a new launch is allowed.
+         *
+         * @return True if the retry delay is elapsed
+         */
+        boolean isRetryDue() {
+            return System.currentTimeMillis() >= retryAt;
+        }
+
+        /**
+         * Records a failed launch and computes the time of the next launch.
+         *
+         * @return The number of consecutive failures
+         */
+        int fail() {
+            failures++;
+            retryAt = System.currentTimeMillis() + CircuitBreaker.backoff(
+                    Constants.PILOTLAUNCHRETRYDELAY,
+                    Constants.PILOTLAUNCHMAXDELAY, failures);
+            return failures;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Live counters of the infrastructures.
+ * For every infrastructure the metrics keep the number of outstanding tasks,
+ * submitted and not yet completed, and the moving average of the
+ * submission latency and of the failure rate.
+ * <p>
+ * The submitter registers the tasks and the result of the submissions while
+ * the monitor registers the tasks found running and the completed ones.
+ * Registrations are idempotent so a task is counted once even if reported
+ * many times.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class InfraMetrics {
+
+    /**
+     * Weight of a new sample in the moving averages.
+     */
+    private static final double WEIGHT = 0.2;
+
+    /**
+     * Counters by infrastructure Id.
+     */
+    private final ConcurrentMap<String, Counters> counters =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Infrastructure of the outstanding tasks by task Id.
+     */
+    private final ConcurrentMap<String, String> assignments =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Retrieves the counters of an infrastructure, creating them if needed.
+     *
+     * @param infraId The infrastructure Id
+     * @return The counters
+     */
+    private Counters getCounters(final String infraId) {
+        Counters c = counters.get(infraId);
+        if (c == null) {
+            final Counters created = new Counters();
+            c = counters.putIfAbsent(infraId, created);
+            if (c == null) {
+                c = created;
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Registers a task as outstanding on an infrastructure.
+     * If the task was registered on a different infrastructure it is moved.
+     *
+     * @param infraId The infrastructure Id
+     * @param taskId The task Id
+     */
+    public final void started(final String infraId, final String taskId) {
+        if (infraId == null || taskId == null) {
+            return;
+        }
+        final String previous = assignments.put(taskId, infraId);
+        if (infraId.equals(previous)) {
+            return;
+        }
+        if (previous != null) {
+            getCounters(previous).outstanding.decrementAndGet();
+        }
+        getCounters(infraId).outstanding.incrementAndGet();
+    }
+
+    /**
+     * Registers the completion of a task.
+     *
+     * @param taskId The task Id
+     */
+    public final void finished(final String taskId) {
+        if (taskId == null) {
+            return;
+        }
+        final String infraId = assignments.remove(taskId);
+        if (infraId != null) {
+            getCounters(infraId).outstanding.decrementAndGet();
+        }
+    }
+
+    /**
+     * Registers the result of a submission.
+     *
+     * @param infraId The infrastructure Id
+     * @param latency Time spent for the submission in milliseconds
+     * @param success True if the job was submitted, false otherwise
+     */
+    public final void submitted(final String infraId, final long latency,
+            final boolean success) {
+        if (infraId == null) {
+            return;
+        }
+        getCounters(infraId).add(latency, success);
+    }
+
+    /**
+     * Retrieves the number of outstanding tasks of an infrastructure.
+     *
+     * @param infraId The infrastructure Id
+     * @return The number of tasks
+     */
+    public final int getOutstanding(final String infraId) {
+        final Counters c = counters.get(infraId);
+        if (c == null) {
+            return 0;
+        }
+        return Math.max(0, c.outstanding.get());
+    }
+
+    /**
+     * Retrieves the average submission latency of an infrastructure.
+     *
+     * @param infraId The infrastructure Id
+     * @return The latency in milliseconds or a negative value if no
+     * submission has been performed
+     */
+    public final double getLatency(final String infraId) {
+        final Counters c = counters.get(infraId);
+        if (c == null) {
+            return -1;
+        }
+        return c.getLatency();
+    }
+
+    /**
+     * Retrieves the average failure rate of the submissions to an
+     * infrastructure.
+     *
+     * @param infraId The infrastructure Id
+     * @return The failure rate, between 0 and 1
+     */
+    public final double getFailureRate(final String infraId) {
+        final Counters c = counters.get(infraId);
+        if (c == null) {
+            return 0;
+        }
+        return c.getFailureRate();
+    }
+
+    /**
+     * Removes all the counters.
+     */
+    public final void clear() {
+        assignments.clear();
+        counters.clear();
+    }
+
+
+    /**
+     * Counters of a single infrastructure.
+     */
+    private static final class Counters {
+
+        /**
+         * Outstanding tasks.
+         */
+        private final AtomicInteger outstanding = new AtomicInteger();
+
+        /**
+         * Average latency in milliseconds, negative if unknown.
+         */
+        private double latency = -1;
+
+        /**
+         * Average failure rate.
+         */
+        private double failureRate;
+
+        /**
+         * Adds a submission to the averages.
+         *
+         * @param aLatency The latency of the submission
+         * @param success The result of the submission
+         */
+        synchronized void add(final long aLatency, final boolean success) {
+            if (latency < 0) {
+                latency = aLatency;
+            } else {
+                latency += WEIGHT * (aLatency - latency);
+            }
+            double sample = 0;
+            if (!success) {
+                sample = 1;
+            }
+            failureRate += WEIGHT * (sample - failureRate);
+        }
+
+        /**
+         * Retrieves the average latency.
+         *
+         * @return The latency
+         */
+        synchronized double getLatency() {
+            return latency;
+        }
+
+        /**
+         * Retrieves the average failure rate.
+         *
+         * @return The failure rate
+         */
+        synchronized double getFailureRate() {
+            return failureRate;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.List;
+
+/**
+ * Selects the infrastructure expected to start the task sooner.
+ * The expected time is estimated multiplying the outstanding tasks, plus the
+ * new one, by the average submission latency and dividing by the success
+ * rate, since a failed submission has to be repeated elsewhere.
+ * Infrastructures never used get the average latency of the others.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class LatencyAwareSelector extends ScoredSelector {
+
+    /**
+     * Minimum success rate considered, to keep the score finite.
+     */
+    private static final double MINSUCCESSRATE = 0.05;
+
+    /**
+     * Build the selector.
+     *
+     * @param someMetrics The metrics of the infrastructures
+     */
+    public LatencyAwareSelector(final InfraMetrics someMetrics) {
+        super(someMetrics);
+    }
+
+    @Override
+    public final double score(final Infrastructure anInfrastructure,
+            final List<Infrastructure> someInfrastructures) {
+        final InfraMetrics m = getMetrics();
+        double latency = m.getLatency(anInfrastructure.getId());
+        if (latency < 0) {
+            latency = averageLatency(someInfrastructures);
+        }
+        final double successRate = Math.max(MINSUCCESSRATE,
+                1 - m.getFailureRate(anInfrastructure.getId()));
+        return (m.getOutstanding(anInfrastructure.getId()) + 1)
+                * Math.max(1, latency) / successRate;
+    }
+
+    /**
+     * Computes the average latency of the infrastructures already used.
+     *
+     * @param someInfrastructures The infrastructures
+     * @return The average latency or 1 if no infrastructure was used
+     */
+    private double averageLatency(
+            final List<Infrastructure> someInfrastructures) {
+        double sum = 0;
+        int known = 0;
+        for (Infrastructure infra: someInfrastructures) {
+            final double l = getMetrics().getLatency(infra.getId());
+            if (l >= 0) {
+                sum += l;
+                known++;
+            }
+        }
+        if (known == 0) {
+            return 1;
+        }
+        return sum / known;
+    }
+}
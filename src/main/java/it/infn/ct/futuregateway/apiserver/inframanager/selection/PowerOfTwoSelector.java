@@ -0,0 +1,76 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the best of two infrastructures chosen at random.
+ * Comparing only two random candidates avoids that many tasks, selected
+ * before the metrics are updated, move together to the same
+ * infrastructure.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class PowerOfTwoSelector implements InfrastructureSelector {
+
+    /**
+     * Selector scoring the candidates.
+     */
+    private final ScoredSelector scorer;
+
+    /**
+     * Build the selector.
+     *
+     * @param aScorer The selector scoring the candidates
+     */
+    public PowerOfTwoSelector(final ScoredSelector aScorer) {
+        this.scorer = aScorer;
+    }
+
+    @Override
+    public final Infrastructure select(
+            final List<Infrastructure> someInfrastructures) {
+        if (someInfrastructures == null || someInfrastructures.isEmpty()) {
+            return null;
+        }
+        final int size = someInfrastructures.size();
+        if (size == 1) {
+            return someInfrastructures.get(0);
+        }
+        final ThreadLocalRandom rand = ThreadLocalRandom.current();
+        final int first = rand.nextInt(size);
+        int second = rand.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        final Infrastructure a = someInfrastructures.get(first);
+        final Infrastructure b = someInfrastructures.get(second);
+        if (scorer.score(b, someInfrastructures)
+                < scorer.score(a, someInfrastructures)) {
+            return b;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,95 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Selects the infrastructure with the lowest score.
+ * Infrastructures with the same score are selected at random so the load
+ * is spread when the metrics are not available yet.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public abstract class ScoredSelector implements InfrastructureSelector {
+
+    /**
+     * Metrics of the infrastructures.
+     */
+    private final InfraMetrics metrics;
+
+    /**
+     * Build the selector.
+     *
+     * @param someMetrics The metrics of the infrastructures
+     */
+    public ScoredSelector(final InfraMetrics someMetrics) {
+        this.metrics = someMetrics;
+    }
+
+    /**
+     * Retrieves the metrics used by the selector.
+     *
+     * @return The metrics
+     */
+    public final InfraMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Computes the score of an infrastructure.
+     * Lower scores identify the infrastructure starting the task sooner.
+     *
+     * @param anInfrastructure The infrastructure
+     * @param someInfrastructures All the infrastructures in the selection
+     * @return The score
+     */
+    public abstract double score(Infrastructure anInfrastructure,
+            List<Infrastructure> someInfrastructures);
+
+    @Override
+    public Infrastructure select(
+            final List<Infrastructure> someInfrastructures) {
+        if (someInfrastructures == null || someInfrastructures.isEmpty()) {
+            return null;
+        }
+        Infrastructure best = null;
+        double bestScore = Double.MAX_VALUE;
+        int ties = 0;
+        for (Infrastructure infra: someInfrastructures) {
+            final double s = score(infra, someInfrastructures);
+            if (best == null || s < bestScore) {
+                best = infra;
+                bestScore = s;
+                ties = 1;
+            } else if (s == bestScore) {
+                ties++;
+                if (ThreadLocalRandom.current().nextInt(ties) == 0) {
+                    best = infra;
+                }
+            }
+        }
+        return best;
+    }
+}
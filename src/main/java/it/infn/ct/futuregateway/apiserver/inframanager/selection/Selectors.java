@@ -0,0 +1,137 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Access to the infrastructure selection policy in use.
+ * The policy is configured by name when the application starts. Available
+ * policies are <i>random</i>, <i>leastOutstanding</i>, <i>latencyAware</i>
+ * and <i>powerOfTwo</i> (default), comparing two random infrastructures
+ * with the latency aware score.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public final class Selectors {
+
+    /**
+     * Random selection.
+     */
+    public static final String RANDOM = "random";
+
+    /**
+     * Selection of the infrastructure with less outstanding tasks.
+     */
+    public static final String LEASTOUTSTANDING = "leastOutstanding";
+
+    /**
+     * Selection based on outstanding tasks, latency and failures.
+     */
+    public static final String LATENCYAWARE = "latencyAware";
+
+    /**
+     * Best of two random infrastructures.
+     */
+    public static final String POWEROFTWO = "powerOfTwo";
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private static final Log LOG =
+            LogFactory.getLog(Selectors.class);
+
+    /**
+     * Metrics of the infrastructures.
+     */
+    private static final InfraMetrics METRICS =
+            new InfraMetrics();
+
+    /**
+     * Policy in use.
+     */
+    private static volatile InfrastructureSelector selector =
+            new RandomSelector();
+
+    /**
+     * Avoid the class be instantiable.
+     */
+    private Selectors() { }
+
+    /**
+     * Retrieves the metrics of the infrastructures.
+     *
+     * @return The metrics
+     */
+    public static InfraMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * Retrieves the policy in use.
+     *
+     * @return The selector
+     */
+    public static InfrastructureSelector getSelector() {
+        return selector;
+    }
+
+    /**
+     * Sets the policy to use.
+     *
+     * @param aSelector The selector. If null the random selection is used
+     */
+    public static void setSelector(final InfrastructureSelector aSelector) {
+        if (aSelector == null) {
+            selector = new RandomSelector();
+        } else {
+            selector = aSelector;
+        }
+    }
+
+    /**
+     * Creates a policy from the name.
+     * Unknown names create the default policy.
+     *
+     * @param name The name of the policy
+     * @param someMetrics The metrics used by the policy
+     * @return The selector
+     */
+    public static InfrastructureSelector create(final String name,
+            final InfraMetrics someMetrics) {
+        if (RANDOM.equals(name)) {
+            return new RandomSelector();
+        }
+        if (LEASTOUTSTANDING.equals(name)) {
+            return new LeastOutstandingSelector(someMetrics);
+        }
+        if (LATENCYAWARE.equals(name)) {
+            return new LatencyAwareSelector(someMetrics);
+        }
+        if (name != null && !POWEROFTWO.equals(name)) {
+            LOG.warn("Infrastructure selection '" + name + "' not "
+                    + "available. Policy '" + POWEROFTWO + "' is used");
+        }
+        return new PowerOfTwoSelector(new LatencyAwareSelector(someMetrics));
+    }
+}
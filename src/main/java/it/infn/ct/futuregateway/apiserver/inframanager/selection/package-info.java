@@ -0,0 +1,29 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+/**
+ * Policies selecting the infrastructure where a task is executed.
+ * Policies use the load and the latency of the infrastructures, collected
+ * by the submitter and the monitor in {@link InfraMetrics}.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
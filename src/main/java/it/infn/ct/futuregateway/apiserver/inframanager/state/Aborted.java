@@ -32,20 +32,14 @@ import java.util.concurrent.ExecutorService;
  */
 public class Aborted extends TaskState {
     /**
-     * Reference to the task.
+     * Builds the Aborted concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-    /**
-     * Builds the Aborted concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Aborted(final Task aTask) {
-        this.task = aTask;
+    Aborted() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
         // Aborted is a final state and no further actions have to be performed.
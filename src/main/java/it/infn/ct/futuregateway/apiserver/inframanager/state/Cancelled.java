@@ -35,20 +35,14 @@ import java.util.concurrent.ExecutorService;
  */
 public class Cancelled extends TaskState {
     /**
-     * Reference to the task.
+     * Builds the Cancelled concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-    /**
-     * Builds the Cancelled concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Cancelled(final Task aTask) {
-        this.task = aTask;
+    Cancelled() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
         // Cancelled is a final state and no further actions have
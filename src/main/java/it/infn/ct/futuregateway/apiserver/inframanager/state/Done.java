@@ -24,6 +24,7 @@ package it.infn.ct.futuregateway.apiserver.inframanager.state;
 import fr.in2p3.jsaga.impl.job.instance.JobImpl;
 import it.infn.ct.futuregateway.apiserver.inframanager.CustomJobFactory;
 import it.infn.ct.futuregateway.apiserver.inframanager.InfrastructureException;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import java.util.concurrent.BlockingQueue;
@@ -47,34 +48,32 @@ public class Done extends TaskState {
     /**
      * Logger object. Based on apache commons logging.
      */
-    private final Log log = LogFactory.getLog(Scheduled.class);
-    /**
-     * Reference to the task.
-     */
-    private Task task;
+    private final Log log = LogFactory.getLog(Done.class);
 
     /**
-     * Builds the Done concrete state and associates the task.
-     * @param aTask The associated task
+     * Builds the Done concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    public Done(final Task aTask) {
-        this.task = aTask;
+    Done() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
+        if (PilotManager.isPilotTask(aTask)) {
+            return;
+        }
         try {
-            final Job job = CustomJobFactory.createJob(this.task, aStorage);
+            final Job job = CustomJobFactory.createJob(aTask, aStorage);
             ((JobImpl) job).postStagingAndCleanup();
         } catch (InfrastructureException | BadParameterException
                 | DoesNotExistException | NotImplementedException
                 | PermissionDeniedException | IncorrectStateException
                 | TimeoutException | NoSuccessException ex) {
             this.log.error("Unable to retrive get job for task "
-                    + this.task.getId() + "Exception: " + ex.getMessage());
-            this.task.setState(Task.STATE.ABORTED);
+                    + aTask.getId() + "Exception: " + ex.getMessage());
+            TaskStates.transition(aTask, Task.STATE.ABORTED);
         }
     }
 
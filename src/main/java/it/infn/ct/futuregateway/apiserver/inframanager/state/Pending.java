@@ -35,20 +35,14 @@ import java.util.concurrent.ExecutorService;
  */
 public class Pending extends TaskState {
     /**
-     * Reference to the task.
+     * Builds the Pending concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-    /**
-     * Builds the Pending concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Pending(final Task aTask) {
-        this.task = aTask;
+    Pending() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
         // Pending state is preliminary and no action are requested. State will
@@ -21,18 +21,27 @@
 
 package it.infn.ct.futuregateway.apiserver.inframanager.state;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.DelayedTaskQueue;
 import it.infn.ct.futuregateway.apiserver.inframanager.Submitter;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 /**
  * Concrete state <i>Ready</i> for the task.
  * When a task is in Ready state the associated action will be to submit
- * the task to the remote infrastructure
+ * the task to the remote infrastructure. If the submission thread pool is
+ * saturated the submission is retried later through the monitor queue.
+ * <p>
+ * Tasks of applications in pilot mode are not submitted but queued for the
+ * pilots of the application.
  */
 public class Ready extends TaskState {
 
@@ -42,28 +51,51 @@ public class Ready extends TaskState {
     private final Log log = LogFactory.getLog(Ready.class);
 
     /**
-     * Reference to the task.
+     * Builds the Ready concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-   /**
-     * Builds the Ready concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Ready(final Task aTask) {
-        this.task = aTask;
+    Ready() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
-        if (this.task.getNativeId() == null) {
-            anExecutorService.execute(new Submitter(this.task, aStorage));
-            this.log.debug("Submitted the task: " + this.task.getId());
+        final PilotManager pilots = PilotManager.getInstance();
+        if (aTask.getNativeId() == null && pilots != null
+                && PilotManager.isPilotMode(aTask.getApplicationDetail())) {
+            pilots.enqueue(aTask);
+        } else if (aTask.getNativeId() == null) {
+            try {
+                anExecutorService.execute(new Submitter(aTask, aStorage,
+                        aBlockingQueue));
+                this.log.debug("Submitted the task: " + aTask.getId());
+            } catch (RejectedExecutionException ree) {
+                this.log.warn("Submission of task " + aTask.getId()
+                        + " rejected by the thread pool");
+                if (!retryLater(aTask, aBlockingQueue)) {
+                    this.log.error("Impossible to retry the submission of "
+                            + "task " + aTask.getId());
+                    TaskStates.transition(aTask, Task.STATE.ABORTED);
+                }
+            }
         } else {
-            this.task.setState(Task.STATE.SCHEDULED);
+            TaskStates.transition(aTask, Task.STATE.SCHEDULED);
         }
     }
 
+    /**
+     * Adds the task to the monitor queue to retry the submission later.
+     *
+     * @param aTask The task
+     * @param aBlockingQueue Queue for monitored tasks
+     * @return True if the task is in the queue, false otherwise
+     */
+    private boolean retryLater(final Task aTask,
+            final BlockingQueue<Task> aBlockingQueue) {
+        return aBlockingQueue != null && DelayedTaskQueue.scheduleOrOffer(
+                aBlockingQueue, aTask, Constants.SUBMISSIONRETRYAFTER,
+                TimeUnit.SECONDS);
+    }
+
 }
@@ -0,0 +1,146 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.state;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.CircuitBreaker;
+import it.infn.ct.futuregateway.apiserver.inframanager.CircuitBreakers;
+import it.infn.ct.futuregateway.apiserver.inframanager.CustomJobFactory;
+import it.infn.ct.futuregateway.apiserver.inframanager.DelayedTaskQueue;
+import it.infn.ct.futuregateway.apiserver.inframanager.InfrastructureException;
+import it.infn.ct.futuregateway.apiserver.inframanager.TransientInfrastructureException;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.ogf.saga.error.BadParameterException;
+import org.ogf.saga.error.DoesNotExistException;
+import org.ogf.saga.error.NoSuccessException;
+import org.ogf.saga.error.NotImplementedException;
+import org.ogf.saga.error.TimeoutException;
+import org.ogf.saga.job.Job;
+import org.ogf.saga.task.State;
+
+/**
+ * Abstract state for tasks running on a remote infrastructure.
+ * The associated action is to retrieve the state of the job from the remote
+ * infrastructure and eventually move the task to the next state. The remote
+ * state can also be retrieved by the caller, e.g. for many tasks at once, and
+ * provided with the method {@link #update(Task, State, BlockingQueue)}.
+ * <p>
+ * Checks are protected by the {@link CircuitBreaker} of the endpoint. While
+ * the circuit is open, or when the check fails, the task is checked again
+ * after a delay growing with the failed attempts, computed by
+ * {@link CircuitBreakers#getRetryDelay(CircuitBreakers, CircuitBreaker,
+ * int)}. Only timeouts and connection problems count as failures of the
+ * endpoint.
+ * <p>
+ * Tasks executed by a pilot are updated by the pilot itself, so the action
+ * only verifies the pilot is still active.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public abstract class RemoteState extends TaskState {
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(RemoteState.class);
+
+    @Override
+    public final void action(final Task aTask,
+            final ExecutorService anExecutorService,
+            final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
+        if (PilotManager.isPilotTask(aTask)) {
+            final PilotManager pilots = PilotManager.getInstance();
+            if (pilots == null) {
+                TaskStates.transition(aTask, Task.STATE.ABORTED);
+            } else {
+                pilots.check(aTask);
+            }
+            return;
+        }
+        final CircuitBreakers breakers = CustomJobFactory.getCircuitBreakers();
+        CircuitBreaker breaker = null;
+        if (breakers != null) {
+            breaker = breakers.get(aTask);
+        }
+        if (breaker != null && !breaker.allowRequest()) {
+            retryLater(aTask, breaker, breakers, aBlockingQueue);
+            return;
+        }
+        try {
+            final Job job = CustomJobFactory.createJob(aTask, aStorage);
+            final State remoteState = job.getState();
+            if (breaker != null) {
+                breaker.recordSuccess();
+            }
+            update(aTask, remoteState, aBlockingQueue);
+        } catch (TimeoutException | NoSuccessException
+                | TransientInfrastructureException ex) {
+            this.log.warn("Error checking job status: " + ex.getMessage());
+            if (breaker != null) {
+                breaker.recordFailure();
+            }
+            aTask.addFailedAttempt();
+            retryLater(aTask, breaker, breakers, aBlockingQueue);
+        } catch (InfrastructureException | BadParameterException
+                | DoesNotExistException | NotImplementedException ex) {
+            this.log.error("Error checking job status: " + ex.getMessage());
+            aTask.addFailedAttempt();
+            retryLater(aTask, breaker, breakers, aBlockingQueue);
+        }
+    }
+
+    /**
+     * Adds the task to the queue to check it later.
+     *
+     * @param aTask The task
+     * @param aBreaker The circuit breaker of the endpoint or null
+     * @param someBreakers The circuit breakers or null
+     * @param aBlockingQueue Queue for monitored tasks
+     */
+    private void retryLater(final Task aTask, final CircuitBreaker aBreaker,
+            final CircuitBreakers someBreakers,
+            final BlockingQueue<Task> aBlockingQueue) {
+        final long delay = CircuitBreakers.getRetryDelay(someBreakers,
+                aBreaker, aTask.getFailedAttempts());
+        if (!DelayedTaskQueue.scheduleOrOffer(aBlockingQueue, aTask, delay,
+                TimeUnit.MILLISECONDS)) {
+            this.log.error("Monitor queue full, task " + aTask.getId()
+                    + " is not monitored anymore");
+        }
+    }
+
+    /**
+     * Updates the task with the state of the job in the remote
+     * infrastructure.
+     *
+     * @param aTask The task
+     * @param aRemoteState The state of the remote job
+     * @param aBlockingQueue Queue for monitored tasks
+     */
+    public abstract void update(Task aTask, State aRemoteState,
+            BlockingQueue<Task> aBlockingQueue);
+}
@@ -21,20 +21,10 @@
 
 package it.infn.ct.futuregateway.apiserver.inframanager.state;
 
-import it.infn.ct.futuregateway.apiserver.inframanager.CustomJobFactory;
-import it.infn.ct.futuregateway.apiserver.inframanager.InfrastructureException;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
-import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.ogf.saga.error.BadParameterException;
-import org.ogf.saga.error.DoesNotExistException;
-import org.ogf.saga.error.NoSuccessException;
-import org.ogf.saga.error.NotImplementedException;
-import org.ogf.saga.error.TimeoutException;
-import org.ogf.saga.job.Job;
 import org.ogf.saga.task.State;
 
 /**
@@ -43,62 +33,43 @@ import org.ogf.saga.task.State;
  * state of the activity on the remote infrastructure and eventually move to
  * the next state.
  */
-public class Scheduled extends TaskState {
+public class Scheduled extends RemoteState {
     /**
      * Logger object. Based on apache commons logging.
      */
     private final Log log = LogFactory.getLog(Scheduled.class);
 
     /**
-     * Reference to the task.
+     * Builds the Scheduled concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-    /**
-     * Builds the Scheduled concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Scheduled(final Task aTask) {
-        this.task = aTask;
+    Scheduled() {
     }
 
     @Override
-    public final void action(
-            final ExecutorService anExecutorService,
-            final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
-
-        try {
-            final Job job = CustomJobFactory.createJob(this.task, aStorage);
-            final State state = job.getState();
-
-            this.task.updateCheckTime();
-            switch (state) {
-                case DONE:
-                    this.task.setState(Task.STATE.DONE);
-                    break;
-                case RUNNING:
-                    this.task.setState(Task.STATE.RUNNING);
-                    break;
-                case CANCELED:
-                    this.task.setState(Task.STATE.CANCELLED);
-                    break;
-                case FAILED:
-                case NEW:
-                case SUSPENDED:
-                    this.task.setState(Task.STATE.ABORTED);
-                    break;
-                default:
-                    this.log.error("Task: " + this.task.getId()
-                            + " is in a invalid state: " + state);
-                    this.task.setState(Task.STATE.ABORTED);
-                    break;
-            }
-        } catch (InfrastructureException | BadParameterException
-                | DoesNotExistException | NotImplementedException
-                | TimeoutException | NoSuccessException ex) {
-            final String msg = ex.getMessage();
-            this.log.error("Error checking job status: " + msg);
+    public final void update(final Task aTask, final State aRemoteState,
+            final BlockingQueue<Task> aBlockingQueue) {
+        aTask.updateCheckTime();
+        switch (aRemoteState) {
+            case DONE:
+                TaskStates.transition(aTask, Task.STATE.DONE);
+                break;
+            case RUNNING:
+                TaskStates.transition(aTask, Task.STATE.RUNNING);
+                break;
+            case CANCELED:
+                TaskStates.transition(aTask, Task.STATE.CANCELLED);
+                break;
+            case FAILED:
+            case NEW:
+            case SUSPENDED:
+                TaskStates.transition(aTask, Task.STATE.ABORTED);
+                break;
+            default:
+                this.log.error("Task: " + aTask.getId()
+                        + " is in a invalid state: " + aRemoteState);
+                TaskStates.transition(aTask, Task.STATE.ABORTED);
+                break;
         }
-
     }
 }
@@ -28,18 +28,22 @@ import java.util.concurrent.ExecutorService;
 
 /**
  * Abstract state for the task.
- * Based on state pattern
+ * Based on state pattern. States do not keep a reference to the task, which
+ * is provided to every method, so a single instance for each state is shared
+ * by all the tasks. Instances are retrieved from {@link TaskStates}.
  */
 public abstract class TaskState {
 
     /**
      * Perform the action connected with the task.
      *
+     * @param aTask The task
      * @param anExecutorService Executor performing active action on the task
      * @param aBlockingQueue Queue for monitored tasks
      * @param aStorage Cache storage
      */
     public abstract void action(
+            Task aTask,
             ExecutorService anExecutorService,
             BlockingQueue<Task> aBlockingQueue,
             Storage aStorage);
@@ -0,0 +1,183 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.state;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Table of the task states.
+ * The table associates every state with its handler and with the states the
+ * task can move to. Handlers are stateless and shared by all the tasks.
+ * State changes performed by the handlers are validated with
+ * {@link #transition(Task, Task.STATE)}.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public final class TaskStates {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private static final Log LOG = LogFactory.getLog(TaskStates.class);
+
+    /**
+     * Handlers by state.
+     */
+    private static final Map<Task.STATE, TaskState> HANDLERS =
+            new EnumMap<>(Task.STATE.class);
+
+    /**
+     * Allowed target states by source state.
+     */
+    private static final Map<Task.STATE, Set<Task.STATE>> TRANSITIONS =
+            new EnumMap<>(Task.STATE.class);
+
+    static {
+        HANDLERS.put(Task.STATE.PENDING, new Pending());
+        HANDLERS.put(Task.STATE.WAITING, new Waiting());
+        HANDLERS.put(Task.STATE.READY, new Ready());
+        HANDLERS.put(Task.STATE.SCHEDULED, new Scheduled());
+        HANDLERS.put(Task.STATE.RUNNING, new Running());
+        HANDLERS.put(Task.STATE.DONE, new Done());
+        HANDLERS.put(Task.STATE.ABORTED, new Aborted());
+        HANDLERS.put(Task.STATE.CANCELLED, new Cancelled());
+
+        allow(Task.STATE.PENDING, Task.STATE.WAITING);
+        allow(Task.STATE.WAITING, Task.STATE.READY);
+        allow(Task.STATE.READY, Task.STATE.SCHEDULED);
+        allow(Task.STATE.SCHEDULED, Task.STATE.RUNNING, Task.STATE.DONE);
+        allow(Task.STATE.RUNNING, Task.STATE.DONE);
+        allow(Task.STATE.DONE);
+        allow(Task.STATE.ABORTED);
+        allow(Task.STATE.CANCELLED);
+    }
+
+    /**
+     * Avoid the class be instantiable.
+     */
+    private TaskStates() { }
+
+    /**
+     * Registers the allowed transitions from a state.
+     * Every state, but the final ones, can move to ABORTED and CANCELLED.
+     * DONE can move to ABORTED if the output cannot be retrieved.
+     *
+     * @param from The source state
+     * @param to The target states
+     */
+    private static void allow(final Task.STATE from,
+            final Task.STATE... to) {
+        final Set<Task.STATE> targets = EnumSet.noneOf(Task.STATE.class);
+        Collections.addAll(targets, to);
+        if (from != Task.STATE.ABORTED && from != Task.STATE.CANCELLED) {
+            targets.add(Task.STATE.ABORTED);
+            if (from != Task.STATE.DONE) {
+                targets.add(Task.STATE.CANCELLED);
+            }
+        }
+        TRANSITIONS.put(from, Collections.unmodifiableSet(targets));
+    }
+
+    /**
+     * Retrieves the handler of a state.
+     *
+     * @param state The state
+     * @return The handler
+     */
+    public static TaskState get(final Task.STATE state) {
+        return HANDLERS.get(state);
+    }
+
+    /**
+     * Checks if a task can move between two states.
+     * Tasks without a state can move to any state and a task can always
+     * stay in the same state.
+     *
+     * @param from The current state
+     * @param to The new state
+     * @return True if the transition is allowed, false otherwise
+     */
+    public static boolean isAllowed(final Task.STATE from,
+            final Task.STATE to) {
+        return from == null || from == to || TRANSITIONS.get(from).contains(to);
+    }
+
+    /**
+     * Checks if a state is final.
+     * Tasks in a final state are not running on the infrastructure anymore.
+     *
+     * @param state The state
+     * @return True if the state is DONE, ABORTED or CANCELLED
+     */
+    public static boolean isFinal(final Task.STATE state) {
+        return state == Task.STATE.DONE || state == Task.STATE.ABORTED
+                || state == Task.STATE.CANCELLED;
+    }
+
+    /**
+     * Moves the task to a new state if the transition is allowed.
+     *
+     * @param task The task
+     * @param to The new state
+     * @return True if the state is changed, false if the transition is not
+     * allowed
+     */
+    public static boolean transition(final Task task, final Task.STATE to) {
+        if (!isAllowed(task.getState(), to)) {
+            LOG.error("Task " + task.getId() + " cannot move from "
+                    + task.getState() + " to " + to);
+            return false;
+        }
+        task.setState(to);
+        return true;
+    }
+
+    /**
+     * Aborts a task after a failure.
+     * Tasks already in a final state are not changed. The transition from
+     * DONE to ABORTED is allowed only to the DONE handler, when the output
+     * cannot be retrieved, so a failure of other components cannot change
+     * the outcome of a completed task.
+     *
+     * @param task The task
+     * @return True if the task is aborted, false if it was already in a
+     * final state
+     */
+    public static boolean abort(final Task task) {
+        if (task.getState() == Task.STATE.ABORTED) {
+            return true;
+        }
+        if (isFinal(task.getState())) {
+            LOG.error("Task " + task.getId() + " cannot move from "
+                    + task.getState() + " to " + Task.STATE.ABORTED);
+            return false;
+        }
+        return transition(task, Task.STATE.ABORTED);
+    }
+}
@@ -34,30 +34,24 @@ import java.util.concurrent.ExecutorService;
  */
 public class Waiting extends TaskState {
     /**
-     * Reference to the task.
+     * Builds the Waiting concrete state.
+     * Use {@link TaskStates#get(Task.STATE)} to retrieve the instance.
      */
-    private Task task;
-
-   /**
-     * Builds the Waiting concrete state and associates the task.
-     * @param aTask The associated task
-     */
-    public Waiting(final Task aTask) {
-        this.task = aTask;
+    Waiting() {
     }
 
     @Override
-    public final void action(
+    public final void action(final Task aTask,
             final ExecutorService anExecutorService,
             final BlockingQueue<Task> aBlockingQueue, final Storage aStorage) {
-        if (this.task.getInputFiles() != null) {
-            for (final TaskFile tf : this.task.getInputFiles()) {
+        if (aTask.getInputFiles() != null) {
+            for (final TaskFile tf : aTask.getInputFiles()) {
                 if (tf.getStatus().equals(TaskFile.FILESTATUS.NEEDED)) {
                     return;
                 }
             }
         }
-        this.task.setState(Task.STATE.READY);
+        TaskStates.transition(aTask, Task.STATE.READY);
     }
 
 }
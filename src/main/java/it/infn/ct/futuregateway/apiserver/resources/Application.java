@@ -25,6 +25,7 @@ import it.infn.ct.futuregateway.apiserver.utils.LinkJaxbAdapter;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.UUID;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.EnumType;
@@ -49,6 +50,8 @@ import javax.xml.bind.annotation.XmlType;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import org.glassfish.jersey.linking.InjectLink;
 import org.glassfish.jersey.linking.InjectLinks;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
@@ -64,6 +67,12 @@ import org.hibernate.annotations.FetchMode;
 @NamedQueries({
     @NamedQuery(name = "applications.all",
             query = "SELECT a FROM Application a"),
+    @NamedQuery(name = "applications.list",
+            query = "SELECT a.id, a.name, a.dateCreated, a.enabled,"
+                    + " a.outcome FROM Application a"),
+    @NamedQuery(name = "applications.listInfrastructures",
+            query = "SELECT a.id, i.id FROM Application a INNER JOIN "
+                    + "a.infrastructures i"),
     @NamedQuery(name = "applications.forInfrastructure",
             query = "SELECT a.id FROM Application a INNER JOIN "
                     + "a.infrastructures i WHERE i.id = :infraId")
@@ -71,6 +80,8 @@ import org.hibernate.annotations.FetchMode;
 
 @Entity
 @Table(name = "Application")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 @InjectLinks({
     @InjectLink(value = "applications/{id}", rel = "self"),
@@ -148,6 +159,7 @@ public class Application extends AccessibleElements {
      */
     @ManyToMany(cascade = CascadeType.REFRESH, fetch = FetchType.EAGER)
     @Fetch(FetchMode.SELECT)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @JoinTable(name = "Application_Infrastructures",
             joinColumns = {@JoinColumn(name = "applicationId",
                     referencedColumnName = "id",
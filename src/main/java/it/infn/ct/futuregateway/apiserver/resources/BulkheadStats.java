@@ -0,0 +1,362 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The BulkheadStats represents the usage of the resources isolated for an
+ * infrastructure.
+ * This is a read only resource generated by the service.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlRootElement(name = "bulkhead")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class BulkheadStats {
+
+    /**
+     * Identifier of the infrastructure.
+     */
+    private String infrastructureId;
+
+    /**
+     * Number of submission threads.
+     */
+    private int submissionThreads;
+
+    /**
+     * Number of submission threads in use.
+     */
+    private int submissionActive;
+
+    /**
+     * Maximum number of submissions waiting for a thread.
+     */
+    private int submissionQueueSize;
+
+    /**
+     * Number of submissions waiting for a thread.
+     */
+    private int submissionQueued;
+
+    /**
+     * Number of submissions rejected.
+     */
+    private long submissionRejected;
+
+    /**
+     * Maximum number of monitor threads checking tasks at the same time.
+     */
+    private int monitorLimit;
+
+    /**
+     * Number of monitor threads checking tasks.
+     */
+    private int monitorActive;
+
+    /**
+     * Number of checks postponed.
+     */
+    private long monitorDeferred;
+
+    /**
+     * Submissions per second allowed, 0 if not limited.
+     */
+    private double submissionRate;
+
+    /**
+     * Submissions allowed at once after an idle period.
+     */
+    private int submissionBurst;
+
+    /**
+     * Submissions currently allowed without waiting.
+     */
+    private double submissionTokens;
+
+    /**
+     * Submissions delayed by the rate limit.
+     */
+    private int submissionDelayed;
+
+    /**
+     * Saturation of the bulkhead.
+     */
+    private boolean saturated;
+
+    /**
+     * Retrieves the identifier of the infrastructure.
+     *
+     * @return The identifier
+     */
+    public final String getInfrastructureId() {
+        return infrastructureId;
+    }
+
+    /**
+     * Sets the identifier of the infrastructure.
+     *
+     * @param anInfrastructureId The identifier
+     */
+    public final void setInfrastructureId(final String anInfrastructureId) {
+        this.infrastructureId = anInfrastructureId;
+    }
+
+    /**
+     * Retrieves the number of submission threads.
+     *
+     * @return The number of threads
+     */
+    public final int getSubmissionThreads() {
+        return submissionThreads;
+    }
+
+    /**
+     * Sets the number of submission threads.
+     *
+     * @param someThreads The number of threads
+     */
+    public final void setSubmissionThreads(final int someThreads) {
+        this.submissionThreads = someThreads;
+    }
+
+    /**
+     * Retrieves the number of submission threads in use.
+     *
+     * @return The number of threads
+     */
+    public final int getSubmissionActive() {
+        return submissionActive;
+    }
+
+    /**
+     * Sets the number of submission threads in use.
+     *
+     * @param someThreads The number of threads
+     */
+    public final void setSubmissionActive(final int someThreads) {
+        this.submissionActive = someThreads;
+    }
+
+    /**
+     * Retrieves the maximum number of submissions waiting for a thread.
+     *
+     * @return The size of the queue
+     */
+    public final int getSubmissionQueueSize() {
+        return submissionQueueSize;
+    }
+
+    /**
+     * Sets the maximum number of submissions waiting for a thread.
+     *
+     * @param aSize The size of the queue
+     */
+    public final void setSubmissionQueueSize(final int aSize) {
+        this.submissionQueueSize = aSize;
+    }
+
+    /**
+     * Retrieves the number of submissions waiting for a thread.
+     *
+     * @return The number of submissions
+     */
+    public final int getSubmissionQueued() {
+        return submissionQueued;
+    }
+
+    /**
+     * Sets the number of submissions waiting for a thread.
+     *
+     * @param someSubmissions The number of submissions
+     */
+    public final void setSubmissionQueued(final int someSubmissions) {
+        this.submissionQueued = someSubmissions;
+    }
+
+    /**
+     * Retrieves the number of submissions rejected.
+     *
+     * @return The number of submissions
+     */
+    public final long getSubmissionRejected() {
+        return submissionRejected;
+    }
+
+    /**
+     * Sets the number of submissions rejected.
+     *
+     * @param someSubmissions The number of submissions
+     */
+    public final void setSubmissionRejected(final long someSubmissions) {
+        this.submissionRejected = someSubmissions;
+    }
+
+    /**
+     * Retrieves the maximum number of monitor threads.
+     *
+     * @return The number of threads
+     */
+    public final int getMonitorLimit() {
+        return monitorLimit;
+    }
+
+    /**
+     * Sets the maximum number of monitor threads.
+     *
+     * @param aLimit The number of threads
+     */
+    public final void setMonitorLimit(final int aLimit) {
+        this.monitorLimit = aLimit;
+    }
+
+    /**
+     * Retrieves the number of monitor threads checking tasks.
+     *
+     * @return The number of threads
+     */
+    public final int getMonitorActive() {
+        return monitorActive;
+    }
+
+    /**
+     * Sets the number of monitor threads checking tasks.
+     *
+     * @param someThreads The number of threads
+     */
+    public final void setMonitorActive(final int someThreads) {
+        this.monitorActive = someThreads;
+    }
+
+    /**
+     * Retrieves the number of checks postponed.
+     *
+     * @return The number of checks
+     */
+    public final long getMonitorDeferred() {
+        return monitorDeferred;
+    }
+
+    /**
+     * Sets the number of checks postponed.
+     *
+     * @param someChecks The number of checks
+     */
+    public final void setMonitorDeferred(final long someChecks) {
+        this.monitorDeferred = someChecks;
+    }
+
+    /**
+     * Retrieves the submission rate.
+     *
+     * @return The submissions per second, 0 if not limited
+     */
+    public final double getSubmissionRate() {
+        return submissionRate;
+    }
+
+    /**
+     * Sets the submission rate.
+     *
+     * @param aRate The submissions per second
+     */
+    public final void setSubmissionRate(final double aRate) {
+        this.submissionRate = aRate;
+    }
+
+    /**
+     * Retrieves the submissions allowed at once.
+     *
+     * @return The number of submissions
+     */
+    public final int getSubmissionBurst() {
+        return submissionBurst;
+    }
+
+    /**
+     * Sets the submissions allowed at once.
+     *
+     * @param aBurst The number of submissions
+     */
+    public final void setSubmissionBurst(final int aBurst) {
+        this.submissionBurst = aBurst;
+    }
+
+    /**
+     * Retrieves the submissions currently allowed without waiting.
+     *
+     * @return The available tokens
+     */
+    public final double getSubmissionTokens() {
+        return submissionTokens;
+    }
+
+    /**
+     * Sets the submissions currently allowed without waiting.
+     *
+     * @param someTokens The available tokens
+     */
+    public final void setSubmissionTokens(final double someTokens) {
+        this.submissionTokens = someTokens;
+    }
+
+    /**
+     * Retrieves the submissions delayed by the rate limit.
+     *
+     * @return The number of submissions
+     */
+    public final int getSubmissionDelayed() {
+        return submissionDelayed;
+    }
+
+    /**
+     * Sets the submissions delayed by the rate limit.
+     *
+     * @param someSubmissions The number of submissions
+     */
+    public final void setSubmissionDelayed(final int someSubmissions) {
+        this.submissionDelayed = someSubmissions;
+    }
+
+    /**
+     * Verifies if the bulkhead is saturated.
+     * A bulkhead is saturated when it cannot accept more submissions or
+     * all its monitor threads are in use.
+     *
+     * @return True if saturated
+     */
+    public final boolean isSaturated() {
+        return saturated;
+    }
+
+    /**
+     * Sets the saturation of the bulkhead.
+     *
+     * @param isSaturated True if saturated
+     */
+    public final void setSaturated(final boolean isSaturated) {
+        this.saturated = isSaturated;
+    }
+}
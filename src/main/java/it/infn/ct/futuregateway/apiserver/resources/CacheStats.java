@@ -0,0 +1,293 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The CacheStats represents the usage of the second-level cache.
+ * Counters are global and for every region of the cache. This is a read
+ * only resource generated by the service. If the statistics are not
+ * collected the resource reports them as disabled, without counters.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlRootElement(name = "cache")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class CacheStats {
+
+    /**
+     * Statistics collected.
+     */
+    private boolean enabled = true;
+
+    /**
+     * Elements found in the cache.
+     */
+    private long hits;
+
+    /**
+     * Elements not found in the cache.
+     */
+    private long misses;
+
+    /**
+     * Elements stored in the cache.
+     */
+    private long puts;
+
+    /**
+     * Fraction of the lookups found in the cache.
+     */
+    private double hitRatio;
+
+    /**
+     * Statistics of the regions.
+     */
+    private List<Region> regions = new ArrayList<>();
+
+    /**
+     * Checks if the statistics are collected.
+     *
+     * @return True if the statistics are collected, false otherwise
+     */
+    public final boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets if the statistics are collected.
+     *
+     * @param isEnabled True if the statistics are collected
+     */
+    public final void setEnabled(final boolean isEnabled) {
+        this.enabled = isEnabled;
+    }
+
+    /**
+     * Retrieves the elements found in the cache.
+     *
+     * @return The number of hits
+     */
+    public final long getHits() {
+        return hits;
+    }
+
+    /**
+     * Retrieves the elements not found in the cache.
+     *
+     * @return The number of misses
+     */
+    public final long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Retrieves the elements stored in the cache.
+     *
+     * @return The number of puts
+     */
+    public final long getPuts() {
+        return puts;
+    }
+
+    /**
+     * Sets the counters of the cache.
+     * The hit ratio is computed from the counters.
+     *
+     * @param someHits The number of hits
+     * @param someMisses The number of misses
+     * @param somePuts The number of puts
+     */
+    public final void setCounters(final long someHits, final long someMisses,
+            final long somePuts) {
+        this.hits = someHits;
+        this.misses = someMisses;
+        this.puts = somePuts;
+        this.hitRatio = computeRatio(someHits, someMisses);
+    }
+
+    /**
+     * Retrieves the fraction of the lookups found in the cache.
+     *
+     * @return The hit ratio, 0 if there are no lookups
+     */
+    public final double getHitRatio() {
+        return hitRatio;
+    }
+
+    /**
+     * Retrieves the statistics of the regions.
+     *
+     * @return The regions
+     */
+    public final List<Region> getRegions() {
+        return regions;
+    }
+
+    /**
+     * Adds the statistics of a region.
+     *
+     * @param aRegion The region
+     */
+    public final void addRegion(final Region aRegion) {
+        regions.add(aRegion);
+    }
+
+    /**
+     * Computes the fraction of the lookups found in the cache.
+     *
+     * @param someHits The number of hits
+     * @param someMisses The number of misses
+     * @return The hit ratio, 0 if there are no lookups
+     */
+    private static double computeRatio(final long someHits,
+            final long someMisses) {
+        if (someHits + someMisses == 0) {
+            return 0;
+        }
+        return (double) someHits / (someHits + someMisses);
+    }
+
+
+    /**
+     * Usage of a region of the cache.
+     * Every entity and collection cached has its own region.
+     */
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class Region {
+
+        /**
+         * Name of the region.
+         */
+        private String name;
+
+        /**
+         * Elements found in the region.
+         */
+        private long hits;
+
+        /**
+         * Elements not found in the region.
+         */
+        private long misses;
+
+        /**
+         * Elements stored in the region.
+         */
+        private long puts;
+
+        /**
+         * Elements currently in memory.
+         */
+        private long elements;
+
+        /**
+         * Fraction of the lookups found in the region.
+         */
+        private double hitRatio;
+
+        /**
+         * Build an empty region for the unmarshalling.
+         */
+        public Region() {
+        }
+
+        /**
+         * Build the region statistics.
+         *
+         * @param aName The name of the region
+         * @param someHits The number of hits
+         * @param someMisses The number of misses
+         * @param somePuts The number of puts
+         * @param someElements The number of elements in memory
+         */
+        public Region(final String aName, final long someHits,
+                final long someMisses, final long somePuts,
+                final long someElements) {
+            this.name = aName;
+            this.hits = someHits;
+            this.misses = someMisses;
+            this.puts = somePuts;
+            this.elements = someElements;
+            this.hitRatio = computeRatio(someHits, someMisses);
+        }
+
+        /**
+         * Retrieves the name of the region.
+         *
+         * @return The name
+         */
+        public final String getName() {
+            return name;
+        }
+
+        /**
+         * Retrieves the elements found in the region.
+         *
+         * @return The number of hits
+         */
+        public final long getHits() {
+            return hits;
+        }
+
+        /**
+         * Retrieves the elements not found in the region.
+         *
+         * @return The number of misses
+         */
+        public final long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Retrieves the elements stored in the region.
+         *
+         * @return The number of puts
+         */
+        public final long getPuts() {
+            return puts;
+        }
+
+        /**
+         * Retrieves the elements in memory.
+         *
+         * @return The number of elements, negative if not available
+         */
+        public final long getElements() {
+            return elements;
+        }
+
+        /**
+         * Retrieves the fraction of the lookups found in the region.
+         *
+         * @return The hit ratio, 0 if there are no lookups
+         */
+        public final double getHitRatio() {
+            return hitRatio;
+        }
+    }
+}
@@ -24,7 +24,9 @@ package it.infn.ct.futuregateway.apiserver.resources;
 import it.infn.ct.futuregateway.apiserver.utils.LinkJaxbAdapter;
 import java.util.List;
 import java.util.UUID;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.PrePersist;
 import javax.persistence.Table;
@@ -36,6 +38,8 @@ import javax.xml.bind.annotation.XmlRootElement;
 import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
 import org.glassfish.jersey.linking.InjectLink;
 import org.glassfish.jersey.linking.InjectLinks;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
 /**
  * The Infrastructure represents the remote infrastructure where application
@@ -209,11 +213,18 @@ import org.glassfish.jersey.linking.InjectLinks;
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  */
-@NamedQuery(name = "infrastructures.all",
-        query = "SELECT i FROM Infrastructure i")
+@NamedQueries({
+    @NamedQuery(name = "infrastructures.all",
+            query = "SELECT i FROM Infrastructure i"),
+    @NamedQuery(name = "infrastructures.list",
+            query = "SELECT i.id, i.name, i.dateCreated, i.enabled,"
+                    + " i.virtual FROM Infrastructure i")
+})
 
 @Entity
 @Table(name = "Infrastructure")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 
 @InjectLinks({
     @InjectLink(value = "infrastructures/{id}", rel = "self"),
@@ -0,0 +1,160 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+
+/**
+ * The PilotAssignment describes a task to a pilot executing it.
+ * It includes the command to run and the files to download before the
+ * execution and to upload after it.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlRootElement(name = "assignment")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class PilotAssignment {
+
+    /**
+     * Identifier of the task.
+     */
+    @XmlElement(name = "task")
+    private String taskId;
+
+    /**
+     * Executable of the application.
+     */
+    @XmlElement(name = "executable")
+    private String executable;
+
+    /**
+     * Arguments of the executable.
+     */
+    @XmlElement(name = "arguments")
+    private List<String> arguments;
+
+    /**
+     * Names of the input files.
+     */
+    @XmlElement(name = "input_files")
+    private List<String> inputFiles;
+
+    /**
+     * Names of the output files.
+     */
+    @XmlElement(name = "output_files")
+    private List<String> outputFiles;
+
+    /**
+     * Retrieves the identifier of the task.
+     *
+     * @return The task identifier
+     */
+    public final String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Sets the identifier of the task.
+     *
+     * @param aTaskId The task identifier
+     */
+    public final void setTaskId(final String aTaskId) {
+        this.taskId = aTaskId;
+    }
+
+    /**
+     * Retrieves the executable of the application.
+     *
+     * @return The executable
+     */
+    public final String getExecutable() {
+        return executable;
+    }
+
+    /**
+     * Sets the executable of the application.
+     *
+     * @param anExecutable The executable
+     */
+    public final void setExecutable(final String anExecutable) {
+        this.executable = anExecutable;
+    }
+
+    /**
+     * Retrieves the arguments of the executable.
+     *
+     * @return The arguments
+     */
+    public final List<String> getArguments() {
+        return arguments;
+    }
+
+    /**
+     * Sets the arguments of the executable.
+     *
+     * @param someArguments The arguments
+     */
+    public final void setArguments(final List<String> someArguments) {
+        this.arguments = someArguments;
+    }
+
+    /**
+     * Retrieves the names of the input files.
+     *
+     * @return The file names
+     */
+    public final List<String> getInputFiles() {
+        return inputFiles;
+    }
+
+    /**
+     * Sets the names of the input files.
+     *
+     * @param someFiles The file names
+     */
+    public final void setInputFiles(final List<String> someFiles) {
+        this.inputFiles = someFiles;
+    }
+
+    /**
+     * Retrieves the names of the output files.
+     *
+     * @return The file names
+     */
+    public final List<String> getOutputFiles() {
+        return outputFiles;
+    }
+
+    /**
+     * Sets the names of the output files.
+     *
+     * @param someFiles The file names
+     */
+    public final void setOutputFiles(final List<String> someFiles) {
+        this.outputFiles = someFiles;
+    }
+}
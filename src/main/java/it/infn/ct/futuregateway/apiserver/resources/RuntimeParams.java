@@ -31,13 +31,14 @@ import javax.xml.bind.annotation.XmlElement;
 /**
  * The class represent a generic runtime parameter.
  * Runtime parameters are associated with tasks and they differ from the normal
- * parameters because they have a timestamp.
+ * parameters because they have a timestamp. They change with the tasks so
+ * they are not cached.
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  */
 @XmlAccessorType(XmlAccessType.FIELD)
 @Entity
-public class RuntimeParams extends Params {
+public class RuntimeParams extends BaseParams {
     /**
      * The date when the task was created.
      */
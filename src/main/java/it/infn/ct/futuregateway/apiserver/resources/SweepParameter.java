@@ -0,0 +1,205 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+
+/**
+ * A parameter of a task array.
+ * The parameter defines the values replacing the placeholder
+ * <i>${name}</i> in the template of the array. Values are provided as an
+ * explicit list or as a numeric range from <i>start</i> to <i>end</i>,
+ * included, with the increment <i>step</i> (1 if not provided).
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class SweepParameter {
+
+    /**
+     * Name of the parameter.
+     */
+    @XmlElement(name = "name")
+    private String name;
+
+    /**
+     * Explicit values of the parameter.
+     */
+    @XmlElement(name = "values")
+    private List<String> values;
+
+    /**
+     * First value of the range.
+     */
+    @XmlElement(name = "start")
+    private BigDecimal start;
+
+    /**
+     * Last value of the range.
+     */
+    @XmlElement(name = "end")
+    private BigDecimal end;
+
+    /**
+     * Increment of the range.
+     */
+    @XmlElement(name = "step")
+    private BigDecimal step;
+
+    /**
+     * Retrieves the name of the parameter.
+     *
+     * @return The name
+     */
+    public final String getName() {
+        return name;
+    }
+
+    /**
+     * Sets the name of the parameter.
+     *
+     * @param aName The name
+     */
+    public final void setName(final String aName) {
+        this.name = aName;
+    }
+
+    /**
+     * Retrieves the explicit values of the parameter.
+     *
+     * @return The values
+     */
+    public final List<String> getValues() {
+        return values;
+    }
+
+    /**
+     * Sets the explicit values of the parameter.
+     *
+     * @param someValues The values
+     */
+    public final void setValues(final List<String> someValues) {
+        this.values = someValues;
+    }
+
+    /**
+     * Retrieves the first value of the range.
+     *
+     * @return The first value
+     */
+    public final BigDecimal getStart() {
+        return start;
+    }
+
+    /**
+     * Sets the first value of the range.
+     *
+     * @param aStart The first value
+     */
+    public final void setStart(final BigDecimal aStart) {
+        this.start = aStart;
+    }
+
+    /**
+     * Retrieves the last value of the range.
+     *
+     * @return The last value
+     */
+    public final BigDecimal getEnd() {
+        return end;
+    }
+
+    /**
+     * Sets the last value of the range.
+     *
+     * @param anEnd The last value
+     */
+    public final void setEnd(final BigDecimal anEnd) {
+        this.end = anEnd;
+    }
+
+    /**
+     * Retrieves the increment of the range.
+     *
+     * @return The increment
+     */
+    public final BigDecimal getStep() {
+        return step;
+    }
+
+    /**
+     * Sets the increment of the range.
+     *
+     * @param aStep The increment
+     */
+    public final void setStep(final BigDecimal aStep) {
+        this.step = aStep;
+    }
+
+    /**
+     * Generates the values of the parameter.
+     *
+     * @param maxValues Maximum number of values accepted
+     * @return The values in order
+     * @throws IllegalArgumentException If the parameter is not valid or it
+     * has more values than accepted
+     */
+    public final List<String> expand(final int maxValues) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Parameter without a name");
+        }
+        if (values != null && !values.isEmpty()) {
+            if (values.size() > maxValues) {
+                throw new IllegalArgumentException("Too many values for the "
+                        + "parameter " + name);
+            }
+            return new ArrayList<>(values);
+        }
+        if (start == null || end == null) {
+            throw new IllegalArgumentException("Parameter " + name
+                    + " requires a list of values or a range");
+        }
+        BigDecimal increment = BigDecimal.ONE;
+        if (step != null) {
+            increment = step;
+        }
+        if (increment.signum() <= 0 || start.compareTo(end) > 0) {
+            throw new IllegalArgumentException("Range of the parameter "
+                    + name + " not valid");
+        }
+        final List<String> range = new ArrayList<>();
+        for (BigDecimal v = start; v.compareTo(end) <= 0;
+                v = v.add(increment)) {
+            if (range.size() == maxValues) {
+                throw new IllegalArgumentException("Too many values for the "
+                        + "parameter " + name);
+            }
+            range.add(v.toPlainString());
+        }
+        return range;
+    }
+}
@@ -22,21 +22,15 @@
 package it.infn.ct.futuregateway.apiserver.resources;
 
 import it.infn.ct.futuregateway.apiserver.inframanager.TaskException;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Aborted;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Cancelled;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Done;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Pending;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Ready;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Running;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Scheduled;
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
 import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskState;
-import it.infn.ct.futuregateway.apiserver.inframanager.state.Waiting;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import it.infn.ct.futuregateway.apiserver.utils.LinkJaxbAdapter;
 import java.io.Serializable;
 import java.util.Date;
 import java.util.List;
 import java.util.Observable;
-import java.util.Random;
 import java.util.UUID;
 import javax.persistence.CascadeType;
 import javax.persistence.CollectionTable;
@@ -47,6 +41,7 @@ import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
 import javax.persistence.Id;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.ManyToOne;
 import javax.persistence.NamedQueries;
@@ -68,6 +63,7 @@ import org.apache.commons.collections4.ListUtils;
 import org.apache.commons.collections4.Predicate;
 import org.glassfish.jersey.linking.InjectLink;
 import org.glassfish.jersey.linking.InjectLinks;
+import org.hibernate.annotations.BatchSize;
 import org.hibernate.annotations.Fetch;
 import org.hibernate.annotations.FetchMode;
 
@@ -81,12 +77,32 @@ import org.hibernate.annotations.FetchMode;
     @NamedQuery(name = "tasks.userAll",
             query = "SELECT t.id, t.description, t.state, t.dateCreated"
             + " FROM Task t WHERE t.userName = :user"),
+    @NamedQuery(name = "tasks.state",
+            query = "SELECT t.state FROM Task t WHERE t.id = :id"),
     @NamedQuery(name = "tasks.forApplication",
             query = "SELECT t.id FROM Task t WHERE "
-                    + "t.applicationDetail.id = :appId")
+                    + "t.applicationDetail.id = :appId"),
+    @NamedQuery(name = "tasks.inStates",
+            query = "SELECT t FROM Task t JOIN FETCH t.applicationDetail"
+                    + " WHERE t.state IN :states AND t.id > :lastId"
+                    + " ORDER BY t.id"),
+    @NamedQuery(name = "tasks.countInStates",
+            query = "SELECT COUNT(t) FROM Task t WHERE t.state IN :states"),
+    @NamedQuery(name = "tasks.byIdInStates",
+            query = "SELECT t FROM Task t JOIN FETCH t.applicationDetail"
+                    + " WHERE t.id IN :ids AND t.state IN :states"),
+    @NamedQuery(name = "tasks.forArray",
+            query = "SELECT t.id FROM Task t WHERE t.taskArrayId = :arrayId"),
+    @NamedQuery(name = "tasks.countStatesForArray",
+            query = "SELECT t.state, COUNT(t) FROM Task t"
+                    + " WHERE t.taskArrayId = :arrayId GROUP BY t.state")
 })
 @Entity
-@Table(name = "Task")
+@Table(name = "Task", indexes = {
+    @Index(name = "task_user_date",
+            columnList = "userName, dateCreated, id"),
+    @Index(name = "task_status", columnList = "status")
+})
 
 @InjectLinks({
     @InjectLink(value = "tasks/{id}", rel = "self"),
@@ -217,6 +233,12 @@ public class Task extends Observable implements Serializable {
     @XmlElement(name = "last_change")
     private Date lastChange;
 
+    /**
+     * The task array generating the task, if any.
+     */
+    @XmlElement(name = "task_array")
+    private String taskArrayId;
+
     /**
      * Infrastructure executing the task.
      * An application can be associated with multiple infrastructure, this is
@@ -242,6 +264,20 @@ public class Task extends Observable implements Serializable {
     @XmlTransient
     private Date lastStatusCheckTime;
 
+    /**
+     * Number of consecutive state checks without a state change.
+     * The counter is used to adapt the interval between checks.
+     */
+    @XmlTransient
+    private int unchangedChecks;
+
+    /**
+     * Number of consecutive failed interactions with the infrastructure.
+     * The counter is used to delay the retries.
+     */
+    @XmlTransient
+    private int failedAttempts;
+
     /**
      * Retrieve the task identifier.
      *
@@ -366,6 +402,7 @@ public class Task extends Observable implements Serializable {
      * @return The list of arguments
      */
     @ElementCollection(fetch = FetchType.EAGER)
+    @BatchSize(size = Constants.TASKFETCHBATCHSIZE)
     @CollectionTable(name = "application_arguments",
             joinColumns = @JoinColumn(name = "id"))
     @Column(name = "arguments")
@@ -401,6 +438,7 @@ public class Task extends Observable implements Serializable {
     @OneToMany(cascade = CascadeType.ALL,
             fetch = FetchType.EAGER)
     @Fetch(FetchMode.SELECT)
+    @BatchSize(size = Constants.TASKFETCHBATCHSIZE)
     public List<TaskFileOutput> getOutputFiles() {
         return this.outputFiles;
     }
@@ -432,6 +470,7 @@ public class Task extends Observable implements Serializable {
     @OneToMany(cascade = CascadeType.ALL,
             fetch = FetchType.EAGER)
     @Fetch(FetchMode.SELECT)
+    @BatchSize(size = Constants.TASKFETCHBATCHSIZE)
     public List<TaskFileInput> getInputFiles() {
         return this.inputFiles;
     }
@@ -466,6 +505,8 @@ public class Task extends Observable implements Serializable {
 
     /**
      * Sets the state for the task.
+     * Observers receive the new state as argument only if the state is
+     * different from the previous one.
      *
      * @param aStatus The state to associate with the task
      * @see it.infn.ct.futuregateway.apiserver.v1.resources.Task.STATUS
@@ -473,8 +514,17 @@ public class Task extends Observable implements Serializable {
     public void setState(final STATE aStatus) {
         lastChange = new Date();
         setChanged();
+        final boolean changed = this.state != aStatus;
+        if (changed) {
+            this.unchangedChecks = 0;
+            this.failedAttempts = 0;
+        }
         this.state = aStatus;
-        notifyObservers();
+        if (changed) {
+            notifyObservers(aStatus);
+        } else {
+            notifyObservers();
+        }
     }
 
     /**
@@ -489,26 +539,11 @@ public class Task extends Observable implements Serializable {
      */
     @Transient
     public TaskState getStateManager() throws TaskException {
-        switch (state) {
-            case ABORTED:
-                return new Aborted(this);
-            case CANCELLED:
-                return new Cancelled(this);
-            case DONE:
-                return new Done(this);
-            case PENDING:
-                return new Pending(this);
-            case READY:
-                return new Ready(this);
-            case RUNNING:
-                return new Running(this);
-            case SCHEDULED:
-                return new Scheduled(this);
-            case WAITING:
-                return new Waiting(this);
-            default:
-                throw new TaskException("Inconsistent state");
+        final TaskState manager = TaskStates.get(state);
+        if (manager == null) {
+            throw new TaskException("Inconsistent state");
         }
+        return manager;
     }
 
     /**
@@ -522,6 +557,7 @@ public class Task extends Observable implements Serializable {
      */
     @OneToMany(cascade = CascadeType.ALL, fetch = FetchType.EAGER)
     @Fetch(FetchMode.SELECT)
+    @BatchSize(size = Constants.TASKFETCHBATCHSIZE)
     public List<RuntimeParams> getRuntime() {
         return runtime;
     }
@@ -609,6 +645,26 @@ public class Task extends Observable implements Serializable {
         setChanged();
     }
 
+    /**
+     * Retrieves the task array generating the task.
+     *
+     * @return The task array identifier or null if the task is not part of
+     * an array
+     */
+    @Column(name = "taskArrayId")
+    public String getTaskArrayId() {
+        return taskArrayId;
+    }
+
+    /**
+     * Sets the task array generating the task.
+     *
+     * @param aTaskArrayId The task array identifier
+     */
+    public void setTaskArrayId(final String aTaskArrayId) {
+        this.taskArrayId = aTaskArrayId;
+    }
+
     /**
      * Returns the references for this entity.
      *
@@ -654,7 +710,9 @@ public class Task extends Observable implements Serializable {
     /**
      * Retrieves the associated infrastructure Id.
      * This is the Id of the infrastructure selected to execute the task among
-     * the many the application can run on.
+     * the many the application can run on. If not assigned, the
+     * infrastructure is chosen among the enabled ones with the policy
+     * provided by {@link Selectors}.
      *
      * @return The infrastructure Id
      */
@@ -672,14 +730,9 @@ public class Task extends Observable implements Serializable {
                                 }
                             }
                     );
-            Random rand = new Random((new Date()).getTime());
-
-            while (!infras.isEmpty()) {
-                Infrastructure i = infras.remove(rand.nextInt(infras.size()));
-                if (i.isEnabled()) {
-                    setAssociatedInfrastructureId(i.getId());
-                    return associatedInfrastructureId;
-                }
+            final Infrastructure i = Selectors.getSelector().select(infras);
+            if (i != null) {
+                setAssociatedInfrastructureId(i.getId());
             }
         }
         return associatedInfrastructureId;
@@ -728,15 +781,67 @@ public class Task extends Observable implements Serializable {
         return lastStatusCheckTime;
     }
 
+    /**
+     * Retrieves the number of consecutive checks without a state change.
+     * The counter is reset every time the task changes state.
+     *
+     * @return The number of checks
+     */
+    @Transient
+    public int getUnchangedChecks() {
+        return unchangedChecks;
+    }
+
     /**
      * Update the time of last state check for a running task.
      */
     public void updateCheckTime() {
         if (state.equals(STATE.RUNNING) || state.equals(STATE.SCHEDULED)) {
             this.lastStatusCheckTime = new Date();
+            this.unchangedChecks++;
+            this.failedAttempts = 0;
         }
     }
 
+    /**
+     * Restores the state of the checks of a task reloaded from the
+     * database.
+     * The values are not persisted so they are kept by the components
+     * removing the task from memory.
+     *
+     * @param aLastCheck Time of the last state check
+     * @param someUnchangedChecks Number of checks without a state change
+     * @param someFailedAttempts Number of consecutive failed interactions
+     */
+    public void restoreChecks(final Date aLastCheck,
+            final int someUnchangedChecks, final int someFailedAttempts) {
+        this.lastStatusCheckTime = aLastCheck;
+        this.unchangedChecks = someUnchangedChecks;
+        this.failedAttempts = someFailedAttempts;
+    }
+
+    /**
+     * Retrieves the number of consecutive failed interactions with the
+     * infrastructure.
+     * The counter is reset when the task changes state or its state is
+     * checked.
+     *
+     * @return The number of failures
+     */
+    @Transient
+    public int getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    /**
+     * Registers a failed interaction with the infrastructure.
+     *
+     * @return The number of consecutive failures
+     */
+    public int addFailedAttempt() {
+        return ++failedAttempts;
+    }
+
     /**
      * Update the state of input files.
      * Change the state value for the input file specified. If the name is not
@@ -0,0 +1,597 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.utils.LinkJaxbAdapter;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.PrePersist;
+import javax.persistence.Table;
+import javax.persistence.Temporal;
+import javax.persistence.Transient;
+import javax.ws.rs.core.Link;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import org.glassfish.jersey.linking.InjectLink;
+import org.glassfish.jersey.linking.InjectLinks;
+
+/**
+ * The TaskArray represents a parametric sweep of an application.
+ * The array is created from a task template and a set of parameters. A task
+ * is generated for every combination of the parameter values replacing the
+ * placeholders <i>${name}</i> in the description, the arguments and the
+ * output file names of the template.
+ * <p>
+ * The state of the array is aggregated from the states of its tasks.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Entity
+@Table(name = "TaskArray")
+
+@InjectLinks({
+    @InjectLink(value = "taskarrays/{id}", rel = "self")
+})
+
+@XmlRootElement(name = "taskarray")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class TaskArray implements Serializable {
+
+    /**
+     * List of references.
+     */
+    @InjectLinks({
+        @InjectLink(value = "taskarrays/{id}", rel = "self")
+    })
+    @XmlElement(name = "_links")
+    @XmlJavaTypeAdapter(value = LinkJaxbAdapter.class)
+    private List<Link> links;
+
+    /**
+     * Identifier of the array.
+     */
+    @XmlElement(name = "id")
+    private String id;
+
+    /**
+     * Identifier of the application of the tasks.
+     */
+    @XmlElement(name = "application")
+    private String applicationId;
+
+    /**
+     * User description of the array.
+     */
+    private String description;
+
+    /**
+     * User creating the array.
+     */
+    @XmlElement(name = "user")
+    private String userName;
+
+    /**
+     * Creation time.
+     */
+    @XmlElement(name = "date")
+    private Date dateCreated;
+
+    /**
+     * Number of tasks in the array.
+     */
+    @XmlElement(name = "size")
+    private int size;
+
+    /**
+     * Template of the tasks.
+     */
+    @XmlElement(name = "template")
+    private Task template;
+
+    /**
+     * Parameters of the sweep.
+     */
+    @XmlElement(name = "parameters")
+    private List<SweepParameter> parameters;
+
+    /**
+     * State aggregated from the tasks.
+     */
+    @XmlElement(name = "status")
+    private Task.STATE state;
+
+    /**
+     * Number of tasks in every state.
+     */
+    @XmlElement(name = "status_count")
+    private List<StateCount> stateCounts;
+
+    /**
+     * Identifiers of the tasks.
+     */
+    @XmlElement(name = "tasks")
+    private List<String> taskIds;
+
+    /**
+     * Retrieves the array identifier.
+     *
+     * @return The identifier
+     */
+    @Id
+    @Column(name = "id")
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * Sets the array identifier.
+     *
+     * @param anId The identifier
+     */
+    public void setId(final String anId) {
+        this.id = anId;
+    }
+
+    /**
+     * Initialise the id.
+     * The id is generated with a random uuid as for the tasks.
+     */
+    @PrePersist
+    private void generateId() {
+        if (this.id == null || this.id.isEmpty()) {
+            this.id = UUID.randomUUID().toString();
+        }
+    }
+
+    /**
+     * Retrieves the application of the tasks.
+     *
+     * @return The application identifier
+     */
+    @Column(name = "applicationId")
+    public String getApplicationId() {
+        return applicationId;
+    }
+
+    /**
+     * Sets the application of the tasks.
+     *
+     * @param anApplication The application identifier
+     */
+    public void setApplicationId(final String anApplication) {
+        this.applicationId = anApplication;
+    }
+
+    /**
+     * Retrieves the user description.
+     *
+     * @return The description
+     */
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Sets the user description.
+     *
+     * @param aDescription The description
+     */
+    public void setDescription(final String aDescription) {
+        this.description = aDescription;
+    }
+
+    /**
+     * Retrieves the user creating the array.
+     *
+     * @return The user identifier
+     */
+    public String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Sets the user creating the array.
+     *
+     * @param aUser The user identifier
+     */
+    public void setUserName(final String aUser) {
+        this.userName = aUser;
+    }
+
+    /**
+     * Retrieves the creation time.
+     *
+     * @return Creation time
+     */
+    @Temporal(javax.persistence.TemporalType.TIMESTAMP)
+    public Date getDateCreated() {
+        return dateCreated;
+    }
+
+    /**
+     * Sets the creation time.
+     *
+     * @param creationDate The creation time
+     */
+    public void setDateCreated(final Date creationDate) {
+        this.dateCreated = creationDate;
+    }
+
+    /**
+     * Retrieves the number of tasks in the array.
+     *
+     * @return The number of tasks
+     */
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Sets the number of tasks in the array.
+     *
+     * @param aSize The number of tasks
+     */
+    public void setSize(final int aSize) {
+        this.size = aSize;
+    }
+
+    /**
+     * Retrieves the template of the tasks.
+     *
+     * @return The template
+     */
+    @Transient
+    public Task getTemplate() {
+        return template;
+    }
+
+    /**
+     * Sets the template of the tasks.
+     *
+     * @param aTemplate The template
+     */
+    public void setTemplate(final Task aTemplate) {
+        this.template = aTemplate;
+    }
+
+    /**
+     * Retrieves the parameters of the sweep.
+     *
+     * @return The parameters
+     */
+    @Transient
+    public List<SweepParameter> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * Sets the parameters of the sweep.
+     *
+     * @param someParameters The parameters
+     */
+    public void setParameters(final List<SweepParameter> someParameters) {
+        this.parameters = someParameters;
+    }
+
+    /**
+     * Retrieves the state aggregated from the tasks.
+     *
+     * @return The state
+     * @see #setStateCounts(java.util.List)
+     */
+    @Transient
+    public Task.STATE getState() {
+        return state;
+    }
+
+    /**
+     * Retrieves the number of tasks in every state.
+     *
+     * @return The counters
+     */
+    @Transient
+    public List<StateCount> getStateCounts() {
+        return stateCounts;
+    }
+
+    /**
+     * Sets the number of tasks in every state and aggregates the state of
+     * the array.
+     * When all the tasks are in a final state the array is DONE if all the
+     * tasks are DONE, ABORTED if some task is ABORTED and CANCELLED
+     * otherwise. When some task is still active the array is RUNNING if any
+     * task has been scheduled, otherwise it takes the earliest state of its
+     * tasks.
+     *
+     * @param someCounts The counters
+     */
+    public void setStateCounts(final List<StateCount> someCounts) {
+        this.stateCounts = someCounts;
+        this.state = null;
+        if (someCounts == null || someCounts.isEmpty()) {
+            return;
+        }
+        final Set<Task.STATE> present = new HashSet<>();
+        boolean allFinal = true;
+        boolean started = false;
+        Task.STATE earliest = null;
+        for (StateCount sc: someCounts) {
+            if (sc.getCount() == 0) {
+                continue;
+            }
+            present.add(sc.getState());
+            if (TaskStates.isFinal(sc.getState())) {
+                started = true;
+            } else {
+                allFinal = false;
+                if (sc.getState().compareTo(Task.STATE.SCHEDULED) >= 0) {
+                    started = true;
+                }
+                if (earliest == null
+                        || sc.getState().compareTo(earliest) < 0) {
+                    earliest = sc.getState();
+                }
+            }
+        }
+        if (allFinal) {
+            this.state = Task.STATE.CANCELLED;
+            if (present.contains(Task.STATE.ABORTED)) {
+                this.state = Task.STATE.ABORTED;
+            } else if (present.size() == 1
+                    && present.contains(Task.STATE.DONE)) {
+                this.state = Task.STATE.DONE;
+            }
+        } else if (started) {
+            this.state = Task.STATE.RUNNING;
+        } else {
+            this.state = earliest;
+        }
+    }
+
+    /**
+     * Retrieves the identifiers of the tasks.
+     *
+     * @return The task identifiers
+     */
+    @Transient
+    public List<String> getTaskIds() {
+        return taskIds;
+    }
+
+    /**
+     * Sets the identifiers of the tasks.
+     *
+     * @param someTaskIds The task identifiers
+     */
+    public void setTaskIds(final List<String> someTaskIds) {
+        this.taskIds = someTaskIds;
+    }
+
+    /**
+     * Retrieves the references for this entity.
+     *
+     * @return The list of Link references
+     */
+    @Transient
+    public List<Link> getLinks() {
+        return links;
+    }
+
+    /**
+     * Sets the references for this entity.
+     *
+     * @param someLinks The list of link references
+     */
+    public void setLinks(final List<Link> someLinks) {
+        this.links = someLinks;
+    }
+
+    /**
+     * Generates the tasks of the array.
+     * A task is created for every combination of the parameter values, the
+     * last parameter changing first. Tasks are associated with the array and
+     * its application but they are not persisted.
+     *
+     * @param maxTasks Maximum number of tasks accepted
+     * @return The tasks
+     * @throws IllegalArgumentException If the template or the parameters are
+     * not valid or they generate more tasks than accepted
+     */
+    public List<Task> createTasks(final int maxTasks) {
+        if (template == null) {
+            throw new IllegalArgumentException("A task template must be "
+                    + "provided");
+        }
+        if (parameters == null || parameters.isEmpty()) {
+            throw new IllegalArgumentException("At least a parameter must be "
+                    + "provided");
+        }
+        final List<String> names = new ArrayList<>();
+        final List<List<String>> values = new ArrayList<>();
+        long combinations = 1;
+        for (SweepParameter sp: parameters) {
+            if (names.contains(sp.getName())) {
+                throw new IllegalArgumentException("Parameter "
+                        + sp.getName() + " repeated");
+            }
+            final List<String> spValues = sp.expand(maxTasks);
+            combinations *= spValues.size();
+            if (combinations > maxTasks) {
+                throw new IllegalArgumentException("The array cannot have "
+                        + "more than " + maxTasks + " tasks");
+            }
+            names.add(sp.getName());
+            values.add(spValues);
+        }
+        final List<Task> tasks = new ArrayList<>((int) combinations);
+        final int[] index = new int[values.size()];
+        final Map<String, String> binding = new LinkedHashMap<>();
+        for (int n = 0; n < combinations; n++) {
+            for (int i = 0; i < index.length; i++) {
+                binding.put(names.get(i), values.get(i).get(index[i]));
+            }
+            tasks.add(createTask(binding));
+            for (int i = index.length - 1; i >= 0; i--) {
+                index[i]++;
+                if (index[i] < values.get(i).size()) {
+                    break;
+                }
+                index[i] = 0;
+            }
+        }
+        this.size = tasks.size();
+        return tasks;
+    }
+
+    /**
+     * Creates a task from the template.
+     *
+     * @param binding Values of the parameters
+     * @return The task
+     */
+    private Task createTask(final Map<String, String> binding) {
+        final Task task = new Task();
+        task.setApplicationId(applicationId);
+        task.setTaskArrayId(id);
+        String taskDescription = template.getDescription();
+        if (taskDescription == null) {
+            taskDescription = description;
+        }
+        task.setDescription(substitute(taskDescription, binding));
+        if (template.getArguments() != null) {
+            final List<String> arguments = new ArrayList<>();
+            for (String arg: template.getArguments()) {
+                arguments.add(substitute(arg, binding));
+            }
+            task.setArguments(arguments);
+        }
+        if (template.getInputFiles() != null) {
+            final List<TaskFileInput> inputs = new ArrayList<>();
+            for (TaskFileInput tfi: template.getInputFiles()) {
+                final TaskFileInput input = new TaskFileInput();
+                input.setName(tfi.getName());
+                input.setUrl(tfi.getUrl());
+                inputs.add(input);
+            }
+            task.setInputFiles(inputs);
+        }
+        if (template.getOutputFiles() != null) {
+            final List<TaskFileOutput> outputs = new ArrayList<>();
+            for (TaskFileOutput tfo: template.getOutputFiles()) {
+                final TaskFileOutput output = new TaskFileOutput();
+                output.setName(substitute(tfo.getName(), binding));
+                outputs.add(output);
+            }
+            task.setOutputFiles(outputs);
+        }
+        return task;
+    }
+
+    /**
+     * Replaces the placeholders of the parameters in a text.
+     *
+     * @param text The text
+     * @param binding Values of the parameters
+     * @return The text with the values of the parameters
+     */
+    private static String substitute(final String text,
+            final Map<String, String> binding) {
+        if (text == null) {
+            return null;
+        }
+        String result = text;
+        for (Map.Entry<String, String> param: binding.entrySet()) {
+            result = result.replace("${" + param.getKey() + "}",
+                    param.getValue());
+        }
+        return result;
+    }
+
+
+    /**
+     * Number of tasks of the array in a state.
+     */
+    @XmlAccessorType(XmlAccessType.FIELD)
+    public static class StateCount {
+
+        /**
+         * The state.
+         */
+        @XmlElement(name = "status")
+        private Task.STATE state;
+
+        /**
+         * Number of tasks in the state.
+         */
+        @XmlElement(name = "count")
+        private long count;
+
+        /**
+         * Build an empty counter.
+         */
+        public StateCount() {
+        }
+
+        /**
+         * Build the counter.
+         *
+         * @param aState The state
+         * @param aCount Number of tasks in the state
+         */
+        public StateCount(final Task.STATE aState, final long aCount) {
+            this.state = aState;
+            this.count = aCount;
+        }
+
+        /**
+         * Retrieves the state.
+         *
+         * @return The state
+         */
+        public final Task.STATE getState() {
+            return state;
+        }
+
+        /**
+         * Retrieves the number of tasks in the state.
+         *
+         * @return The number of tasks
+         */
+        public final long getCount() {
+            return count;
+        }
+    }
+}
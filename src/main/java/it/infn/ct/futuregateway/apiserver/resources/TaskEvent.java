@@ -0,0 +1,142 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import java.util.Date;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlRootElement;
+import javax.xml.bind.annotation.XmlTransient;
+
+/**
+ * The TaskEvent represents a change of state of a task.
+ * Events are sent to the clients following the tasks. This is a read only
+ * resource generated by the service.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlRootElement(name = "event")
+@XmlAccessorType(XmlAccessType.FIELD)
+public class TaskEvent {
+
+    /**
+     * Sequence number of the event.
+     * Clients use it to resume the stream after a disconnection.
+     */
+    @XmlTransient
+    private long sequence;
+
+    /**
+     * The task changed.
+     */
+    @XmlElement(name = "task")
+    private String taskId;
+
+    /**
+     * The owner of the task.
+     */
+    @XmlTransient
+    private String userName;
+
+    /**
+     * The new state of the task.
+     */
+    @XmlElement(name = "status")
+    private Task.STATE state;
+
+    /**
+     * The time of the change.
+     */
+    @XmlElement(name = "date")
+    private Date date;
+
+    /**
+     * Build an empty event.
+     */
+    public TaskEvent() {
+    }
+
+    /**
+     * Build the event.
+     *
+     * @param aSequence The sequence number of the event
+     * @param aTaskId The task changed
+     * @param aUserName The owner of the task
+     * @param aState The new state of the task
+     * @param aDate The time of the change
+     */
+    public TaskEvent(final long aSequence, final String aTaskId,
+            final String aUserName, final Task.STATE aState,
+            final Date aDate) {
+        this.sequence = aSequence;
+        this.taskId = aTaskId;
+        this.userName = aUserName;
+        this.state = aState;
+        this.date = aDate;
+    }
+
+    /**
+     * Retrieves the sequence number of the event.
+     *
+     * @return The sequence number
+     */
+    public final long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Retrieves the task changed.
+     *
+     * @return The task id
+     */
+    public final String getTaskId() {
+        return taskId;
+    }
+
+    /**
+     * Retrieves the owner of the task.
+     *
+     * @return The user name
+     */
+    public final String getUserName() {
+        return userName;
+    }
+
+    /**
+     * Retrieves the new state of the task.
+     *
+     * @return The state
+     */
+    public final Task.STATE getState() {
+        return state;
+    }
+
+    /**
+     * Retrieves the time of the change.
+     *
+     * @return The date
+     */
+    public final Date getDate() {
+        return date;
+    }
+}
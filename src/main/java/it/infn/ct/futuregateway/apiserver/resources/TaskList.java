@@ -58,7 +58,12 @@ public class TaskList {
     /**
      * List of associated tasks.
      */
-    private List<Task> tasks;
+    private List<TaskSummary> tasks;
+
+    /**
+     * Cursor of the next page, null if this is the last page.
+     */
+    private String next;
 
     /**
      * Create an empty task list.
@@ -73,7 +78,7 @@ public class TaskList {
      *
      * @param someTasks Tasks to insert in the list
      */
-    public TaskList(final List<Task> someTasks) {
+    public TaskList(final List<TaskSummary> someTasks) {
         this.tasks = someTasks;
     }
 
@@ -82,7 +87,7 @@ public class TaskList {
      *
      * @return List of tasks
      */
-    public final List<Task> getTasks() {
+    public final List<TaskSummary> getTasks() {
         return tasks;
     }
 
@@ -91,7 +96,27 @@ public class TaskList {
      *
      * @param someTasks A list of tasks
      */
-    public final void setTasks(final List<Task> someTasks) {
+    public final void setTasks(final List<TaskSummary> someTasks) {
         this.tasks = someTasks;
     }
+
+    /**
+     * Retrieve the cursor of the next page.
+     * The cursor has to be provided in the parameter <i>after</i> to
+     * retrieve the following tasks.
+     *
+     * @return The cursor or null if there are no more tasks
+     */
+    public final String getNext() {
+        return next;
+    }
+
+    /**
+     * Set the cursor of the next page.
+     *
+     * @param aCursor The cursor or null if there are no more tasks
+     */
+    public final void setNext(final String aCursor) {
+        this.next = aCursor;
+    }
 }
@@ -0,0 +1,137 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import it.infn.ct.futuregateway.apiserver.utils.LinkJaxbAdapter;
+import java.util.Date;
+import java.util.List;
+import javax.ws.rs.core.Link;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.adapters.XmlJavaTypeAdapter;
+import org.glassfish.jersey.linking.InjectLink;
+import org.glassfish.jersey.linking.InjectLinks;
+
+/**
+ * The TaskSummary represents a task in the task list.
+ * Only the fields shown in the list are included. Differently from the
+ * {@link Task} the summary is not observed so it can be built for every
+ * row of the list without side effects.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+public class TaskSummary {
+
+    /**
+     * List of references.
+     */
+    @InjectLinks({
+        @InjectLink(value = "tasks/{id}", rel = "self"),
+        @InjectLink(value = "tasks/{id}/input", rel = "input")
+    })
+    @XmlElement(name = "_links")
+    @XmlJavaTypeAdapter(value = LinkJaxbAdapter.class)
+    private List<Link> links;
+
+    /**
+     * The identifier of the task.
+     */
+    @XmlElement(name = "id")
+    private String id;
+
+    /**
+     * A user provided description of the task.
+     */
+    private String description;
+
+    /**
+     * The current state of the task.
+     */
+    @XmlElement(name = "status")
+    private Task.STATE state;
+
+    /**
+     * The date when the task was created.
+     */
+    @XmlElement(name = "date")
+    private Date dateCreated;
+
+    /**
+     * Build an empty summary.
+     */
+    public TaskSummary() {
+    }
+
+    /**
+     * Build the summary of a task.
+     *
+     * @param anId The task id
+     * @param aDescription The task description
+     * @param aState The task state
+     * @param aDate The creation date
+     */
+    public TaskSummary(final String anId, final String aDescription,
+            final Task.STATE aState, final Date aDate) {
+        this.id = anId;
+        this.description = aDescription;
+        this.state = aState;
+        this.dateCreated = aDate;
+    }
+
+    /**
+     * Retrieves the task id.
+     *
+     * @return The id
+     */
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Retrieves the task description.
+     *
+     * @return The description
+     */
+    public final String getDescription() {
+        return description;
+    }
+
+    /**
+     * Retrieves the task state.
+     *
+     * @return The state
+     */
+    public final Task.STATE getState() {
+        return state;
+    }
+
+    /**
+     * Retrieves the creation date.
+     *
+     * @return The date
+     */
+    public final Date getDateCreated() {
+        return dateCreated;
+    }
+}
@@ -0,0 +1,410 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources.observers;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Date;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Distributes the changes of state of the tasks to the connected clients.
+ * Every client subscribes for a task or for all the tasks of a user and
+ * receives the events through a {@link TaskEventSink}.
+ * <p>
+ * Events are written by a pool of threads so the thread changing the task
+ * never waits for the clients. Every client has a bounded buffer and a
+ * client not able to keep the pace is disconnected, it can reconnect and
+ * resume the stream from the last event received. The recent events are
+ * kept for this purpose.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TaskEventStream {
+
+    /**
+     * The stream in use.
+     */
+    private static volatile TaskEventStream instance;
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TaskEventStream.class);
+
+    /**
+     * Recent events, the oldest first.
+     * The lock of the history serialises also the delivery so every client
+     * receives the events in order and without gaps.
+     */
+    private final Deque<TaskEvent> history = new ArrayDeque<>();
+
+    /**
+     * Maximum number of events in the history.
+     */
+    private final int historySize;
+
+    /**
+     * Maximum number of events waiting for a client.
+     */
+    private final int bufferSize;
+
+    /**
+     * Threads writing the events.
+     */
+    private final Executor writers;
+
+    /**
+     * Connected clients.
+     */
+    private final ConcurrentMap<TaskEventSink, Subscriber> subscribers =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Sequence number of the last event.
+     */
+    private long sequence;
+
+    /**
+     * Build the stream.
+     *
+     * @param aHistorySize Number of recent events kept to resume the streams
+     * @param aBufferSize Maximum number of events waiting for a client
+     * @param someWriters Threads writing the events
+     */
+    public TaskEventStream(final int aHistorySize, final int aBufferSize,
+            final Executor someWriters) {
+        this.historySize = aHistorySize;
+        this.bufferSize = aBufferSize;
+        this.writers = someWriters;
+    }
+
+    /**
+     * Retrieves the stream in use.
+     *
+     * @return The stream or null if the events are not available
+     */
+    public static TaskEventStream getInstance() {
+        return instance;
+    }
+
+    /**
+     * Sets the stream in use.
+     *
+     * @param aStream The stream or null to disable the events
+     */
+    public static void setInstance(final TaskEventStream aStream) {
+        instance = aStream;
+    }
+
+    /**
+     * Publishes the current state of a task.
+     *
+     * @param task The task changed
+     * @return The event published
+     */
+    public final TaskEvent publish(final Task task) {
+        synchronized (history) {
+            final TaskEvent event = new TaskEvent(++sequence, task.getId(),
+                    task.getUserName(), task.getState(), new Date());
+            history.addLast(event);
+            if (history.size() > historySize) {
+                history.removeFirst();
+            }
+            for (Subscriber s: subscribers.values()) {
+                if (s.matches(event)) {
+                    s.offer(event);
+                }
+            }
+            return event;
+        }
+    }
+
+    /**
+     * Retrieves the sequence number of the last event.
+     *
+     * @return The sequence number, 0 if there are no events
+     */
+    public final long getLastSequence() {
+        synchronized (history) {
+            return sequence;
+        }
+    }
+
+    /**
+     * Retrieves the last event of a task in the history.
+     *
+     * @param taskId The task
+     * @return The event or null if the history has no events of the task
+     */
+    public final TaskEvent getLastEvent(final String taskId) {
+        synchronized (history) {
+            final Iterator<TaskEvent> it = history.descendingIterator();
+            while (it.hasNext()) {
+                final TaskEvent event = it.next();
+                if (event.getTaskId().equals(taskId)) {
+                    return event;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Subscribes a client.
+     * If the client is resuming the stream the events following the last
+     * received are sent first, if still in the history. If they exceed the
+     * buffer of the client the connection is closed and the client is not
+     * subscribed.
+     *
+     * @param taskId The task to follow or null for all the tasks of the user
+     * @param userName The user owning the tasks or null for any user
+     * @param lastSequence The sequence number of the last event received or
+     * a negative value for a new stream
+     * @param sink The connection of the client
+     */
+    public final void subscribe(final String taskId, final String userName,
+            final long lastSequence, final TaskEventSink sink) {
+        final Subscriber s = new Subscriber(taskId, userName, sink);
+        synchronized (history) {
+            if (lastSequence >= 0 && lastSequence <= sequence) {
+                for (TaskEvent event: history) {
+                    if (event.getSequence() > lastSequence
+                            && s.matches(event) && !s.add(event)) {
+                        log.info("Too many events to resume the stream, "
+                                + "the client is disconnected");
+                        s.close();
+                        return;
+                    }
+                }
+            }
+            subscribers.put(sink, s);
+        }
+        s.schedule();
+    }
+
+    /**
+     * Removes a client and closes its connection.
+     *
+     * @param sink The connection of the client
+     */
+    public final void unsubscribe(final TaskEventSink sink) {
+        final Subscriber s = subscribers.remove(sink);
+        if (s != null) {
+            s.close();
+        }
+    }
+
+    /**
+     * Retrieves the number of connected clients.
+     *
+     * @return The number of clients
+     */
+    public final int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Sends a heartbeat to all the clients.
+     * Clients disconnected are detected and removed.
+     */
+    public final void heartbeat() {
+        for (Subscriber s: subscribers.values()) {
+            s.offer(null);
+        }
+    }
+
+    /**
+     * Disconnects all the clients.
+     */
+    public final void closeAll() {
+        for (TaskEventSink sink: subscribers.keySet()) {
+            unsubscribe(sink);
+        }
+    }
+
+
+    /**
+     * Client of the stream with its buffer.
+     */
+    private final class Subscriber implements Runnable {
+
+        /**
+         * Heartbeat in the buffer.
+         */
+        private final TaskEvent heartbeatMark = new TaskEvent();
+
+        /**
+         * The task followed, null for all.
+         */
+        private final String taskId;
+
+        /**
+         * The owner of the tasks followed, null for any.
+         */
+        private final String userName;
+
+        /**
+         * The connection.
+         */
+        private final TaskEventSink sink;
+
+        /**
+         * Events waiting to be written.
+         */
+        private final BlockingQueue<TaskEvent> buffer;
+
+        /**
+         * True if a writer is sending the events.
+         */
+        private final AtomicBoolean writing = new AtomicBoolean();
+
+        /**
+         * True if the connection is closed.
+         */
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        /**
+         * Build the subscriber.
+         *
+         * @param aTaskId The task followed, null for all
+         * @param aUserName The owner of the tasks followed, null for any
+         * @param aSink The connection
+         */
+        Subscriber(final String aTaskId, final String aUserName,
+                final TaskEventSink aSink) {
+            this.taskId = aTaskId;
+            this.userName = aUserName;
+            this.sink = aSink;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+        }
+
+        /**
+         * Verifies if the client follows the task of the event.
+         *
+         * @param event The event
+         * @return True if the event has to be sent
+         */
+        boolean matches(final TaskEvent event) {
+            return (taskId == null || taskId.equals(event.getTaskId()))
+                    && (userName == null
+                            || userName.equals(event.getUserName()));
+        }
+
+        /**
+         * Adds an event to the buffer without sending it.
+         *
+         * @param event The event
+         * @return True if the event is added, false if the buffer is full
+         */
+        boolean add(final TaskEvent event) {
+            return buffer.offer(event);
+        }
+
+        /**
+         * Adds an event to the buffer and sends it.
+         * A full buffer disconnects the client.
+         *
+         * @param event The event or null for a heartbeat
+         */
+        void offer(final TaskEvent event) {
+            TaskEvent element = event;
+            if (element == null) {
+                element = heartbeatMark;
+            }
+            if (!add(element)) {
+                log.info("Client of the task events too slow, it is "
+                        + "disconnected");
+                close();
+                return;
+            }
+            schedule();
+        }
+
+        /**
+         * Removes the client and closes its connection.
+         * The connection is closed once, also if the client is not
+         * subscribed.
+         */
+        void close() {
+            subscribers.remove(sink, this);
+            if (closed.compareAndSet(false, true)) {
+                sink.close();
+            }
+        }
+
+        /**
+         * Starts a writer if events are waiting and none is sending them.
+         */
+        void schedule() {
+            if (!buffer.isEmpty() && writing.compareAndSet(false, true)) {
+                try {
+                    writers.execute(this);
+                } catch (RejectedExecutionException ree) {
+                    writing.set(false);
+                    close();
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                TaskEvent event = buffer.poll();
+                while (event != null) {
+                    if (event == heartbeatMark) {
+                        sink.heartbeat();
+                    } else {
+                        sink.send(event);
+                        if (taskId != null
+                                && TaskStates.isFinal(event.getState())) {
+                            close();
+                            return;
+                        }
+                    }
+                    event = buffer.poll();
+                }
+            } catch (IOException ioe) {
+                log.debug("Client of the task events disconnected: "
+                        + ioe.getMessage());
+                close();
+                return;
+            } finally {
+                writing.set(false);
+            }
+            schedule();
+        }
+    }
+}
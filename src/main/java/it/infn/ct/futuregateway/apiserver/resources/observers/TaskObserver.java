@@ -23,7 +23,10 @@ package it.infn.ct.futuregateway.apiserver.resources.observers;
 
 import it.infn.ct.futuregateway.apiserver.inframanager.MonitorQueue;
 import it.infn.ct.futuregateway.apiserver.inframanager.TaskException;
+import it.infn.ct.futuregateway.apiserver.inframanager.TransitionEngine;
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
 import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskState;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import java.util.Observable;
@@ -40,6 +43,12 @@ import org.apache.commons.logging.LogFactory;
  * This observer verify the status of the task after the changes and take the
  * corresponding actions to enable the following steps. As en example, if the
  * task is READY then the TaskObserber will schedule it.
+ * <p>
+ * Actions are executed by the {@link TransitionEngine} of the monitor queue,
+ * if available, otherwise by the thread changing the task. Changes of state
+ * are published to the {@link TaskEventStream}, if available, and tasks
+ * reaching a final state are removed from the outstanding tasks of the
+ * infrastructure metrics.
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  */
@@ -70,6 +79,10 @@ public class TaskObserver implements Observer {
      */
     private final MonitorQueue monitorQueue;
 
+    /**
+     * The delayed persistence of the changes.
+     */
+    private final TaskWriteBehind writeBehind;
 
     /**
      * Generate the observer of the task.
@@ -89,10 +102,36 @@ public class TaskObserver implements Observer {
             final ExecutorService anExecutorService,
             final Storage aStorage,
             final MonitorQueue aMonitorQueue) {
+        this(anEntityManagerFactory, anExecutorService, aStorage,
+                aMonitorQueue, null);
+    }
+
+    /**
+     * Generate the observer of the task with delayed persistence.
+     * Changes of the task are written by the provided
+     * {@link TaskWriteBehind}. If this is null every change is written
+     * immediately.
+     *
+     * @param anEntityManagerFactory An EntityManagerFactory to retrieve the
+     * persistence context
+     * @param anExecutorService An ExecutorService to retrieve threads managing
+     * the task submission
+     * @param aStorage A storage object to move files to/from the server after
+     * or before the execution
+     * @param aMonitorQueue The monitorQueue
+     * @param aWriteBehind The delayed persistence of the changes
+     */
+    public TaskObserver(
+            final EntityManagerFactory anEntityManagerFactory,
+            final ExecutorService anExecutorService,
+            final Storage aStorage,
+            final MonitorQueue aMonitorQueue,
+            final TaskWriteBehind aWriteBehind) {
         this.emf = anEntityManagerFactory;
         this.es = anExecutorService;
         this.store = aStorage;
         this.monitorQueue = aMonitorQueue;
+        this.writeBehind = aWriteBehind;
     }
 
     @Override
@@ -105,6 +144,52 @@ public class TaskObserver implements Observer {
             log.error(cce);
             return;
         }
+        if (writeBehind == null) {
+            merge(t);
+        } else {
+            writeBehind.write(t);
+        }
+        if (arg instanceof Task.STATE && TaskStates.isFinal(t.getState())) {
+            Selectors.getMetrics().finished(t.getId());
+        }
+        final TaskEventStream events = TaskEventStream.getInstance();
+        if (arg instanceof Task.STATE && events != null) {
+            events.publish(t);
+        }
+        final TransitionEngine engine = monitorQueue.getTransitionEngine();
+        if (engine == null) {
+            action(t);
+            return;
+        }
+        engine.execute(t, new Runnable() {
+            @Override
+            public void run() {
+                action(t);
+            }
+        });
+    }
+
+    /**
+     * Executes the action for the current state of the task.
+     *
+     * @param t The task
+     */
+    private void action(final Task t) {
+        try {
+            TaskState ts = t.getStateManager();
+            ts.action(t, es, monitorQueue.getMonitorQueue(), store);
+        } catch (TaskException te) {
+            TaskStates.abort(t);
+            log.error(te.getMessage());
+        }
+    }
+
+    /**
+     * Writes the task in the database.
+     *
+     * @param t The task
+     */
+    private void merge(final Task t) {
         EntityManager em = emf.createEntityManager();
         EntityTransaction et = em.getTransaction();
         try {
@@ -121,12 +206,5 @@ public class TaskObserver implements Observer {
             em.close();
         }
         log.debug("Task " + t.getId() + " updated");
-        try {
-            TaskState ts = t.getStateManager();
-            ts.action(es, monitorQueue.getMonitorQueue(), store);
-        } catch (TaskException te) {
-            t.setState(Task.STATE.ABORTED);
-            log.error(te.getMessage());
-        }
     }
 }
@@ -0,0 +1,320 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources.observers;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.EntityTransaction;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Delayed persistence of the task changes.
+ * Changed tasks are kept in memory and written to the database together, in
+ * a single transaction, at regular intervals or when too many tasks are
+ * waiting. Successive changes of a task before the write are merged in a
+ * single update. Tasks reaching a final state are written immediately.
+ * <p>
+ * Writes are serialised and a batch does not write the tasks already in a
+ * final state, so a batch started before the final write of a task cannot
+ * overwrite the final state with an older one.
+ * <p>
+ * The requests reading a task from the database after another request
+ * changed it have to find the change, otherwise the task loaded would
+ * replace the pending change with an older copy. The services flush the
+ * tasks they change with {@link #flush(Task)} before replying.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TaskWriteBehind {
+
+    /**
+     * States written immediately.
+     */
+    public static final Set<Task.STATE> FINALSTATES = Collections.
+            unmodifiableSet(EnumSet.of(Task.STATE.DONE, Task.STATE.ABORTED,
+                    Task.STATE.CANCELLED));
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TaskWriteBehind.class);
+
+    /**
+     * EntityManagerFactory registered for the persistence.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * Tasks to write by id.
+     */
+    private final ConcurrentMap<String, Task> dirty =
+            new ConcurrentHashMap<>();
+
+    /**
+     * Number of tasks triggering the write before the interval.
+     */
+    private final int batchSize;
+
+    /**
+     * Executor writing the tasks.
+     */
+    private final ScheduledExecutorService writer;
+
+    /**
+     * Set when a write for the batch size is requested.
+     */
+    private final AtomicBoolean writeRequested = new AtomicBoolean();
+
+    /**
+     * Lock serialising the writes.
+     */
+    private final Object writeLock = new Object();
+
+    /**
+     * Writes the changed tasks.
+     */
+    private final Runnable flushAction = new Runnable() {
+        @Override
+        public void run() {
+            writeRequested.set(false);
+            flush();
+        }
+    };
+
+    /**
+     * Build the write-behind.
+     *
+     * @param anEntityManagerFactory An EntityManagerFactory to retrieve the
+     * persistence context
+     * @param aFlushInterval Interval between writes in milliseconds
+     * @param aBatchSize Number of tasks triggering the write before the
+     * interval
+     */
+    public TaskWriteBehind(final EntityManagerFactory anEntityManagerFactory,
+            final long aFlushInterval, final int aBatchSize) {
+        this.emf = anEntityManagerFactory;
+        this.batchSize = aBatchSize;
+        this.writer = Executors.newSingleThreadScheduledExecutor();
+        writer.scheduleWithFixedDelay(flushAction, aFlushInterval,
+                aFlushInterval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers the change of a task.
+     * Tasks in a final state are written before the method returns.
+     *
+     * @param task The changed task
+     */
+    public final void write(final Task task) {
+        if (FINALSTATES.contains(task.getState())) {
+            dirty.remove(task.getId());
+            writeTasks(Collections.singletonList(task), true);
+            return;
+        }
+        dirty.put(task.getId(), task);
+        if (dirty.size() >= batchSize
+                && writeRequested.compareAndSet(false, true)) {
+            try {
+                writer.execute(flushAction);
+            } catch (RejectedExecutionException ree) {
+                writeRequested.set(false);
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Writes the pending changes of a task.
+     * When the method returns the changes registered before the call are
+     * in the database, including those written by a batch in progress.
+     *
+     * @param task The task
+     */
+    public final void flush(final Task task) {
+        flush(Collections.singletonList(task));
+    }
+
+    /**
+     * Writes the pending changes of some tasks.
+     * When the method returns the changes registered before the call are
+     * in the database, including those written by a batch in progress.
+     *
+     * @param someTasks The tasks
+     */
+    public final void flush(final List<Task> someTasks) {
+        synchronized (writeLock) {
+            final List<Task> batch = new ArrayList<>();
+            for (Task task: someTasks) {
+                if (dirty.remove(task.getId()) != null) {
+                    batch.add(task);
+                }
+                if (batch.size() >= batchSize) {
+                    writeTasks(batch, false);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeTasks(batch, false);
+            }
+        }
+    }
+
+    /**
+     * Removes the pending changes of a task.
+     * This has to be used before the task is deleted.
+     *
+     * @param taskId The task id
+     */
+    public final void discard(final String taskId) {
+        dirty.remove(taskId);
+    }
+
+    /**
+     * Writes all the pending changes.
+     * The tasks are removed from the pending changes while holding the lock
+     * of the writes, so a flush of a single task waits for the batch
+     * including it.
+     */
+    public final void flush() {
+        synchronized (writeLock) {
+            final List<Task> batch = new ArrayList<>();
+            final Iterator<String> ids = dirty.keySet().iterator();
+            while (ids.hasNext()) {
+                final Task task = dirty.remove(ids.next());
+                if (task != null) {
+                    batch.add(task);
+                }
+                if (batch.size() >= batchSize) {
+                    writeTasks(batch, false);
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                writeTasks(batch, false);
+            }
+        }
+    }
+
+    /**
+     * Retrieves the number of tasks waiting to be written.
+     *
+     * @return The number of tasks
+     */
+    public final int getPending() {
+        return dirty.size();
+    }
+
+    /**
+     * Stops the periodic writes and writes all the pending changes.
+     */
+    public final void shutdown() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Writes the tasks serialising the writes.
+     * Tasks in a final state are written only by the final write, the
+     * others skip them since the final write could be already committed.
+     *
+     * @param tasks The tasks to write
+     * @param finalWrite True if the tasks reached a final state
+     */
+    private void writeTasks(final List<Task> tasks, final boolean finalWrite) {
+        synchronized (writeLock) {
+            final List<Task> current = new ArrayList<>();
+            for (Task task: tasks) {
+                if (finalWrite || !FINALSTATES.contains(task.getState())) {
+                    current.add(task);
+                }
+            }
+            if (!current.isEmpty()) {
+                persist(current);
+            }
+        }
+    }
+
+    /**
+     * Writes the tasks in a single transaction.
+     * If the transaction fails the tasks are written one by one so a task
+     * with problems does not prevent the others to be written.
+     *
+     * @param tasks The tasks to write
+     */
+    protected void persist(final List<Task> tasks) {
+        if (merge(tasks) || tasks.size() == 1) {
+            return;
+        }
+        for (Task task: tasks) {
+            merge(Collections.singletonList(task));
+        }
+    }
+
+    /**
+     * Merges the tasks in a transaction.
+     *
+     * @param tasks The tasks to merge
+     * @return True if the transaction is committed, false otherwise
+     */
+    private boolean merge(final List<Task> tasks) {
+        final EntityManager em = emf.createEntityManager();
+        final EntityTransaction et = em.getTransaction();
+        try {
+            et.begin();
+            for (Task task: tasks) {
+                em.merge(task);
+            }
+            et.commit();
+            log.debug(tasks.size() + " tasks updated");
+            return true;
+        } catch (RuntimeException re) {
+            log.error("Impossible to update " + tasks.size() + " tasks!");
+            log.error(re);
+            if (et != null && et.isActive()) {
+                et.rollback();
+            }
+            return false;
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -23,12 +23,16 @@ package it.infn.ct.futuregateway.apiserver.storage;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
@@ -84,6 +88,43 @@ public class LocalStorage implements Storage {
         return filePath;
     }
 
+    @Override
+    public final Path getFile(final RESOURCE res, final String id,
+            final String subfolder, final String name) {
+        Path folder = Paths.get(path, res.name().toLowerCase(), id);
+        if (subfolder != null && !subfolder.isEmpty()) {
+            folder = folder.resolve(subfolder);
+        }
+        final Path filePath = folder.resolve(name).normalize();
+        if (!filePath.getParent().equals(folder.normalize())
+                || !Files.isRegularFile(filePath)) {
+            return null;
+        }
+        return filePath;
+    }
+
+    @Override
+    public final List<String> listFiles(final RESOURCE res, final String id,
+            final String subfolder) throws IOException {
+        Path folder = Paths.get(path, res.name().toLowerCase(), id);
+        if (subfolder != null && !subfolder.isEmpty()) {
+            folder = folder.resolve(subfolder);
+        }
+        final List<String> names = new ArrayList<>();
+        if (!Files.isDirectory(folder)) {
+            return names;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file: files) {
+                if (Files.isRegularFile(file)) {
+                    names.add(file.getFileName().toString());
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
     @Override
     public final void storeCache(final RESOURCE res, final String id) {
         log.debug("Store Cache request not needed in local storage,"
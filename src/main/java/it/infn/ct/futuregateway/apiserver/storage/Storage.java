@@ -24,6 +24,7 @@ package it.infn.ct.futuregateway.apiserver.storage;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.List;
 
 /**
  *
@@ -110,6 +111,32 @@ public interface Storage {
     Path getCachePath(final RESOURCE res, final String id,
             final String subfolder);
 
+    /**
+     * Retrieves the path to a file stored for the resource.
+     * The file is not copied so it has to be accessed only for reading.
+     *
+     * @param res The resource type
+     * @param id The ID of the resource associated
+     * @param subfolder Sub folder the file is associated with or null
+     * @param name Name of the file
+     * @return Path to the file or null if the file does not exist or the
+     * name refers to a file outside the resource area
+     */
+    Path getFile(final RESOURCE res, final String id,
+            final String subfolder, final String name);
+
+    /**
+     * Lists the files stored for the resource.
+     *
+     * @param res The resource type
+     * @param id The ID of the resource associated
+     * @param subfolder Sub folder the files are associated with or null
+     * @return Names of the files, empty if there are no files
+     * @throws IOException In case the folder cannot be read
+     */
+    List<String> listFiles(final RESOURCE res, final String id,
+            final String subfolder) throws IOException;
+
     /**
      * Moves the files in the cache folder into the storage for later
      * retrieval.
@@ -0,0 +1,147 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.utils;
+
+/**
+ * Range of bytes requested with the HTTP header <i>Range</i>.
+ * Only a single range in bytes is supported, as allowed by the RFC 7233,
+ * other requests are served with the full content.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class ByteRange {
+
+    /**
+     * Prefix of the ranges in bytes.
+     */
+    private static final String UNIT = "bytes=";
+
+    /**
+     * First byte of the range.
+     */
+    private final long start;
+
+    /**
+     * Last byte of the range, included.
+     */
+    private final long end;
+
+    /**
+     * Build the range.
+     *
+     * @param aStart First byte of the range
+     * @param anEnd Last byte of the range, included
+     */
+    public ByteRange(final long aStart, final long anEnd) {
+        this.start = aStart;
+        this.end = anEnd;
+    }
+
+    /**
+     * Retrieves the first byte of the range.
+     *
+     * @return The position of the byte
+     */
+    public final long getStart() {
+        return start;
+    }
+
+    /**
+     * Retrieves the last byte of the range.
+     *
+     * @return The position of the byte, included in the range
+     */
+    public final long getEnd() {
+        return end;
+    }
+
+    /**
+     * Retrieves the number of bytes in the range.
+     *
+     * @return The number of bytes
+     */
+    public final long getLength() {
+        return end - start + 1;
+    }
+
+    /**
+     * Builds the value of the header <i>Content-Range</i>.
+     *
+     * @param total Size of the full content
+     * @return The header value
+     */
+    public final String toContentRange(final long total) {
+        return "bytes " + start + "-" + end + "/" + total;
+    }
+
+    /**
+     * Parses the header <i>Range</i>.
+     * Headers not valid or with many ranges are ignored and the full
+     * content has to be sent.
+     *
+     * @param header The header value
+     * @param total Size of the full content
+     * @return The range or null if the full content has to be sent
+     * @throws IllegalArgumentException If the range is outside the content
+     */
+    public static ByteRange parse(final String header, final long total) {
+        if (header == null || !header.startsWith(UNIT)
+                || header.indexOf(',') >= 0) {
+            return null;
+        }
+        final String spec = header.substring(UNIT.length()).trim();
+        final int sep = spec.indexOf('-');
+        if (sep < 0) {
+            return null;
+        }
+        long first;
+        long last;
+        try {
+            if (sep == 0) {
+                final long suffix = Long.parseLong(spec.substring(1));
+                if (suffix <= 0) {
+                    throw new IllegalArgumentException("Empty suffix range");
+                }
+                first = Math.max(0, total - suffix);
+                last = total - 1;
+            } else {
+                first = Long.parseLong(spec.substring(0, sep));
+                last = total - 1;
+                if (sep < spec.length() - 1) {
+                    last = Math.min(last,
+                            Long.parseLong(spec.substring(sep + 1)));
+                    if (last < first) {
+                        return null;
+                    }
+                }
+            }
+        } catch (NumberFormatException nfe) {
+            return null;
+        }
+        if (first >= total) {
+            throw new IllegalArgumentException("Range starts after the "
+                    + "content end: " + header);
+        }
+        return new ByteRange(first, last);
+    }
+}
@@ -52,6 +52,66 @@ public final class Constants {
      */
     public static final int MAXTHREADIDLELIFE = 30000;
 
+    /**
+     * Default size of the queue of tasks waiting for a submission thread.
+     * When the queue is full the thread pool grows up to its maximum size and
+     * further tasks are rejected.
+     */
+    public static final int SUBMISSIONQUEUESIZE = 1000;
+
+    /**
+     * Seconds a client should wait before retrying a request rejected because
+     * the submission thread pool is saturated. The same delay is applied
+     * before retrying the submission of a task rejected by the pool.
+     */
+    public static final int SUBMISSIONRETRYAFTER = 30;
+
+    /**
+     * Default number of submission threads dedicated to an infrastructure.
+     */
+    public static final int BULKHEADPOOLSIZE = 4;
+
+    /**
+     * Default number of submissions waiting for a thread of an
+     * infrastructure.
+     */
+    public static final int BULKHEADQUEUESIZE = 100;
+
+    /**
+     * Default number of monitor threads checking, at the same time, tasks of
+     * an infrastructure.
+     */
+    public static final int BULKHEADMONITORS = 2;
+
+    /**
+     * Delay in milliseconds before retrying a check postponed because too
+     * many monitor threads are busy with the same infrastructure.
+     */
+    public static final int BULKHEADDEFERDELAY = 5000;
+
+    /**
+     * Maximum number of retries of a submission failed for a timeout or a
+     * connection problem.
+     */
+    public static final int SUBMISSIONMAXRETRIES = 5;
+
+    /**
+     * Default number of consecutive failures opening the circuit of an
+     * endpoint.
+     */
+    public static final int CIRCUITFAILURES = 5;
+
+    /**
+     * Default time, in milliseconds, a circuit stays open after the first
+     * opening.
+     */
+    public static final int CIRCUITOPENTIME = 30000;
+
+    /**
+     * Maximum time, in milliseconds, a circuit stays open.
+     */
+    public static final int CIRCUITMAXOPENTIME = 900000;
+
     /**
      * Maximum waiting time for thread to stop.
      * Waiting time in minutes for thread to complete their work during the
@@ -70,12 +130,180 @@ public final class Constants {
      * Interval waited by the monitor between checks.
      */
     public static final int MONITORCHECKINTERVAL = 60000;
+
+    /**
+     * Maximum multiple of the monitor interval.
+     * Tasks not changing state are checked less frequently until the
+     * interval is MONITORMAXINTERVALTIMES * the monitor interval.
+     */
+    public static final int MONITORMAXINTERVALTIMES = 10;
+
+    /**
+     * Maximum number of tasks checked together by a monitor thread.
+     */
+    public static final int MONITORBATCHSIZE = 100;
+
+    /**
+     * Time, in milliseconds, to spread the first checks of the tasks
+     * recovered at startup.
+     */
+    public static final int MONITORWARMUP = 300000;
+
+    /**
+     * Number of tasks read together from the database during the recovery.
+     */
+    public static final int RECOVERYFETCHSIZE = 500;
+
+    /**
+     * Number of tasks whose associations are loaded with a single query.
+     */
+    public static final int TASKFETCHBATCHSIZE = 100;
+
+    /**
+     * Number of threads executing the actions of the task changes.
+     */
+    public static final int TRANSITIONPOOLSIZE = 4;
+
+    /**
+     * Interval, in milliseconds, between the writes of the changed tasks.
+     */
+    public static final int TASKFLUSHINTERVAL = 1000;
+
+    /**
+     * Number of changed tasks triggering a write before the interval.
+     */
+    public static final int TASKFLUSHBATCHSIZE = 100;
+
+    /**
+     * Maximum number of tasks generated by a task array.
+     */
+    public static final int TASKARRAYMAXSIZE = 10000;
+
+    /**
+     * Default number of tasks in a page of the task list.
+     */
+    public static final int TASKPAGESIZE = 100;
+
+    /**
+     * Maximum number of tasks in a page of the task list.
+     */
+    public static final int TASKPAGEMAXSIZE = 1000;
+
+    /**
+     * Number of recent task events kept to resume the event streams.
+     */
+    public static final int EVENTHISTORYSIZE = 10000;
+
+    /**
+     * Maximum number of task events waiting to be sent to a client.
+     * Clients slower than this are disconnected and have to resume the
+     * stream.
+     */
+    public static final int EVENTBUFFERSIZE = 100;
+
+    /**
+     * Number of threads writing the task events to the clients.
+     */
+    public static final int EVENTWRITERTHREADS = 10;
+
+    /**
+     * Interval between heartbeats of the event streams in milliseconds.
+     * Heartbeats keep the connections open and detect the disconnected
+     * clients.
+     */
+    public static final int EVENTHEARTBEATINTERVAL = 30000;
+
+    /**
+     * Default time a request waits for the state of a task in seconds.
+     */
+    public static final int TASKWAITTIMEOUT = 30;
+
+    /**
+     * Maximum time a request can wait for the state of a task in seconds.
+     */
+    public static final int TASKWAITMAXTIMEOUT = 300;
+
+    /**
+     * Default maximum number of pilots of an application in pilot mode.
+     */
+    public static final int PILOTSPERAPPLICATION = 4;
+
+    /**
+     * Maximum time, in milliseconds, without contacts from a pilot before
+     * it is considered lost.
+     */
+    public static final int PILOTTIMEOUT = 600000;
+
+    /**
+     * Interval, in milliseconds, between the checks of the pilots.
+     */
+    public static final int PILOTSWEEPINTERVAL = 60000;
+
+    /**
+     * Failed attempts to launch the pilots, while none is active, before
+     * the tasks waiting are aborted.
+     */
+    public static final int PILOTLAUNCHRETRIES = 5;
+
+    /**
+     * Delay, in milliseconds, before a new launch of the pilots after the
+     * first failure. The delay doubles at every failure.
+     */
+    public static final int PILOTLAUNCHRETRYDELAY = 60000;
+
+    /**
+     * Maximum delay, in milliseconds, before a new launch of the pilots.
+     */
+    public static final int PILOTLAUNCHMAXDELAY = 600000;
+
+    /**
+     * Maximum life, in milliseconds, of a cached SAGA session.
+     */
+    public static final int SESSIONTTL = 3600000;
+
+    /**
+     * Time, in milliseconds, a cached SAGA session can stay unused.
+     */
+    public static final int SESSIONIDLETIME = 600000;
+
+    /**
+     * Interval, in milliseconds, between the removals of the expired
+     * sessions from the cache.
+     */
+    public static final int SESSIONSWEEPINTERVAL = 60000;
+
+    /**
+     * Maximum number of cached job services.
+     */
+    public static final int JOBSERVICECACHESIZE = 200;
+
+    /**
+     * Percentage of the proxy lifetime after that the proxy is refreshed.
+     */
+    public static final int PROXYREFRESHPERCENT = 50;
+
+    /**
+     * Time, in milliseconds, a proxy is cached when its expiration cannot be
+     * read.
+     */
+    public static final int PROXYDEFAULTLIFETIME = 600000;
+
+    /**
+     * Number of threads refreshing the proxies in background.
+     */
+    public static final int PROXYREFRESHTHREADS = 2;
+
     /**
      * Mime type produced by the server.
      */
     public static final String  INDIGOMIMETYPE =
             "application/vnd.indigo-datacloud.apiserver+json";
 
+    /**
+     * Mime type of the archives produced by the server.
+     */
+    public static final String ZIPMIMETYPE = "application/zip";
+
     /**
      * Name of the attribute referring the EntityManagerFactory.
      */
@@ -106,11 +334,94 @@ public final class Constants {
      */
     public static final String SUBMISSIONPOOLSIZEC = "SubmissionThreadPoolSize";
 
+    /**
+     * Configuration name for submission queue size.
+     */
+    public static final String SUBMISSIONQUEUESIZEC = "SubmissionQueueSize";
+
+    /**
+     * Configuration name for submission rejection policy.
+     */
+    public static final String SUBMISSIONPOLICYC = "SubmissionRejectionPolicy";
+
     /**
      * Name of the attribute referring the thread pool for task monitoring.
      */
     public static final String MONITORQUEUE = "MonitorQueue";
 
+    /**
+     * Name of the attribute referring the infrastructure bulkheads.
+     */
+    public static final String BULKHEADS = "Bulkheads";
+
+    /**
+     * Configuration name for the threads executing the actions of the task
+     * changes.
+     */
+    public static final String TRANSITIONPOOLSIZEC =
+            "TransitionThreadPoolSize";
+
+    /**
+     * Name of the attribute referring the delayed persistence of the tasks.
+     */
+    public static final String TASKWRITEBEHIND = "TaskWriteBehind";
+
+    /**
+     * Configuration name for the statistics of the second-level cache.
+     */
+    public static final String CACHESTATISTICSC = "CacheStatistics";
+
+    /**
+     * Persistence property enabling the statistics of the second-level
+     * cache.
+     */
+    public static final String CACHESTATISTICSPROPERTY =
+            "hibernate.generate_statistics";
+
+    /**
+     * Configuration name for the interval between the writes of the changed
+     * tasks.
+     */
+    public static final String TASKFLUSHINTERVALC = "TaskFlushInterval";
+
+    /**
+     * Name of the attribute referring the cache of SAGA sessions.
+     */
+    public static final String SESSIONCACHE = "SessionCache";
+
+    /**
+     * Configuration name for the maximum life of the cached sessions.
+     */
+    public static final String SESSIONTTLC = "SessionTTL";
+
+    /**
+     * Configuration name for the idle time of the cached sessions.
+     */
+    public static final String SESSIONIDLETIMEC = "SessionIdleTime";
+
+    /**
+     * Configuration name for the percentage of the proxy lifetime after that
+     * the proxy is refreshed.
+     */
+    public static final String PROXYREFRESHPERCENTC = "ProxyRefreshPercent";
+
+    /**
+     * Configuration name for the infrastructure selection policy.
+     */
+    public static final String INFRASELECTIONC = "InfrastructureSelection";
+
+    /**
+     * Configuration name for the failures opening the circuit of an
+     * endpoint.
+     */
+    public static final String CIRCUITFAILURESC = "CircuitFailureThreshold";
+
+    /**
+     * Configuration name for the time a circuit stays open after the first
+     * opening.
+     */
+    public static final String CIRCUITOPENTIMEC = "CircuitOpenTime";
+
     /**
      * Configuration name for monitor queue size.
      */
@@ -126,6 +437,26 @@ public final class Constants {
      */
     public static final String MONITORINTERVALC = "MonitorInterval";
 
+    /**
+     * Configuration name for monitor maximum interval.
+     */
+    public static final String MONITORMAXINTERVALC = "MonitorMaxInterval";
+
+    /**
+     * Configuration name for monitor warm-up time.
+     */
+    public static final String MONITORWARMUPC = "MonitorWarmUp";
+
+    /**
+     * Configuration name for the URL of the server contacted by the pilots.
+     */
+    public static final String PILOTURLC = "PilotServerURL";
+
+    /**
+     * Configuration name for the time without contacts from a pilot.
+     */
+    public static final String PILOTTIMEOUTC = "PilotTimeout";
+
     /**
      * Avoid the class be instantiable.
      */
@@ -0,0 +1,111 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+
+/**
+ * Position in a list ordered by creation date and id.
+ * The cursor identifies the last element of a page so the next page starts
+ * from the following element without counting the ones before. The cursor
+ * is exchanged with the clients as an opaque string.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class KeysetCursor {
+
+    /**
+     * Separator between the date and the id in the encoded cursor.
+     */
+    private static final char SEPARATOR = ':';
+
+    /**
+     * Creation date of the last element.
+     */
+    private final Date date;
+
+    /**
+     * Id of the last element.
+     */
+    private final String id;
+
+    /**
+     * Build the cursor.
+     *
+     * @param aDate Creation date of the last element
+     * @param anId Id of the last element
+     */
+    public KeysetCursor(final Date aDate, final String anId) {
+        this.date = aDate;
+        this.id = anId;
+    }
+
+    /**
+     * Retrieves the creation date of the last element.
+     *
+     * @return The date
+     */
+    public final Date getDate() {
+        return date;
+    }
+
+    /**
+     * Retrieves the id of the last element.
+     *
+     * @return The id
+     */
+    public final String getId() {
+        return id;
+    }
+
+    /**
+     * Encodes the cursor for the clients.
+     *
+     * @return The cursor as an URL safe string
+     */
+    public final String encode() {
+        final String plain = Long.toString(date.getTime()) + SEPARATOR + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(
+                plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor received from a client.
+     *
+     * @param encoded The cursor as returned by {@link #encode()}
+     * @return The cursor
+     * @throws IllegalArgumentException If the string is not a valid cursor
+     */
+    public static KeysetCursor decode(final String encoded) {
+        final String plain = new String(Base64.getUrlDecoder().decode(encoded),
+                StandardCharsets.UTF_8);
+        final int sep = plain.indexOf(SEPARATOR);
+        if (sep <= 0 || sep == plain.length() - 1) {
+            throw new IllegalArgumentException("Invalid cursor: " + encoded);
+        }
+        return new KeysetCursor(
+                new Date(Long.parseLong(plain.substring(0, sep))),
+                plain.substring(sep + 1));
+    }
+}
@@ -55,6 +55,7 @@ public class MonitorQueueFactory implements ObjectFactory {
         int threadPoolSize = Constants.DEFAULTTHREADPOOLSIZE;
         int bufferSize = Constants.MONITORBUFFERSIZE;
         int checkInterval = Constants.MONITORCHECKINTERVAL;
+        long maxCheckInterval = -1;
         while (addrs.hasMoreElements()) {
             RefAddr addr = (RefAddr) addrs.nextElement();
             String addrName = addr.getType();
@@ -86,9 +87,23 @@ public class MonitorQueueFactory implements ObjectFactory {
                                 + " Default value (" + checkInterval
                                 + ") applied.");
                     }
+                    break;
+                case "maxCheckInterval":
+                    try {
+                        maxCheckInterval = Long.parseLong(addrValue);
+                    } catch (NumberFormatException nfe) {
+                        log.warn("Attribute maxCheckInterval format not "
+                                + "correct. Default value applied.");
+                    }
+                    break;
                 default:
             }
         }
-        return new MonitorQueue(bufferSize, threadPoolSize, checkInterval);
+        if (maxCheckInterval < 0) {
+            maxCheckInterval = (long) checkInterval
+                    * Constants.MONITORMAXINTERVALTIMES;
+        }
+        return new MonitorQueue(bufferSize, threadPoolSize, checkInterval,
+                maxCheckInterval);
     }
 }
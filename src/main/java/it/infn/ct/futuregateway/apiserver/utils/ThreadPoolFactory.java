@@ -24,8 +24,9 @@ package it.infn.ct.futuregateway.apiserver.utils;
 
 import java.util.Enumeration;
 import java.util.Hashtable;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import javax.naming.Context;
@@ -39,16 +40,34 @@ import org.apache.commons.logging.LogFactory;
 /**
  * Custom creation of an ExecutorService using the parameters
  * provided in the context.
+ * <p>
+ * The pool has a bounded queue: threads are added, up to the maximum size,
+ * only when the queue is full and further tasks are handled by the rejection
+ * policy. Available policies are <i>abort</i> (default) and
+ * <i>callerRuns</i>, with the same behaviour of the corresponding
+ * {@link ThreadPoolExecutor} handlers. Policies discarding the tasks are
+ * not available since a discarded submission would leave its task READY
+ * without anything retrying or aborting it.
  *
  * @author Marco Fargetta <marco.fargetta@ct.infn.it>
  * @see java.util.concurrent.ExecutorService
  */
 public class ThreadPoolFactory implements ObjectFactory {
 
+    /**
+     * Rejection policy throwing an exception.
+     */
+    public static final String ABORTPOLICY = "abort";
+
+    /**
+     * Rejection policy running the task in the caller thread.
+     */
+    public static final String CALLERRUNSPOLICY = "callerRuns";
+
     /**
      * Logger object. Based on apache commons logging.
      */
-    private final Log log = LogFactory.getLog(ThreadPoolFactory.class);
+    private static final Log LOG = LogFactory.getLog(ThreadPoolFactory.class);
 
     @Override
     public final Object getObjectInstance(final Object obj, final Name name,
@@ -59,7 +78,9 @@ public class ThreadPoolFactory implements ObjectFactory {
         int threadPoolSize = Constants.DEFAULTTHREADPOOLSIZE;
         int maxThreadPoolSize = Constants.MAXTHREADPOOLSIZETIMES
                 * threadPoolSize;
-        int maxThreadIdleTime = Constants.MAXTHREADPOOLSIZETIMES;
+        int maxThreadIdleTime = Constants.MAXTHREADIDLELIFE;
+        int queueSize = Constants.SUBMISSIONQUEUESIZE;
+        String rejectionPolicy = ABORTPOLICY;
         while (addrs.hasMoreElements()) {
             RefAddr addr = (RefAddr) addrs.nextElement();
             String addrName = addr.getType();
@@ -69,7 +90,7 @@ public class ThreadPoolFactory implements ObjectFactory {
                     try {
                         threadPoolSize = Integer.parseInt(addrValue);
                     } catch (NumberFormatException nfe) {
-                        log.warn("Attribute poolSize format not correct."
+                        LOG.warn("Attribute poolSize format not correct."
                                 + " Default value (" + threadPoolSize
                                 + ") applied.");
                     }
@@ -78,7 +99,7 @@ public class ThreadPoolFactory implements ObjectFactory {
                     try {
                         maxThreadPoolSize = Integer.parseInt(addrValue);
                     } catch (NumberFormatException nfe) {
-                        log.warn("Attribute maxPoolSize format not correct."
+                        LOG.warn("Attribute maxPoolSize format not correct."
                                 + " Default value (" + maxThreadPoolSize
                                 + ") applied.");
                     }
@@ -87,23 +108,39 @@ public class ThreadPoolFactory implements ObjectFactory {
                     try {
                         maxThreadIdleTime = Integer.parseInt(addrValue);
                     } catch (NumberFormatException nfe) {
-                        log.warn("Attribute maxThreadIdleTimeMills format not"
+                        LOG.warn("Attribute maxThreadIdleTimeMills format not"
                                 + " correct. Default value ("
                                 + maxThreadIdleTime + ") applied.");
                     }
                     break;
+                case "queueSize":
+                    try {
+                        queueSize = Integer.parseInt(addrValue);
+                    } catch (NumberFormatException nfe) {
+                        LOG.warn("Attribute queueSize format not correct."
+                                + " Default value (" + queueSize
+                                + ") applied.");
+                    }
+                    break;
+                case "rejectionPolicy":
+                    rejectionPolicy = addrValue;
+                    break;
                 default:
             }
         }
-        log.info("A new thread pool created with name: " + name.toString());
+        LOG.info("A new thread pool created with name: " + name.toString());
         return (ThreadPoolFactory.getThreadPool(threadPoolSize,
-                maxThreadPoolSize, maxThreadIdleTime));
+                maxThreadPoolSize, maxThreadIdleTime, queueSize,
+                rejectionPolicy));
     }
 
     /**
      * Create a new ExecutorService.
      * The ExecutorService is based on the ThreadPoolExecutor but only
      * a subset of parameter can be specified.
+     * <p>
+     * Equal to {@code getThreadPool(threadPoolSize, maxThreadPoolSize,
+     * maxThreadIdleTime, Constants.SUBMISSIONQUEUESIZE, "abort")}
      *
      * @param threadPoolSize The initial and minimum size of the pool
      * @param maxThreadPoolSize The maximum size of the pool
@@ -112,11 +149,94 @@ public class ThreadPoolFactory implements ObjectFactory {
      */
     public static ExecutorService getThreadPool(final int threadPoolSize,
                 final int maxThreadPoolSize, final int maxThreadIdleTime) {
+        return getThreadPool(threadPoolSize, maxThreadPoolSize,
+                maxThreadIdleTime, Constants.SUBMISSIONQUEUESIZE,
+                ABORTPOLICY);
+    }
+
+    /**
+     * Create a new ExecutorService.
+     * The ExecutorService is based on the ThreadPoolExecutor with a bounded
+     * queue.
+     *
+     * @param threadPoolSize The initial and minimum size of the pool
+     * @param maxThreadPoolSize The maximum size of the pool
+     * @param maxThreadIdleTime The time in milliseconds a thread can be idle
+     * @param queueSize The maximum number of tasks waiting for a thread
+     * @param rejectionPolicy The name of the policy for the tasks exceeding
+     * the capacity of the pool
+     * @return The new ExecutorService
+     */
+    public static ExecutorService getThreadPool(final int threadPoolSize,
+                final int maxThreadPoolSize, final int maxThreadIdleTime,
+                final int queueSize, final String rejectionPolicy) {
         return new ThreadPoolExecutor(
                 threadPoolSize,
-                maxThreadPoolSize,
+                Math.max(threadPoolSize, maxThreadPoolSize),
                 maxThreadIdleTime,
                 TimeUnit.MILLISECONDS,
-                new LinkedBlockingQueue<Runnable>());
+                new ArrayBlockingQueue<Runnable>(Math.max(1, queueSize)),
+                getRejectionHandler(rejectionPolicy));
+    }
+
+    /**
+     * Verifies if an ExecutorService cannot accept more tasks.
+     * The pool is saturated when all the threads are busy and the queue is
+     * full, so a new task would be handled by the rejection policy.
+     *
+     * @param pool The ExecutorService
+     * @return True if the pool is saturated, false otherwise or if the pool
+     * is not a ThreadPoolExecutor
+     */
+    public static boolean isSaturated(final ExecutorService pool) {
+        if (!(pool instanceof ThreadPoolExecutor)) {
+            return false;
+        }
+        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) pool;
+        return tpe.getQueue().remainingCapacity() == 0
+                && tpe.getActiveCount() >= tpe.getMaximumPoolSize();
+    }
+
+    /**
+     * Retrieves the number of tasks an ExecutorService can accept before
+     * saturating.
+     * These are the idle threads plus the free slots in the queue.
+     *
+     * @param pool The ExecutorService
+     * @return The number of tasks, Integer.MAX_VALUE if the pool is not a
+     * ThreadPoolExecutor
+     */
+    public static int getFreeCapacity(final ExecutorService pool) {
+        if (!(pool instanceof ThreadPoolExecutor)) {
+            return Integer.MAX_VALUE;
+        }
+        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) pool;
+        final long free = Math.max(0, tpe.getMaximumPoolSize()
+                - tpe.getActiveCount())
+                + (long) tpe.getQueue().remainingCapacity();
+        return (int) Math.min(free, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Retrieves the handler for a rejection policy.
+     *
+     * @param rejectionPolicy The name of the policy
+     * @return The handler, the abort policy if the name is not valid
+     */
+    private static RejectedExecutionHandler getRejectionHandler(
+            final String rejectionPolicy) {
+        if (rejectionPolicy == null) {
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+        switch (rejectionPolicy) {
+            case CALLERRUNSPOLICY:
+                return new ThreadPoolExecutor.CallerRunsPolicy();
+            case ABORTPOLICY:
+                return new ThreadPoolExecutor.AbortPolicy();
+            default:
+                LOG.warn("Rejection policy '" + rejectionPolicy
+                        + "' not valid. Policy abort applied.");
+                return new ThreadPoolExecutor.AbortPolicy();
+        }
     }
 }
@@ -25,6 +25,7 @@ import it.infn.ct.futuregateway.apiserver.utils.StatusFilter;
 import javax.ws.rs.ApplicationPath;
 import org.glassfish.jersey.linking.DeclarativeLinkingFeature;
 import org.glassfish.jersey.media.multipart.MultiPartFeature;
+import org.glassfish.jersey.media.sse.SseFeature;
 import org.glassfish.jersey.server.ResourceConfig;
 
 /**
@@ -41,5 +42,6 @@ public class ApiServer extends ResourceConfig {
         register(StatusFilter.class);
         register(DeclarativeLinkingFeature.class);
         register(MultiPartFeature.class);
+        register(SseFeature.class);
     }
 }
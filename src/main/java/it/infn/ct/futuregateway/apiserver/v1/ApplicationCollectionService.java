@@ -26,9 +26,12 @@ import it.infn.ct.futuregateway.apiserver.utils.annotations.Status;
 import it.infn.ct.futuregateway.apiserver.resources.Application;
 import it.infn.ct.futuregateway.apiserver.resources.ApplicationList;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
 import javax.ws.rs.BadRequestException;
@@ -133,18 +136,24 @@ public class ApplicationCollectionService extends BaseService {
 
     /**
      * Retrieve the application list.
-     * The fields not requested for the list are cleaned.
+     * Only the fields requested for the list are read from the DB. The
+     * infrastructure identifiers of all the applications are read with a
+     * single query, without loading the infrastructures and the parameters.
+     *
      * @return The list of applications
      */
     private List<Application> retrieveApplicationList() {
-        List<Application> lstApps;
+        List<Object[]> appList;
+        List<Object[]> infraList;
         EntityManager em = getEntityManager();
         EntityTransaction et = null;
         try {
             et = em.getTransaction();
             et.begin();
-            lstApps = em.createNamedQuery("applications.all",
-                    Application.class).
+            appList = em.createNamedQuery("applications.list").
+                    getResultList();
+            infraList = em.createNamedQuery(
+                    "applications.listInfrastructures").
                     getResultList();
             et.commit();
         } catch (RuntimeException re) {
@@ -158,12 +167,31 @@ public class ApplicationCollectionService extends BaseService {
         } finally {
             em.close();
         }
-        if (lstApps != null) {
-            for (Application ap: lstApps) {
-                ap.setDescription(null);
-                ap.setParameters(null);
+        final Map<String, List<String>> infraIds = new HashMap<>();
+        if (infraList != null) {
+            for (Object[] elem: infraList) {
+                List<String> ids = infraIds.get((String) elem[0]);
+                if (ids == null) {
+                    ids = new LinkedList<>();
+                    infraIds.put((String) elem[0], ids);
+                }
+                ids.add((String) elem[1]);
+            }
+        }
+        final List<Application> apps = new ArrayList<>();
+        if (appList != null) {
+            for (Object[] elem: appList) {
+                int idElem = 0;
+                Application ap = new Application();
+                ap.setId((String) elem[idElem++]);
+                ap.setName((String) elem[idElem++]);
+                ap.setDateCreated((Date) elem[idElem++]);
+                ap.setEnabled((Boolean) elem[idElem++]);
+                ap.setOutcome((Application.TYPE) elem[idElem]);
+                ap.setInfrastructureIds(infraIds.get(ap.getId()));
+                apps.add(ap);
             }
         }
-        return lstApps;
+        return apps;
     }
 }
@@ -150,5 +150,6 @@ public class ApplicationService extends BaseService {
         } finally {
             em.close();
         }
+        evictFromCache(Application.class, id);
     }
 }
@@ -21,18 +21,36 @@
 
 package it.infn.ct.futuregateway.apiserver.v1;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.BulkheadExecutor;
+import it.infn.ct.futuregateway.apiserver.inframanager.Bulkheads;
+import it.infn.ct.futuregateway.apiserver.inframanager.DelayedTaskQueue;
 import it.infn.ct.futuregateway.apiserver.inframanager.MonitorQueue;
+import it.infn.ct.futuregateway.apiserver.inframanager.SessionCache;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskWriteBehind;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import it.infn.ct.futuregateway.apiserver.storage.Storages;
 import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import it.infn.ct.futuregateway.apiserver.utils.ThreadPoolFactory;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.core.Context;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.glassfish.jersey.media.sse.EventOutput;
 
 /**
  * Base service for the RESTful APIs.
@@ -83,6 +101,23 @@ abstract class BaseService {
                 getServletContext().getAttribute(Constants.SESSIONFACTORY);
     }
 
+    /**
+     * Removes an element from the second-level cache.
+     * Hibernate keeps the cache aligned with the changes done through the
+     * entity managers. The element is evicted anyway after its removal so a
+     * copy loaded by a concurrent request is not served afterwards.
+     *
+     * @param type The class of the element
+     * @param id The id of the element
+     */
+    protected final void evictFromCache(final Class<?> type,
+            final String id) {
+        final EntityManagerFactory emf = getEntityManagerFactory();
+        if (emf != null && emf.getCache() != null) {
+            emf.getCache().evict(type, id);
+        }
+    }
+
     /**
      * Retrieve the user performing the request.
      * The user name is extrapolated from the authorisation token.
@@ -166,4 +201,191 @@ abstract class BaseService {
                 getAttribute(Constants.MONITORQUEUE);
     }
 
+    /**
+     * Retrieve the bulkheads of the infrastructures.
+     *
+     * @return The bulkheads or null if not available
+     */
+    protected final Bulkheads getBulkheads() {
+        return (Bulkheads) getRequest().
+                getServletContext().
+                getAttribute(Constants.BULKHEADS);
+    }
+
+    /**
+     * Retrieve the cache of the SAGA sessions.
+     *
+     * @return The cache or null if not available
+     */
+    protected final SessionCache getSessionCache() {
+        return (SessionCache) getRequest().
+                getServletContext().
+                getAttribute(Constants.SESSIONCACHE);
+    }
+
+    /**
+     * Retrieve the delayed persistence of the task changes.
+     *
+     * @return The write-behind or null if not available
+     */
+    protected final TaskWriteBehind getTaskWriteBehind() {
+        return (TaskWriteBehind) getRequest().
+                getServletContext().
+                getAttribute(Constants.TASKWRITEBEHIND);
+    }
+
+    /**
+     * Writes the pending changes of the tasks.
+     * The services changing a task write the changes before replying so
+     * the following requests do not load an older copy of the task.
+     *
+     * @param someTasks The tasks changed
+     */
+    protected final void flushTasks(final List<Task> someTasks) {
+        final TaskWriteBehind writeBehind = getTaskWriteBehind();
+        if (writeBehind != null) {
+            writeBehind.flush(someTasks);
+        }
+    }
+
+    /**
+     * Verifies the submission threads can accept a task of the application.
+     * With the bulkheads the task is refused when the global limit of the
+     * submissions is reached or all the infrastructures of the application
+     * are saturated.
+     *
+     * @param app The application of the task
+     * @throws ServiceUnavailableException If the submission threads are
+     * saturated
+     */
+    protected final void checkSubmissionCapacity(final Application app) {
+        final ExecutorService pool = getSubmissionThreadPool();
+        int free = ThreadPoolFactory.getFreeCapacity(pool);
+        if (pool instanceof BulkheadExecutor) {
+            free = ((BulkheadExecutor) pool).getFreeCapacity(
+                    app.getInfrastructures());
+        }
+        if (free < 1) {
+            log.warn("Submission threads saturated for the application "
+                    + app.getId() + ", task rejected");
+            throw new ServiceUnavailableException("The service cannot accept "
+                    + "new tasks at the moment",
+                    (long) Constants.SUBMISSIONRETRYAFTER);
+        }
+    }
+
+    /**
+     * Verifies the monitor queue can hold a number of tasks.
+     * The tasks waiting for the submission threads are parked in the
+     * monitor queue, so the tasks are refused only when the queue has no
+     * overflow and not enough free space for all of them.
+     *
+     * @param someTasks The number of tasks
+     * @throws ServiceUnavailableException If the monitor queue cannot hold
+     * the tasks
+     */
+    protected final void checkMonitorCapacity(final int someTasks) {
+        final MonitorQueue monitor = getMonitorQueue();
+        if (monitor == null || monitor.getMonitorQueue() == null) {
+            return;
+        }
+        final BlockingQueue<Task> queue = monitor.getMonitorQueue();
+        if (queue instanceof DelayedTaskQueue
+                && ((DelayedTaskQueue) queue).getOverflow() != null) {
+            return;
+        }
+        if (queue.remainingCapacity() < someTasks) {
+            log.warn("Monitor queue full, " + someTasks + " tasks rejected");
+            throw new ServiceUnavailableException("The service cannot accept "
+                    + "new tasks at the moment",
+                    (long) Constants.SUBMISSIONRETRYAFTER);
+        }
+    }
+
+    /**
+     * Verifies the task can be executed with the application.
+     * The pilots of the applications in pilot mode download the input files
+     * from the server so the files cannot be provided by URL.
+     *
+     * @param app The application of the task
+     * @param task The task
+     * @throws BadRequestException If the task cannot be executed
+     */
+    protected final void checkExecutable(final Application app,
+            final Task task) {
+        if (PilotManager.isPilotMode(app) && !PilotManager.isSupported(task)) {
+            throw new BadRequestException("Input files provided by URL are "
+                    + "not supported by the application " + app.getId());
+        }
+    }
+
+    /**
+     * Retrieves the stream of the task events.
+     *
+     * @return The stream
+     * @throws ServiceUnavailableException If the events are not available
+     */
+    protected final TaskEventStream getTaskEventStream() {
+        final TaskEventStream events = TaskEventStream.getInstance();
+        if (events == null) {
+            throw new ServiceUnavailableException("Task events are not "
+                    + "available");
+        }
+        return events;
+    }
+
+    /**
+     * Opens a stream of events for the client.
+     * The events following the last received by the client are sent first,
+     * if still available. A stream of a task starting with a final state is
+     * closed after the first event.
+     *
+     * @param events The stream of the task events
+     * @param taskId The task to follow or null for all the tasks of the user
+     * @param user The user owning the tasks or null for any user
+     * @param lastSequence Sequence number of the last event received by the
+     * client
+     * @param initial Event to send before the others or null
+     * @return The output of the events
+     */
+    protected final EventOutput openEventOutput(final TaskEventStream events,
+            final String taskId, final String user, final long lastSequence,
+            final TaskEvent initial) {
+        final EventOutput output = new EventOutput();
+        final EventOutputSink sink = new EventOutputSink(output);
+        if (initial != null) {
+            try {
+                sink.send(initial);
+            } catch (IOException ioe) {
+                log.debug("Event stream closed: " + ioe.getMessage());
+                sink.close();
+                return output;
+            }
+            if (taskId != null && TaskStates.isFinal(initial.getState())) {
+                sink.close();
+                return output;
+            }
+        }
+        events.subscribe(taskId, user, lastSequence, sink);
+        return output;
+    }
+
+    /**
+     * Parses the id of the last event received by the client.
+     *
+     * @param lastEventId The value of the header <i>Last-Event-ID</i>
+     * @return The sequence number or -1 if the client has not received
+     * events
+     */
+    protected final long parseLastEventId(final String lastEventId) {
+        if (lastEventId == null || lastEventId.isEmpty()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException nfe) {
+            log.debug("Wrong Last-Event-ID: " + lastEventId);
+            return -1;
+        }
+    }
 }
@@ -0,0 +1,89 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.resources.CacheStats;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import javax.persistence.PersistenceException;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+
+/**
+ * The CacheService provides the usage of the second-level cache.
+ * Applications, infrastructures and their parameters are cached because
+ * they are read for every task. The hit ratio shows if the size of the
+ * regions fits the workload. Statistics are collected only if enabled in
+ * the configuration, otherwise they are reported as disabled.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Path("/caches")
+public class CacheService extends BaseService {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(CacheService.class);
+
+    /**
+     * Retrieves the statistics of the second-level cache.
+     *
+     * @return The statistics
+     */
+    @GET
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final CacheStats getCacheStats() {
+        final Statistics statistics;
+        try {
+            statistics = getEntityManagerFactory().unwrap(
+                    SessionFactory.class).getStatistics();
+        } catch (PersistenceException pe) {
+            log.warn("Cache statistics not available: " + pe.getMessage());
+            throw new NotFoundException("Cache statistics not available");
+        }
+        final CacheStats stats = new CacheStats();
+        if (!statistics.isStatisticsEnabled()) {
+            stats.setEnabled(false);
+            return stats;
+        }
+        stats.setCounters(statistics.getSecondLevelCacheHitCount(),
+                statistics.getSecondLevelCacheMissCount(),
+                statistics.getSecondLevelCachePutCount());
+        for (String region: statistics.getSecondLevelCacheRegionNames()) {
+            final CacheRegionStatistics rs =
+                    statistics.getDomainDataRegionStatistics(region);
+            if (rs != null) {
+                stats.addRegion(new CacheStats.Region(region,
+                        rs.getHitCount(), rs.getMissCount(),
+                        rs.getPutCount(), rs.getElementCountInMemory()));
+            }
+        }
+        return stats;
+    }
+}
@@ -0,0 +1,89 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventSink;
+import java.io.IOException;
+import javax.ws.rs.core.MediaType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.OutboundEvent;
+
+/**
+ * Sends the task events to a client as Server-Sent Events.
+ * The sequence number of the task event is the id of the SSE event so the
+ * clients reconnecting provide it in the header <i>Last-Event-ID</i>.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+class EventOutputSink implements TaskEventSink {
+
+    /**
+     * Name of the SSE events.
+     */
+    static final String EVENTNAME = "status";
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(EventOutputSink.class);
+
+    /**
+     * The output to the client.
+     */
+    private final EventOutput output;
+
+    /**
+     * Build the sink.
+     *
+     * @param anOutput The output to the client
+     */
+    EventOutputSink(final EventOutput anOutput) {
+        this.output = anOutput;
+    }
+
+    @Override
+    public final void send(final TaskEvent event) throws IOException {
+        output.write(new OutboundEvent.Builder().
+                id(Long.toString(event.getSequence())).
+                name(EVENTNAME).
+                mediaType(MediaType.APPLICATION_JSON_TYPE).
+                data(TaskEvent.class, event).
+                build());
+    }
+
+    @Override
+    public final void heartbeat() throws IOException {
+        output.write(new OutboundEvent.Builder().comment("").build());
+    }
+
+    @Override
+    public final void close() {
+        try {
+            output.close();
+        } catch (IOException ioe) {
+            log.debug("Event stream already closed: " + ioe.getMessage());
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Writes a portion of a file to the client.
+ * The bytes are transferred by the file channel to the output without
+ * loading the file in the heap so large files can be served with a constant
+ * memory. Every download opens its own channel, therefore many clients can
+ * read the same file at the same time.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+class FileRangeOutput implements StreamingOutput {
+
+    /**
+     * The file.
+     */
+    private final Path file;
+
+    /**
+     * Position of the first byte to write.
+     */
+    private final long start;
+
+    /**
+     * Number of bytes to write.
+     */
+    private final long count;
+
+    /**
+     * Build the output.
+     *
+     * @param aFile The file
+     * @param aStart Position of the first byte to write
+     * @param aCount Number of bytes to write
+     */
+    FileRangeOutput(final Path aFile, final long aStart, final long aCount) {
+        this.file = aFile;
+        this.start = aStart;
+        this.count = aCount;
+    }
+
+    @Override
+    public final void write(final OutputStream output) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(output);
+        try (FileChannel source = FileChannel.open(file,
+                StandardOpenOption.READ)) {
+            long position = start;
+            long remaining = count;
+            while (remaining > 0) {
+                final long sent = source.transferTo(position, remaining,
+                        target);
+                if (sent <= 0) {
+                    throw new EOFException("File " + file + " truncated "
+                            + "during the download");
+                }
+                position += sent;
+                remaining -= sent;
+            }
+        }
+        output.flush();
+    }
+}
@@ -26,6 +26,7 @@ import it.infn.ct.futuregateway.apiserver.utils.annotations.Status;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import it.infn.ct.futuregateway.apiserver.resources.InfrastructureList;
 import java.util.Date;
+import java.util.LinkedList;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
@@ -112,19 +113,21 @@ public class InfrastructureCollectionService extends BaseService {
 
 
     /**
-     * Retrieve the application list.
-     * The fields not requested for the list are cleaned.
-     * @return The list of applications
+     * Retrieve the infrastructure list.
+     * Only the fields requested for the list are read from the DB, without
+     * loading the parameters.
+     *
+     * @return The list of infrastructures
      */
     private List<Infrastructure> retrieveInfrastructureList() {
-        List<Infrastructure> lstInfras;
+        List<Infrastructure> lstInfras = new LinkedList<>();
+        List<Object[]> infraList;
         EntityManager em = getEntityManager();
         EntityTransaction et = null;
         try {
             et = em.getTransaction();
             et.begin();
-            lstInfras = em.createNamedQuery("infrastructures.all",
-                    Infrastructure.class).
+            infraList = em.createNamedQuery("infrastructures.list").
                     getResultList();
             et.commit();
         } catch (RuntimeException re) {
@@ -138,10 +141,16 @@ public class InfrastructureCollectionService extends BaseService {
         } finally {
             em.close();
         }
-        if (lstInfras != null) {
-            for (Infrastructure in: lstInfras) {
-                in.setDescription(null);
-                in.setParameters(null);
+        if (infraList != null) {
+            for (Object[] elem: infraList) {
+                int idElem = 0;
+                Infrastructure in = new Infrastructure();
+                in.setId((String) elem[idElem++]);
+                in.setName((String) elem[idElem++]);
+                in.setDateCreated((Date) elem[idElem++]);
+                in.setEnabled((Boolean) elem[idElem++]);
+                in.setVirtual((Boolean) elem[idElem]);
+                lstInfras.add(in);
             }
         }
         return lstInfras;
@@ -21,7 +21,10 @@
 
 package it.infn.ct.futuregateway.apiserver.v1;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.Bulkhead;
+import it.infn.ct.futuregateway.apiserver.inframanager.Bulkheads;
 import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import it.infn.ct.futuregateway.apiserver.resources.BulkheadStats;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import java.util.List;
 import javax.persistence.EntityManager;
@@ -88,6 +91,33 @@ public class InfrastructureService extends BaseService {
     }
 
 
+    /**
+     * Retrieve the usage of the resources isolated for the infrastructure.
+     * The bulkhead of an infrastructure is created the first time the
+     * infrastructure is used.
+     *
+     * @param id The infrastructure id. This is a path parameter retrieved from
+     * the URL
+     * @return The statistics of the bulkhead
+     */
+    @GET
+    @Path("bulkhead")
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final BulkheadStats getBulkheadStats(
+            @PathParam("id") final String id) {
+        final Bulkheads bulkheads = getBulkheads();
+        Bulkhead bulkhead = null;
+        if (bulkheads != null) {
+            bulkhead = bulkheads.find(id);
+        }
+        if (bulkhead == null) {
+            throw new NotFoundException("Infrastructure " + id
+                    + " has not a bulkhead");
+        }
+        return bulkhead.getStats();
+    }
+
+
     /**
      * Removes the infrastructure. Delete the infrastructure only if there are
      * not applications associated with it to avoid inconsistency in the DB.
@@ -142,5 +172,12 @@ public class InfrastructureService extends BaseService {
         } finally {
             em.close();
         }
+        evictFromCache(Infrastructure.class, id);
+        if (getBulkheads() != null) {
+            getBulkheads().remove(id);
+        }
+        if (getSessionCache() != null) {
+            getSessionCache().invalidate(id);
+        }
     }
 }
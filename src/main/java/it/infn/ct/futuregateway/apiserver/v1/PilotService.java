@@ -0,0 +1,232 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.Pilot;
+import it.infn.ct.futuregateway.apiserver.inframanager.pilot.PilotManager;
+import it.infn.ct.futuregateway.apiserver.resources.PilotAssignment;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskFile;
+import it.infn.ct.futuregateway.apiserver.resources.TaskFileInput;
+import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.FormParam;
+import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataParam;
+
+/**
+ * The PilotService provides the REST APIs used by the pilot jobs.
+ * A pilot requests the next task of its application, downloads the input
+ * files, runs the task, uploads the output files and reports the final
+ * state. The pilot identifier, known only to the pilot job, authorises the
+ * requests.
+ *
+ * @see PilotManager
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Path("/pilots/{pilot}")
+public class PilotService extends BaseService {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(PilotService.class);
+
+    /**
+     * Assigns the next task to the pilot.
+     * If no task is waiting the service replies with the status 204 (No
+     * Content).
+     *
+     * @param pilotId The pilot id
+     * @return The task to execute or null
+     */
+    @GET
+    @Path("/next")
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final PilotAssignment nextTask(
+            @PathParam("pilot") final String pilotId) {
+        final Task task = getManager().next(getPilot(pilotId));
+        if (task == null) {
+            return null;
+        }
+        return PilotManager.describe(task);
+    }
+
+    /**
+     * Updates the state of a task executed by the pilot.
+     * Accepted states are RUNNING, DONE and ABORTED.
+     *
+     * @param pilotId The pilot id
+     * @param taskId The task id
+     * @param status The new state of the task
+     */
+    @POST
+    @Path("/tasks/{task}/status")
+    @Consumes(MediaType.APPLICATION_FORM_URLENCODED)
+    public final void updateStatus(@PathParam("pilot") final String pilotId,
+            @PathParam("task") final String taskId,
+            @FormParam("status") final String status) {
+        final Pilot pilot = getPilot(pilotId);
+        final Task.STATE state;
+        try {
+            state = Task.STATE.valueOf(status);
+        } catch (IllegalArgumentException | NullPointerException ex) {
+            throw new BadRequestException("State '" + status
+                    + "' not valid");
+        }
+        if (!getManager().report(pilot, taskId, state)) {
+            throw new BadRequestException("Task " + taskId
+                    + " cannot move to " + state);
+        }
+    }
+
+    /**
+     * Downloads an input file of a task executed by the pilot.
+     *
+     * @param pilotId The pilot id
+     * @param taskId The task id
+     * @param fileName The file name
+     * @return The file
+     */
+    @GET
+    @Path("/tasks/{task}/input/{file}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public final File getInputFile(@PathParam("pilot") final String pilotId,
+            @PathParam("task") final String taskId,
+            @PathParam("file") final String fileName) {
+        final Task task = getTask(getPilot(pilotId), taskId);
+        if (task.getInputFiles() != null) {
+            for (TaskFileInput tfi: task.getInputFiles()) {
+                if (tfi.getName().equals(fileName)) {
+                    final File file = getStorage().getCachePath(
+                            Storage.RESOURCE.TASKS, taskId,
+                            Constants.INPUTFOLDER).resolve(
+                                    fileName).toFile();
+                    if (file.isFile()) {
+                        return file;
+                    }
+                }
+            }
+        }
+        throw new NotFoundException("File " + fileName + " not available");
+    }
+
+    /**
+     * Uploads output files of a task executed by the pilot.
+     * Files are provided as a <i>multipart form data</i> using the field
+     * file, as for the input files of the tasks.
+     *
+     * @param pilotId The pilot id
+     * @param taskId The task id
+     * @param lstFiles List of file in the POST body
+     */
+    @POST
+    @Path("/tasks/{task}/output")
+    @Consumes({MediaType.MULTIPART_FORM_DATA})
+    public final void setOutputFile(@PathParam("pilot") final String pilotId,
+            @PathParam("task") final String taskId,
+            @FormDataParam("file") final List<FormDataBodyPart> lstFiles) {
+        if (lstFiles == null || lstFiles.isEmpty()) {
+            throw new BadRequestException("Output not accessible!");
+        }
+        final Task task = getTask(getPilot(pilotId), taskId);
+        final Storage store = getStorage();
+        for (FormDataBodyPart fdbp : lstFiles) {
+            final String fName =
+                    fdbp.getFormDataContentDisposition().getFileName();
+            try {
+                store.storeFile(Storage.RESOURCE.TASKS, taskId,
+                        fdbp.getValueAs(InputStream.class),
+                        fName, Constants.OUTPUTFOLDER);
+                task.updateOutputFile(fName, TaskFile.FILESTATUS.READY,
+                        null);
+            } catch (IOException ex) {
+                log.error(ex);
+                throw new InternalServerErrorException(
+                        "Errore to store output files");
+            }
+        }
+    }
+
+    /**
+     * Retrieves the pilot manager.
+     *
+     * @return The pilot manager
+     * @throws NotFoundException If the pilot mode is not available
+     */
+    private PilotManager getManager() {
+        final PilotManager manager = PilotManager.getInstance();
+        if (manager == null) {
+            throw new NotFoundException("Pilot mode not available");
+        }
+        return manager;
+    }
+
+    /**
+     * Retrieves an active pilot.
+     *
+     * @param pilotId The pilot id
+     * @return The pilot
+     * @throws NotFoundException If the pilot is not active
+     */
+    private Pilot getPilot(final String pilotId) {
+        final Pilot pilot = getManager().getPilot(pilotId);
+        if (pilot == null) {
+            throw new NotFoundException("Pilot " + pilotId
+                    + " not active");
+        }
+        return pilot;
+    }
+
+    /**
+     * Retrieves a task assigned to the pilot.
+     *
+     * @param pilot The pilot
+     * @param taskId The task id
+     * @return The task
+     * @throws NotFoundException If the task is not assigned to the pilot
+     */
+    private Task getTask(final Pilot pilot, final String taskId) {
+        final Task task = getManager().getAssigned(pilot, taskId);
+        if (task == null) {
+            throw new NotFoundException("Task " + taskId
+                    + " not assigned to the pilot");
+        }
+        return task;
+    }
+}
@@ -0,0 +1,158 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskArray;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
+import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import it.infn.ct.futuregateway.apiserver.utils.annotations.Status;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityTransaction;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The TaskArrayCollectionService provides the REST APIs to create task
+ * arrays.
+ * A task array generates a task for every combination of its parameters
+ * from a template. All the tasks are registered in a single transaction
+ * and then follow the same steps of the tasks created individually.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Path("/taskarrays")
+public class TaskArrayCollectionService extends BaseService {
+
+    /**
+     * Logger object.
+     * Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(
+            TaskArrayCollectionService.class);
+
+    /**
+     * Register a new task array.
+     * The tasks of the array are not submitted together: they wait in the
+     * monitor queue for the submission threads, as the tasks rejected by a
+     * saturated pool. When the submission threads available for the
+     * application are saturated, or the monitor queue cannot hold all the
+     * tasks, the array is not registered and the service replies with the
+     * status 503 (Service Unavailable) and the header Retry-After.
+     * <p>
+     * The tasks are written in the state WAITING before the reply so the
+     * upload of the input files following the creation finds them.
+     *
+     * @param taskArray The task array to register
+     * @return The task array registered
+     */
+    @POST
+    @Status(Response.Status.CREATED)
+    @Consumes({MediaType.APPLICATION_JSON, Constants.INDIGOMIMETYPE})
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final TaskArray createTaskArray(final TaskArray taskArray) {
+        if (taskArray.getApplicationId() == null) {
+            throw new BadRequestException("A valid application for the task"
+                    + " array must be provided");
+        }
+        final Date now = new Date();
+        taskArray.setDateCreated(now);
+        taskArray.setUserName(getUser());
+        final List<Task> tasks;
+        EntityManager em = getEntityManager();
+        EntityTransaction et = null;
+        try {
+            et = em.getTransaction();
+            et.begin();
+            Application app = em.find(Application.class,
+                    taskArray.getApplicationId());
+            if (app == null) {
+                throw new BadRequestException("Application id not valid");
+            }
+            em.persist(taskArray);
+            try {
+                tasks = taskArray.createTasks(Constants.TASKARRAYMAXSIZE);
+            } catch (IllegalArgumentException iae) {
+                throw new BadRequestException(iae.getMessage());
+            }
+            if (!tasks.isEmpty()) {
+                // All the tasks have the input files of the template
+                checkExecutable(app, tasks.get(0));
+            }
+            checkSubmissionCapacity(app);
+            checkMonitorCapacity(tasks.size());
+            for (int i = 0; i < tasks.size(); i++) {
+                final Task task = tasks.get(i);
+                task.setDateCreated(now);
+                task.setUserName(getUser());
+                task.setState(Task.STATE.PENDING);
+                task.setApplicationDetail(app);
+                em.persist(task);
+                if ((i + 1) % Constants.TASKFLUSHBATCHSIZE == 0) {
+                    em.flush();
+                    em.clear();
+                }
+            }
+            et.commit();
+            log.debug("New task array registered: " + taskArray.getId()
+                    + " with " + tasks.size() + " tasks");
+        } catch (BadRequestException | ServiceUnavailableException ex) {
+            throw ex;
+        } catch (RuntimeException re) {
+            log.error("Impossible to create a task array");
+            log.debug(re);
+            throw re;
+        } finally {
+            if (et != null && et.isActive()) {
+                et.rollback();
+            }
+            em.close();
+        }
+        final Storage store = getStorage();
+        final TaskObserver observer = new TaskObserver(
+                getEntityManagerFactory(), getSubmissionThreadPool(), store,
+                getMonitorQueue(), getTaskWriteBehind());
+        final List<String> ids = new ArrayList<>(tasks.size());
+        for (Task task: tasks) {
+            store.createCache(Storage.RESOURCE.TASKS, task.getId());
+            task.addObserver(observer);
+            task.setState(Task.STATE.WAITING);
+            ids.add(task.getId());
+        }
+        flushTasks(tasks);
+        taskArray.setTaskIds(ids);
+        return taskArray;
+    }
+}
@@ -0,0 +1,97 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskArray;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import java.util.ArrayList;
+import java.util.List;
+import javax.persistence.EntityManager;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The TaskArrayService provides the REST APIs for the task array.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Path("/taskarrays/{id}")
+public class TaskArrayService extends BaseService {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TaskArrayService.class);
+
+    /**
+     * Retrieves the task array details.
+     * Details include the tasks of the array, the number of tasks in every
+     * state and the state of the array aggregated from them.
+     *
+     * @param id The task array id
+     * @return The task array
+     */
+    @GET
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final TaskArray getTaskArrayDetails(
+            @PathParam("id") final String id) {
+        TaskArray taskArray;
+        List<String> ids;
+        List<Object[]> counts;
+        EntityManager em = getEntityManager();
+        try {
+            taskArray = em.find(TaskArray.class, id);
+            if (taskArray == null) {
+                throw new NotFoundException();
+            }
+            ids = em.createNamedQuery("tasks.forArray", String.class).
+                    setParameter("arrayId", id).
+                    getResultList();
+            counts = em.createNamedQuery("tasks.countStatesForArray",
+                    Object[].class).
+                    setParameter("arrayId", id).
+                    getResultList();
+        } catch (IllegalArgumentException iae) {
+            log.error("Impossible to retrieve the task array");
+            log.error(iae);
+            throw new BadRequestException("Task array '" + id
+                    + "' has a problem!");
+        } finally {
+            em.close();
+        }
+        final List<TaskArray.StateCount> stateCounts = new ArrayList<>();
+        for (Object[] count: counts) {
+            stateCounts.add(new TaskArray.StateCount((Task.STATE) count[0],
+                    ((Number) count[1]).longValue()));
+        }
+        taskArray.setTaskIds(ids);
+        taskArray.setStateCounts(stateCounts);
+        return taskArray;
+    }
+}
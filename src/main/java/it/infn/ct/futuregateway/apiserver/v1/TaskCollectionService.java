@@ -26,19 +26,28 @@ import it.infn.ct.futuregateway.apiserver.utils.annotations.Status;
 import it.infn.ct.futuregateway.apiserver.resources.Application;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.resources.TaskList;
+import it.infn.ct.futuregateway.apiserver.resources.TaskSummary;
 import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
+import it.infn.ct.futuregateway.apiserver.utils.KeysetCursor;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
-import java.util.LinkedList;
 import java.util.List;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
+import javax.persistence.Query;
+import javax.persistence.TemporalType;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import org.apache.commons.logging.Log;
@@ -64,16 +73,61 @@ public class TaskCollectionService extends BaseService {
     /**
      * Retrieves the list of tasks.
      *
-     * The list includes only the tasks associated to the user.
+     * The list includes only the tasks associated to the user, ordered by
+     * creation date. Tasks are returned in pages and the list includes the
+     * cursor to retrieve the next page, if any.
      *
+     * @param states Only tasks in these states are listed, all if empty
+     * @param from Only tasks created at or after this ISO-8601 instant
+     * @param to Only tasks created before this ISO-8601 instant
+     * @param after Cursor of the previous page
+     * @param limit Maximum number of tasks in the page
      * @return The task collection
      */
     @GET
     @Produces(Constants.INDIGOMIMETYPE)
-    public final TaskList listTasks() {
+    public final TaskList listTasks(
+            @QueryParam("status") final List<String> states,
+            @QueryParam("from") final String from,
+            @QueryParam("to") final String to,
+            @QueryParam("after") final String after,
+            @QueryParam("limit") final Integer limit) {
+        final TaskFilter filter = new TaskFilter();
+        try {
+            for (String st: states) {
+                filter.states.add(Task.STATE.valueOf(st.toUpperCase()));
+            }
+            if (from != null) {
+                filter.from = Date.from(Instant.parse(from));
+            }
+            if (to != null) {
+                filter.to = Date.from(Instant.parse(to));
+            }
+            if (after != null) {
+                filter.after = KeysetCursor.decode(after);
+            }
+        } catch (IllegalArgumentException | DateTimeParseException ex) {
+            throw new BadRequestException("Wrong filter for the task list: "
+                    + ex.getMessage());
+        }
+        int pageSize = Constants.TASKPAGESIZE;
+        if (limit != null) {
+            if (limit <= 0) {
+                throw new BadRequestException("The limit must be positive");
+            }
+            pageSize = Math.min(limit, Constants.TASKPAGEMAXSIZE);
+        }
         TaskList tasks;
         try {
-            tasks = new TaskList(retrieveTaskList());
+            final List<TaskSummary> page = retrieveTaskList(filter,
+                    pageSize + 1);
+            tasks = new TaskList(page);
+            if (page.size() > pageSize) {
+                page.remove(pageSize);
+                final TaskSummary last = page.get(pageSize - 1);
+                tasks.setNext(new KeysetCursor(last.getDateCreated(),
+                        last.getId()).encode());
+            }
         } catch (RuntimeException re) {
             getResponse().setStatus(
                     Response.Status.INTERNAL_SERVER_ERROR.getStatusCode());
@@ -84,6 +138,12 @@ public class TaskCollectionService extends BaseService {
 
     /**
      * Register a new task.
+     * When the submission threads available for the application are
+     * saturated the task is not registered and the service replies with the
+     * status 503 (Service Unavailable) and the header Retry-After.
+     * <p>
+     * The task is written in the state WAITING before the reply so the
+     * upload of the input files following the creation finds it.
      *
      * @param task The task to register
      * @return The task registered
@@ -110,12 +170,14 @@ public class TaskCollectionService extends BaseService {
             if (app == null) {
                 throw new BadRequestException("Application id not valid");
             }
+            checkExecutable(app, task);
+            checkSubmissionCapacity(app);
             task.setApplicationDetail(app);
             em.persist(task);
             et.commit();
             log.debug("New task registered: " + task.getId());
-        } catch (BadRequestException bre) {
-            throw bre;
+        } catch (BadRequestException | ServiceUnavailableException ex) {
+            throw ex;
         } catch (RuntimeException re) {
             log.error("Impossible to create a task");
             log.debug(re);
@@ -130,30 +192,39 @@ public class TaskCollectionService extends BaseService {
         getStorage().createCache(Storage.RESOURCE.TASKS, task.getId());
         log.debug("Adding the observer");
         task.addObserver(new TaskObserver(getEntityManagerFactory(),
-                getSubmissionThreadPool(), getStorage(), getMonitorQueue()));
+                getSubmissionThreadPool(), getStorage(), getMonitorQueue(),
+                getTaskWriteBehind()));
         log.debug("Task in waiting for the next step");
         task.setState(Task.STATE.WAITING);
+        flushTasks(Collections.singletonList(task));
         return task;
     }
 
 
     /**
      * Retrieve a task list for the user.
-     * Tasks are retrieved from the storage for the user performing the request.
+     * Tasks are retrieved from the storage for the user performing the
+     * request. Only the columns shown in the list are read and the tasks
+     * after the cursor are selected by the index on user and creation date,
+     * so the cost of a page does not grow with the number of tasks.
      *
+     * @param filter The conditions on the tasks
+     * @param maxTasks The maximum number of tasks to retrieve
      * @return A list of tasks
      */
-    private List<Task> retrieveTaskList() {
-        List<Task> lstTasks = new LinkedList<>();
+    private List<TaskSummary> retrieveTaskList(final TaskFilter filter,
+            final int maxTasks) {
+        List<TaskSummary> lstTasks = new ArrayList<>(maxTasks);
         EntityManager em = getEntityManager();
         EntityTransaction et = null;
         List<Object[]> taskList = null;
         try {
             et = em.getTransaction();
             et.begin();
-            taskList = em.createNamedQuery("tasks.userAll").
-                    setParameter("user", getUser()).
-                    getResultList();
+            final Query query = em.createQuery(filter.toQuery());
+            query.setParameter("user", getUser());
+            filter.setParameters(query);
+            taskList = query.setMaxResults(maxTasks).getResultList();
             et.commit();
         } catch (RuntimeException re) {
             if (et != null && et.isActive()) {
@@ -165,18 +236,100 @@ public class TaskCollectionService extends BaseService {
         } finally {
             em.close();
         }
-        if (taskList != null && !taskList.isEmpty()) {
+        if (taskList != null) {
             for (Object[] elem: taskList) {
                 int idElem = 0;
-                Task tmpTask = new Task();
-                tmpTask.setId((String) elem[idElem++]);
-                tmpTask.setDescription((String) elem[idElem++]);
-                tmpTask.setState((Task.STATE) elem[idElem++]);
-                tmpTask.setDateCreated((Date) elem[idElem]);
-                lstTasks.add(tmpTask);
+                lstTasks.add(new TaskSummary((String) elem[idElem++],
+                        (String) elem[idElem++],
+                        (Task.STATE) elem[idElem++],
+                        (Date) elem[idElem]));
             }
         }
         return lstTasks;
     }
 
+
+    /**
+     * Conditions on the tasks of the list.
+     */
+    private static final class TaskFilter {
+
+        /**
+         * Selection of the task columns shown in the list.
+         */
+        private static final String SELECT = "SELECT t.id, t.description,"
+                + " t.state, t.dateCreated FROM Task t"
+                + " WHERE t.userName = :user";
+
+        /**
+         * Order of the tasks in the list.
+         */
+        private static final String ORDER =
+                " ORDER BY t.dateCreated, t.id";
+
+        /**
+         * States of the tasks, all if empty.
+         */
+        private final List<Task.STATE> states = new ArrayList<>();
+
+        /**
+         * Minimum creation date, included.
+         */
+        private Date from;
+
+        /**
+         * Maximum creation date, excluded.
+         */
+        private Date to;
+
+        /**
+         * Position of the last task of the previous page.
+         */
+        private KeysetCursor after;
+
+        /**
+         * Builds the query for the conditions.
+         *
+         * @return The JPQL query
+         */
+        String toQuery() {
+            final StringBuilder jpql = new StringBuilder(SELECT);
+            if (!states.isEmpty()) {
+                jpql.append(" AND t.state IN :states");
+            }
+            if (from != null) {
+                jpql.append(" AND t.dateCreated >= :from");
+            }
+            if (to != null) {
+                jpql.append(" AND t.dateCreated < :to");
+            }
+            if (after != null) {
+                jpql.append(" AND (t.dateCreated > :afterDate OR"
+                        + " (t.dateCreated = :afterDate AND t.id > :afterId))");
+            }
+            return jpql.append(ORDER).toString();
+        }
+
+        /**
+         * Sets the parameters of the conditions in the query.
+         *
+         * @param query The query built from {@link #toQuery()}
+         */
+        void setParameters(final Query query) {
+            if (!states.isEmpty()) {
+                query.setParameter("states", states);
+            }
+            if (from != null) {
+                query.setParameter("from", from, TemporalType.TIMESTAMP);
+            }
+            if (to != null) {
+                query.setParameter("to", to, TemporalType.TIMESTAMP);
+            }
+            if (after != null) {
+                query.setParameter("afterDate", after.getDate(),
+                        TemporalType.TIMESTAMP);
+                query.setParameter("afterId", after.getId());
+            }
+        }
+    }
 }
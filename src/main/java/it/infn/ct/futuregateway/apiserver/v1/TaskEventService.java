@@ -0,0 +1,66 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
+import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
+
+/**
+ * The TaskEventService streams the changes of state of all the tasks of the
+ * user.
+ * Events are sent as Server-Sent Events and they include only the task id,
+ * the new state and the time of the change. The portals following many
+ * tasks use this stream in place of polling every task.
+ *
+ * @see TaskService#getTaskEvents(String, String)
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+@Path("/tasks/events")
+public class TaskEventService extends BaseService {
+
+    /**
+     * Streams the changes of state of the tasks of the user.
+     * The stream includes only the changes following the connection.
+     * Clients reconnecting with the header <i>Last-Event-ID</i> receive the
+     * changes they missed, if still available.
+     *
+     * @param lastEventId The id of the last event received by the client
+     * @return The output of the events
+     */
+    @GET
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public final EventOutput getUserEvents(
+            @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER)
+            final String lastEventId) {
+        final TaskEventStream events = getTaskEventStream();
+        long received = parseLastEventId(lastEventId);
+        if (received < 0) {
+            received = events.getLastSequence();
+        }
+        return openEventOutput(events, null, getUser(), received, null);
+    }
+}
@@ -22,31 +22,59 @@
  */
 package it.infn.ct.futuregateway.apiserver.v1;
 
+import it.infn.ct.futuregateway.apiserver.inframanager.selection.Selectors;
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.utils.ByteRange;
 import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
 import it.infn.ct.futuregateway.apiserver.resources.TaskFile;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
 import it.infn.ct.futuregateway.apiserver.resources.observers.TaskObserver;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityTransaction;
+import javax.persistence.NoResultException;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
 import javax.ws.rs.GET;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.WebApplicationException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataParam;
+import org.glassfish.jersey.media.sse.EventOutput;
+import org.glassfish.jersey.media.sse.SseFeature;
 
 /**
  * The TaskService provides the REST APIs for the task as defined in the
@@ -58,22 +86,89 @@ import org.glassfish.jersey.media.multipart.FormDataParam;
 @Path("/tasks/{id}")
 public class TaskService extends BaseService {
 
+    /**
+     * Header with the range of bytes requested.
+     */
+    private static final String RANGE = "Range";
+
+    /**
+     * Header with the version of the file the range refers to.
+     */
+    private static final String IFRANGE = "If-Range";
+
+    /**
+     * Milliseconds in a second, the precision of the HTTP dates.
+     */
+    private static final long MILLISPERSECOND = 1000;
+
     /**
      * Logger object. Based on apache commons logging.
      */
     private final Log log = LogFactory.getLog(TaskService.class);
 
+    /**
+     * Retrieves the task details, optionally waiting for a state.
+     * Without the parameter <i>waitFor</i> the task is returned immediately.
+     * Otherwise the request is suspended, without holding a thread of the
+     * container, until the task reaches the state requested or a final
+     * state, or the timeout expires. The task is returned in all the cases
+     * so the client has to check its state.
+     *
+     * @param id The task id. This is a path parameter retrieved from the url
+     * @param waitFor The state to wait for, case insensitive
+     * @param timeout Maximum time to wait in seconds
+     * @param response The response to the suspended request
+     */
+    @GET
+    @Produces(Constants.INDIGOMIMETYPE)
+    public final void waitTaskDetails(@PathParam("id") final String id,
+            @QueryParam("waitFor") final String waitFor,
+            @QueryParam("timeout") final String timeout,
+            @Suspended final AsyncResponse response) {
+        if (waitFor == null) {
+            response.resume(getTaskDetails(id));
+            return;
+        }
+        final Task.STATE target;
+        long seconds = Constants.TASKWAITTIMEOUT;
+        try {
+            target = Task.STATE.valueOf(waitFor.toUpperCase());
+            if (timeout != null) {
+                seconds = Long.parseLong(timeout);
+            }
+        } catch (IllegalArgumentException iae) {
+            throw new BadRequestException("Wrong state or timeout: "
+                    + iae.getMessage());
+        }
+        if (seconds < 0 || seconds > Constants.TASKWAITMAXTIMEOUT) {
+            throw new BadRequestException("The timeout has to be between 0 "
+                    + "and " + Constants.TASKWAITMAXTIMEOUT + " seconds");
+        }
+        final TaskEventStream events = getTaskEventStream();
+        // Changes after this point are replayed when subscribing
+        final long lastSequence = events.getLastSequence();
+        final Task task = getTaskDetails(id);
+        final TaskWaitSink sink = new TaskWaitSink(response, events,
+                getEntityManagerFactory(), id, target);
+        if (sink.isReached(task.getState()) || seconds == 0) {
+            response.resume(task);
+            return;
+        }
+        // The events replayed can complete the request while subscribing
+        response.setTimeoutHandler(sink);
+        response.setTimeout(seconds, TimeUnit.SECONDS);
+        events.subscribe(id, null, lastSequence, sink);
+    }
+
     /**
      * Retrieves the task details. Task details include all the fields a task
      * consist of as described in the documentation. This include all the
      * information included in the task collection and many others.
      *
-     * @param id The task id. This is a path parameter retrieved from the url
+     * @param id The task id
      * @return The task
      */
-    @GET
-    @Produces(Constants.INDIGOMIMETYPE)
-    public final Task getTaskDetails(@PathParam("id") final String id) {
+    public final Task getTaskDetails(final String id) {
         Task task;
         EntityManager em = getEntityManager();
         try {
@@ -94,6 +189,230 @@ public class TaskService extends BaseService {
     }
 
 
+    /**
+     * Streams the changes of state of the task.
+     * The stream is a sequence of Server-Sent Events starting with the
+     * current state of the task. Clients reconnecting with the header
+     * <i>Last-Event-ID</i> receive the changes they missed, if still
+     * available. The stream is closed when the task reaches a final state.
+     *
+     * @param id The task id. This is a path parameter retrieved from the url
+     * @param lastEventId The id of the last event received by the client
+     * @return The output of the events
+     */
+    @GET
+    @Path("/events")
+    @Produces(SseFeature.SERVER_SENT_EVENTS)
+    public final EventOutput getTaskEvents(@PathParam("id") final String id,
+            @HeaderParam(SseFeature.LAST_EVENT_ID_HEADER)
+            final String lastEventId) {
+        final TaskEventStream events = getTaskEventStream();
+        // Changes after this point are replayed when subscribing
+        final long lastSequence = events.getLastSequence();
+        Task.STATE state;
+        EntityManager em = getEntityManager();
+        try {
+            state = em.createNamedQuery("tasks.state", Task.STATE.class).
+                    setParameter("id", id).
+                    getSingleResult();
+        } catch (NoResultException nre) {
+            throw new NotFoundException();
+        } finally {
+            em.close();
+        }
+        TaskEvent last = events.getLastEvent(id);
+        final long received = parseLastEventId(lastEventId);
+        if (received >= 0) {
+            if (TaskStates.isFinal(state)
+                    && (last == null || last.getSequence() <= received)) {
+                throw new WebApplicationException(Response.Status.NO_CONTENT);
+            }
+            return openEventOutput(events, id, null, received, null);
+        }
+        if (last == null || last.getSequence() > lastSequence) {
+            last = new TaskEvent(lastSequence, id, null, state, new Date());
+        } else {
+            last = new TaskEvent(lastSequence, id, null, last.getState(),
+                    last.getDate());
+        }
+        return openEventOutput(events, id, null, lastSequence, last);
+    }
+
+
+    /**
+     * Downloads an output file of the task.
+     * The file is streamed from the storage and the download can be resumed
+     * requesting a range of bytes with the header <i>Range</i>. The
+     * <i>ETag</i> and <i>Last-Modified</i> headers are derived from the
+     * size and the modification time of the file so clients can use
+     * conditional requests.
+     *
+     * @param id The task id. This is a path parameter retrieved from the url
+     * @param name The name of the output file
+     * @param range The range of bytes requested
+     * @param ifRange The version of the file the range refers to
+     * @param request The request to evaluate the preconditions
+     * @return The response with the file content
+     */
+    @GET
+    @Path("/output/{name}")
+    @Produces(MediaType.APPLICATION_OCTET_STREAM)
+    public final Response getOutputFile(@PathParam("id") final String id,
+            @PathParam("name") final String name,
+            @HeaderParam(RANGE) final String range,
+            @HeaderParam(IFRANGE) final String ifRange,
+            @Context final Request request) {
+        checkTask(id);
+        final java.nio.file.Path file = getStorage().getFile(
+                Storage.RESOURCE.TASKS, id, Constants.OUTPUTFOLDER, name);
+        if (file == null) {
+            throw new NotFoundException("Output " + name + " not available");
+        }
+        final BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException ioe) {
+            log.debug("Output " + file + " not readable: " + ioe.getMessage());
+            throw new NotFoundException("Output " + name + " not available");
+        }
+        final long size = attrs.size();
+        final Date modified = new Date(attrs.lastModifiedTime().toMillis());
+        final EntityTag tag = new EntityTag(Long.toHexString(size) + "-"
+                + Long.toHexString(modified.getTime()));
+        Response.ResponseBuilder rb = request.evaluatePreconditions(modified,
+                tag);
+        if (rb != null) {
+            return rb.build();
+        }
+        ByteRange bytes = null;
+        if (isCurrent(ifRange, tag, modified)) {
+            try {
+                bytes = ByteRange.parse(range, size);
+            } catch (IllegalArgumentException iae) {
+                return Response.status(
+                        Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE).
+                        header("Content-Range", "bytes */" + size).
+                        build();
+            }
+        }
+        if (bytes == null) {
+            rb = Response.ok(new FileRangeOutput(file, 0, size)).
+                    header(HttpHeaders.CONTENT_LENGTH, size);
+        } else {
+            rb = Response.status(Response.Status.PARTIAL_CONTENT).
+                    entity(new FileRangeOutput(file, bytes.getStart(),
+                            bytes.getLength())).
+                    header("Content-Range", bytes.toContentRange(size)).
+                    header(HttpHeaders.CONTENT_LENGTH, bytes.getLength());
+        }
+        return rb.tag(tag).
+                lastModified(modified).
+                header("Accept-Ranges", "bytes").
+                header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + name + "\"").
+                build();
+    }
+
+    /**
+     * Downloads all the output files of the task as a zip archive.
+     * The archive includes the standard output and error of the task and
+     * it is generated while it is sent to the client.
+     *
+     * @param id The task id. This is a path parameter retrieved from the url
+     * @param compression The compression level, from 0 for no compression
+     * to 9 for the best compression
+     * @return The response with the archive
+     */
+    @GET
+    @Path("/output")
+    @Produces(Constants.ZIPMIMETYPE)
+    public final Response getOutputArchive(@PathParam("id") final String id,
+            @QueryParam("compression") final String compression) {
+        int level = Deflater.DEFAULT_COMPRESSION;
+        if (compression != null) {
+            try {
+                level = Integer.parseInt(compression);
+                if (level < Deflater.NO_COMPRESSION
+                        || level > Deflater.BEST_COMPRESSION) {
+                    throw new NumberFormatException("Level out of range");
+                }
+            } catch (NumberFormatException nfe) {
+                throw new BadRequestException("The compression level has to "
+                        + "be between " + Deflater.NO_COMPRESSION + " and "
+                        + Deflater.BEST_COMPRESSION);
+            }
+        }
+        checkTask(id);
+        final Storage store = getStorage();
+        final List<java.nio.file.Path> files = new ArrayList<>();
+        try {
+            for (String name: store.listFiles(Storage.RESOURCE.TASKS, id,
+                    Constants.OUTPUTFOLDER)) {
+                final java.nio.file.Path file = store.getFile(
+                        Storage.RESOURCE.TASKS, id, Constants.OUTPUTFOLDER,
+                        name);
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+        } catch (IOException ioe) {
+            log.error("Impossible to list the outputs of the task " + id);
+            log.error(ioe);
+            throw new InternalServerErrorException("Outputs of the task "
+                    + id + " not accessible");
+        }
+        return Response.ok(new ZipArchiveOutput(files, level)).
+                header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"" + id + ".zip\"").
+                build();
+    }
+
+    /**
+     * Verifies the task exists.
+     *
+     * @param id The task id
+     */
+    private void checkTask(final String id) {
+        EntityManager em = getEntityManager();
+        try {
+            em.createNamedQuery("tasks.state", Task.STATE.class).
+                    setParameter("id", id).
+                    getSingleResult();
+        } catch (NoResultException nre) {
+            throw new NotFoundException("Task " + id + " does not exist");
+        } finally {
+            em.close();
+        }
+    }
+
+    /**
+     * Verifies the header <i>If-Range</i> refers to the current file.
+     * The header can contain the entity tag or the modification date of the
+     * file. Weak tags never match as required for the ranges.
+     *
+     * @param ifRange The header value
+     * @param tag The entity tag of the file
+     * @param modified The modification date of the file
+     * @return True if the header is missing or the file is not changed
+     */
+    private boolean isCurrent(final String ifRange, final EntityTag tag,
+            final Date modified) {
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return ifRange.equals("\"" + tag.getValue() + "\"");
+        }
+        try {
+            return ZonedDateTime.parse(ifRange,
+                    DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond()
+                    == modified.getTime() / MILLISPERSECOND;
+        } catch (DateTimeParseException dtpe) {
+            return false;
+        }
+    }
+
+
     /**
      * Removes the task. Task is deleted and all the associated activities and
      * or files removed.
@@ -111,6 +430,10 @@ public class TaskService extends BaseService {
             }
             EntityTransaction et = em.getTransaction();
             try {
+                if (getTaskWriteBehind() != null) {
+                    getTaskWriteBehind().discard(id);
+                }
+                Selectors.getMetrics().finished(id);
                 et.begin();
                 em.remove(task);
                 et.commit();
@@ -146,6 +469,9 @@ public class TaskService extends BaseService {
      * file. This can contains multiple file using the html input attribute
      * <i>multiple="multiple"</i> which allows to associate multiple files with
      * a single field.
+     * <p>
+     * The status of the files is written before the reply so the following
+     * uploads of the task find it.
      *
      * @param id The task id retrieved from the url path
      * @param lstFiles List of file in the POST body
@@ -161,12 +487,12 @@ public class TaskService extends BaseService {
         EntityManager em = getEntityManager();
         try {
             Task task = em.find(Task.class, id);
-            task.addObserver(new TaskObserver(getEntityManagerFactory(),
-                    getSubmissionThreadPool(), getStorage(),
-                    getMonitorQueue()));
             if (task == null) {
                 throw new NotFoundException("Task " + id + " does not exist");
             }
+            task.addObserver(new TaskObserver(getEntityManagerFactory(),
+                    getSubmissionThreadPool(), getStorage(),
+                    getMonitorQueue(), getTaskWriteBehind()));
             for (FormDataBodyPart fdbp : lstFiles) {
                 final String fName =
                         fdbp.getFormDataContentDisposition().getFileName();
@@ -183,6 +509,7 @@ public class TaskService extends BaseService {
                             "Errore to store input files");
                 }
             }
+            flushTasks(Collections.singletonList(task));
         } catch (IllegalArgumentException iae) {
             log.error("Impossible to retrieve the task list");
             log.error(iae);
@@ -0,0 +1,198 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.state.TaskStates;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventSink;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.TimeoutHandler;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Completes a suspended request when the task reaches a state.
+ * The request is completed also when the task reaches a final state
+ * different from the one expected, since it will not change any more, and
+ * on timeout. In all the cases the response is the task.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+class TaskWaitSink implements TaskEventSink, TimeoutHandler {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(TaskWaitSink.class);
+
+    /**
+     * The suspended request.
+     */
+    private final AsyncResponse response;
+
+    /**
+     * The stream of the task events.
+     */
+    private final TaskEventStream events;
+
+    /**
+     * Factory to load the task.
+     */
+    private final EntityManagerFactory emf;
+
+    /**
+     * The task.
+     */
+    private final String taskId;
+
+    /**
+     * The state expected.
+     */
+    private final Task.STATE target;
+
+    /**
+     * True if the request is completed or about to be.
+     */
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    /**
+     * Build the sink.
+     *
+     * @param aResponse The suspended request
+     * @param someEvents The stream of the task events
+     * @param anEmf Factory to load the task
+     * @param aTaskId The task
+     * @param aTarget The state expected
+     */
+    TaskWaitSink(final AsyncResponse aResponse,
+            final TaskEventStream someEvents,
+            final EntityManagerFactory anEmf, final String aTaskId,
+            final Task.STATE aTarget) {
+        this.response = aResponse;
+        this.events = someEvents;
+        this.emf = anEmf;
+        this.taskId = aTaskId;
+        this.target = aTarget;
+    }
+
+    /**
+     * Verifies if the wait is over for a state.
+     *
+     * @param state The state of the task
+     * @return True if the request has to be completed
+     */
+    final boolean isReached(final Task.STATE state) {
+        return state == target || TaskStates.isFinal(state);
+    }
+
+    /**
+     * Completes the request with the task.
+     * The state of the task in the database could be older than the one
+     * notified because the updates are written in background, in this case
+     * the response is a copy of the task with the state notified.
+     *
+     * @param state The state notified or null to use the stored one
+     */
+    final void complete(final Task.STATE state) {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        events.unsubscribe(this);
+        Task task;
+        EntityManager em = emf.createEntityManager();
+        try {
+            task = em.find(Task.class, taskId);
+        } catch (RuntimeException re) {
+            log.error("Impossible to retrieve the task " + taskId);
+            log.error(re);
+            response.resume(re);
+            return;
+        } finally {
+            em.close();
+        }
+        if (task == null) {
+            response.resume(new NotFoundException());
+            return;
+        }
+        if (state != null && task.getState() != state) {
+            response.resume(copy(task, state));
+            return;
+        }
+        response.resume(task);
+    }
+
+    /**
+     * Copies the details of a task shown to the clients.
+     *
+     * @param task The task
+     * @param state The state of the copy
+     * @return The copy
+     */
+    private static Task copy(final Task task, final Task.STATE state) {
+        final Task view = new Task();
+        view.setId(task.getId());
+        view.setApplicationId(task.getApplicationId());
+        view.setDescription(task.getDescription());
+        view.setArguments(task.getArguments());
+        view.setInputFiles(task.getInputFiles());
+        view.setOutputFiles(task.getOutputFiles());
+        view.setRuntime(task.getRuntime());
+        view.setUserName(task.getUserName());
+        view.setDateCreated(task.getDateCreated());
+        view.setTaskArrayId(task.getTaskArrayId());
+        view.setState(state);
+        view.setLastChange(task.getLastChange());
+        return view;
+    }
+
+    @Override
+    public final void send(final TaskEvent event) {
+        if (isReached(event.getState())) {
+            complete(event.getState());
+        }
+    }
+
+    @Override
+    public final void heartbeat() {
+    }
+
+    @Override
+    public final void close() {
+        if (completed.compareAndSet(false, true)) {
+            response.resume(new ServiceUnavailableException(
+                    "The task events are not available"));
+        }
+    }
+
+    @Override
+    public final void handleTimeout(final AsyncResponse aResponse) {
+        complete(null);
+    }
+}
@@ -0,0 +1,97 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.ws.rs.core.StreamingOutput;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Writes a set of files to the client as a zip archive.
+ * The archive is built while it is sent, reading a file at a time through
+ * the fixed size buffers of the zip stream, so it is never stored on disk
+ * or in memory.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+class ZipArchiveOutput implements StreamingOutput {
+
+    /**
+     * Logger object. Based on apache commons logging.
+     */
+    private final Log log = LogFactory.getLog(ZipArchiveOutput.class);
+
+    /**
+     * The files to include.
+     */
+    private final List<Path> files;
+
+    /**
+     * Compression level as defined by {@link java.util.zip.Deflater}.
+     */
+    private final int level;
+
+    /**
+     * Build the output.
+     *
+     * @param someFiles The files to include, in the archive order
+     * @param aLevel Compression level as defined by
+     * {@link java.util.zip.Deflater}
+     */
+    ZipArchiveOutput(final List<Path> someFiles, final int aLevel) {
+        this.files = someFiles;
+        this.level = aLevel;
+    }
+
+    @Override
+    public final void write(final OutputStream output) throws IOException {
+        final ZipOutputStream zip = new ZipOutputStream(output);
+        zip.setLevel(level);
+        for (Path file: files) {
+            final BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(file, BasicFileAttributes.class);
+            } catch (IOException ioe) {
+                log.debug("File " + file + " removed before the archive: "
+                        + ioe.getMessage());
+                continue;
+            }
+            final ZipEntry entry = new ZipEntry(
+                    file.getFileName().toString());
+            entry.setLastModifiedTime(attrs.lastModifiedTime());
+            zip.putNextEntry(entry);
+            Files.copy(file, zip);
+            zip.closeEntry();
+        }
+        zip.finish();
+        zip.flush();
+    }
+}
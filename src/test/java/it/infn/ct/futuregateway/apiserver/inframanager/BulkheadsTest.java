@@ -0,0 +1,192 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.BulkheadStats;
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.resources.Params;
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import it.infn.ct.futuregateway.apiserver.utils.ThreadPoolFactory;
+import java.util.LinkedList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the Bulkheads.
+ */
+public class BulkheadsTest {
+
+    /**
+     * Monitor threads allowed for the infrastructure under test.
+     */
+    private static final int MONITORS = 1;
+
+    /**
+     * Time to wait the termination of the submissions in milliseconds.
+     */
+    private static final long TERMINATIONWAIT = 5000;
+
+    /**
+     * Bulkheads under test.
+     */
+    private final Bulkheads bulkheads = new Bulkheads();
+
+    /**
+     * Latch keeping the submission threads busy.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Submission waiting for the latch.
+     */
+    private final Runnable busy = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    /**
+     * Release the busy threads and stop the bulkheads.
+     */
+    @After
+    public final void stopBulkheads() {
+        release.countDown();
+        bulkheads.shutdown();
+    }
+
+    /**
+     * Create an infrastructure with the given bulkhead parameters.
+     *
+     * @param id The infrastructure id
+     * @param poolSize The submission threads
+     * @param queueSize The submission queue
+     * @return The infrastructure
+     */
+    private Infrastructure createInfrastructure(final String id,
+            final int poolSize, final int queueSize) {
+        final Infrastructure infra = new Infrastructure();
+        infra.setId(id);
+        infra.setParameters(new LinkedList<Params>());
+        final Params pool = new Params();
+        pool.setName(Bulkheads.POOLSIZEPARAM);
+        pool.setValue(Integer.toString(poolSize));
+        infra.getParameters().add(pool);
+        final Params queue = new Params();
+        queue.setName(Bulkheads.QUEUESIZEPARAM);
+        queue.setValue(Integer.toString(queueSize));
+        infra.getParameters().add(queue);
+        final Params monitors = new Params();
+        monitors.setName(Bulkheads.MONITORSPARAM);
+        monitors.setValue(Integer.toString(MONITORS));
+        infra.getParameters().add(monitors);
+        return infra;
+    }
+
+    /**
+     * Bulkheads are sized with the infrastructure parameters or defaults.
+     */
+    @Test
+    public final void testSizing() {
+        final BulkheadStats stats = bulkheads.get(
+                createInfrastructure("sized", 2, 2 + 1)).getStats();
+        Assert.assertEquals(2, stats.getSubmissionThreads());
+        Assert.assertEquals(2 + 1, stats.getSubmissionQueueSize());
+        Assert.assertEquals(MONITORS, stats.getMonitorLimit());
+        final Infrastructure plain = new Infrastructure();
+        plain.setId("plain");
+        final BulkheadStats defaults = bulkheads.get(plain).getStats();
+        Assert.assertEquals(Constants.BULKHEADPOOLSIZE,
+                defaults.getSubmissionThreads());
+        Assert.assertEquals(Constants.BULKHEADMONITORS,
+                defaults.getMonitorLimit());
+        Assert.assertSame(bulkheads.get(plain), bulkheads.find("plain"));
+    }
+
+    /**
+     * A saturated infrastructure does not affect the others.
+     */
+    @Test
+    public final void testIsolation() {
+        final Bulkhead slow = bulkheads.get(
+                createInfrastructure("slow", 1, 1));
+        final Bulkhead fast = bulkheads.get(
+                createInfrastructure("fast", 1, 1));
+        slow.submit(busy);
+        slow.submit(busy);
+        try {
+            slow.submit(busy);
+            Assert.fail("Submission accepted by a saturated bulkhead");
+        } catch (RejectedExecutionException ree) {
+            Assert.assertEquals(1, slow.getStats().getSubmissionRejected());
+        }
+        fast.submit(busy);
+        Assert.assertEquals(0, fast.getStats().getSubmissionRejected());
+    }
+
+    /**
+     * Monitor threads are limited and postponed checks are counted.
+     */
+    @Test
+    public final void testMonitorLimit() {
+        final Bulkhead bulkhead = bulkheads.get(
+                createInfrastructure("monitored", 1, 1));
+        Assert.assertTrue(bulkhead.tryAcquireMonitor());
+        Assert.assertFalse(bulkhead.tryAcquireMonitor());
+        final BulkheadStats stats = bulkhead.getStats();
+        Assert.assertEquals(MONITORS, stats.getMonitorActive());
+        Assert.assertEquals(1, stats.getMonitorDeferred());
+        Assert.assertTrue(stats.isSaturated());
+        bulkhead.releaseMonitor();
+        Assert.assertTrue(bulkhead.tryAcquireMonitor());
+    }
+
+    /**
+     * The executor terminates only when the bulkheads are terminated.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testExecutorTermination() throws InterruptedException {
+        final BulkheadExecutor executor = new BulkheadExecutor(
+                ThreadPoolFactory.getThreadPool(1, 1,
+                        Constants.MAXTHREADIDLELIFE), bulkheads);
+        bulkheads.get(createInfrastructure("running", 1, 1)).submit(busy);
+        executor.shutdown();
+        Assert.assertTrue(executor.isShutdown());
+        Assert.assertFalse(executor.awaitTermination(1,
+                TimeUnit.MILLISECONDS));
+        Assert.assertFalse(executor.isTerminated());
+        release.countDown();
+        Assert.assertTrue(executor.awaitTermination(TERMINATIONWAIT,
+                TimeUnit.MILLISECONDS));
+        Assert.assertTrue(executor.isTerminated());
+    }
+}
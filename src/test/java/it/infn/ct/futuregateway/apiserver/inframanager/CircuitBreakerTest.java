@@ -0,0 +1,126 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.utils.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the CircuitBreaker.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Failures opening the circuit.
+     */
+    private static final int THRESHOLD = 3;
+
+    /**
+     * Open time after the first opening.
+     */
+    private static final long BASEDELAY = 500;
+
+    /**
+     * Maximum open time.
+     */
+    private static final long MAXDELAY = 10000;
+
+    /**
+     * Attempts verified for the backoff.
+     */
+    private static final int ATTEMPTS = 10;
+
+    /**
+     * Test the circuit opens after the failures and closes after a
+     * successful probe.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testOpenAndClose() throws InterruptedException {
+        final CircuitBreaker cb = new CircuitBreaker("ep", THRESHOLD,
+                BASEDELAY, MAXDELAY);
+        for (int i = 1; i < THRESHOLD; i++) {
+            cb.recordFailure();
+            Assert.assertTrue(cb.allowRequest());
+        }
+        cb.recordFailure();
+        Assert.assertEquals(CircuitBreaker.STATE.OPEN, cb.getState());
+        Assert.assertFalse(cb.allowRequest());
+        Assert.assertTrue(cb.getRetryDelay() > 0);
+        Thread.sleep(cb.getRetryDelay() + 1);
+        Assert.assertTrue("Probe not allowed", cb.allowRequest());
+        Assert.assertEquals(CircuitBreaker.STATE.HALFOPEN, cb.getState());
+        Assert.assertFalse("Second probe allowed", cb.allowRequest());
+        cb.recordSuccess();
+        Assert.assertEquals(CircuitBreaker.STATE.CLOSED, cb.getState());
+        Assert.assertEquals(0, cb.getRetryDelay());
+    }
+
+    /**
+     * Test a failed probe opens the circuit again.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testFailedProbe() throws InterruptedException {
+        final CircuitBreaker cb = new CircuitBreaker("ep", 1, BASEDELAY,
+                MAXDELAY);
+        cb.recordFailure();
+        Thread.sleep(cb.getRetryDelay() + 1);
+        Assert.assertTrue(cb.allowRequest());
+        cb.recordFailure();
+        Assert.assertEquals(CircuitBreaker.STATE.OPEN, cb.getState());
+        Assert.assertFalse(cb.allowRequest());
+    }
+
+    /**
+     * Test the delays grow exponentially within the limits.
+     */
+    @Test
+    public final void testBackoff() {
+        long max = BASEDELAY;
+        for (int i = 1; i <= ATTEMPTS; i++) {
+            final long delay = CircuitBreaker.backoff(BASEDELAY, MAXDELAY, i);
+            Assert.assertTrue("Delay too short: " + delay, delay >= max / 2);
+            Assert.assertTrue("Delay too long: " + delay, delay <= max);
+            max = Math.min(max * 2, MAXDELAY);
+        }
+    }
+
+    /**
+     * Test the retry delay is available without circuit breakers.
+     */
+    @Test
+    public final void testRetryDelayWithoutBreakers() {
+        final long delay = CircuitBreakers.getRetryDelay(null, null, 1);
+        Assert.assertTrue("Delay too short: " + delay,
+                delay >= Constants.CIRCUITOPENTIME / 2);
+        Assert.assertTrue("Delay too long: " + delay,
+                delay <= Constants.CIRCUITOPENTIME);
+        Assert.assertTrue(CircuitBreakers.getRetryDelay(null, null,
+                ATTEMPTS) <= Constants.CIRCUITMAXOPENTIME);
+    }
+}
@@ -150,4 +150,26 @@ public class CustomJobFactoryTest {
         CustomJobFactory.createJob(task, this.storage);
         Assert.fail("Job created even though it has a no valid native id.");
     }
+
+    /**
+     * Test of getJobServiceEndpoint and getNativeJobId methods, of class
+     * CustomJobFactory.
+     *
+     * @throws Exception Impossible to perform the test
+     */
+    @Test
+    public final void testParseNativeJobId() throws Exception {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSHFULL);
+        Assert.assertNull(CustomJobFactory.getJobServiceEndpoint(task));
+        Assert.assertNull(CustomJobFactory.getNativeJobId(task));
+        final String jobService = Utilities.getParameterValue(
+                task.getAssociatedInfrastructure().getParameters(),
+                TestData.PARAMJOBSERVICE);
+        final String jobId = RandomStringUtils.randomAlphanumeric(
+                TestData.IDLENGTH);
+        task.setNativeId("[" + jobService + "]-[" + jobId + "]");
+        Assert.assertEquals(jobService,
+                CustomJobFactory.getJobServiceEndpoint(task));
+        Assert.assertEquals(jobId, CustomJobFactory.getNativeJobId(task));
+    }
 }
@@ -0,0 +1,101 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DatabaseTaskOverflow.
+ * The tasks used are kept in memory so the database is not accessed.
+ */
+public class DatabaseTaskOverflowTest {
+
+    /**
+     * Check interval used in the tests.
+     */
+    private static final long INTERVAL = 60000;
+
+    /**
+     * Short delay used in the tests.
+     */
+    private static final long SHORTDELAY = 50;
+
+    /**
+     * Create a running task.
+     *
+     * @return The task
+     */
+    private Task createTask() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        return task;
+    }
+
+    /**
+     * Tasks still in memory are restored as the same instance.
+     */
+    @Test
+    public final void testRestoreSameInstance() {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(1, INTERVAL);
+        final DatabaseTaskOverflow overflow = new DatabaseTaskOverflow(null,
+                new MonitorQueue(queue, null));
+        final Task task = createTask();
+        overflow.spill(task);
+        Assert.assertEquals(1, overflow.size());
+        final List<Task> restored = overflow.restore(1);
+        Assert.assertEquals(1, restored.size());
+        Assert.assertSame(task, restored.get(0));
+        Assert.assertEquals(0, overflow.size());
+    }
+
+    /**
+     * Tasks completed in the overflow are dropped with their deadline.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testDropCompleted() throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(1, INTERVAL);
+        queue.setOverflow(new DatabaseTaskOverflow(null,
+                new MonitorQueue(queue, null)));
+        final Task filler = createTask();
+        final Task parked = createTask();
+        Assert.assertTrue(queue.offer(filler));
+        Assert.assertTrue(DelayedTaskQueue.scheduleOrOffer(queue, parked,
+                INTERVAL, TimeUnit.MILLISECONDS));
+        parked.setState(Task.STATE.DONE);
+        Assert.assertSame(filler, queue.take());
+        Assert.assertEquals(0, queue.refill());
+        parked.setState(Task.STATE.RUNNING);
+        Assert.assertTrue(queue.offer(filler));
+        Assert.assertTrue(queue.offer(parked));
+        Assert.assertSame(filler, queue.take());
+        Assert.assertEquals(1, queue.refill());
+        Assert.assertSame("Deadline of the dropped task applied", parked,
+                queue.poll(SHORTDELAY, TimeUnit.MILLISECONDS));
+    }
+}
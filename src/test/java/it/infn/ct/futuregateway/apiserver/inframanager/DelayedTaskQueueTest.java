@@ -0,0 +1,282 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the DelayedTaskQueue.
+ */
+public class DelayedTaskQueueTest {
+
+    /**
+     * Capacity of the queue under test.
+     */
+    private static final int CAPACITY = 10;
+
+    /**
+     * Check interval used in the tests.
+     */
+    private static final long INTERVAL = 60000;
+
+    /**
+     * Short delay used in the tests.
+     */
+    private static final long SHORTDELAY = 50;
+
+    /**
+     * Number of tasks used in the stress test.
+     */
+    private static final int STRESSTASKS = 200;
+
+    /**
+     * Number of consumers used in the stress test.
+     */
+    private static final int STRESSTHREADS = 4;
+
+    /**
+     * Number of re-enqueue performed by each consumer in the stress test.
+     */
+    private static final int STRESSROUNDS = 1000;
+
+    /**
+     * Maximum time, in milliseconds, for the stress test to complete.
+     */
+    private static final long STRESSTIMEOUT = 30000;
+
+    /**
+     * Create a running task checked now.
+     *
+     * @return The task
+     */
+    private Task createCheckedTask() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        task.updateCheckTime();
+        return task;
+    }
+
+    /**
+     * Tasks checked recently are not released before the interval.
+     */
+    @Test
+    public final void testRecentTaskNotDue() {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        Assert.assertTrue(queue.offer(createCheckedTask()));
+        Assert.assertEquals(1, queue.size());
+        Assert.assertNull("Task released before the check interval",
+                queue.poll());
+        Assert.assertNull(queue.peek());
+    }
+
+    /**
+     * Overdue tasks are released even if a recent task is at the head.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testOverdueTaskNotBlocked()
+            throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        final Task recent = createCheckedTask();
+        final Task overdue = TestData.createTask(TestData.TASKTYPE.SSH);
+        queue.put(recent);
+        queue.put(overdue);
+        Assert.assertSame(overdue, queue.poll(SHORTDELAY,
+                TimeUnit.MILLISECONDS));
+        Assert.assertNull(queue.poll(SHORTDELAY, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Tasks are released in deadline order.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testDeadlineOrder() throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        final Task late = TestData.createTask(TestData.TASKTYPE.SSH);
+        final Task early = TestData.createTask(TestData.TASKTYPE.SSH);
+        Assert.assertTrue(queue.schedule(late, 2 * SHORTDELAY,
+                TimeUnit.MILLISECONDS));
+        Assert.assertTrue(queue.schedule(early, SHORTDELAY,
+                TimeUnit.MILLISECONDS));
+        Assert.assertSame(early, queue.take());
+        Assert.assertSame(late, queue.take());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    /**
+     * The capacity is enforced and released when tasks are taken.
+     */
+    @Test
+    public final void testCapacity() {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        for (int i = 0; i < CAPACITY; i++) {
+            Assert.assertTrue(queue.offer(
+                    TestData.createTask(TestData.TASKTYPE.SSH)));
+        }
+        Assert.assertEquals(0, queue.remainingCapacity());
+        Assert.assertFalse(queue.offer(
+                TestData.createTask(TestData.TASKTYPE.SSH)));
+        final List<Task> due = new LinkedList<>();
+        Assert.assertEquals(CAPACITY, queue.drainTo(due));
+        Assert.assertEquals(CAPACITY, queue.remainingCapacity());
+    }
+
+    /**
+     * Scheduled tasks ignore the last check time and wait the given delay.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testWaitAndSchedule() throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        final Task recovered = createCheckedTask();
+        queue.waitAndSchedule(recovered, SHORTDELAY, TimeUnit.MILLISECONDS);
+        Assert.assertNull(queue.poll());
+        Assert.assertSame(recovered, queue.poll(INTERVAL,
+                TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Consumers re-enqueuing tasks past the capacity never block and no task
+     * is lost.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testOverflowStress() throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(CAPACITY,
+                INTERVAL);
+        final MemoryOverflow overflow = new MemoryOverflow();
+        queue.setOverflow(overflow);
+        for (int i = 0; i < STRESSTASKS; i++) {
+            Assert.assertTrue(queue.offer(
+                    TestData.createTask(TestData.TASKTYPE.SSH)));
+        }
+        Assert.assertEquals(CAPACITY, queue.size());
+        Assert.assertEquals(STRESSTASKS - CAPACITY, overflow.size());
+        final AtomicInteger failures = new AtomicInteger();
+        final List<Thread> consumers = new ArrayList<>();
+        for (int i = 0; i < STRESSTHREADS; i++) {
+            final Thread consumer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < STRESSROUNDS; j++) {
+                        final Task task = queue.poll();
+                        if (task != null && !queue.offer(task)) {
+                            failures.incrementAndGet();
+                        }
+                        queue.refill();
+                    }
+                }
+            });
+            consumers.add(consumer);
+            consumer.start();
+        }
+        for (Thread consumer: consumers) {
+            consumer.join(STRESSTIMEOUT);
+            Assert.assertFalse("Consumer blocked", consumer.isAlive());
+        }
+        Assert.assertEquals(0, failures.get());
+        Assert.assertEquals(STRESSTASKS, queue.size() + overflow.size());
+        queue.refill();
+        Assert.assertEquals(CAPACITY, queue.size());
+    }
+
+    /**
+     * Tasks scheduled when the queue is full keep the delay through the
+     * overflow.
+     *
+     * @throws InterruptedException If the test is interrupted
+     */
+    @Test
+    public final void testScheduleOrOfferKeepsDelay()
+            throws InterruptedException {
+        final DelayedTaskQueue queue = new DelayedTaskQueue(1, INTERVAL);
+        queue.setOverflow(new MemoryOverflow());
+        final Task first = TestData.createTask(TestData.TASKTYPE.SSH);
+        final Task parked = TestData.createTask(TestData.TASKTYPE.SSH);
+        Assert.assertTrue(queue.offer(first));
+        Assert.assertTrue(DelayedTaskQueue.scheduleOrOffer(queue, parked,
+                INTERVAL, TimeUnit.MILLISECONDS));
+        Assert.assertSame(first, queue.take());
+        Assert.assertEquals(1, queue.refill());
+        Assert.assertNull("Task released before the delay",
+                queue.poll(SHORTDELAY, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Overflow keeping the tasks in memory.
+     */
+    private static class MemoryOverflow implements TaskOverflow {
+
+        /**
+         * Tasks in the overflow.
+         */
+        private final Queue<Task> tasks = new ConcurrentLinkedQueue<>();
+
+        /**
+         * Number of tasks in the overflow.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public void spill(final Task task) {
+            tasks.add(task);
+            count.incrementAndGet();
+        }
+
+        @Override
+        public List<Task> restore(final int maxTasks) {
+            final List<Task> restored = new LinkedList<>();
+            Task task;
+            while (restored.size() < maxTasks
+                    && (task = tasks.poll()) != null) {
+                count.decrementAndGet();
+                restored.add(task);
+            }
+            return restored;
+        }
+
+        @Override
+        public int size() {
+            return count.get();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.ogf.saga.job.JobService;
+import org.ogf.saga.session.Session;
+
+/**
+ * Test the JobServiceCache.
+ */
+public class JobServiceCacheTest {
+
+    /**
+     * Long idle time for services never expiring in the tests.
+     */
+    private static final long LONGTIME = 3600000;
+
+    /**
+     * Endpoint of the services.
+     */
+    private static final String ENDPOINT = "ssh://localhost:22";
+
+    /**
+     * Session of the services.
+     */
+    private final Session session = Mockito.mock(Session.class);
+
+    /**
+     * Services are shared only with the same session.
+     */
+    @Test
+    public final void testSessionMatch() {
+        final JobServiceCache cache = new JobServiceCache(2, LONGTIME);
+        final JobService service = Mockito.mock(JobService.class);
+        cache.put("key", ENDPOINT, session, service);
+        Assert.assertSame(service, cache.get("key", ENDPOINT, session));
+        Assert.assertNull(cache.get("other", ENDPOINT, session));
+        Assert.assertNull(cache.get("key", ENDPOINT,
+                Mockito.mock(Session.class)));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * The least recently used service is removed when the cache is full.
+     */
+    @Test
+    public final void testBound() {
+        final JobServiceCache cache = new JobServiceCache(2, LONGTIME);
+        final JobService first = Mockito.mock(JobService.class);
+        cache.put("a", ENDPOINT, session, first);
+        cache.put("b", ENDPOINT, session, Mockito.mock(JobService.class));
+        Assert.assertSame(first, cache.get("a", ENDPOINT, session));
+        cache.put("c", ENDPOINT, session, Mockito.mock(JobService.class));
+        Assert.assertEquals(2, cache.size());
+        Assert.assertSame(first, cache.get("a", ENDPOINT, session));
+        Assert.assertNull(cache.get("b", ENDPOINT, session));
+    }
+
+    /**
+     * Services are removed on failure and after the idle time.
+     *
+     * @throws InterruptedException If interrupted while waiting the expiration
+     */
+    @Test
+    public final void testEviction() throws InterruptedException {
+        JobServiceCache cache = new JobServiceCache(2, LONGTIME);
+        final JobService service = Mockito.mock(JobService.class);
+        cache.put("key", ENDPOINT, session, service);
+        cache.discard(service);
+        Assert.assertNull(cache.get("key", ENDPOINT, session));
+        cache = new JobServiceCache(2, 1);
+        cache.put("key", ENDPOINT, session, service);
+        Thread.sleep(2);
+        cache.evictExpired();
+        Assert.assertEquals(0, cache.size());
+    }
+}
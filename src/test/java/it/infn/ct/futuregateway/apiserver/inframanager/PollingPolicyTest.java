@@ -0,0 +1,107 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Params;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the PollingPolicy.
+ */
+public class PollingPolicyTest {
+
+    /**
+     * Minimum interval used in the tests.
+     */
+    private static final long MININTERVAL = 1000;
+
+    /**
+     * Maximum interval used in the tests.
+     */
+    private static final long MAXINTERVAL = 5000;
+
+    /**
+     * Number of checks to reach the maximum interval.
+     */
+    private static final int MANYCHECKS = 10;
+
+    /**
+     * Create a running task checked the given number of times.
+     *
+     * @param checks Number of checks
+     * @return The task
+     */
+    private Task createCheckedTask(final int checks) {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        for (int i = 0; i < checks; i++) {
+            task.updateCheckTime();
+        }
+        return task;
+    }
+
+    /**
+     * The interval grows while the task does not change state.
+     */
+    @Test
+    public final void testBackoff() {
+        final PollingPolicy policy = new PollingPolicy(MININTERVAL,
+                MAXINTERVAL);
+        Assert.assertEquals(MININTERVAL,
+                policy.nextInterval(createCheckedTask(1)));
+        Assert.assertEquals(2 * MININTERVAL,
+                policy.nextInterval(createCheckedTask(2)));
+        Assert.assertEquals(MAXINTERVAL,
+                policy.nextInterval(createCheckedTask(MANYCHECKS)));
+    }
+
+    /**
+     * A state change restores the minimum interval.
+     */
+    @Test
+    public final void testResetOnStateChange() {
+        final PollingPolicy policy = new PollingPolicy(MININTERVAL,
+                MAXINTERVAL);
+        final Task task = createCheckedTask(MANYCHECKS);
+        task.setState(Task.STATE.DONE);
+        Assert.assertEquals(0, task.getUnchangedChecks());
+        Assert.assertEquals(MININTERVAL, policy.nextInterval(task));
+    }
+
+    /**
+     * Infrastructure parameters override the default intervals.
+     */
+    @Test
+    public final void testInfrastructureOverride() {
+        final PollingPolicy policy = new PollingPolicy(MININTERVAL,
+                MAXINTERVAL);
+        final Task task = createCheckedTask(MANYCHECKS);
+        final Params max = new Params();
+        max.setName(PollingPolicy.MAXINTERVALPARAM);
+        max.setValue(Long.toString(2 * MAXINTERVAL));
+        task.getAssociatedInfrastructure().getParameters().add(max);
+        Assert.assertEquals(2 * MAXINTERVAL, policy.nextInterval(task));
+    }
+}
@@ -0,0 +1,310 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import it.infn.ct.futuregateway.apiserver.resources.Params;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URL;
+import java.util.LinkedList;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Assert;
+import org.junit.Test;
+import org.ogf.saga.session.Session;
+
+/**
+ * Test the SessionCache.
+ */
+public class SessionCacheTest {
+
+    /**
+     * Long time to live for sessions never expiring in the tests.
+     */
+    private static final long LONGTIME = 3600000;
+
+    /**
+     * Short idle time for sessions expiring in the tests.
+     */
+    private static final long SHORTTIME = 1;
+
+    /**
+     * Percentage of the lifetime after that the proxies are refreshed.
+     */
+    private static final int PERCENT = 50;
+
+    /**
+     * Location of the proxies.
+     */
+    private static final String PROXYLOCATION = "http://etoken/proxy";
+
+    /**
+     * Number of sessions created.
+     */
+    private final AtomicInteger created = new AtomicInteger();
+
+    /**
+     * Number of sessions closed.
+     */
+    private final AtomicInteger closed = new AtomicInteger();
+
+    /**
+     * Create an infrastructure with a single parameter.
+     *
+     * @param id The infrastructure id
+     * @param value The value of the parameter
+     * @return The infrastructure
+     */
+    private Infrastructure createInfrastructure(final String id,
+            final String value) {
+        final Infrastructure infra = new Infrastructure();
+        infra.setId(id);
+        infra.setParameters(new LinkedList<Params>());
+        final Params param = new Params();
+        param.setName("username");
+        param.setValue(value);
+        infra.getParameters().add(param);
+        return infra;
+    }
+
+    /**
+     * Create a builder counting the sessions.
+     *
+     * @param infra The infrastructure
+     * @param user The user
+     * @return The builder
+     */
+    private SessionBuilder createBuilder(final Infrastructure infra,
+            final String user) {
+        return createBuilder(infra, user, Long.MAX_VALUE);
+    }
+
+    /**
+     * Create a builder counting the sessions with credentials expiring.
+     *
+     * @param infra The infrastructure
+     * @param user The user
+     * @param notAfter The expiration of the credentials
+     * @return The builder
+     */
+    private SessionBuilder createBuilder(final Infrastructure infra,
+            final String user, final long notAfter) {
+        return new SessionBuilder(infra, user) {
+            @Override
+            public void createNewSession() {
+                created.incrementAndGet();
+                setCredentialNotAfter(notAfter);
+                setSession((Session) Proxy.newProxyInstance(
+                        Session.class.getClassLoader(),
+                        new Class<?>[]{Session.class},
+                        new InvocationHandler() {
+                            @Override
+                            public Object invoke(final Object proxy,
+                                    final Method method,
+                                    final Object[] args) {
+                                if (method.getName().equals("close")) {
+                                    closed.incrementAndGet();
+                                }
+                                return null;
+                            }
+                        }));
+            }
+
+            @Override
+            public String getVO() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Create a builder reading the remote proxy for the sessions.
+     *
+     * @param infra The infrastructure
+     * @param user The user
+     * @return The builder
+     */
+    private SessionBuilder createProxyBuilder(final Infrastructure infra,
+            final String user) {
+        final SessionBuilder builder = createBuilder(infra, user);
+        return new SessionBuilder(infra, user) {
+            @Override
+            public void createNewSession() throws InfrastructureException {
+                readRemoteProxy();
+                setSession(builder.getSession());
+            }
+
+            @Override
+            public String getVO() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Sessions are shared by the same user in the same infrastructure.
+     *
+     * @throws InfrastructureException If the session cannot be created
+     */
+    @Test
+    public final void testSharing() throws InfrastructureException {
+        final SessionCache cache = new SessionCache(LONGTIME, LONGTIME);
+        final Infrastructure infra = createInfrastructure("infra", "a");
+        final Session first = cache.getSession(createBuilder(infra, "u1"));
+        Assert.assertSame(first,
+                cache.getSession(createBuilder(infra, "u1")));
+        Assert.assertNotSame(first,
+                cache.getSession(createBuilder(infra, "u2")));
+        Assert.assertNotSame(first, cache.getSession(
+                createBuilder(createInfrastructure("infra", "b"), "u1")));
+        Assert.assertEquals(2 + 1, created.get());
+        Assert.assertEquals(2 + 1, cache.size());
+    }
+
+    /**
+     * Sessions unused for the idle time are replaced and closed.
+     *
+     * @throws InfrastructureException If the session cannot be created
+     * @throws InterruptedException If interrupted while waiting the expiration
+     */
+    @Test
+    public final void testExpiration() throws InfrastructureException,
+            InterruptedException {
+        final SessionCache cache = new SessionCache(LONGTIME, SHORTTIME);
+        final Infrastructure infra = createInfrastructure("infra", "a");
+        final Session first = cache.getSession(createBuilder(infra, "u1"));
+        Thread.sleep(SHORTTIME + 1);
+        Assert.assertNotSame(first,
+                cache.getSession(createBuilder(infra, "u1")));
+        Assert.assertEquals(0, closed.get());
+        cache.evictExpired();
+        Assert.assertEquals(1, closed.get());
+    }
+
+    /**
+     * Sessions with expired credentials are replaced before the time to
+     * live.
+     *
+     * @throws InfrastructureException If the session cannot be created
+     * @throws InterruptedException If interrupted while waiting the expiration
+     */
+    @Test
+    public final void testCredentialExpiration()
+            throws InfrastructureException, InterruptedException {
+        final SessionCache cache = new SessionCache(LONGTIME, LONGTIME);
+        final Infrastructure infra = createInfrastructure("infra", "a");
+        final Session first = cache.getSession(createBuilder(infra, "u1",
+                System.currentTimeMillis() + SHORTTIME));
+        Thread.sleep(SHORTTIME + 1);
+        final Session second = cache.getSession(createBuilder(infra, "u1",
+                System.currentTimeMillis() + LONGTIME));
+        Assert.assertNotSame(first, second);
+        Assert.assertSame(second, cache.getSession(createBuilder(infra, "u1",
+                System.currentTimeMillis() + LONGTIME)));
+        cache.evictExpired();
+        Assert.assertEquals(1, closed.get());
+    }
+
+    /**
+     * Sessions built from a proxy are replaced when the proxy is refreshed.
+     *
+     * @throws Exception If the session or the proxy cannot be created
+     */
+    @Test
+    public final void testProxyRefresh() throws Exception {
+        final AtomicInteger downloads = new AtomicInteger();
+        final ProxyCache proxies = new ProxyCache(PERCENT, new Executor() {
+            @Override
+            public void execute(final Runnable command) {
+                command.run();
+            }
+        }) {
+            @Override
+            protected String fetch(final URL location) {
+                return "proxy " + downloads.incrementAndGet();
+            }
+        };
+        final Infrastructure infra = createInfrastructure("infra", "a");
+        final Params proxyUrl = new Params();
+        proxyUrl.setName("proxyurl");
+        proxyUrl.setValue(PROXYLOCATION);
+        infra.getParameters().add(proxyUrl);
+        final SessionCache cache = new SessionCache(LONGTIME, LONGTIME);
+        SessionBuilder.setProxyCache(proxies);
+        try {
+            final Session first = cache.getSession(
+                    createProxyBuilder(infra, "u1"));
+            Assert.assertSame(first, cache.getSession(
+                    createProxyBuilder(infra, "u1")));
+            Thread.sleep(SHORTTIME + 1);
+            proxies.clear();
+            proxies.get(new URL(PROXYLOCATION));
+            Assert.assertNotSame(first, cache.getSession(
+                    createProxyBuilder(infra, "u1")));
+            Assert.assertEquals(2, downloads.get());
+        } finally {
+            SessionBuilder.setProxyCache(null);
+        }
+    }
+
+    /**
+     * Invalidated sessions are closed and removed from the cache.
+     *
+     * @throws InfrastructureException If the session cannot be created
+     */
+    @Test
+    public final void testInvalidate() throws InfrastructureException {
+        final SessionCache cache = new SessionCache(LONGTIME, LONGTIME);
+        cache.getSession(createBuilder(
+                createInfrastructure("infra1", "a"), "u1"));
+        cache.getSession(createBuilder(
+                createInfrastructure("infra2", "a"), "u1"));
+        cache.invalidate("infra1");
+        Assert.assertEquals(1, cache.size());
+        cache.evictExpired();
+        Assert.assertEquals(1, closed.get());
+        cache.closeAll();
+        Assert.assertEquals(2, closed.get());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    /**
+     * The fingerprint does not depend on the order of the parameters.
+     */
+    @Test
+    public final void testFingerprint() {
+        final Properties first = new Properties();
+        first.setProperty("a", "1");
+        first.setProperty("b", "2");
+        final Properties second = new Properties();
+        second.setProperty("b", "2");
+        second.setProperty("a", "1");
+        Assert.assertEquals(SessionCache.fingerprint(first),
+                SessionCache.fingerprint(second));
+        second.setProperty("b", "3");
+        Assert.assertNotEquals(SessionCache.fingerprint(first),
+                SessionCache.fingerprint(second));
+    }
+}
@@ -0,0 +1,105 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the TokenBucket.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TokenBucketTest {
+
+    /**
+     * Tokens added every second.
+     */
+    private static final double RATE = 2;
+
+    /**
+     * Maximum number of tokens.
+     */
+    private static final int BURST = 3;
+
+    /**
+     * Time a reservation is kept after its due time.
+     */
+    private static final long GRACE = 50;
+
+    /**
+     * Test the burst is granted immediately and the following requests are
+     * delayed according to the rate.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testReserve() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(RATE, BURST);
+        for (int i = 0; i < BURST; i++) {
+            Assert.assertEquals(0, bucket.reserve("task" + i));
+        }
+        Assert.assertTrue("Token left", bucket.getTokens() < 1);
+        final long wait = bucket.reserve("late");
+        Assert.assertTrue("Request not delayed", wait > 0);
+        Assert.assertEquals(1, bucket.getQueued());
+        final long next = bucket.reserve("later");
+        Assert.assertTrue("Reservations not ordered", next > wait);
+        Assert.assertEquals(2, bucket.getQueued());
+        Assert.assertEquals(BURST, bucket.getGranted());
+        Assert.assertEquals(2, bucket.getDelayed());
+        final long again = bucket.reserve("late");
+        Assert.assertTrue("Reservation not kept",
+                again > 0 && again <= wait);
+        Thread.sleep(again + 1);
+        Assert.assertEquals(0, bucket.reserve("late"));
+        Assert.assertEquals(1, bucket.getQueued());
+        Assert.assertEquals(BURST + 1, bucket.getGranted());
+    }
+
+    /**
+     * Test a reservation not claimed expires and its token is returned.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testExpiredReservation() throws InterruptedException {
+        final TokenBucket bucket = new TokenBucket(RATE, BURST, GRACE);
+        for (int i = 0; i < BURST; i++) {
+            Assert.assertEquals(0, bucket.reserve("task" + i));
+        }
+        final long wait = bucket.reserve("gone");
+        Assert.assertEquals(1, bucket.getQueued());
+        Thread.sleep(wait + GRACE + 1);
+        Assert.assertEquals(0, bucket.getQueued());
+        Assert.assertTrue("Reserved token not returned",
+                bucket.getTokens() >= 1);
+    }
+
+    /**
+     * Test a bucket with no rate is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testInvalidRate() {
+        new TokenBucket(0, BURST);
+    }
+}
@@ -0,0 +1,180 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the TransitionEngine.
+ */
+public class TransitionEngineTest {
+
+    /**
+     * Maximum time to wait for the actions in seconds.
+     */
+    private static final int WAIT = 10;
+
+    /**
+     * Interval between the checks of the engine in milliseconds.
+     */
+    private static final int POLL = 10;
+
+    /**
+     * Threads of the engine.
+     */
+    private static final int THREADS = 2;
+
+    /**
+     * Engine under test.
+     */
+    private TransitionEngine engine;
+
+    /**
+     * The task.
+     */
+    private Task task;
+
+    /**
+     * Actions executed.
+     */
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+
+    /**
+     * Latch released by the last action.
+     */
+    private final CountDownLatch completed = new CountDownLatch(1);
+
+    /**
+     * Create the engine and the task.
+     */
+    @Before
+    public final void setUp() {
+        engine = new TransitionEngine(THREADS);
+        task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.WAITING);
+    }
+
+    /**
+     * Stop the engine.
+     *
+     * @throws InterruptedException If interrupted while stopping
+     */
+    @After
+    public final void tearDown() throws InterruptedException {
+        engine.shutdown(WAIT, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create an action recording its execution.
+     *
+     * @param name The name recorded
+     * @return The action
+     */
+    private Runnable record(final String name) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                executed.add(name);
+            }
+        };
+    }
+
+    /**
+     * Create an action releasing the completion latch.
+     *
+     * @return The action
+     */
+    private Runnable complete() {
+        return new Runnable() {
+            @Override
+            public void run() {
+                completed.countDown();
+            }
+        };
+    }
+
+    /**
+     * Actions queued by an action are executed after it, not recursively,
+     * and actions for a state already left are skipped.
+     *
+     * @throws InterruptedException If interrupted while waiting the actions
+     */
+    @Test
+    public final void testNoRecursion() throws InterruptedException {
+        engine.execute(task, new Runnable() {
+            @Override
+            public void run() {
+                executed.add("waiting-start");
+                task.setState(Task.STATE.READY);
+                engine.execute(task, record("ready"));
+                task.setState(Task.STATE.SCHEDULED);
+                engine.execute(task, complete());
+                executed.add("waiting-end");
+            }
+        });
+        Assert.assertTrue(completed.await(WAIT, TimeUnit.SECONDS));
+        Assert.assertEquals(Arrays.asList("waiting-start", "waiting-end"),
+                executed);
+    }
+
+    /**
+     * Actions for the same state waiting together are executed once.
+     *
+     * @throws InterruptedException If interrupted while waiting the actions
+     */
+    @Test
+    public final void testCoalescing() throws InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        engine.execute(task, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await(WAIT, TimeUnit.SECONDS);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        task.setState(Task.STATE.RUNNING);
+        engine.execute(task, record("first"));
+        engine.execute(task, record("second"));
+        release.countDown();
+        final long deadline = System.currentTimeMillis()
+                + TimeUnit.SECONDS.toMillis(WAIT);
+        while (engine.getActiveTasks() > 0
+                && System.currentTimeMillis() < deadline) {
+            Thread.sleep(POLL);
+        }
+        Assert.assertEquals(0, engine.getActiveTasks());
+        Assert.assertEquals(Arrays.asList("first"), executed);
+    }
+}
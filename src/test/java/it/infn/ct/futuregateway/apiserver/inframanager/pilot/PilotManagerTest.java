@@ -0,0 +1,157 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.pilot;
+
+import it.infn.ct.futuregateway.apiserver.resources.Application;
+import it.infn.ct.futuregateway.apiserver.resources.Params;
+import it.infn.ct.futuregateway.apiserver.resources.PilotAssignment;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskFileInput;
+import it.infn.ct.futuregateway.apiserver.resources.TaskFileOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the PilotManager.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class PilotManagerTest {
+
+    /**
+     * Timeout of the pilots in milliseconds.
+     */
+    private static final long TIMEOUT = 1000;
+
+    /**
+     * Test the applications are in pilot mode only with a pilot application.
+     */
+    @Test
+    public final void testPilotMode() {
+        final Application app = new Application();
+        Assert.assertFalse(PilotManager.isPilotMode(app));
+        app.setParameters(createParams("Executable", "/bin/sh"));
+        Assert.assertFalse(PilotManager.isPilotMode(app));
+        app.getParameters().addAll(
+                createParams(PilotManager.PILOTAPPPARAM, "pilotapp"));
+        Assert.assertTrue(PilotManager.isPilotMode(app));
+    }
+
+    /**
+     * Test the tasks of the pilots are recognised by the native id.
+     */
+    @Test
+    public final void testPilotTask() {
+        final Task task = new Task();
+        Assert.assertFalse(PilotManager.isPilotTask(task));
+        task.setNativeId("[jobid]");
+        Assert.assertFalse(PilotManager.isPilotTask(task));
+        task.setNativeId(PilotManager.NATIVEPREFIX + "pilot1");
+        Assert.assertTrue(PilotManager.isPilotTask(task));
+    }
+
+    /**
+     * Test the description merges the application and task details.
+     */
+    @Test
+    public final void testDescribe() {
+        final Application app = new Application();
+        app.setId("app");
+        final List<Params> params = createParams("Executable", "run.sh");
+        params.addAll(createParams("Arguments", "-v,-q"));
+        app.setParameters(params);
+        final Task task = new Task();
+        task.setId("task");
+        task.setApplicationDetail(app);
+        task.setArguments(Arrays.asList("input.txt"));
+        final TaskFileInput in = new TaskFileInput();
+        in.setName("input.txt");
+        task.setInputFiles(Arrays.asList(in));
+        final TaskFileOutput out = new TaskFileOutput();
+        out.setName("output.txt");
+        task.setOutputFiles(Arrays.asList(out));
+        final PilotAssignment assignment = PilotManager.describe(task);
+        Assert.assertEquals("task", assignment.getTaskId());
+        Assert.assertEquals("run.sh", assignment.getExecutable());
+        Assert.assertEquals(Arrays.asList("-v", "-q", "input.txt"),
+                assignment.getArguments());
+        Assert.assertEquals(Arrays.asList("input.txt"),
+                assignment.getInputFiles());
+        Assert.assertEquals(Arrays.asList("output.txt"),
+                assignment.getOutputFiles());
+    }
+
+    /**
+     * Test the tasks with input files provided by URL are not supported.
+     */
+    @Test
+    public final void testSupported() {
+        final Task task = new Task();
+        Assert.assertTrue(PilotManager.isSupported(task));
+        final TaskFileInput in = new TaskFileInput();
+        in.setName("input.txt");
+        task.setInputFiles(Arrays.asList(in));
+        Assert.assertTrue(PilotManager.isSupported(task));
+        in.setUrl("http://example.org/input.txt");
+        Assert.assertFalse(PilotManager.isSupported(task));
+    }
+
+    /**
+     * Test a pilot is lost when its job completes or it stops contacting.
+     *
+     * @throws InterruptedException If interrupted while waiting
+     */
+    @Test
+    public final void testLostPilot() throws InterruptedException {
+        final Pilot pilot = new Pilot("pilot1", "app", "user");
+        final Task job = new Task();
+        job.setState(Task.STATE.SCHEDULED);
+        pilot.setJob(job);
+        Assert.assertFalse(pilot.isLost(TIMEOUT));
+        pilot.touch();
+        Assert.assertFalse(pilot.isLost(TIMEOUT));
+        Thread.sleep(2);
+        Assert.assertTrue(pilot.isLost(1));
+        job.setState(Task.STATE.DONE);
+        pilot.touch();
+        Assert.assertTrue(pilot.isLost(TIMEOUT));
+    }
+
+    /**
+     * Creates a list with a parameter.
+     *
+     * @param name The name of the parameter
+     * @param value The value of the parameter
+     * @return The parameters
+     */
+    private List<Params> createParams(final String name, final String value) {
+        final Params param = new Params();
+        param.setName(name);
+        param.setValue(value);
+        final List<Params> params = new ArrayList<>();
+        params.add(param);
+        return params;
+    }
+}
@@ -0,0 +1,145 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.selection;
+
+import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the infrastructure selection policies.
+ */
+public class SelectorsTest {
+
+    /**
+     * Latency of the fast infrastructure.
+     */
+    private static final long FASTLATENCY = 100;
+
+    /**
+     * Latency of the slow infrastructure.
+     */
+    private static final long SLOWLATENCY = 5000;
+
+    /**
+     * Number of selections to verify.
+     */
+    private static final int ROUNDS = 20;
+
+    /**
+     * Metrics of the infrastructures.
+     */
+    private InfraMetrics metrics;
+
+    /**
+     * Infrastructures to select.
+     */
+    private List<Infrastructure> infras;
+
+    /**
+     * Prepares two infrastructures with empty metrics.
+     */
+    @Before
+    public final void setUp() {
+        metrics = new InfraMetrics();
+        infras = new ArrayList<>();
+        for (String id: new String[]{"fast", "slow"}) {
+            final Infrastructure infra = new Infrastructure();
+            infra.setId(id);
+            infra.setEnabled(true);
+            infras.add(infra);
+        }
+    }
+
+    /**
+     * Test the outstanding tasks are counted once.
+     */
+    @Test
+    public final void testOutstanding() {
+        metrics.started("fast", "t1");
+        metrics.started("fast", "t1");
+        metrics.started("fast", "t2");
+        Assert.assertEquals(2, metrics.getOutstanding("fast"));
+        metrics.started("slow", "t2");
+        Assert.assertEquals(1, metrics.getOutstanding("fast"));
+        Assert.assertEquals(1, metrics.getOutstanding("slow"));
+        metrics.finished("t2");
+        metrics.finished("t2");
+        Assert.assertEquals(0, metrics.getOutstanding("slow"));
+        Assert.assertEquals(1, metrics.getOutstanding("fast"));
+    }
+
+    /**
+     * Test the selection of the infrastructure with less tasks.
+     */
+    @Test
+    public final void testLeastOutstanding() {
+        metrics.started("fast", "t1");
+        final InfrastructureSelector sel =
+                Selectors.create(Selectors.LEASTOUTSTANDING, metrics);
+        for (int i = 0; i < ROUNDS; i++) {
+            Assert.assertEquals("slow", sel.select(infras).getId());
+        }
+    }
+
+    /**
+     * Test the selection of the infrastructure starting the task sooner.
+     * The fast infrastructure is selected also with more tasks and it is
+     * avoided when the submissions fail.
+     */
+    @Test
+    public final void testLatencyAware() {
+        metrics.submitted("fast", FASTLATENCY, true);
+        metrics.submitted("slow", SLOWLATENCY, true);
+        metrics.started("fast", "t1");
+        metrics.started("fast", "t2");
+        final InfrastructureSelector sel =
+                Selectors.create(Selectors.LATENCYAWARE, metrics);
+        for (int i = 0; i < ROUNDS; i++) {
+            Assert.assertEquals("fast", sel.select(infras).getId());
+        }
+        final InfrastructureSelector pair =
+                Selectors.create(Selectors.POWEROFTWO, metrics);
+        for (int i = 0; i < ROUNDS; i++) {
+            Assert.assertEquals("fast", pair.select(infras).getId());
+        }
+        for (int i = 0; i < ROUNDS; i++) {
+            metrics.submitted("fast", FASTLATENCY, false);
+        }
+        Assert.assertEquals("slow", sel.select(infras).getId());
+    }
+
+    /**
+     * Test the selection with no or a single infrastructure.
+     */
+    @Test
+    public final void testSingle() {
+        final InfrastructureSelector sel =
+                Selectors.create(Selectors.POWEROFTWO, metrics);
+        Assert.assertNull(sel.select(new ArrayList<Infrastructure>()));
+        Assert.assertEquals("slow", sel.select(infras.subList(1, 2)).getId());
+        Assert.assertNotNull(new RandomSelector().select(infras));
+    }
+}
@@ -67,7 +67,7 @@ public class PendingTest {
 
         try {
             final TaskState taskState = task.getStateManager();
-            taskState.action(this.executorService, this.blockingQueue,
+            taskState.action(task, this.executorService, this.blockingQueue,
                     this.storage);
         } catch (TaskException ex) {
             Assert.fail("Call action failed for: " + ex.getMessage());
@@ -84,7 +84,7 @@ public class ReadyTest {
         TaskState taskState;
         try {
             taskState = task.getStateManager();
-            taskState.action(this.executorService, this.blockingQueue,
+            taskState.action(task, this.executorService, this.blockingQueue,
                     this.storage);
         } catch (TaskException ex) {
             Assert.fail(ex.getMessage());
@@ -117,7 +117,7 @@ public class ReadyTest {
 
         try {
             final TaskState taskState = task.getStateManager();
-            taskState.action(this.executorService, this.blockingQueue,
+            taskState.action(task, this.executorService, this.blockingQueue,
                     this.storage);
         } catch (TaskException ex) {
             Assert.fail(ex.getMessage());
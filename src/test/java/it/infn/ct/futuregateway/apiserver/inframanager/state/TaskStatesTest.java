@@ -0,0 +1,96 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.inframanager.state;
+
+import it.infn.ct.futuregateway.apiserver.inframanager.TaskException;
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the table of task states.
+ */
+public class TaskStatesTest {
+
+    /**
+     * Test the handlers are shared among the tasks.
+     */
+    @Test
+    public final void testSharedHandlers() {
+        final Task first = TestData.createTask(TestData.TASKTYPE.SSH);
+        final Task second = TestData.createTask(TestData.TASKTYPE.SSH);
+        for (Task.STATE state: Task.STATE.values()) {
+            first.setState(state);
+            second.setState(state);
+            try {
+                Assert.assertSame("Handler not shared for " + state,
+                        first.getStateManager(), second.getStateManager());
+            } catch (TaskException ex) {
+                Assert.fail("No handler for " + state);
+            }
+        }
+    }
+
+    /**
+     * Test the transitions allowed and refused.
+     */
+    @Test
+    public final void testTransitions() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.PENDING);
+        Assert.assertFalse("Pending moved to running",
+                TaskStates.transition(task, Task.STATE.RUNNING));
+        Assert.assertEquals(Task.STATE.PENDING, task.getState());
+        Assert.assertTrue("Pending not moved to waiting",
+                TaskStates.transition(task, Task.STATE.WAITING));
+        Assert.assertEquals(Task.STATE.WAITING, task.getState());
+        Assert.assertTrue("Waiting not moved to cancelled",
+                TaskStates.transition(task, Task.STATE.CANCELLED));
+        Assert.assertFalse("Cancelled moved to ready",
+                TaskStates.transition(task, Task.STATE.READY));
+        Assert.assertEquals(Task.STATE.CANCELLED, task.getState());
+        Assert.assertTrue(TaskStates.isAllowed(Task.STATE.DONE,
+                Task.STATE.ABORTED));
+        Assert.assertFalse(TaskStates.isAllowed(Task.STATE.DONE,
+                Task.STATE.RUNNING));
+        Assert.assertTrue(TaskStates.isAllowed(null, Task.STATE.DONE));
+    }
+
+    /**
+     * Test the failures abort only the tasks not completed.
+     */
+    @Test
+    public final void testAbort() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        Assert.assertTrue(TaskStates.abort(task));
+        Assert.assertEquals(Task.STATE.ABORTED, task.getState());
+        Assert.assertTrue(TaskStates.abort(task));
+        task.setState(Task.STATE.DONE);
+        Assert.assertFalse("Done task aborted", TaskStates.abort(task));
+        Assert.assertEquals(Task.STATE.DONE, task.getState());
+        task.setState(Task.STATE.CANCELLED);
+        Assert.assertFalse("Cancelled task aborted", TaskStates.abort(task));
+        Assert.assertEquals(Task.STATE.CANCELLED, task.getState());
+    }
+}
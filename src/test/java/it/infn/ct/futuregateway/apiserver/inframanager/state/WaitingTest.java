@@ -86,7 +86,7 @@ public class WaitingTest {
 
         try {
             final TaskState taskState = task.getStateManager();
-            taskState.action(this.executorService, this.blockingQueue,
+            taskState.action(task, this.executorService, this.blockingQueue,
                     this.storage);
         } catch (TaskException ex) {
             Assert.fail(ex.getMessage());
@@ -106,7 +106,7 @@ public class WaitingTest {
 
         try {
             final TaskState taskState = task.getStateManager();
-            taskState.action(this.executorService, this.blockingQueue,
+            taskState.action(task, this.executorService, this.blockingQueue,
                     this.storage);
         } catch (TaskException ex) {
             Assert.fail(ex.getMessage());
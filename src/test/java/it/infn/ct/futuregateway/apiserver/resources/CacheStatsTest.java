@@ -0,0 +1,74 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the CacheStats.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class CacheStatsTest {
+
+    /**
+     * Tolerance in the comparison of the ratios.
+     */
+    private static final double DELTA = 1e-9;
+
+    /**
+     * Number of hits in the test.
+     */
+    private static final int HITS = 3;
+
+    /**
+     * Test the hit ratio is computed from the counters.
+     */
+    @Test
+    public final void testHitRatio() {
+        final CacheStats stats = new CacheStats();
+        stats.setCounters(0, 0, 0);
+        Assert.assertEquals(0, stats.getHitRatio(), DELTA);
+        stats.setCounters(HITS, 1, 1);
+        Assert.assertEquals((double) HITS / (HITS + 1), stats.getHitRatio(),
+                DELTA);
+        final CacheStats.Region region = new CacheStats.Region("app", 1, 1,
+                1, 1);
+        Assert.assertEquals(1.0 / 2, region.getHitRatio(), DELTA);
+        stats.addRegion(region);
+        Assert.assertEquals(1, stats.getRegions().size());
+    }
+
+    /**
+     * Test the statistics are reported as disabled without counters.
+     */
+    @Test
+    public final void testDisabled() {
+        final CacheStats stats = new CacheStats();
+        Assert.assertTrue(stats.isEnabled());
+        stats.setEnabled(false);
+        Assert.assertFalse(stats.isEnabled());
+        Assert.assertEquals(0, stats.getHits());
+        Assert.assertTrue(stats.getRegions().isEmpty());
+    }
+}
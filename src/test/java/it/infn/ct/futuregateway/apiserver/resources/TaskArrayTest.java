@@ -0,0 +1,127 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the TaskArray.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class TaskArrayTest {
+
+    /**
+     * Maximum number of tasks accepted.
+     */
+    private static final int MAXTASKS = 100;
+
+    /**
+     * Last value of the numeric range.
+     */
+    private static final int RANGEEND = 3;
+
+    /**
+     * Test the tasks are generated for every combination of the parameters.
+     */
+    @Test
+    public final void testCreateTasks() {
+        final TaskArray array = createArray();
+        array.setId("array");
+        final List<Task> tasks = array.createTasks(MAXTASKS);
+        Assert.assertEquals(2 * RANGEEND, tasks.size());
+        Assert.assertEquals(tasks.size(), array.getSize());
+        final Task first = tasks.get(0);
+        Assert.assertEquals("app", first.getApplicationId());
+        Assert.assertEquals("array", first.getTaskArrayId());
+        Assert.assertEquals(Arrays.asList("-m", "a", "-n", "1"),
+                first.getArguments());
+        Assert.assertEquals("out_a_1.txt",
+                first.getOutputFiles().get(0).getName());
+        final Task last = tasks.get(tasks.size() - 1);
+        Assert.assertEquals(Arrays.asList("-m", "b", "-n", "3"),
+                last.getArguments());
+        Assert.assertEquals("run b", last.getDescription());
+    }
+
+    /**
+     * Test arrays exceeding the maximum size are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testTooManyTasks() {
+        createArray().createTasks(RANGEEND);
+    }
+
+    /**
+     * Test the state of the array is aggregated from the tasks.
+     */
+    @Test
+    public final void testAggregatedState() {
+        final TaskArray array = new TaskArray();
+        final List<TaskArray.StateCount> counts = new ArrayList<>();
+        counts.add(new TaskArray.StateCount(Task.STATE.WAITING, 2));
+        counts.add(new TaskArray.StateCount(Task.STATE.READY, 1));
+        array.setStateCounts(counts);
+        Assert.assertEquals(Task.STATE.WAITING, array.getState());
+        counts.add(new TaskArray.StateCount(Task.STATE.DONE, 1));
+        array.setStateCounts(counts);
+        Assert.assertEquals(Task.STATE.RUNNING, array.getState());
+        counts.clear();
+        counts.add(new TaskArray.StateCount(Task.STATE.DONE, 2));
+        array.setStateCounts(counts);
+        Assert.assertEquals(Task.STATE.DONE, array.getState());
+        counts.add(new TaskArray.StateCount(Task.STATE.ABORTED, 1));
+        array.setStateCounts(counts);
+        Assert.assertEquals(Task.STATE.ABORTED, array.getState());
+    }
+
+    /**
+     * Creates an array with a list and a range parameter.
+     *
+     * @return The task array
+     */
+    private TaskArray createArray() {
+        final Task template = new Task();
+        template.setDescription("run ${mode}");
+        template.setArguments(Arrays.asList("-m", "${mode}", "-n", "${n}"));
+        final TaskFileOutput out = new TaskFileOutput();
+        out.setName("out_${mode}_${n}.txt");
+        template.setOutputFiles(Arrays.asList(out));
+        final SweepParameter mode = new SweepParameter();
+        mode.setName("mode");
+        mode.setValues(Arrays.asList("a", "b"));
+        final SweepParameter n = new SweepParameter();
+        n.setName("n");
+        n.setStart(BigDecimal.ONE);
+        n.setEnd(BigDecimal.valueOf(RANGEEND));
+        final TaskArray array = new TaskArray();
+        array.setApplicationId("app");
+        array.setTemplate(template);
+        array.setParameters(Arrays.asList(mode, n));
+        return array;
+    }
+}
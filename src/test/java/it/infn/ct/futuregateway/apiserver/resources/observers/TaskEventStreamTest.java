@@ -0,0 +1,201 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources.observers;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.resources.TaskEvent;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the TaskEventStream.
+ */
+public class TaskEventStreamTest {
+
+    /**
+     * Number of events kept in the history.
+     */
+    private static final int HISTORY = 10;
+
+    /**
+     * Number of events buffered for a client.
+     */
+    private static final int BUFFER = 2;
+
+    /**
+     * Executor writing the events in the calling thread.
+     */
+    private final Executor direct = new Executor() {
+        @Override
+        public void execute(final Runnable command) {
+            command.run();
+        }
+    };
+
+    /**
+     * Test the events are sent only to the clients following the task.
+     */
+    @Test
+    public final void testFilter() {
+        final TaskEventStream stream = new TaskEventStream(HISTORY, BUFFER,
+                direct);
+        final RecordingSink taskSink = new RecordingSink();
+        final RecordingSink userSink = new RecordingSink();
+        final RecordingSink otherSink = new RecordingSink();
+        stream.subscribe("t1", null, -1, taskSink);
+        stream.subscribe(null, "user", -1, userSink);
+        stream.subscribe(null, "other", -1, otherSink);
+        stream.publish(createTask("t1", Task.STATE.RUNNING));
+        stream.publish(createTask("t2", Task.STATE.RUNNING));
+        Assert.assertEquals(1, taskSink.events.size());
+        Assert.assertEquals(2, userSink.events.size());
+        Assert.assertTrue(otherSink.events.isEmpty());
+        stream.publish(createTask("t1", Task.STATE.DONE));
+        Assert.assertTrue(taskSink.closed);
+        Assert.assertFalse(userSink.closed);
+        Assert.assertEquals(2, stream.getSubscriberCount());
+    }
+
+    /**
+     * Test a client resuming the stream receives the events missed.
+     */
+    @Test
+    public final void testResume() {
+        final TaskEventStream stream = new TaskEventStream(HISTORY, BUFFER,
+                direct);
+        final TaskEvent first = stream.publish(
+                createTask("t1", Task.STATE.READY));
+        stream.publish(createTask("t1", Task.STATE.RUNNING));
+        final RecordingSink sink = new RecordingSink();
+        stream.subscribe("t1", null, first.getSequence(), sink);
+        Assert.assertEquals(1, sink.events.size());
+        Assert.assertEquals(Task.STATE.RUNNING,
+                sink.events.get(0).getState());
+        Assert.assertEquals(Task.STATE.RUNNING,
+                stream.getLastEvent("t1").getState());
+    }
+
+    /**
+     * Test a client resuming the stream with more events than its buffer is
+     * disconnected and not subscribed.
+     */
+    @Test
+    public final void testResumeOverflow() {
+        final TaskEventStream stream = new TaskEventStream(HISTORY, BUFFER,
+                direct);
+        for (int i = 0; i <= BUFFER; i++) {
+            stream.publish(createTask("t" + i, Task.STATE.RUNNING));
+        }
+        final RecordingSink sink = new RecordingSink();
+        stream.subscribe(null, "user", 0, sink);
+        Assert.assertTrue(sink.closed);
+        Assert.assertTrue(sink.events.isEmpty());
+        Assert.assertEquals(0, stream.getSubscriberCount());
+    }
+
+    /**
+     * Test a client resuming the stream of a completed task is disconnected
+     * after the final state.
+     */
+    @Test
+    public final void testResumeCompleted() {
+        final TaskEventStream stream = new TaskEventStream(HISTORY, BUFFER,
+                direct);
+        stream.publish(createTask("t1", Task.STATE.DONE));
+        final RecordingSink sink = new RecordingSink();
+        stream.subscribe("t1", null, 0, sink);
+        Assert.assertEquals(1, sink.events.size());
+        Assert.assertTrue(sink.closed);
+        Assert.assertEquals(0, stream.getSubscriberCount());
+    }
+
+    /**
+     * Test a client not reading the events is disconnected when its buffer
+     * is full.
+     */
+    @Test
+    public final void testSlowClient() {
+        final TaskEventStream stream = new TaskEventStream(HISTORY, BUFFER,
+                new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                    }
+                });
+        final RecordingSink sink = new RecordingSink();
+        stream.subscribe(null, "user", -1, sink);
+        for (int i = 0; i <= BUFFER; i++) {
+            stream.publish(createTask("t" + i, Task.STATE.RUNNING));
+        }
+        Assert.assertTrue(sink.closed);
+        Assert.assertEquals(0, stream.getSubscriberCount());
+    }
+
+    /**
+     * Creates a task of the test user.
+     *
+     * @param id The task id
+     * @param state The task state
+     * @return The task
+     */
+    private Task createTask(final String id, final Task.STATE state) {
+        final Task task = new Task();
+        task.setId(id);
+        task.setUserName("user");
+        task.setState(state);
+        return task;
+    }
+
+
+    /**
+     * Sink recording the events.
+     */
+    private static class RecordingSink implements TaskEventSink {
+
+        /**
+         * Events received.
+         */
+        private final List<TaskEvent> events = new ArrayList<>();
+
+        /**
+         * True if the connection is closed.
+         */
+        private boolean closed;
+
+        @Override
+        public void send(final TaskEvent event) throws IOException {
+            events.add(event);
+        }
+
+        @Override
+        public void heartbeat() throws IOException {
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
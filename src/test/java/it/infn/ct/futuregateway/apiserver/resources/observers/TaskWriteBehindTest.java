@@ -0,0 +1,285 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.resources.observers;
+
+import it.infn.ct.futuregateway.apiserver.resources.Task;
+import it.infn.ct.futuregateway.apiserver.utils.TestData;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the TaskWriteBehind.
+ */
+public class TaskWriteBehindTest {
+
+    /**
+     * Interval between the periodic writes, long enough to never happen
+     * during the tests.
+     */
+    private static final long INTERVAL = 3600000;
+
+    /**
+     * Number of tasks triggering a write.
+     */
+    private static final int BATCHSIZE = 3;
+
+    /**
+     * Maximum time to wait for a write in seconds.
+     */
+    private static final int WAIT = 10;
+
+    /**
+     * Time the final write can overlap the batch in milliseconds.
+     */
+    private static final long OVERLAP = 200;
+
+    /**
+     * Batches written.
+     */
+    private final BlockingQueue<List<Task>> batches =
+            new LinkedBlockingQueue<>();
+
+    /**
+     * States of the tasks as written, in the order of the writes.
+     */
+    private final List<Task.STATE> written = new ArrayList<>();
+
+    /**
+     * Signalled when a write of tasks not in a final state starts.
+     */
+    private final CountDownLatch writing = new CountDownLatch(1);
+
+    /**
+     * Latch blocking the writes of tasks not in a final state, released by
+     * default.
+     */
+    private volatile CountDownLatch slowWrite = new CountDownLatch(0);
+
+    /**
+     * Write-behind recording the batches instead of writing them.
+     */
+    private final TaskWriteBehind writeBehind = new TaskWriteBehind(null,
+            INTERVAL, BATCHSIZE) {
+        @Override
+        protected void persist(final List<Task> tasks) {
+            final List<Task.STATE> states = new ArrayList<>();
+            for (Task task: tasks) {
+                states.add(task.getState());
+            }
+            if (!TaskWriteBehind.FINALSTATES.contains(states.get(0))) {
+                writing.countDown();
+                try {
+                    slowWrite.await();
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            synchronized (written) {
+                written.addAll(states);
+            }
+            batches.add(new ArrayList<>(tasks));
+        }
+    };
+
+    /**
+     * Stop the write-behind.
+     */
+    @After
+    public final void stopWriteBehind() {
+        writeBehind.shutdown();
+    }
+
+    /**
+     * Successive changes of a task are written once.
+     */
+    @Test
+    public final void testCoalescing() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.WAITING);
+        writeBehind.write(task);
+        task.setState(Task.STATE.READY);
+        writeBehind.write(task);
+        Assert.assertEquals(1, writeBehind.getPending());
+        Assert.assertTrue(batches.isEmpty());
+        writeBehind.flush();
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(1, batches.peek().size());
+        Assert.assertEquals(0, writeBehind.getPending());
+    }
+
+    /**
+     * Tasks in a final state are written immediately.
+     */
+    @Test
+    public final void testFinalState() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        writeBehind.write(task);
+        task.setState(Task.STATE.DONE);
+        writeBehind.write(task);
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(0, writeBehind.getPending());
+    }
+
+    /**
+     * The batch size triggers a write before the interval.
+     *
+     * @throws InterruptedException If interrupted while waiting the write
+     */
+    @Test
+    public final void testBatchSize() throws InterruptedException {
+        for (int i = 0; i < BATCHSIZE; i++) {
+            final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+            task.setState(Task.STATE.WAITING);
+            writeBehind.write(task);
+        }
+        final List<Task> batch = batches.poll(WAIT, TimeUnit.SECONDS);
+        Assert.assertNotNull(batch);
+        Assert.assertEquals(BATCHSIZE, batch.size());
+    }
+
+    /**
+     * Discarded tasks are not written.
+     */
+    @Test
+    public final void testDiscard() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.WAITING);
+        writeBehind.write(task);
+        writeBehind.discard(task.getId());
+        writeBehind.flush();
+        Assert.assertTrue(batches.isEmpty());
+    }
+
+    /**
+     * A batch started before the final write does not overwrite the final
+     * state.
+     *
+     * @throws InterruptedException If interrupted while waiting the writes
+     */
+    @Test
+    public final void testFlushBeforeFinalWrite() throws InterruptedException {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        writeBehind.write(task);
+        slowWrite = new CountDownLatch(1);
+        final Thread batch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind.flush();
+            }
+        });
+        batch.start();
+        Assert.assertTrue(writing.await(WAIT, TimeUnit.SECONDS));
+        task.setState(Task.STATE.DONE);
+        final Thread finalWrite = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind.write(task);
+            }
+        });
+        finalWrite.start();
+        finalWrite.join(OVERLAP);
+        slowWrite.countDown();
+        batch.join();
+        finalWrite.join();
+        synchronized (written) {
+            Assert.assertEquals(2, written.size());
+            Assert.assertEquals(Task.STATE.RUNNING, written.get(0));
+            Assert.assertEquals(Task.STATE.DONE, written.get(1));
+        }
+    }
+
+    /**
+     * A batch does not write the tasks reached a final state after their
+     * change was registered.
+     */
+    @Test
+    public final void testFinalStateSkippedByBatch() {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.RUNNING);
+        writeBehind.write(task);
+        task.setState(Task.STATE.ABORTED);
+        writeBehind.flush();
+        Assert.assertTrue(batches.isEmpty());
+    }
+
+    /**
+     * The flush of some tasks writes only their changes.
+     */
+    @Test
+    public final void testFlushTasks() {
+        final List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+            task.setState(Task.STATE.WAITING);
+            writeBehind.write(task);
+            tasks.add(task);
+        }
+        writeBehind.flush(tasks.subList(0, 1));
+        Assert.assertEquals(1, batches.size());
+        Assert.assertEquals(tasks.get(0), batches.peek().get(0));
+        Assert.assertEquals(1, writeBehind.getPending());
+    }
+
+    /**
+     * The flush of a task included in a batch in progress returns after the
+     * batch is written.
+     *
+     * @throws InterruptedException If interrupted while waiting the writes
+     */
+    @Test
+    public final void testFlushTaskDuringBatch() throws InterruptedException {
+        final Task task = TestData.createTask(TestData.TASKTYPE.SSH);
+        task.setState(Task.STATE.WAITING);
+        writeBehind.write(task);
+        slowWrite = new CountDownLatch(1);
+        final Thread batch = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind.flush();
+            }
+        });
+        batch.start();
+        Assert.assertTrue(writing.await(WAIT, TimeUnit.SECONDS));
+        final Thread taskFlush = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeBehind.flush(task);
+            }
+        });
+        taskFlush.start();
+        taskFlush.join(OVERLAP);
+        Assert.assertTrue(taskFlush.isAlive());
+        slowWrite.countDown();
+        taskFlush.join();
+        Assert.assertEquals(1, batches.size());
+        batch.join();
+    }
+}
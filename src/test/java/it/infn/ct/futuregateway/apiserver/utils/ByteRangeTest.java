@@ -0,0 +1,94 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.utils;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the ByteRange.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class ByteRangeTest {
+
+    /**
+     * Size of the content.
+     */
+    private static final long SIZE = 1000;
+
+    /**
+     * Last byte of the first half of the content.
+     */
+    private static final long HALF = 499;
+
+    /**
+     * Test the ranges with start and end.
+     */
+    @Test
+    public final void testRange() {
+        ByteRange range = ByteRange.parse("bytes=0-499", SIZE);
+        Assert.assertEquals(0, range.getStart());
+        Assert.assertEquals(HALF, range.getEnd());
+        Assert.assertEquals(HALF + 1, range.getLength());
+        Assert.assertEquals("bytes 0-499/1000", range.toContentRange(SIZE));
+        range = ByteRange.parse("bytes=500-5000", SIZE);
+        Assert.assertEquals(HALF + 1, range.getStart());
+        Assert.assertEquals(SIZE - 1, range.getEnd());
+    }
+
+    /**
+     * Test the open ranges and the suffix ranges.
+     */
+    @Test
+    public final void testOpenRange() {
+        ByteRange range = ByteRange.parse("bytes=500-", SIZE);
+        Assert.assertEquals(HALF + 1, range.getStart());
+        Assert.assertEquals(SIZE - 1, range.getEnd());
+        range = ByteRange.parse("bytes=-500", SIZE);
+        Assert.assertEquals(HALF + 1, range.getStart());
+        Assert.assertEquals(SIZE - 1, range.getEnd());
+        range = ByteRange.parse("bytes=-5000", SIZE);
+        Assert.assertEquals(0, range.getStart());
+    }
+
+    /**
+     * Test the headers not supported are ignored.
+     */
+    @Test
+    public final void testIgnored() {
+        Assert.assertNull(ByteRange.parse(null, SIZE));
+        Assert.assertNull(ByteRange.parse("items=0-1", SIZE));
+        Assert.assertNull(ByteRange.parse("bytes=0-1,5-6", SIZE));
+        Assert.assertNull(ByteRange.parse("bytes=a-b", SIZE));
+        Assert.assertNull(ByteRange.parse("bytes=10-1", SIZE));
+    }
+
+    /**
+     * Test the ranges outside the content are refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testNotSatisfiable() {
+        ByteRange.parse("bytes=1000-", SIZE);
+    }
+}
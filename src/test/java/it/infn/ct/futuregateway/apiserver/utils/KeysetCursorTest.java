@@ -0,0 +1,54 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.utils;
+
+import java.util.Date;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the KeysetCursor.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class KeysetCursorTest {
+
+    /**
+     * Test a cursor is decoded as encoded.
+     */
+    @Test
+    public final void testEncodeDecode() {
+        final Date now = new Date();
+        final KeysetCursor cursor = new KeysetCursor(now, "task:1");
+        final KeysetCursor decoded = KeysetCursor.decode(cursor.encode());
+        Assert.assertEquals(now, decoded.getDate());
+        Assert.assertEquals("task:1", decoded.getId());
+    }
+
+    /**
+     * Test a wrong cursor is refused.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public final void testWrongCursor() {
+        KeysetCursor.decode("bm9kYXRl");
+    }
+}
@@ -0,0 +1,154 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+package it.infn.ct.futuregateway.apiserver.utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the ThreadPoolFactory.
+ */
+public class ThreadPoolFactoryTest {
+
+    /**
+     * Core size of the pool under test.
+     */
+    private static final int POOLSIZE = 2;
+
+    /**
+     * Maximum size of the pool under test.
+     */
+    private static final int MAXPOOLSIZE = 4;
+
+    /**
+     * Queue size of the pool under test.
+     */
+    private static final int QUEUESIZE = 3;
+
+    /**
+     * Latch keeping the threads of the pool busy.
+     */
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    /**
+     * Task waiting for the latch.
+     */
+    private final Runnable busy = new Runnable() {
+        @Override
+        public void run() {
+            try {
+                release.await();
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    };
+
+    /**
+     * Release the busy threads.
+     */
+    @After
+    public final void releaseThreads() {
+        release.countDown();
+    }
+
+    /**
+     * The pool grows to the maximum size only when the queue is full and
+     * then it is saturated.
+     */
+    @Test
+    public final void testElasticGrowth() {
+        final ExecutorService pool = ThreadPoolFactory.getThreadPool(
+                POOLSIZE, MAXPOOLSIZE, Constants.MAXTHREADIDLELIFE,
+                QUEUESIZE, ThreadPoolFactory.ABORTPOLICY);
+        final ThreadPoolExecutor tpe = (ThreadPoolExecutor) pool;
+        for (int i = 0; i < POOLSIZE + QUEUESIZE; i++) {
+            pool.execute(busy);
+        }
+        Assert.assertEquals(POOLSIZE, tpe.getPoolSize());
+        Assert.assertFalse(ThreadPoolFactory.isSaturated(pool));
+        for (int i = POOLSIZE; i < MAXPOOLSIZE; i++) {
+            pool.execute(busy);
+        }
+        Assert.assertEquals(MAXPOOLSIZE, tpe.getPoolSize());
+        pool.shutdown();
+    }
+
+    /**
+     * The free capacity counts the idle threads and the free slots of the
+     * queue.
+     */
+    @Test
+    public final void testFreeCapacity() {
+        final ExecutorService pool = ThreadPoolFactory.getThreadPool(
+                POOLSIZE, MAXPOOLSIZE, Constants.MAXTHREADIDLELIFE,
+                QUEUESIZE, ThreadPoolFactory.ABORTPOLICY);
+        Assert.assertEquals(MAXPOOLSIZE + QUEUESIZE,
+                ThreadPoolFactory.getFreeCapacity(pool));
+        for (int i = 0; i < MAXPOOLSIZE + QUEUESIZE; i++) {
+            pool.execute(busy);
+        }
+        Assert.assertTrue(ThreadPoolFactory.getFreeCapacity(pool)
+                <= MAXPOOLSIZE);
+        pool.shutdown();
+    }
+
+    /**
+     * Tasks exceeding the capacity are rejected with the abort policy.
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public final void testAbortPolicy() {
+        final ExecutorService pool = ThreadPoolFactory.getThreadPool(
+                POOLSIZE, MAXPOOLSIZE, Constants.MAXTHREADIDLELIFE,
+                QUEUESIZE, ThreadPoolFactory.ABORTPOLICY);
+        try {
+            for (int i = 0; i <= MAXPOOLSIZE + QUEUESIZE; i++) {
+                pool.execute(busy);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Policies discarding the tasks are not available and the abort policy
+     * is applied.
+     */
+    @Test(expected = RejectedExecutionException.class)
+    public final void testDiscardPolicy() {
+        final ExecutorService pool = ThreadPoolFactory.getThreadPool(
+                POOLSIZE, MAXPOOLSIZE, Constants.MAXTHREADIDLELIFE,
+                QUEUESIZE, "discard");
+        try {
+            for (int i = 0; i <= MAXPOOLSIZE + QUEUESIZE; i++) {
+                pool.execute(busy);
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
@@ -26,6 +26,7 @@ import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import it.infn.ct.futuregateway.apiserver.resources.Application;
 import it.infn.ct.futuregateway.apiserver.resources.ApplicationList;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import javax.ws.rs.client.Entity;
@@ -130,6 +131,32 @@ public class ApplicationCollectionServiceIT extends JerseyTest {
     }
 
 
+    /**
+     * Test the collection list reports the infrastructures of the
+     * applications.
+     */
+    @Test
+    public final void testListApplicationInfrastructures() {
+        Application app = TestDataIT.createApplication();
+        app.setInfrastructureIds(infra);
+        Response rs = target("/v1.0/applications").
+                request(Constants.INDIGOMIMETYPE).
+                post(Entity.entity(app, Constants.INDIGOMIMETYPE));
+        Application newApp = rs.readEntity(Application.class);
+        rs = target("/v1.0/applications").
+                request(Constants.INDIGOMIMETYPE).get();
+        Assert.assertEquals(Response.Status.OK.getStatusCode(), rs.getStatus());
+        ApplicationList lstApp = rs.readEntity(ApplicationList.class);
+        Assert.assertEquals(1, lstApp.getApplications().size());
+        Application remApp = lstApp.getApplications().get(0);
+        Assert.assertEquals(newApp.getId(), remApp.getId());
+        Assert.assertEquals(new HashSet<>(infra),
+                new HashSet<>(remApp.getInfrastructureIds()));
+        target("/v1.0/applications/" + newApp.getId()).
+                request().delete();
+    }
+
+
     /**
      * Test to add an application.
      */
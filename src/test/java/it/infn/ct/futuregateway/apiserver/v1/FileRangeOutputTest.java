@@ -0,0 +1,94 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the FileRangeOutput.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class FileRangeOutputTest {
+
+    /**
+     * Content of the file.
+     */
+    private static final String CONTENT = "0123456789";
+
+    /**
+     * Position of the range in the file.
+     */
+    private static final int START = 3;
+
+    /**
+     * Size of the range.
+     */
+    private static final int COUNT = 4;
+
+    /**
+     * Test the full file and a range are written.
+     *
+     * @throws IOException If the file cannot be created
+     */
+    @Test
+    public final void testWrite() throws IOException {
+        final Path file = Files.createTempFile("output", ".txt");
+        try {
+            Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new FileRangeOutput(file, 0, CONTENT.length()).write(out);
+            Assert.assertEquals(CONTENT,
+                    new String(out.toByteArray(), StandardCharsets.UTF_8));
+            out = new ByteArrayOutputStream();
+            new FileRangeOutput(file, START, COUNT).write(out);
+            Assert.assertEquals(CONTENT.substring(START, START + COUNT),
+                    new String(out.toByteArray(), StandardCharsets.UTF_8));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    /**
+     * Test a file shorter than expected fails the download.
+     *
+     * @throws IOException If the file is truncated
+     */
+    @Test(expected = IOException.class)
+    public final void testTruncated() throws IOException {
+        final Path file = Files.createTempFile("output", ".txt");
+        try {
+            Files.write(file, CONTENT.getBytes(StandardCharsets.UTF_8));
+            new FileRangeOutput(file, START, CONTENT.length()).write(
+                    new ByteArrayOutputStream());
+        } finally {
+            Files.delete(file);
+        }
+    }
+}
@@ -27,6 +27,7 @@ import it.infn.ct.futuregateway.apiserver.resources.Application;
 import it.infn.ct.futuregateway.apiserver.resources.Infrastructure;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.resources.TaskList;
+import it.infn.ct.futuregateway.apiserver.resources.TaskSummary;
 import java.util.LinkedList;
 import java.util.List;
 import javax.ws.rs.client.Entity;
@@ -121,7 +122,7 @@ public class TaskCollectionServiceIT extends JerseyTest {
         TaskList lstTaskEmpty =
                 rs.readEntity(TaskList.class);
         Assert.assertNotNull(lstTaskEmpty);
-        Assert.assertEquals(new LinkedList<Task>(),
+        Assert.assertEquals(new LinkedList<TaskSummary>(),
                 lstTaskEmpty.getTasks());
 
         List<Task> lstNewTask = new LinkedList<>();
@@ -143,7 +144,7 @@ public class TaskCollectionServiceIT extends JerseyTest {
         Assert.assertNotNull(lstTask);
         Assert.assertEquals(lstNewTask.size(),
                 lstTask.getTasks().size());
-        for (Task remTask: lstTask.getTasks()) {
+        for (TaskSummary remTask: lstTask.getTasks()) {
             target("/v1.0/tasks/" + remTask.getId()).
                 request().delete();
         }
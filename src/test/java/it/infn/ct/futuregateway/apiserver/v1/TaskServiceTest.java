@@ -22,9 +22,12 @@
 package it.infn.ct.futuregateway.apiserver.v1;
 
 import it.infn.ct.futuregateway.apiserver.inframanager.MonitorQueue;
+import it.infn.ct.futuregateway.apiserver.resources.Application;
 import it.infn.ct.futuregateway.apiserver.resources.Task;
 import it.infn.ct.futuregateway.apiserver.resources.TaskFile;
 import it.infn.ct.futuregateway.apiserver.resources.TaskFileInput;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskEventStream;
+import it.infn.ct.futuregateway.apiserver.resources.observers.TaskWriteBehind;
 import it.infn.ct.futuregateway.apiserver.storage.Storage;
 import it.infn.ct.futuregateway.apiserver.utils.Constants;
 import it.infn.ct.futuregateway.apiserver.utils.TestData;
@@ -35,16 +38,23 @@ import java.lang.reflect.Field;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.ParseException;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
 import javax.persistence.EntityTransaction;
 import javax.servlet.ServletContext;
 import javax.servlet.http.HttpServletRequest;
+import javax.ws.rs.BadRequestException;
 import javax.ws.rs.InternalServerErrorException;
 import javax.ws.rs.NotFoundException;
+import javax.ws.rs.container.AsyncResponse;
 import org.apache.commons.lang3.RandomStringUtils;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
@@ -53,6 +63,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.runners.MockitoJUnitRunner;
+import org.mockito.ArgumentCaptor;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
@@ -62,6 +73,22 @@ import org.mockito.Mockito;
 @RunWith(MockitoJUnitRunner.class)
 public class TaskServiceTest {
 
+    /**
+     * Time to wait for a task in seconds.
+     */
+    private static final long WAITTIMEOUT = 10;
+
+    /**
+     * Interval between the periodic writes of the tasks, long enough to
+     * never happen during the tests.
+     */
+    private static final long WRITEINTERVAL = 3600000;
+
+    /**
+     * Number of tasks triggering a write.
+     */
+    private static final int WRITEBATCHSIZE = 10;
+
     /**
      * Fake http request.
      */
@@ -122,6 +149,12 @@ public class TaskServiceTest {
     @Mock
     private FormDataContentDisposition formContentDisp;
 
+    /**
+     * Fake response of a suspended request.
+     */
+    @Mock
+    private AsyncResponse response;
+
     /**
      * Test of getTaskDetails method, of class TaskService.
      * Gets task details with the correct ID
@@ -154,6 +187,103 @@ public class TaskServiceTest {
                 tDet);
     }
 
+    /**
+     * Test of waitTaskDetails method, of class TaskService.
+     * The task is already in the state requested.
+     */
+    @Test
+    public final void testWaitTaskDetailsReached() {
+        Task t = TestData.createTask(TestData.TASKTYPE.SSH);
+        t.setState(Task.STATE.DONE);
+        Mockito.when(this.em.find(
+                ArgumentMatchers.eq(Task.class), ArgumentMatchers.anyString())).
+                thenReturn(t);
+        final TaskService ts = this.getTaskService();
+        TaskEventStream.setInstance(createEventStream());
+        try {
+            ts.waitTaskDetails(t.getId(), "DONE", null, this.response);
+        } finally {
+            TaskEventStream.setInstance(null);
+        }
+        Mockito.verify(this.response).resume(t);
+        Mockito.verify(this.response, Mockito.never()).setTimeout(
+                ArgumentMatchers.anyLong(),
+                ArgumentMatchers.any(TimeUnit.class));
+    }
+
+    /**
+     * Test of waitTaskDetails method, of class TaskService.
+     * The request is suspended until the task changes state.
+     */
+    @Test
+    public final void testWaitTaskDetailsSuspended() {
+        Task t = TestData.createTask(TestData.TASKTYPE.SSH);
+        t.setState(Task.STATE.RUNNING);
+        Mockito.when(this.em.find(
+                ArgumentMatchers.eq(Task.class), ArgumentMatchers.anyString())).
+                thenReturn(t);
+        final TaskService ts = this.getTaskService();
+        final TaskEventStream events = createEventStream();
+        TaskEventStream.setInstance(events);
+        try {
+            ts.waitTaskDetails(t.getId(), "DONE",
+                    Long.toString(WAITTIMEOUT), this.response);
+            Mockito.verify(this.response).setTimeout(WAITTIMEOUT,
+                    TimeUnit.SECONDS);
+            Mockito.verify(this.response, Mockito.never()).resume(t);
+            Assert.assertEquals(1, events.getSubscriberCount());
+            t.setState(Task.STATE.DONE);
+            events.publish(t);
+        } finally {
+            TaskEventStream.setInstance(null);
+        }
+        Mockito.verify(this.response).resume(t);
+        Assert.assertEquals(0, events.getSubscriberCount());
+    }
+
+    /**
+     * Test of waitTaskDetails method, of class TaskService.
+     * The state requested is case insensitive and the task stored, older
+     * than the state notified, is not modified.
+     */
+    @Test
+    public final void testWaitTaskDetailsStoredStateOlder() {
+        Task t = TestData.createTask(TestData.TASKTYPE.SSH);
+        t.setState(Task.STATE.RUNNING);
+        Mockito.when(this.em.find(
+                ArgumentMatchers.eq(Task.class), ArgumentMatchers.anyString())).
+                thenReturn(t);
+        final TaskService ts = this.getTaskService();
+        final TaskEventStream events = createEventStream();
+        TaskEventStream.setInstance(events);
+        try {
+            ts.waitTaskDetails(t.getId(), "done",
+                    Long.toString(WAITTIMEOUT), this.response);
+            final Task notified = TestData.createTask(TestData.TASKTYPE.SSH);
+            notified.setId(t.getId());
+            notified.setState(Task.STATE.DONE);
+            events.publish(notified);
+        } finally {
+            TaskEventStream.setInstance(null);
+        }
+        final ArgumentCaptor<Task> resumed =
+                ArgumentCaptor.forClass(Task.class);
+        Mockito.verify(this.response).resume(resumed.capture());
+        Assert.assertEquals(t.getId(), resumed.getValue().getId());
+        Assert.assertEquals(Task.STATE.DONE, resumed.getValue().getState());
+        Assert.assertEquals(Task.STATE.RUNNING, t.getState());
+    }
+
+    /**
+     * Test of waitTaskDetails method, of class TaskService.
+     * The state requested does not exist.
+     */
+    @Test(expected = BadRequestException.class)
+    public final void testWaitTaskDetailsWrongState() {
+        final TaskService ts = this.getTaskService();
+        ts.waitTaskDetails("task", "FINISHED", null, this.response);
+    }
+
     /**
      * Test of deleteTask method, of class TaskService.
      */
@@ -241,6 +371,87 @@ public class TaskServiceTest {
         });
     }
 
+    /**
+     * Test of setInputFile method, of class TaskService.
+     * The input file is uploaded immediately after the creation of the task
+     * with the changes written by the write-behind.
+     *
+     * @throws IOException If the storage cannot be created
+     */
+    @Test
+    public final void testSetInputFileAfterCreate() throws IOException {
+        final Map<String, Task.STATE> stored = new HashMap<>();
+        final TaskWriteBehind writeBehind = new TaskWriteBehind(this.emf,
+                WRITEINTERVAL, WRITEBATCHSIZE) {
+            @Override
+            protected void persist(final List<Task> tasks) {
+                for (Task task: tasks) {
+                    stored.put(task.getId(), task.getState());
+                }
+            }
+        };
+        Mockito.when(this.context.getAttribute(Constants.TASKWRITEBEHIND)).
+                thenReturn(writeBehind);
+        Mockito.when(this.context.getAttribute(Constants.SUBMISSIONPOOL)).
+                thenReturn(this.ec);
+        Files.createDirectories(Paths.get(TestData.PATHTOTEMPSTORAGE));
+        final Task t = TestData.createTask(TestData.TASKTYPE.SSH);
+        final String fileName =
+                RandomStringUtils.randomAlphanumeric(TestData.IDLENGTH);
+        final TaskFileInput input = new TaskFileInput();
+        input.setName(fileName);
+        t.setInputFiles(new LinkedList<>(Collections.singletonList(input)));
+        Mockito.when(this.em.find(ArgumentMatchers.eq(Application.class),
+                ArgumentMatchers.anyString())).
+                thenReturn(t.getApplicationDetail());
+        try {
+            final TaskCollectionService tcs =
+                    setRequest(new TaskCollectionService());
+            tcs.createTask(t);
+            Assert.assertEquals(Task.STATE.WAITING, stored.get(t.getId()));
+            final Task loaded = new Task();
+            loaded.setId(t.getId());
+            loaded.setApplicationDetail(t.getApplicationDetail());
+            loaded.setState(stored.get(t.getId()));
+            final TaskFileInput loadedInput = new TaskFileInput();
+            loadedInput.setName(fileName);
+            loaded.setInputFiles(new LinkedList<>(
+                    Collections.singletonList(loadedInput)));
+            Mockito.when(this.em.find(ArgumentMatchers.eq(Task.class),
+                    ArgumentMatchers.anyString())).thenReturn(loaded);
+            Mockito.when(this.formBodyP.getFormDataContentDisposition()).
+                    thenReturn(this.formContentDisp);
+            Mockito.when(this.formBodyP.getValueAs(InputStream.class)).
+                    thenReturn(new ByteArrayInputStream(
+                            RandomStringUtils.randomAlphanumeric(
+                                    TestData.PROPERTYVALUEMAXLENGTH).
+                                    getBytes()));
+            Mockito.when(this.formContentDisp.getFileName()).
+                    thenReturn(fileName);
+            getTaskService().setInputFile(t.getId(),
+                    Collections.singletonList(this.formBodyP));
+            Assert.assertEquals(Task.STATE.READY, stored.get(t.getId()));
+            Assert.assertEquals(0, writeBehind.getPending());
+        } finally {
+            writeBehind.shutdown();
+        }
+    }
+
+    /**
+     * Creates a stream of events writing in the calling thread.
+     *
+     * @return The stream
+     */
+    private TaskEventStream createEventStream() {
+        return new TaskEventStream(Constants.EVENTHISTORYSIZE,
+                Constants.EVENTBUFFERSIZE, new Executor() {
+                    @Override
+                    public void execute(final Runnable command) {
+                        command.run();
+                    }
+                });
+    }
+
     /**
      * Create a TaskService for test.
      * Add the mock and perform the basic customisation.
@@ -248,7 +459,18 @@ public class TaskServiceTest {
      * @return A TaskService with provided mocks
      */
     private TaskService getTaskService() {
-        TaskService ts = null;
+        return setRequest(new TaskService());
+    }
+
+    /**
+     * Sets the request of a service for test.
+     * Add the mock and perform the basic customisation.
+     *
+     * @param <T> The type of the service
+     * @param service The service
+     * @return The service with provided mocks
+     */
+    private <T extends BaseService> T setRequest(final T service) {
         try {
             Mockito.when(this.em.getTransaction()).thenReturn(this.et);
             Mockito.when(this.emf.createEntityManager()).thenReturn(this.em);
@@ -260,16 +482,15 @@ public class TaskServiceTest {
                     thenReturn(TestData.PATHTOTEMPSTORAGE);
             Mockito.when(this.request.getServletContext()).
                     thenReturn(this.context);
-            ts = new TaskService();
             Field req = BaseService.class.getDeclaredField("request");
             req.setAccessible(true);
-            req.set(ts, this.request);
+            req.set(service, this.request);
         } catch (IllegalAccessException | IllegalArgumentException
                 | NoSuchFieldException ex) {
-            Assert.fail("Impossible to generate the TaskService");
+            Assert.fail("Impossible to generate the service");
         }
-        Assert.assertNotNull(ts.getRequest());
-        return ts;
+        Assert.assertNotNull(service.getRequest());
+        return service;
     }
 
 }
@@ -0,0 +1,97 @@
+/***********************************************************************
+ * Copyright (c) 2015:
+ * Istituto Nazionale di Fisica Nucleare (INFN), Italy
+ * Consorzio COMETA (COMETA), Italy
+ *
+ * See http://www.infn.it and and http://www.consorzio-cometa.it for details on
+ * the copyright holders.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ ***********************************************************************/
+
+
+package it.infn.ct.futuregateway.apiserver.v1;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test the ZipArchiveOutput.
+ *
+ * @author Marco Fargetta <marco.fargetta@ct.infn.it>
+ */
+public class ZipArchiveOutputTest {
+
+    /**
+     * Content of the files.
+     */
+    private static final String CONTENT = "output of the task";
+
+    /**
+     * Test all the files are in the archive and removed files are skipped.
+     *
+     * @throws IOException If the files cannot be created
+     */
+    @Test
+    public final void testWrite() throws IOException {
+        final Path folder = Files.createTempDirectory("outputs");
+        final List<Path> files = new ArrayList<>();
+        files.add(folder.resolve("std.out"));
+        files.add(folder.resolve("removed.txt"));
+        files.add(folder.resolve("result.txt"));
+        try {
+            Files.write(files.get(0), CONTENT.getBytes(StandardCharsets.UTF_8));
+            Files.write(files.get(2), CONTENT.getBytes(StandardCharsets.UTF_8));
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new ZipArchiveOutput(files, Deflater.BEST_COMPRESSION).write(out);
+            final List<String> names = new ArrayList<>();
+            try (ZipInputStream zip = new ZipInputStream(
+                    new ByteArrayInputStream(out.toByteArray()))) {
+                ZipEntry entry = zip.getNextEntry();
+                while (entry != null) {
+                    names.add(entry.getName());
+                    final ByteArrayOutputStream data =
+                            new ByteArrayOutputStream();
+                    final byte[] buffer = new byte[CONTENT.length()];
+                    int read = zip.read(buffer);
+                    while (read > 0) {
+                        data.write(buffer, 0, read);
+                        read = zip.read(buffer);
+                    }
+                    Assert.assertEquals(CONTENT, new String(
+                            data.toByteArray(), StandardCharsets.UTF_8));
+                    entry = zip.getNextEntry();
+                }
+            }
+            Assert.assertEquals(2, names.size());
+            Assert.assertEquals("std.out", names.get(0));
+            Assert.assertEquals("result.txt", names.get(1));
+        } finally {
+            for (Path file: files) {
+                Files.deleteIfExists(file);
+            }
+            Files.delete(folder);
+        }
+    }
+}